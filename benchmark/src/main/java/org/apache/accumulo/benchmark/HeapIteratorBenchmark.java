@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.system.MultiIterator;
+import org.apache.accumulo.core.util.LocalityGroupUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the loser tree merge in {@link org.apache.accumulo.core.iterators.system.HeapIterator}
+ * with the {@link PriorityQueue} merge it replaced. Keys are either spread uniformly over the
+ * sources, so the winner changes on nearly every next(), or laid out in runs, so the current top
+ * source usually wins again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeapIteratorBenchmark {
+
+  private static final int TOTAL_KEYS = 100_000;
+
+  @Param({"2", "8", "32", "128"})
+  public int sources;
+
+  @Param({"uniform", "runs"})
+  public String distribution;
+
+  private List<SortedKeyValueIterator<Key,Value>> iters;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rand = new Random(42);
+    List<List<Key>> lists = new ArrayList<>();
+    for (int i = 0; i < sources; i++)
+      lists.add(new ArrayList<>());
+
+    int source = 0;
+    for (int i = 0; i < TOTAL_KEYS; i++) {
+      if (distribution.equals("uniform")) {
+        source = rand.nextInt(sources);
+      } else if (rand.nextInt(64) == 0) {
+        source = rand.nextInt(sources);
+      }
+      lists.get(source).add(new Key(String.format("r%08d", i), "cf", "cq"));
+    }
+
+    Value value = new Value(new byte[32]);
+    iters = new ArrayList<>();
+    for (List<Key> keys : lists)
+      iters.add(new KeyArrayIterator(keys.toArray(new Key[0]), value));
+  }
+
+  @Benchmark
+  public void loserTree(Blackhole bh) throws IOException {
+    MultiIterator iter = new MultiIterator(iters, false);
+    iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+    while (iter.hasTop()) {
+      bh.consume(iter.getTopKey());
+      iter.next();
+    }
+  }
+
+  @Benchmark
+  public void priorityQueue(Blackhole bh) throws IOException {
+    PriorityQueueMerge iter = new PriorityQueueMerge(iters.size());
+    for (SortedKeyValueIterator<Key,Value> source : iters) {
+      source.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+      iter.addSource(source);
+    }
+    while (iter.hasTop()) {
+      bh.consume(iter.getTopKey());
+      iter.next();
+    }
+  }
+
+  /**
+   * The merge HeapIterator used before it was rewritten as a loser tree.
+   */
+  private static class PriorityQueueMerge {
+    private final PriorityQueue<SortedKeyValueIterator<Key,Value>> heap;
+    private SortedKeyValueIterator<Key,Value> topIdx = null;
+    private Key nextKey;
+
+    PriorityQueueMerge(int maxSize) {
+      heap = new PriorityQueue<>(maxSize == 0 ? 1 : maxSize,
+          (si1, si2) -> si1.getTopKey().compareTo(si2.getTopKey()));
+    }
+
+    Key getTopKey() {
+      return topIdx.getTopKey();
+    }
+
+    boolean hasTop() {
+      return topIdx != null;
+    }
+
+    void next() throws IOException {
+      topIdx.next();
+      if (!topIdx.hasTop()) {
+        if (nextKey == null) {
+          topIdx = null;
+          return;
+        }
+        pullReferencesFromHeap();
+      } else {
+        if (nextKey == null) {
+          return;
+        }
+        if (nextKey.compareTo(topIdx.getTopKey()) < 0) {
+          SortedKeyValueIterator<Key,Value> nextTopIdx = heap.remove();
+          heap.add(topIdx);
+          topIdx = nextTopIdx;
+          nextKey = heap.peek().getTopKey();
+        }
+      }
+    }
+
+    private void pullReferencesFromHeap() {
+      topIdx = heap.remove();
+      nextKey = heap.isEmpty() ? null : heap.peek().getTopKey();
+    }
+
+    void addSource(SortedKeyValueIterator<Key,Value> source) {
+      if (source.hasTop()) {
+        heap.add(source);
+        if (topIdx != null) {
+          heap.add(topIdx);
+        }
+        pullReferencesFromHeap();
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.system.VisibilityFilter;
+import org.apache.accumulo.core.iterators.user.VersioningIterator;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.util.LocalityGroupUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a scan through the iterators most tables run with: a {@link VersioningIterator} over the
+ * system {@link VisibilityFilter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IteratorStackBenchmark {
+
+  private static final int ROWS = 20_000;
+  private static final String[] VISIBILITIES = {"", "A", "A&B", "(A|B)&C", "D"};
+
+  @Param({"1", "3"})
+  public int versions;
+
+  private Key[] keys;
+  private Value value;
+  private Authorizations auths;
+
+  @Setup
+  public void setup() {
+    Random rand = new Random(42);
+    TreeSet<Key> sorted = new TreeSet<>();
+    for (int row = 0; row < ROWS; row++) {
+      String r = String.format("user%08d", row);
+      for (int col = 0; col < 4; col++) {
+        String vis = VISIBILITIES[rand.nextInt(VISIBILITIES.length)];
+        for (int v = 0; v < versions; v++) {
+          sorted.add(new Key(r, "family", "qualifier" + col, vis, 1000 - v));
+        }
+      }
+    }
+    keys = sorted.toArray(new Key[0]);
+    value = new Value(new byte[64]);
+    auths = new Authorizations("A", "B", "C");
+  }
+
+  @Benchmark
+  public void scan(Blackhole bh) throws IOException {
+    SortedKeyValueIterator<Key,Value> iter =
+        VisibilityFilter.wrap(new KeyArrayIterator(keys, value), auths, new byte[0]);
+    VersioningIterator versioning = new VersioningIterator();
+    versioning.init(iter, Collections.singletonMap("maxVersions", "1"), null);
+
+    versioning.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+    while (versioning.hasTop()) {
+      bh.consume(versioning.getTopKey());
+      bh.consume(versioning.getTopValue());
+      versioning.next();
+    }
+  }
+}
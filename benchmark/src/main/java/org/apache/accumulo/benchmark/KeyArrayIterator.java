@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.benchmark;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+
+/**
+ * A minimal source over a sorted array of keys, so that benchmarks of merging and filtering
+ * iterators measure those iterators rather than the cost of walking their sources.
+ */
+public class KeyArrayIterator implements SortedKeyValueIterator<Key,Value> {
+
+  private final Key[] keys;
+  private final Value value;
+  private Range range;
+  private int pos;
+
+  public KeyArrayIterator(Key[] keys, Value value) {
+    this.keys = keys;
+    this.value = value;
+    this.pos = keys.length;
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options,
+      IteratorEnvironment env) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean hasTop() {
+    return pos < keys.length;
+  }
+
+  @Override
+  public void next() {
+    pos++;
+    if (pos < keys.length && range.afterEndKey(keys[pos]))
+      pos = keys.length;
+  }
+
+  @Override
+  public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) {
+    this.range = range;
+    if (range.isInfiniteStartKey()) {
+      pos = 0;
+    } else {
+      int idx = Arrays.binarySearch(keys, range.getStartKey());
+      pos = idx < 0 ? -idx - 1 : idx;
+      if (pos < keys.length && !range.isStartKeyInclusive()
+          && keys[pos].equals(range.getStartKey()))
+        pos++;
+    }
+    if (pos < keys.length && range.afterEndKey(keys[pos]))
+      pos = keys.length;
+  }
+
+  @Override
+  public Key getTopKey() {
+    return keys[pos];
+  }
+
+  @Override
+  public Value getTopValue() {
+    return value;
+  }
+
+  @Override
+  public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+    return new KeyArrayIterator(keys, value);
+  }
+}
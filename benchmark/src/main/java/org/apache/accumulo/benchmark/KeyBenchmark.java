@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link Key#compareTo(Key)} for pairs of keys that first differ in the given field.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeyBenchmark {
+
+  private static final int PAIRS = 1024;
+
+  @Param({"row", "family", "qualifier", "visibility", "timestamp"})
+  public String differsIn;
+
+  private Key[] left;
+  private Key[] right;
+
+  @Setup
+  public void setup() {
+    Random rand = new Random(42);
+    left = new Key[PAIRS];
+    right = new Key[PAIRS];
+    for (int i = 0; i < PAIRS; i++) {
+      String row = String.format("user%012d", rand.nextInt(1_000_000));
+      String fam = "family" + rand.nextInt(10);
+      String qual = "qualifier" + rand.nextInt(100);
+      String vis = "A&B";
+      long ts = rand.nextInt(1_000_000);
+      left[i] = new Key(row, fam, qual, vis, ts);
+      switch (differsIn) {
+        case "row":
+          right[i] = new Key(row + "0", fam, qual, vis, ts);
+          break;
+        case "family":
+          right[i] = new Key(row, fam + "0", qual, vis, ts);
+          break;
+        case "qualifier":
+          right[i] = new Key(row, fam, qual + "0", vis, ts);
+          break;
+        case "visibility":
+          right[i] = new Key(row, fam, qual, vis + "&C", ts);
+          break;
+        case "timestamp":
+          right[i] = new Key(row, fam, qual, vis, ts + 1);
+          break;
+        default:
+          throw new IllegalArgumentException(differsIn);
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public void compareTo(Blackhole bh) {
+    for (int i = 0; i < PAIRS; i++) {
+      bh.consume(left[i].compareTo(right[i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public void equals(Blackhole bh) {
+    for (int i = 0; i < PAIRS; i++) {
+      bh.consume(left[i].equals(right[i]));
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.dataImpl.thrift.TMutation;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building a {@link Mutation} and moving it through the Writable and Thrift forms used by
+ * the write-ahead log and by clients sending updates to tablet servers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MutationBenchmark {
+
+  private static final ColumnVisibility VIS = new ColumnVisibility("A&B");
+
+  @Param({"1", "10", "100"})
+  public int columns;
+
+  @Param({"16", "1024"})
+  public int valueSize;
+
+  private byte[] value;
+  private Mutation mutation;
+  private TMutation tmutation;
+  private byte[] serialized;
+  private DataOutputBuffer out;
+  private DataInputBuffer in;
+
+  @Setup
+  public void setup() throws IOException {
+    value = new byte[valueSize];
+    mutation = build();
+    tmutation = mutation.toThrift();
+
+    out = new DataOutputBuffer();
+    mutation.write(out);
+    serialized = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, serialized, 0, out.getLength());
+    in = new DataInputBuffer();
+  }
+
+  private Mutation build() {
+    Mutation m = new Mutation("user00001234");
+    for (int i = 0; i < columns; i++) {
+      m.put("family", "qualifier" + i, VIS, new Value(value));
+    }
+    return m;
+  }
+
+  @Benchmark
+  public Mutation put() {
+    Mutation m = build();
+    // force the lazily built serialized form
+    m.numBytes();
+    return m;
+  }
+
+  @Benchmark
+  public DataOutputBuffer write() throws IOException {
+    out.reset();
+    mutation.write(out);
+    return out;
+  }
+
+  @Benchmark
+  public Mutation readFields() throws IOException {
+    in.reset(serialized, serialized.length);
+    Mutation m = new Mutation();
+    m.readFields(in);
+    return m;
+  }
+
+  @Benchmark
+  public TMutation toThrift() {
+    return mutation.toThrift();
+  }
+
+  @Benchmark
+  public int fromThrift() {
+    return new Mutation(tmutation).getUpdates().size();
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.DefaultConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.crypto.CryptoServiceFactory;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.FileOperations;
+import org.apache.accumulo.core.file.FileSKVIterator;
+import org.apache.accumulo.core.file.FileSKVWriter;
+import org.apache.accumulo.core.file.blockfile.cache.impl.BlockCacheConfiguration;
+import org.apache.accumulo.core.file.blockfile.cache.impl.BlockCacheManagerFactory;
+import org.apache.accumulo.core.spi.cache.BlockCacheManager;
+import org.apache.accumulo.core.spi.cache.CacheType;
+import org.apache.accumulo.core.util.LocalityGroupUtil;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures writing an RFile and reading it back from the local file system, with and without the
+ * data and index block caches the tablet server puts in front of the reader.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RFileBenchmark {
+
+  private static final int ROWS = 100_000;
+  private static final int SEEK_ENTRIES = 10;
+
+  @Param({"true", "false"})
+  public boolean blockCache;
+
+  @Param({"none", "gz"})
+  public String compression;
+
+  private ConfigurationCopy acuconf;
+  private Configuration conf;
+  private FileSystem fs;
+  private File dir;
+  private String readFile;
+  private String writeFile;
+  private Key[] keys;
+  private Value value;
+
+  private BlockCacheManager cacheManager;
+  private FileSKVIterator reader;
+  private Random rand;
+
+  @Setup
+  public void setup() throws Exception {
+    acuconf = new ConfigurationCopy(DefaultConfiguration.getInstance());
+    acuconf.set(Property.TABLE_FILE_COMPRESSION_TYPE, compression);
+    conf = new Configuration();
+    fs = FileSystem.getLocal(conf);
+    dir = Files.createTempDirectory("rfile-benchmark").toFile();
+
+    String extension = FileOperations.getNewFileExtension(acuconf);
+    readFile = new File(dir, "read." + extension).getAbsolutePath();
+    writeFile = new File(dir, "write." + extension).getAbsolutePath();
+
+    keys = new Key[ROWS];
+    for (int i = 0; i < ROWS; i++) {
+      keys[i] = new Key(String.format("user%010d", i), "family", "qualifier", "A&B", 1000);
+    }
+    value = new Value(new byte[100]);
+    write(readFile);
+
+    if (blockCache) {
+      ConfigurationCopy cacheConf = new ConfigurationCopy(acuconf);
+      cacheConf.set(Property.TSERV_DATACACHE_SIZE, "64M");
+      cacheConf.set(Property.TSERV_INDEXCACHE_SIZE, "16M");
+      cacheManager = BlockCacheManagerFactory.getClientInstance(cacheConf);
+      cacheManager.start(new BlockCacheConfiguration(cacheConf));
+    }
+
+    FileOperations.ReaderBuilder builder = FileOperations.getInstance().newReaderBuilder()
+        .forFile(readFile, fs, conf, CryptoServiceFactory.newDefaultInstance())
+        .withTableConfiguration(acuconf);
+    if (cacheManager != null) {
+      builder = builder.withBlockCache(cacheManager.getBlockCache(CacheType.DATA),
+          cacheManager.getBlockCache(CacheType.INDEX));
+    }
+    reader = builder.build();
+    rand = new Random(42);
+  }
+
+  @TearDown
+  public void teardown() throws IOException {
+    reader.close();
+    if (cacheManager != null) {
+      cacheManager.stop();
+    }
+    FileUtils.deleteQuietly(dir);
+  }
+
+  private void write(String file) throws IOException {
+    FileSKVWriter writer = FileOperations.getInstance().newWriterBuilder()
+        .forFile(file, fs, conf, CryptoServiceFactory.newDefaultInstance())
+        .withTableConfiguration(acuconf).build();
+    writer.startDefaultLocalityGroup();
+    for (Key key : keys) {
+      writer.append(key, value);
+    }
+    writer.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 5)
+  @Measurement(iterations = 10)
+  public void append() throws IOException {
+    fs.delete(new Path(writeFile), false);
+    write(writeFile);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void scan(Blackhole bh) throws IOException {
+    reader.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+    while (reader.hasTop()) {
+      bh.consume(reader.getTopKey());
+      bh.consume(reader.getTopValue());
+      reader.next();
+    }
+  }
+
+  @Benchmark
+  public void seek(Blackhole bh) throws IOException {
+    Key start = keys[rand.nextInt(ROWS - SEEK_ENTRIES)];
+    reader.seek(new Range(start, null), LocalityGroupUtil.EMPTY_CF_SET, false);
+    for (int i = 0; i < SEEK_ENTRIES && reader.hasTop(); i++) {
+      bh.consume(reader.getTopKey());
+      bh.consume(reader.getTopValue());
+      reader.next();
+    }
+  }
+}
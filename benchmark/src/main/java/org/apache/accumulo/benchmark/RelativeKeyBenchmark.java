@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.file.rfile.RelativeKey;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the prefix compressed key encoding RFile uses within a data block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RelativeKeyBenchmark {
+
+  private static final int KEYS = 4096;
+
+  private Key[] keys;
+  private byte[] encoded;
+  private DataOutputBuffer out;
+  private DataInputBuffer in;
+
+  @Setup
+  public void setup() throws IOException {
+    Random rand = new Random(42);
+    TreeSet<Key> sorted = new TreeSet<>();
+    while (sorted.size() < KEYS) {
+      sorted.add(new Key(String.format("user%08d", rand.nextInt(KEYS / 4)),
+          "family" + rand.nextInt(3), "qualifier" + rand.nextInt(10), "A&B", rand.nextInt(10)));
+    }
+    keys = sorted.toArray(new Key[0]);
+
+    out = new DataOutputBuffer();
+    in = new DataInputBuffer();
+    encode();
+    encoded = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, encoded, 0, out.getLength());
+  }
+
+  private void encode() throws IOException {
+    out.reset();
+    Key prev = null;
+    for (Key key : keys) {
+      new RelativeKey(prev, key).write(out);
+      prev = key;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(KEYS)
+  public DataOutputBuffer encodeKeys() throws IOException {
+    encode();
+    return out;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(KEYS)
+  public void decodeKeys(Blackhole bh) throws IOException {
+    in.reset(encoded, encoded.length);
+    RelativeKey rk = new RelativeKey();
+    for (int i = 0; i < KEYS; i++) {
+      rk.readFields(in);
+      bh.consume(rk.getKey());
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.security.CompiledVisibility;
+import org.apache.accumulo.core.security.CompiledVisibility.Ordinals;
+import org.apache.accumulo.core.security.VisibilityEvaluator;
+import org.apache.accumulo.core.security.VisibilityParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing column visibility expressions and evaluating them against a user's
+ * authorizations, either by walking the parse tree with {@link VisibilityEvaluator} or with a
+ * {@link CompiledVisibility}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VisibilityEvaluatorBenchmark {
+
+  @Param({"public", "A&B&C", "(A|B)&(C|D)&(E|F|\"G H\")",
+      "(admin|audit)&((US&(secret|topsecret))|(UK&secret))",
+      // deep
+      "A&(B|(C&(D|(E&(F|(G&(H|(I&(J|(K&public))))))))))",
+      // wide
+      "w1|w2|w3|w4|w5|w6|w7|w8|w9|w10|w11|w12|w13|w14|w15|w16|w17|w18|w19|w20|w21|w22|w23|w24|F",
+      "A&B&C&w1&w2&w3&w4&w5&w6&w7&w8&w9&w10&w11&w12&w13&w14&w15&w16&w17&w18&w19&w20"})
+  public String expression;
+
+  private byte[] expressionBytes;
+  private ColumnVisibility visibility;
+  private VisibilityEvaluator evaluator;
+  private Ordinals ordinals;
+  private CompiledVisibility compiled;
+  private long[] authBits;
+
+  @Setup
+  public void setup() throws VisibilityParseException {
+    expressionBytes = expression.getBytes(UTF_8);
+    visibility = new ColumnVisibility(expressionBytes);
+    List<String> auths =
+        new ArrayList<>(List.of("public", "A", "B", "C", "F", "G H", "audit", "US", "secret"));
+    for (int i = 1; i <= 20; i++) {
+      auths.add("w" + i);
+    }
+    Authorizations authorizations = new Authorizations(auths.toArray(new String[0]));
+    evaluator = new VisibilityEvaluator(authorizations);
+    ordinals = new Ordinals();
+    compiled = CompiledVisibility.compile(visibility, ordinals);
+    authBits = ordinals.toBitSet(authorizations);
+  }
+
+  @Benchmark
+  public ColumnVisibility parse() {
+    return new ColumnVisibility(expressionBytes);
+  }
+
+  @Benchmark
+  public boolean evaluate() throws VisibilityParseException {
+    return evaluator.evaluate(visibility);
+  }
+
+  @Benchmark
+  public CompiledVisibility compile() throws VisibilityParseException {
+    return CompiledVisibility.compile(visibility, ordinals);
+  }
+
+  @Benchmark
+  public boolean compiledEvaluate() {
+    return compiled.evaluate(authBits);
+  }
+
+  @Benchmark
+  public boolean parseAndEvaluate() throws VisibilityParseException {
+    return evaluator.evaluate(new ColumnVisibility(expressionBytes));
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.bloomfilter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A bloom filter whose bits are split into 512 bit blocks, the size of a typical cache line. A key
+ * is hashed once, the hash picks a block and every bit for the key is set in that block. A
+ * membership test therefore reads a single cache line, where a standard bloom filter reads one
+ * scattered bit per hash function.
+ *
+ * <p>
+ * Keeping the bits of a key together raises the false positive rate a little for the same number
+ * of bits, so the filter is sized with about 20% more bits than a standard filter with the same
+ * target error rate.
+ */
+public class BlockedBloomFilter implements Writable {
+
+  private static final int BLOCK_LONGS = 8;
+  private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+  private static final int MAX_HASH_COUNT = 16;
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private int numBlocks;
+  private int hashCount;
+  private long[] bits;
+
+  /**
+   * Creates an empty filter to read into with {@link #readFields(DataInput)}.
+   */
+  public BlockedBloomFilter() {}
+
+  /**
+   * @param expectedKeys
+   *          the number of keys the filter is expected to hold
+   * @param errorRate
+   *          the desired false positive rate once the filter holds the expected keys
+   */
+  public BlockedBloomFilter(int expectedKeys, double errorRate) {
+    if (expectedKeys <= 0) {
+      throw new IllegalArgumentException("expected keys must be positive : " + expectedKeys);
+    }
+    if (errorRate <= 0 || errorRate >= 1) {
+      throw new IllegalArgumentException("error rate must be between 0 and 1 : " + errorRate);
+    }
+
+    double ln2 = Math.log(2);
+    double bitsPerKey = -Math.log(errorRate) / (ln2 * ln2) * 1.2;
+    long numBits = (long) Math.ceil(bitsPerKey * expectedKeys);
+    long blocks = (numBits + BLOCK_BITS - 1) / BLOCK_BITS;
+    this.numBlocks = (int) Math.max(1, Math.min(blocks, Integer.MAX_VALUE / BLOCK_LONGS));
+    this.hashCount = (int) Math.max(1, Math.min(MAX_HASH_COUNT, Math.round(bitsPerKey * ln2)));
+    this.bits = new long[numBlocks * BLOCK_LONGS];
+  }
+
+  public void add(byte[] key) {
+    long hash = HASH.hashBytes(key).asLong();
+    int block = block(hash) * BLOCK_LONGS;
+    int pos = (int) hash;
+    int step = (pos >>> 16) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = pos & (BLOCK_BITS - 1);
+      bits[block + (bit >>> 6)] |= 1L << bit;
+      pos += step;
+    }
+  }
+
+  public boolean membershipTest(byte[] key) {
+    long hash = HASH.hashBytes(key).asLong();
+    int block = block(hash) * BLOCK_LONGS;
+    int pos = (int) hash;
+    int step = (pos >>> 16) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = pos & (BLOCK_BITS - 1);
+      if ((bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+      pos += step;
+    }
+    return true;
+  }
+
+  /**
+   * Maps the upper half of the hash onto a block without a division.
+   */
+  private int block(long hash) {
+    return (int) (((hash >>> 32) * numBlocks) >>> 32);
+  }
+
+  /**
+   * @return the size of the filter's bits in bytes
+   */
+  public int getSizeInBytes() {
+    return bits.length * Long.BYTES;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(numBlocks);
+    out.writeByte(hashCount);
+    for (long word : bits) {
+      out.writeLong(word);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    numBlocks = in.readInt();
+    hashCount = in.readByte();
+    if (numBlocks <= 0 || numBlocks > Integer.MAX_VALUE / BLOCK_LONGS || hashCount <= 0
+        || hashCount > MAX_HASH_COUNT) {
+      throw new IOException(
+          "Invalid blocked bloom filter, blocks : " + numBlocks + " hashes : " + hashCount);
+    }
+    bits = new long[numBlocks * BLOCK_LONGS];
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] = in.readLong();
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package org.apache.accumulo.core.client;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.accumulo.core.conf.ClientProperty.BATCH_WRITER_INFLIGHT_MAX;
 import static org.apache.accumulo.core.conf.ClientProperty.BATCH_WRITER_LATENCY_MAX;
 import static org.apache.accumulo.core.conf.ClientProperty.BATCH_WRITER_MEMORY_MAX;
 import static org.apache.accumulo.core.conf.ClientProperty.BATCH_WRITER_THREADS_MAX;
@@ -57,6 +58,10 @@ public class BatchWriterConfig implements Writable {
       Integer.parseInt(BATCH_WRITER_THREADS_MAX.getDefaultValue());
   private Integer maxWriteThreads = null;
 
+  private static final Integer DEFAULT_MAX_INFLIGHT =
+      Integer.parseInt(BATCH_WRITER_INFLIGHT_MAX.getDefaultValue());
+  private Integer maxInFlight = null;
+
   private Durability durability = Durability.DEFAULT;
   private boolean isDurabilitySet = false;
 
@@ -180,6 +185,37 @@ public class BatchWriterConfig implements Writable {
     return this;
   }
 
+  /**
+   * Sets the maximum number of update batches that may be outstanding to a single tablet server at
+   * once. With the default of 1, a tablet server receives a new batch only after the previous one
+   * was acknowledged. Larger values let the writer keep sending to a server while earlier batches
+   * are still being applied, which keeps connections busy during bursts of writes. Outstanding
+   * batches still count against {@link #setMaxMemory(long)}, so memory remains the bound on how
+   * much data is in flight. The number of concurrent sends is also bounded by
+   * {@link #setMaxWriteThreads(int)}.
+   *
+   * <p>
+   * When more than one batch is outstanding to a tablet server, mutations to the same row that were
+   * sent in different batches may be applied in a different order than they were added.
+   *
+   * <p>
+   * <b>Default:</b> 1
+   *
+   * @param maxInFlight
+   *          the maximum number of outstanding batches per tablet server
+   * @throws IllegalArgumentException
+   *           if {@code maxInFlight} is non-positive
+   * @return {@code this} to allow chaining of set methods
+   * @since 2.1.0
+   */
+  public BatchWriterConfig setMaxInFlightBatchesPerServer(int maxInFlight) {
+    if (maxInFlight <= 0)
+      throw new IllegalArgumentException("Max in flight batches must be positive " + maxInFlight);
+
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
   public long getMaxMemory() {
     return maxMemory != null ? maxMemory : DEFAULT_MAX_MEMORY;
   }
@@ -197,6 +233,14 @@ public class BatchWriterConfig implements Writable {
     return maxWriteThreads != null ? maxWriteThreads : DEFAULT_MAX_WRITE_THREADS;
   }
 
+  /**
+   * @since 2.1.0
+   * @return the maximum number of outstanding batches per tablet server
+   */
+  public int getMaxInFlightBatchesPerServer() {
+    return maxInFlight != null ? maxInFlight : DEFAULT_MAX_INFLIGHT;
+  }
+
   /**
    * @since 1.7.0
    * @return the durability to be used by the BatchWriter
@@ -233,6 +277,8 @@ public class BatchWriterConfig implements Writable {
       addField(fields, "maxWriteThreads", maxWriteThreads);
     if (timeout != null)
       addField(fields, "timeout", timeout);
+    if (maxInFlight != null)
+      addField(fields, "maxInFlight", maxInFlight);
     if (durability != Durability.DEFAULT)
       addField(fields, "durability", durability);
     String output = StringUtils.join(",", fields);
@@ -276,6 +322,8 @@ public class BatchWriterConfig implements Writable {
         maxWriteThreads = Integer.valueOf(value);
       } else if ("timeout".equals(key)) {
         timeout = Long.valueOf(value);
+      } else if ("maxInFlight".equals(key)) {
+        maxInFlight = Integer.valueOf(value);
       } else if ("durability".equals(key)) {
         durability = DurabilityImpl.fromString(value);
       } else {
@@ -328,6 +376,16 @@ public class BatchWriterConfig implements Writable {
           return false;
         }
       }
+
+      if (maxInFlight != null) {
+        if (!maxInFlight.equals(other.maxInFlight)) {
+          return false;
+        }
+      } else {
+        if (other.maxInFlight != null) {
+          return false;
+        }
+      }
       return durability == other.durability;
     }
 
@@ -355,6 +413,7 @@ public class BatchWriterConfig implements Writable {
     result.maxLatency = merge(this.maxLatency, other.maxLatency);
     result.timeout = merge(this.timeout, other.timeout);
     result.maxWriteThreads = merge(this.maxWriteThreads, other.maxWriteThreads);
+    result.maxInFlight = merge(this.maxInFlight, other.maxInFlight);
     if (this.isDurabilitySet) {
       result.durability = this.durability;
     } else if (other.isDurabilitySet) {
@@ -367,7 +426,7 @@ public class BatchWriterConfig implements Writable {
   public int hashCode() {
     HashCodeBuilder hcb = new HashCodeBuilder();
     hcb.append(maxMemory).append(maxLatency).append(maxWriteThreads).append(timeout)
-        .append(durability);
+        .append(maxInFlight).append(durability);
     return hcb.toHashCode();
   }
 
@@ -377,6 +436,7 @@ public class BatchWriterConfig implements Writable {
     sb.append("[maxMemory=").append(getMaxMemory()).append(", maxLatency=")
         .append(getMaxLatency(TimeUnit.MILLISECONDS)).append(", maxWriteThreads=")
         .append(getMaxWriteThreads()).append(", timeout=").append(getTimeout(TimeUnit.MILLISECONDS))
+        .append(", maxInFlightBatchesPerServer=").append(getMaxInFlightBatchesPerServer())
         .append(", durability=").append(durability).append("]");
     return sb.toString();
   }
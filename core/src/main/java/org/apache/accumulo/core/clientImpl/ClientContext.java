@@ -301,6 +301,10 @@ public class ClientContext implements AccumuloClient {
       if (timeout != null) {
         batchWriterConfig.setTimeout(timeout, TimeUnit.SECONDS);
       }
+      Integer maxInFlight = ClientProperty.BATCH_WRITER_INFLIGHT_MAX.getInteger(props);
+      if (maxInFlight != null) {
+        batchWriterConfig.setMaxInFlightBatchesPerServer(maxInFlight);
+      }
       String durability = ClientProperty.BATCH_WRITER_DURABILITY.getValue(props);
       if (!durability.isEmpty()) {
         batchWriterConfig.setDurability(Durability.valueOf(durability.toUpperCase()));
@@ -706,6 +710,8 @@ public class ClientContext implements AccumuloClient {
       ClientProperty.BATCH_WRITER_TIMEOUT_MAX.setTimeInMillis(properties,
           batchWriterConfig.getTimeout(TimeUnit.MILLISECONDS));
       setProperty(ClientProperty.BATCH_WRITER_THREADS_MAX, batchWriterConfig.getMaxWriteThreads());
+      setProperty(ClientProperty.BATCH_WRITER_INFLIGHT_MAX,
+          batchWriterConfig.getMaxInFlightBatchesPerServer());
       setProperty(ClientProperty.BATCH_WRITER_DURABILITY,
           batchWriterConfig.getDurability().toString());
       return this;
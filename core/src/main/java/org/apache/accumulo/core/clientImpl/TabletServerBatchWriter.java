@@ -31,7 +31,9 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -92,9 +94,11 @@ import com.google.common.base.Joiner;
  * Considerations
  *   + All background threads must catch and note Throwable
  *   + mutations for a single tablet server are only processed by one thread
- *     concurrently (if new mutations come in for a tablet server while one
- *     thread is processing mutations for it, no other thread should
- *     start processing those mutations)
+ *     concurrently by default (if new mutations come in for a tablet server while
+ *     one thread is processing mutations for it, no other thread should
+ *     start processing those mutations). When more than one batch may be in
+ *     flight per tablet server, up to that many threads process mutations for
+ *     it and batches to the same server may be applied out of order.
  *
  * Memory accounting
  *   + when a mutation enters the system memory is incremented
@@ -124,6 +128,9 @@ public class TabletServerBatchWriter {
   private final Map<String,TimeoutTracker> timeoutTrackers =
       Collections.synchronizedMap(new HashMap<>());
 
+  // per tablet server send stats
+  private final Map<String,ServerSendStats> serverSendStats = new ConcurrentHashMap<>();
+
   // stats
   private long totalMemUsed = 0;
   private long lastProcessingStartTime;
@@ -155,6 +162,56 @@ public class TabletServerBatchWriter {
   private boolean somethingFailed = false;
   private Throwable lastUnknownError = null;
 
+  /**
+   * Tracks the bytes currently outstanding to a tablet server and how long its batches took to be
+   * acknowledged.
+   */
+  static class ServerSendStats {
+    private final AtomicLong inFlightBytes = new AtomicLong(0);
+    private final AtomicLong maxInFlightBytes = new AtomicLong(0);
+    private final AtomicInteger inFlightBatches = new AtomicInteger(0);
+    private final AtomicInteger maxInFlightBatches = new AtomicInteger(0);
+    private final AtomicLong batches = new AtomicLong(0);
+    private final AtomicLong totalLatency = new AtomicLong(0);
+    private final AtomicLong maxLatency = new AtomicLong(0);
+
+    void startingSend(long bytes) {
+      long current = inFlightBytes.addAndGet(bytes);
+      maxInFlightBytes.accumulateAndGet(current, Math::max);
+      int currentBatches = inFlightBatches.incrementAndGet();
+      maxInFlightBatches.accumulateAndGet(currentBatches, Math::max);
+    }
+
+    void finishedSend(long bytes, long latency) {
+      inFlightBytes.addAndGet(-bytes);
+      inFlightBatches.decrementAndGet();
+      batches.incrementAndGet();
+      totalLatency.addAndGet(latency);
+      maxLatency.accumulateAndGet(latency, Math::max);
+    }
+
+    long getMaxInFlightBytes() {
+      return maxInFlightBytes.get();
+    }
+
+    int getMaxInFlightBatches() {
+      return maxInFlightBatches.get();
+    }
+
+    long getBatches() {
+      return batches.get();
+    }
+
+    double getAverageLatency() {
+      long count = batches.get();
+      return count == 0 ? 0 : totalLatency.get() / (double) count;
+    }
+
+    long getMaxLatency() {
+      return maxLatency.get();
+    }
+  }
+
   private static class TimeoutTracker {
 
     final String server;
@@ -167,16 +224,16 @@ public class TabletServerBatchWriter {
       this.server = server;
     }
 
-    void startingWrite() {
+    synchronized void startingWrite() {
       activityTime = System.currentTimeMillis();
     }
 
-    void madeProgress() {
+    synchronized void madeProgress() {
       activityTime = System.currentTimeMillis();
       firstErrorTime = null;
     }
 
-    void wroteNothing() {
+    synchronized void wroteNothing() {
       if (firstErrorTime == null) {
         firstErrorTime = activityTime;
       } else if (System.currentTimeMillis() - firstErrorTime > timeOut) {
@@ -184,7 +241,7 @@ public class TabletServerBatchWriter {
       }
     }
 
-    void errorOccured() {
+    synchronized void errorOccured() {
       wroteNothing();
     }
 
@@ -203,7 +260,8 @@ public class TabletServerBatchWriter {
     this.lastProcessingStartTime = System.currentTimeMillis();
     this.durability = config.getDurability();
 
-    this.writer = new MutationWriter(config.getMaxWriteThreads());
+    this.writer =
+        new MutationWriter(config.getMaxWriteThreads(), config.getMaxInFlightBatchesPerServer());
 
     if (this.maxLatency != Long.MAX_VALUE) {
       jtimer.schedule(new TimerTask() {
@@ -396,6 +454,16 @@ public class TabletServerBatchWriter {
           (float) (numBatches.get() != 0 ? (tabletBatchSum.get() / numBatches.get()) : 0),
           minTabletBatch.get(), maxTabletBatch.get()));
       log.trace("");
+      log.trace("TABLET SERVER SEND STATISTICS");
+      for (Entry<String,ServerSendStats> entry : new TreeMap<>(serverSendStats).entrySet()) {
+        ServerSendStats stats = entry.getValue();
+        log.trace(String.format(
+            "%-20s : %,6d batches %,10.2f ms avg %,8d ms max latency %,12d max bytes %,3d max"
+                + " batches in flight",
+            entry.getKey(), stats.getBatches(), stats.getAverageLatency(), stats.getMaxLatency(),
+            stats.getMaxInFlightBytes(), stats.getMaxInFlightBatches()));
+      }
+      log.trace("");
       log.trace("SYSTEM STATISTICS");
       log.trace(String.format("JVM GC Time          : %,10.2f secs",
           ((finalGCTimes - initialGCTimes) / 1000.0)));
@@ -643,12 +711,15 @@ public class TabletServerBatchWriter {
     private final ExecutorService sendThreadPool;
     private final SimpleThreadPool binningThreadPool;
     private final Map<String,TabletServerMutations<Mutation>> serversMutations;
-    private final Set<String> queued;
+    // number of send tasks working on each tablet server
+    private final Map<String,Integer> queued;
+    private final int maxInFlight;
     private final Map<TableId,TabletLocator> locators;
 
-    public MutationWriter(int numSendThreads) {
+    public MutationWriter(int numSendThreads, int maxInFlight) {
       serversMutations = new HashMap<>();
-      queued = new HashSet<>();
+      queued = new HashMap<>();
+      this.maxInFlight = maxInFlight;
       sendThreadPool = new SimpleThreadPool(numSendThreads, this.getClass().getName());
       locators = new HashMap<>();
       binningThreadPool = new SimpleThreadPool(1, "BinMutations", new SynchronousQueue<>());
@@ -773,17 +844,28 @@ public class TabletServerBatchWriter {
       ArrayList<String> servers = new ArrayList<>(binnedMutations.keySet());
       Collections.shuffle(servers);
 
-      for (String server : servers)
-        if (!queued.contains(server)) {
+      // Start another send task for a server while it has fewer than maxInFlight. A task that is
+      // blocked waiting on a server to apply one batch leaves new mutations for that server to the
+      // next task, so up to maxInFlight batches are outstanding to each server. Memory accounting
+      // in addMutation() provides the back pressure when servers can not keep up.
+      for (String server : servers) {
+        int tasks = queued.getOrDefault(server, 0);
+        if (tasks < maxInFlight) {
           sendThreadPool.submit(Trace.wrap(new SendTask(server)));
-          queued.add(server);
+          queued.put(server, tasks + 1);
         }
+      }
     }
 
     private synchronized TabletServerMutations<Mutation> getMutationsToSend(String server) {
       TabletServerMutations<Mutation> tsmuts = serversMutations.remove(server);
-      if (tsmuts == null)
-        queued.remove(server);
+      if (tsmuts == null) {
+        int tasks = queued.get(server) - 1;
+        if (tasks == 0)
+          queued.remove(server);
+        else
+          queued.put(server, tasks);
+      }
 
       return tsmuts;
     }
@@ -838,27 +920,31 @@ public class TabletServerBatchWriter {
 
           try (TraceScope span = Trace.startSpan("sendMutations")) {
 
-            TimeoutTracker timeoutTracker = timeoutTrackers.get(location);
-            if (timeoutTracker == null) {
-              timeoutTracker = new TimeoutTracker(location, timeout);
-              timeoutTrackers.put(location, timeoutTracker);
+            TimeoutTracker timeoutTracker = timeoutTrackers.computeIfAbsent(location,
+                server -> new TimeoutTracker(server, timeout));
+            ServerSendStats stats =
+                serverSendStats.computeIfAbsent(location, server -> new ServerSendStats());
+
+            long successBytes = 0;
+            for (Entry<KeyExtent,List<Mutation>> entry : mutationBatch.entrySet()) {
+              for (Mutation mutation : entry.getValue()) {
+                successBytes += mutation.estimatedMemoryUsed();
+              }
             }
 
             long st1 = System.currentTimeMillis();
-            failures = sendMutationsToTabletServer(location, mutationBatch, timeoutTracker);
+            stats.startingSend(successBytes);
+            try {
+              failures = sendMutationsToTabletServer(location, mutationBatch, timeoutTracker);
+            } finally {
+              stats.finishedSend(successBytes, System.currentTimeMillis() - st1);
+            }
             long st2 = System.currentTimeMillis();
             if (log.isTraceEnabled())
               log.trace("sent " + String.format("%,d", count) + " mutations to " + location + " in "
                   + String.format("%.2f secs (%,.2f mutations/sec) with %,d failures",
                       (st2 - st1) / 1000.0, count / ((st2 - st1) / 1000.0), failures.size()));
 
-            long successBytes = 0;
-            for (Entry<KeyExtent,List<Mutation>> entry : mutationBatch.entrySet()) {
-              for (Mutation mutation : entry.getValue()) {
-                successBytes += mutation.estimatedMemoryUsed();
-              }
-            }
-
             if (failures.size() > 0) {
               failedMutations.add(failures);
               successBytes -= failures.getMemoryUsed();
@@ -17,17 +17,20 @@
 package org.apache.accumulo.core.clientImpl;
 
 import java.security.SecureRandom;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.accumulo.core.rpc.ThriftUtil;
 import org.apache.accumulo.core.singletons.SingletonManager;
@@ -47,32 +50,102 @@ import com.google.common.collect.Iterables;
 public class ThriftTransportPool {
 
   private static final SecureRandom random = new SecureRandom();
-  private long killTime = 1000 * 3;
+  private volatile long killTime = 1000 * 3;
 
+  /**
+   * The connections to a single destination. Each destination is independent of the others and none
+   * of the operations on it take a lock, so threads talking to different servers, or reusing
+   * connections to the same server, do not contend on a shared monitor.
+   */
   private static class CachedConnections {
-    Deque<CachedConnection> unreserved = new ArrayDeque<>(); // stack - LIFO
-    Map<CachedTTransport,CachedConnection> reserved = new HashMap<>();
+    // stack - LIFO, pushed and popped at the head, connections idle the longest are at the tail
+    final Deque<CachedConnection> unreserved = new ConcurrentLinkedDeque<>();
+    final Map<CachedTTransport,CachedConnection> reserved = new ConcurrentHashMap<>();
+
+    final AtomicLong errorCount = new AtomicLong(0);
+    // time of the first error since the errors were last reset, 0 if there were none
+    final AtomicLong errorTime = new AtomicLong(0);
+
+    final ConnectionStats stats = new ConnectionStats();
 
     public CachedConnection reserveAny() {
 
-      CachedConnection cachedConnection = unreserved.poll(); // safe pop
+      // once popped, no other thread can see the connection, so it is safe to reserve
+      CachedConnection cachedConnection = unreserved.poll();
       if (cachedConnection != null) {
         cachedConnection.reserve();
         reserved.put(cachedConnection.transport, cachedConnection);
+        stats.reused.increment();
         if (log.isTraceEnabled()) {
           log.trace("Using existing connection to {}", cachedConnection.transport.cacheKey);
         }
       }
       return cachedConnection;
     }
+
+    /**
+     * Removes and returns the connection that has been idle the longest if it has been idle for
+     * more than the given time.
+     */
+    CachedConnection removeExpired(long currTime, long idleTime) {
+      CachedConnection last = unreserved.peekLast();
+      if (last != null && currTime - last.lastReturnTime > idleTime
+          && unreserved.removeLastOccurrence(last)) {
+        return last;
+      }
+      return null;
+    }
   }
 
-  private Map<ThriftTransportKey,CachedConnections> cache = new HashMap<>();
-  private Map<ThriftTransportKey,Long> errorCount = new HashMap<>();
-  private Map<ThriftTransportKey,Long> errorTime = new HashMap<>();
-  private Set<ThriftTransportKey> serversWarnedAbout = new HashSet<>();
+  /**
+   * Counters for the connections to a single destination.
+   */
+  public static class ConnectionStats {
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * @return the number of times an idle pooled connection was handed out
+     */
+    public long getReused() {
+      return reused.sum();
+    }
+
+    /**
+     * @return the number of new connections opened
+     */
+    public long getCreated() {
+      return created.sum();
+    }
+
+    /**
+     * @return the number of connections returned to the pool after an error
+     */
+    public long getErrors() {
+      return errors.sum();
+    }
+
+    /**
+     * @return the total time threads spent obtaining connections, including opening new ones
+     */
+    public long getWaitTime(TimeUnit unit) {
+      return unit.convert(waitNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+      return "reused=" + getReused() + " created=" + getCreated() + " errors=" + getErrors()
+          + " waitTime=" + getWaitTime(TimeUnit.MILLISECONDS) + "ms";
+    }
+  }
+
+  private volatile Map<ThriftTransportKey,CachedConnections> cache = new ConcurrentHashMap<>();
+  private final Set<ThriftTransportKey> serversWarnedAbout = ConcurrentHashMap.newKeySet();
 
   private Thread checkThread;
+  private final AtomicBoolean checkStarted = new AtomicBoolean(false);
 
   private static final Logger log = LoggerFactory.getLogger(ThriftTransportPool.class);
 
@@ -120,35 +193,26 @@ public class ThriftTransportPool {
 
         ArrayList<CachedConnection> connectionsToClose = new ArrayList<>();
 
-        synchronized (pool) {
-          for (CachedConnections cachedConns : pool.getCache().values()) {
-            Deque<CachedConnection> unres = cachedConns.unreserved;
+        for (CachedConnections cachedConns : pool.getCache().values()) {
+          long currTime = System.currentTimeMillis();
 
-            long currTime = System.currentTimeMillis();
-
-            // The following code is structured to avoid removing from the middle of the array
-            // deqeue which would be costly. It also assumes the oldest are at the end.
-            while (!unres.isEmpty() && currTime - unres.peekLast().lastReturnTime > pool.killTime) {
-              connectionsToClose.add(unres.removeLast());
-            }
+          // The oldest connections are at the end of the deque, so only look there.
+          CachedConnection expired;
+          while ((expired = cachedConns.removeExpired(currTime, pool.killTime)) != null) {
+            connectionsToClose.add(expired);
+          }
 
-            for (CachedConnection cachedConnection : cachedConns.reserved.values()) {
-              cachedConnection.transport.checkForStuckIO(STUCK_THRESHOLD);
-            }
+          for (CachedConnection cachedConnection : cachedConns.reserved.values()) {
+            cachedConnection.transport.checkForStuckIO(STUCK_THRESHOLD);
           }
 
-          Iterator<Entry<ThriftTransportKey,Long>> iter = pool.errorTime.entrySet().iterator();
-          while (iter.hasNext()) {
-            Entry<ThriftTransportKey,Long> entry = iter.next();
-            long delta = System.currentTimeMillis() - entry.getValue();
-            if (delta >= STUCK_THRESHOLD) {
-              pool.errorCount.remove(entry.getKey());
-              iter.remove();
-            }
+          long errorTime = cachedConns.errorTime.get();
+          if (errorTime != 0 && currTime - errorTime >= STUCK_THRESHOLD
+              && cachedConns.errorTime.compareAndSet(errorTime, 0)) {
+            cachedConns.errorCount.set(0);
           }
         }
 
-        // close connections outside of sync block
         for (CachedConnection cachedConnection : connectionsToClose) {
           cachedConnection.transport.close();
         }
@@ -177,12 +241,13 @@ public class ThriftTransportPool {
     private volatile long ioStartTime = 0;
     private volatile boolean reserved = false;
 
-    private String stuckThreadName = null;
+    // written by the thread using the connection and by the checker thread
+    private volatile String stuckThreadName = null;
 
     int ioCount = 0;
-    int lastIoCount = -1;
+    volatile int lastIoCount = -1;
 
-    private void sawError() {
+    void sawError() {
       sawError = true;
     }
 
@@ -403,27 +468,30 @@ public class ThriftTransportPool {
 
   }
 
-  private ThriftTransportPool() {}
+  @VisibleForTesting
+  ThriftTransportPool() {}
 
   public TTransport getTransport(HostAndPort location, long milliseconds, ClientContext context)
       throws TTransportException {
     return getTransport(new ThriftTransportKey(location, milliseconds, context));
   }
 
-  private TTransport getTransport(ThriftTransportKey cacheKey) throws TTransportException {
-    // compute hash code outside of lock, this lowers the time the lock is held
-    cacheKey.precomputeHashCode();
-    synchronized (this) {
-      // atomically reserve location if it exist in cache
-      CachedConnection cachedConnection =
-          getCache().computeIfAbsent(cacheKey, ck -> new CachedConnections()).reserveAny();
+  @VisibleForTesting
+  TTransport getTransport(ThriftTransportKey cacheKey) throws TTransportException {
+    long start = System.nanoTime();
+    CachedConnections cachedConns =
+        getCache().computeIfAbsent(cacheKey, ck -> new CachedConnections());
+    try {
+      CachedConnection cachedConnection = cachedConns.reserveAny();
       if (cachedConnection != null) {
         log.trace("Using existing connection to {}", cacheKey.getServer());
         return cachedConnection.transport;
       }
-    }
 
-    return createNewTransport(cacheKey);
+      return createNewTransport(cacheKey);
+    } finally {
+      cachedConns.stats.waitNanos.add(System.nanoTime() - start);
+    }
   }
 
   @VisibleForTesting
@@ -435,22 +503,20 @@ public class ThriftTransportPool {
     if (preferCachedConnection) {
       HashSet<ThriftTransportKey> serversSet = new HashSet<>(servers);
 
-      synchronized (this) {
-
-        // randomly pick a server from the connection cache
-        serversSet.retainAll(getCache().keySet());
+      // randomly pick a server from the connection cache
+      serversSet.retainAll(getCache().keySet());
 
-        if (serversSet.size() > 0) {
-          ArrayList<ThriftTransportKey> cachedServers = new ArrayList<>(serversSet);
-          Collections.shuffle(cachedServers, random);
+      if (serversSet.size() > 0) {
+        ArrayList<ThriftTransportKey> cachedServers = new ArrayList<>(serversSet);
+        Collections.shuffle(cachedServers, random);
 
-          for (ThriftTransportKey ttk : cachedServers) {
-            CachedConnection cachedConnection = getCache().get(ttk).reserveAny();
-            if (cachedConnection != null) {
-              final String serverAddr = ttk.getServer().toString();
-              log.trace("Using existing connection to {}", serverAddr);
-              return new Pair<>(serverAddr, cachedConnection.transport);
-            }
+        for (ThriftTransportKey ttk : cachedServers) {
+          CachedConnections cachedConns = getCache().get(ttk);
+          CachedConnection cachedConnection = cachedConns == null ? null : cachedConns.reserveAny();
+          if (cachedConnection != null) {
+            final String serverAddr = ttk.getServer().toString();
+            log.trace("Using existing connection to {}", serverAddr);
+            return new Pair<>(serverAddr, cachedConnection.transport);
           }
         }
       }
@@ -462,14 +528,12 @@ public class ThriftTransportPool {
       ThriftTransportKey ttk = servers.get(index);
 
       if (preferCachedConnection) {
-        synchronized (this) {
-          CachedConnections cachedConns = getCache().get(ttk);
-          if (cachedConns != null) {
-            CachedConnection cachedConnection = cachedConns.reserveAny();
-            if (cachedConnection != null) {
-              final String serverAddr = ttk.getServer().toString();
-              return new Pair<>(serverAddr, cachedConnection.transport);
-            }
+        CachedConnections cachedConns = getCache().get(ttk);
+        if (cachedConns != null) {
+          CachedConnection cachedConnection = cachedConns.reserveAny();
+          if (cachedConnection != null) {
+            final String serverAddr = ttk.getServer().toString();
+            return new Pair<>(serverAddr, cachedConnection.transport);
           }
         }
       }
@@ -498,11 +562,12 @@ public class ThriftTransportPool {
     cc.reserve();
 
     try {
-      synchronized (this) {
-        CachedConnections cachedConns =
-            getCache().computeIfAbsent(cacheKey, ck -> new CachedConnections());
-        cachedConns.reserved.put(cc.transport, cc);
-      }
+      CachedConnections cachedConns =
+          getCache().computeIfAbsent(cacheKey, ck -> new CachedConnections());
+      cachedConns.reserved.put(cc.transport, cc);
+      cachedConns.stats.created.increment();
+      // the pool may have been shut down after it closed the connections it knew about
+      getCache();
     } catch (TransportPoolShutdownException e) {
       cc.transport.close();
       throw e;
@@ -520,53 +585,52 @@ public class ThriftTransportPool {
 
     ArrayList<CachedConnection> closeList = new ArrayList<>();
 
-    synchronized (this) {
-      CachedConnections cachedConns = getCache().get(ctsc.getCacheKey());
-      if (cachedConns != null) {
-        CachedConnection cachedConnection = cachedConns.reserved.remove(ctsc);
-        if (cachedConnection != null) {
-          if (ctsc.sawError) {
-            closeList.add(cachedConnection);
-
-            log.trace("Returned connection had error {}", ctsc.getCacheKey());
-
-            Long ecount = errorCount.merge(ctsc.getCacheKey(), 1L, Long::sum);
-
-            // logs the first time an error occurred
-            errorTime.computeIfAbsent(ctsc.getCacheKey(), k -> System.currentTimeMillis());
-
-            if (ecount >= ERROR_THRESHOLD && serversWarnedAbout.add(ctsc.getCacheKey())) {
-              log.warn(
-                  "Server {} had {} failures in a short time period, will not complain anymore",
-                  ctsc.getCacheKey(), ecount);
-            }
-
-            cachedConnection.unreserve();
-
-            // remove all unreserved cached connection when a sever has an error, not just the
-            // connection that was returned
-            closeList.addAll(cachedConns.unreserved);
-            cachedConns.unreserved.clear();
-
-          } else {
-            log.trace("Returned connection {} ioCount: {}", ctsc.getCacheKey(),
-                cachedConnection.transport.ioCount);
-
-            cachedConnection.lastReturnTime = System.currentTimeMillis();
-            cachedConnection.unreserve();
-            // Using LIFO ensures that when the #
-            // of pooled connections exceeds the working set size that the
-            // idle times at the end of the list grow. The connections with large idle times will be
-            // cleaned up. Using a FIFO could continually reset the idle
-            // times of all connections, even when there are more than the working set size.
-            cachedConns.unreserved.push(cachedConnection);
+    CachedConnections cachedConns = getCache().get(ctsc.getCacheKey());
+    if (cachedConns != null) {
+      CachedConnection cachedConnection = cachedConns.reserved.remove(ctsc);
+      if (cachedConnection != null) {
+        if (ctsc.sawError) {
+          closeList.add(cachedConnection);
+
+          log.trace("Returned connection had error {}", ctsc.getCacheKey());
+
+          cachedConns.stats.errors.increment();
+          long ecount = cachedConns.errorCount.incrementAndGet();
+
+          // logs the first time an error occurred
+          cachedConns.errorTime.compareAndSet(0, System.currentTimeMillis());
+
+          if (ecount >= ERROR_THRESHOLD && serversWarnedAbout.add(ctsc.getCacheKey())) {
+            log.warn("Server {} had {} failures in a short time period, will not complain anymore",
+                ctsc.getCacheKey(), ecount);
+          }
+
+          cachedConnection.unreserve();
+
+          // remove all unreserved cached connection when a sever has an error, not just the
+          // connection that was returned
+          CachedConnection unreserved;
+          while ((unreserved = cachedConns.unreserved.poll()) != null) {
+            closeList.add(unreserved);
           }
-          existInCache = true;
+
+        } else {
+          log.trace("Returned connection {} ioCount: {}", ctsc.getCacheKey(),
+              cachedConnection.transport.ioCount);
+
+          cachedConnection.lastReturnTime = System.currentTimeMillis();
+          cachedConnection.unreserve();
+          // Using LIFO ensures that when the #
+          // of pooled connections exceeds the working set size that the
+          // idle times at the end of the list grow. The connections with large idle times will be
+          // cleaned up. Using a FIFO could continually reset the idle
+          // times of all connections, even when there are more than the working set size.
+          cachedConns.unreserved.push(cachedConnection);
         }
+        existInCache = true;
       }
     }
 
-    // close outside of sync block
     for (CachedConnection cachedConnection : closeList) {
       try {
         cachedConnection.transport.close();
@@ -577,20 +641,29 @@ public class ThriftTransportPool {
 
     if (!existInCache) {
       log.warn("Returned tablet server connection to cache that did not come from cache");
-      // close outside of sync block
       tsc.close();
     }
   }
 
+  /**
+   * Returns the counters for each destination the pool has connected to.
+   */
+  public Map<ThriftTransportKey,ConnectionStats> getConnectionStats() {
+    Map<ThriftTransportKey,ConnectionStats> stats = new HashMap<>();
+    getCache().forEach((key, cachedConns) -> stats.put(key, cachedConns.stats));
+    return stats;
+  }
+
   /**
    * Set the time after which idle connections should be closed
    */
-  public synchronized void setIdleTime(long time) {
+  public void setIdleTime(long time) {
     this.killTime = time;
     log.debug("Set thrift transport pool idle time to {}", time);
   }
 
-  private static ThriftTransportPool instance = null;
+  // read without a lock on every connection, only enable and disable change it
+  private static volatile ThriftTransportPool instance = null;
 
   static {
     SingletonManager.register(new SingletonService() {
@@ -612,15 +685,16 @@ public class ThriftTransportPool {
     });
   }
 
-  public static synchronized ThriftTransportPool getInstance() {
-    Preconditions.checkState(instance != null,
+  public static ThriftTransportPool getInstance() {
+    ThriftTransportPool pool = instance;
+    Preconditions.checkState(pool != null,
         "The Accumulo singleton for connection pooling is disabled.  This is likely caused by all "
             + "AccumuloClients being closed or garbage collected.");
-    instance.startCheckerThread();
-    return instance;
+    pool.startCheckerThread();
+    return pool;
   }
 
-  private static synchronized boolean isEnabled() {
+  private static boolean isEnabled() {
     return instance != null;
   }
 
@@ -642,37 +716,44 @@ public class ThriftTransportPool {
     }
   }
 
-  public synchronized void startCheckerThread() {
-    if (cache != null && checkThread == null) {
-      checkThread = new Daemon(new Closer(instance), "Thrift Connection Pool Checker");
-      checkThread.start();
+  public void startCheckerThread() {
+    // called for every connection, so only the first call takes the lock
+    if (cache != null && checkStarted.compareAndSet(false, true)) {
+      synchronized (this) {
+        if (cache != null) {
+          checkThread = new Daemon(new Closer(this), "Thrift Connection Pool Checker");
+          checkThread.start();
+        }
+      }
     }
   }
 
   private void shutdown() {
     Thread ctl;
+    Map<ThriftTransportKey,CachedConnections> closing;
     synchronized (this) {
       if (cache == null)
         return;
 
-      // close any connections in the pool... even ones that are in use
-      for (CachedConnections cachedConn : getCache().values()) {
-        for (CachedConnection cc : Iterables.concat(cachedConn.reserved.values(),
-            cachedConn.unreserved)) {
-          try {
-            cc.transport.close();
-          } catch (Exception e) {
-            log.debug("Error closing transport during shutdown", e);
-          }
-        }
-      }
-
       // this will render the pool unusable and cause the background thread to exit
+      closing = cache;
       this.cache = null;
 
       ctl = checkThread;
     }
 
+    // close any connections in the pool... even ones that are in use
+    for (CachedConnections cachedConn : closing.values()) {
+      for (CachedConnection cc : Iterables.concat(cachedConn.reserved.values(),
+          cachedConn.unreserved)) {
+        try {
+          cc.transport.close();
+        } catch (Exception e) {
+          log.debug("Error closing transport during shutdown", e);
+        }
+      }
+    }
+
     if (ctl != null) {
       try {
         ctl.interrupt();
@@ -684,10 +765,11 @@ public class ThriftTransportPool {
   }
 
   private Map<ThriftTransportKey,CachedConnections> getCache() {
-    if (cache == null)
+    Map<ThriftTransportKey,CachedConnections> c = cache;
+    if (c == null)
       throw new TransportPoolShutdownException(
           "The Accumulo singleton for connection pooling is disabled.  This is likely caused by "
               + "all AccumuloClients being closed or garbage collected.");
-    return cache;
+    return c;
   }
 }
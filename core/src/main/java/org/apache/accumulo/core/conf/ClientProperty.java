@@ -66,6 +66,11 @@ public enum ClientProperty {
       "2.0.0", false),
   BATCH_WRITER_THREADS_MAX("batch.writer.threads.max", "3", PropertyType.COUNT,
       "Maximum number of threads to use for writing data to tablet servers.", "2.0.0", false),
+  BATCH_WRITER_INFLIGHT_MAX("batch.writer.inflight.per.server.max", "1", PropertyType.COUNT,
+      "Maximum number of update batches that may be outstanding to a single tablet server at"
+          + " once. Values greater than 1 pipeline sends to a server, but mutations sent in"
+          + " different batches may then be applied out of order.",
+      "2.1.0", false),
   BATCH_WRITER_DURABILITY("batch.writer.durability", "default", PropertyType.DURABILITY,
       Property.TABLE_DURABILITY.getDescription() + " Setting this property will "
           + "change the durability for the BatchWriter session. A value of \"default\" will"
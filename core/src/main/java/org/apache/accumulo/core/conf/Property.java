@@ -26,6 +26,7 @@ import java.util.Map.Entry;
 import org.apache.accumulo.core.Constants;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
 import org.apache.accumulo.core.constraints.NoDeleteConstraint;
+import org.apache.accumulo.core.file.rfile.DataBlockEncoding;
 import org.apache.accumulo.core.file.rfile.RFile;
 import org.apache.accumulo.core.iterators.IteratorUtil.IteratorScope;
 import org.apache.accumulo.core.iterators.system.DeletingIterator;
@@ -306,14 +307,29 @@ public enum Property {
   TSERV_CACHE_MANAGER_IMPL("tserver.cache.manager.class",
       "org.apache.accumulo.core.file.blockfile.cache.lru.LruBlockCacheManager", PropertyType.STRING,
       "Specifies the class name of the block cache factory implementation."
-          + " Alternative implementation is"
-          + " org.apache.accumulo.core.file.blockfile.cache.tinylfu.TinyLfuBlockCacheManager"),
+          + " Alternative implementations are"
+          + " org.apache.accumulo.core.file.blockfile.cache.tinylfu.TinyLfuBlockCacheManager and"
+          + " org.apache.accumulo.core.file.blockfile.cache.offheap.OffHeapBlockCacheManager,"
+          + " which stores blocks outside of the Java heap"),
   TSERV_DATACACHE_SIZE("tserver.cache.data.size", "10%", PropertyType.MEMORY,
       "Specifies the size of the cache for RFile data blocks."),
   TSERV_INDEXCACHE_SIZE("tserver.cache.index.size", "25%", PropertyType.MEMORY,
       "Specifies the size of the cache for RFile index blocks."),
   TSERV_SUMMARYCACHE_SIZE("tserver.cache.summary.size", "10%", PropertyType.MEMORY,
       "Specifies the size of the cache for summary data on each tablet server."),
+  TSERV_CACHE_L2_DIR("tserver.cache.l2.dir", "", PropertyType.PATH,
+      "A directory on local disk, ideally an SSD, used as a second tier for the data and index"
+          + " caches. Blocks read from files are also written here and are kept across restarts,"
+          + " so a tablet server gets warm cache hits after a restart or when it is assigned"
+          + " tablets it served before. Each tablet server needs its own directory. The second"
+          + " tier is disabled when this is empty. Blocks are stored decrypted, so the second"
+          + " tier is also disabled when instance.crypto.service encrypts files."),
+  TSERV_CACHE_L2_SIZE("tserver.cache.l2.size", "10G", PropertyType.BYTES,
+      "The most disk space the second tier of the block cache may use, see "
+          + "tserver.cache.l2.dir."),
+  TSERV_VISIBILITYCACHE_SIZE("tserver.cache.visibility.size", "4M", PropertyType.MEMORY,
+      "Specifies the size of the cache of parsed column visibility expressions and their"
+          + " evaluation results, shared by all scans on each tablet server."),
   TSERV_PORTSEARCH("tserver.port.search", "false", PropertyType.BOOLEAN,
       "if the ports above are in use, search higher ports until one is available"),
   TSERV_CLIENTPORT("tserver.port.client", "9997", PropertyType.PORT,
@@ -353,8 +369,29 @@ public enum Property {
       "Time a tablet server will sleep between checking which tablets need compaction."),
   TSERV_MAJC_THREAD_MAXOPEN("tserver.compaction.major.thread.files.open.max", "10",
       PropertyType.COUNT, "Max number of RFiles a major compaction thread can open at once. "),
+  @Experimental
+  TSERV_MAJC_PARALLEL_THREADS("tserver.compaction.major.parallel.threads", "4", PropertyType.COUNT,
+      "The number of threads shared by all major compactions that are split into key ranges"
+          + " compacted in parallel. See table.compaction.major.parallel.ranges."),
   TSERV_SCAN_MAX_OPENFILES("tserver.scan.files.open.max", "100", PropertyType.COUNT,
       "Maximum total RFiles that all tablets in a tablet server can open for scans. "),
+  TSERV_SCAN_SHARED_READERS("tserver.scan.files.shared", "false", PropertyType.BOOLEAN,
+      "When true, concurrent scans of the same RFile share one open file and its index instead"
+          + " of each opening the file. Only the first scan of a file needs a file permit, later"
+          + " scans get a reader over the already open file until all of them are done."),
+  TSERV_SCAN_READAHEAD_BATCHES("tserver.scan.readahead.batches.max", "1", PropertyType.COUNT,
+      "Once a scan has passed its read ahead threshold, the tablet server reads batches for it"
+          + " ahead of the client's requests. This is the maximum number of batches read ahead"
+          + " for a single scan, so that up to this many batches are ready or being read"
+          + " while earlier batches are transmitted to the client."),
+  TSERV_SCAN_READAHEAD_MEMORY("tserver.scan.readahead.memory.max", "4M", PropertyType.BYTES,
+      "The maximum memory a single scan may hold in batches that were read ahead and not yet"
+          + " fetched by the client. No further batches are read ahead for the scan while this"
+          + " is exceeded."),
+  TSERV_SCAN_READAHEAD_IDLE("tserver.scan.readahead.idle", "30s", PropertyType.TIMEDURATION,
+      "When a client has not fetched a batch from a scan for this long, the tablet server stops"
+          + " reading batches ahead for it until it does. Read ahead batches that have not"
+          + " started yet are skipped."),
   TSERV_MAX_IDLE("tserver.files.open.idle", "1m", PropertyType.TIMEDURATION,
       "Tablet servers leave previously used RFiles open for future queries."
           + " This setting determines how much time an unused RFile should be kept open"
@@ -362,12 +399,28 @@ public enum Property {
   TSERV_NATIVEMAP_ENABLED("tserver.memory.maps.native.enabled", "true", PropertyType.BOOLEAN,
       "An in-memory data store for accumulo implemented in c++ that increases"
           + " the amount of data accumulo can hold in memory and avoids Java GC" + " pauses."),
+  TSERV_OFFHEAPMAP_ENABLED("tserver.memory.maps.offheap.enabled", "false", PropertyType.BOOLEAN,
+      "An in-memory data store implemented in Java that packs keys and values into"
+          + " off-heap memory slabs, avoiding Java GC pauses without needing the native"
+          + " library. When enabled, this takes precedence over"
+          + " tserver.memory.maps.native.enabled. The JVM direct memory limit must be large"
+          + " enough to hold tserver.memory.maps.max."),
   TSERV_MAXMEM("tserver.memory.maps.max", "33%", PropertyType.MEMORY,
       "Maximum amount of memory that can be used to buffer data written to a"
           + " tablet server. There are two other properties that can effectively limit"
           + " memory usage table.compaction.minor.logs.threshold and"
           + " tserver.walog.max.size. Ensure that table.compaction.minor.logs.threshold"
           + " * tserver.walog.max.size >= this property."),
+  TSERV_WRITE_THROTTLE_THRESHOLD("tserver.memory.write.throttle.threshold", "0.8",
+      PropertyType.FRACTION,
+      "The fraction of tserver.memory.maps.max in use after which writes to the tablets with"
+          + " the most data in memory are delayed. The delay grows until memory use reaches 95%,"
+          + " when all writes are held."),
+  TSERV_WRITE_THROTTLE_MAX_DELAY("tserver.memory.write.throttle.delay.max", "500ms",
+      PropertyType.TIMEDURATION,
+      "The longest delay between the writes a tablet accepts when memory use passes "
+          + "tserver.memory.write.throttle.threshold. Writes within the delay wait on"
+          + " the tablet server. Zero disables the delay."),
   TSERV_MEM_MGMT("tserver.memory.manager",
       "org.apache.accumulo.server.tabletserver.LargestFirstMemoryManager", PropertyType.CLASSNAME,
       "An implementation of MemoryManger that accumulo will use."),
@@ -400,6 +453,13 @@ public enum Property {
       "The number of threads for the metadata table scan executor."),
   TSERV_MIGRATE_MAXCONCURRENT("tserver.migrations.concurrent.max", "1", PropertyType.COUNT,
       "The maximum number of concurrent tablet migrations for a tablet server"),
+  TSERV_MIGRATE_HOT_ROWS_MAX("tserver.migrations.hot.rows.max", "64", PropertyType.COUNT,
+      "The maximum number of recently read rows a tablet remembers. When the tablet is unloaded"
+          + " these rows are recorded in its metadata, and the tablet server that loads it next"
+          + " reads them to warm its index and data caches. Set to 0 to disable."),
+  TSERV_MIGRATE_PREFETCH_RATE("tserver.migrations.prefetch.rate", "100", PropertyType.COUNT,
+      "The maximum number of hot rows per second a tablet server reads to warm its caches"
+          + " after loading tablets, or 0 for unlimited."),
   TSERV_MAJC_MAXCONCURRENT("tserver.compaction.major.concurrent.max", "3", PropertyType.COUNT,
       "The maximum number of concurrent major compactions for a tablet server"),
   TSERV_MAJC_THROUGHPUT("tserver.compaction.major.throughput", "0B", PropertyType.BYTES,
@@ -444,6 +504,20 @@ public enum Property {
       "The minimum number of threads to use to handle incoming requests."),
   TSERV_THREADCHECK("tserver.server.threadcheck.time", "1s", PropertyType.TIMEDURATION,
       "The time between adjustments of the server thread pool."),
+  @Experimental
+  TSERV_VIRTUAL_THREADS_ENABLED("tserver.virtual.threads.enabled", "false", PropertyType.BOOLEAN,
+      "Runs scan tasks and incoming requests on virtual threads, so scans that wait on file reads"
+          + " are not limited by the number of platform threads. Requires a Java runtime with"
+          + " virtual threads, otherwise platform threads are used as if this were false. Only"
+          + " affects the non-blocking Thrift server types."),
+  @Experimental
+  TSERV_VIRTUAL_THREADS_MAX("tserver.virtual.threads.max", "1024", PropertyType.COUNT,
+      "When virtual threads are enabled, the most scan tasks run at once across all scan"
+          + " executors and the most requests handled at once. Scan tasks beyond that wait in"
+          + " their executor's queue, ordered by its prioritizer, and the executors' own thread"
+          + " limits do not apply. On Java runtimes before 24, a scan reading a file pins its"
+          + " carrier thread, so only as many scans as there are carrier threads wait on reads at"
+          + " once."),
   TSERV_MAX_MESSAGE_SIZE("tserver.server.message.size.max", "1G", PropertyType.BYTES,
       "The maximum size of a message that can be sent to a tablet server."),
   TSERV_LOG_BUSY_TABLETS_COUNT("tserver.log.busy.tablets.count", "0", PropertyType.COUNT,
@@ -467,6 +541,10 @@ public enum Property {
       "The maximum number of threads to use to sort logs during" + " recovery"),
   TSERV_SORT_BUFFER_SIZE("tserver.sort.buffer.size", "10%", PropertyType.MEMORY,
       "The amount of memory to use when sorting logs during recovery."),
+  TSERV_SORT_THREADS("tserver.sort.threads", "2", PropertyType.COUNT,
+      "The number of threads used to sort and write buffers of a write-ahead log in parallel"
+          + " during recovery, while another thread keeps reading the log. The memory set by"
+          + " tserver.sort.buffer.size is split evenly between the buffers in flight."),
   TSERV_WORKQ_THREADS("tserver.workq.threads", "2", PropertyType.COUNT,
       "The number of threads for the distributed work queue. These threads are"
           + " used for copying failed bulk import RFiles."),
@@ -610,6 +688,21 @@ public enum Property {
           + " running a major compaction. When adjusting this property you may want to"
           + " also adjust table.file.max. Want to avoid the situation where only"
           + " merging minor compactions occur."),
+  @Experimental
+  TABLE_MAJC_PARALLEL_RANGES("table.compaction.major.parallel.ranges", "1", PropertyType.COUNT,
+      "The number of row ranges a large major compaction of a tablet is split into. The ranges"
+          + " are chosen from the indexes of the input RFiles and compacted in parallel into"
+          + " temporary RFiles, whose data blocks are then copied in order into the compaction's"
+          + " output file. Ranges never split a row, so iterators that only look at one row at a"
+          + " time see the same data as in a single compaction. Do not set this above 1 for"
+          + " tables with compaction iterators that depend on seeing more than one row. Tables"
+          + " with bloom filters, summarizers, samplers or encryption are always compacted as a"
+          + " single range."),
+  @Experimental
+  TABLE_MAJC_PARALLEL_THRESHOLD("table.compaction.major.parallel.threshold", "1G",
+      PropertyType.BYTES,
+      "The minimum total size of a major compaction's input RFiles before it is split into"
+          + " ranges compacted in parallel. See table.compaction.major.parallel.ranges."),
   TABLE_MAJC_COMPACTALL_IDLETIME("table.compaction.major.everything.idle", "1h",
       PropertyType.TIMEDURATION,
       "After a tablet has been idle (no mutations) for this time period it may"
@@ -659,9 +752,33 @@ public enum Property {
   TABLE_FILE_COMPRESSED_BLOCK_SIZE_INDEX("table.file.compress.blocksize.index", "128K",
       PropertyType.BYTES,
       "The maximum size of index blocks in RFiles before they are compressed and written."),
+  @Experimental
+  TABLE_FILE_DATA_BLOCK_ENCODING("table.file.data.block.encoding",
+      DataBlockEncoding.RELATIVE.name().toLowerCase(), PropertyType.STRING,
+      "How keys and values are laid out in the data blocks of new RFiles. Valid values are"
+          + " `relative`, `columnar` and `restart`. With `relative`, each key is stored relative"
+          + " to the previous key and followed by its value. With `columnar`, each data block"
+          + " stores its rows, column families, qualifiers, visibilities, timestamps and values"
+          + " as separate streams, which usually compress better and let scans that never read"
+          + " values skip copying them. With `restart`, keys are stored like `relative` except"
+          + " that every table.file.data.block.restart.interval keys one is stored in full, and"
+          + " each block ends with the offsets of the full keys, so seeks within a cached block"
+          + " can binary search instead of reading from the start of the block. RFiles with"
+          + " columnar or restart blocks can not be read by versions of Accumulo that predate"
+          + " this property."),
+  @Experimental
+  TABLE_FILE_DATA_BLOCK_RESTART_INTERVAL("table.file.data.block.restart.interval", "16",
+      PropertyType.COUNT,
+      "The number of entries between keys stored in full in RFile data blocks using `restart`"
+          + " encoding. Smaller intervals make seeks within a block faster and blocks larger."),
   TABLE_FILE_BLOCK_SIZE("table.file.blocksize", "0B", PropertyType.BYTES,
       "The HDFS block size used when writing RFiles. When set to 0B, the"
           + " value/defaults of HDFS property 'dfs.block.size' will be used."),
+  TABLE_FILE_READ_COALESCE_MAX("table.file.read.coalesce.max", "0", PropertyType.BYTES,
+      "When a scan range covers several data blocks of an RFile that are stored next to each"
+          + " other and are not in the data cache, up to this many bytes of those blocks are"
+          + " fetched in one read and added to the data cache. 0 disables coalesced reads. Only"
+          + " applies when the data cache is enabled for the table."),
   TABLE_FILE_REPLICATION("table.file.replication", "0", PropertyType.COUNT,
       "The number of replicas for a table's RFiles in HDFS. When set to 0, HDFS"
           + " defaults are used."),
@@ -698,6 +815,26 @@ public enum Property {
           + " perform specialized parsing of the key. "),
   TABLE_BLOOM_HASHTYPE("table.bloom.hash.type", "murmur", PropertyType.STRING,
       "The bloom filter hash type"),
+  @Experimental
+  TABLE_BLOOM_TYPE("table.bloom.type", "default", PropertyType.STRING,
+      "The layout of the bloom filters written to new RFiles. Valid values are `default`,"
+          + " `blocked` and `partitioned`. A `blocked` filter keeps all the bits of a key within"
+          + " one 64 byte block, so checking a key reads one cache line, at the cost of about 20%"
+          + " more bits for the same error rate. A `partitioned` filter is a set of blocked"
+          + " filters, each covering a run of rows and stored separately, so a lookup only reads"
+          + " the partition covering its row instead of waiting for the whole filter to load."
+          + " Blocked and partitioned filters are cached in the index cache and are required by"
+          + " org.apache.accumulo.core.file.keyfunctor.RowPrefixFunctor. RFiles with these"
+          + " filters can be read by older versions of Accumulo, which will not use the filters."),
+  @Experimental
+  TABLE_BLOOM_PARTITION_SIZE("table.bloom.partition.size", "65536", PropertyType.COUNT,
+      "The number of keys in each partition of a `partitioned` bloom filter. Smaller partitions"
+          + " make the first lookups in a file cheaper at the cost of a larger partition index."),
+  @Experimental
+  TABLE_BLOOM_KEY_PREFIX_LENGTH("table.bloom.key.prefix.length", "8", PropertyType.COUNT,
+      "The number of leading row bytes put in the bloom filter by"
+          + " org.apache.accumulo.core.file.keyfunctor.RowPrefixFunctor. Seeks to ranges whose"
+          + " rows all share a prefix at least this long can use the filter."),
   TABLE_DURABILITY("table.durability", "sync", PropertyType.DURABILITY,
       "The durability used to write to the write-ahead log. Legal values are:"
           + " none, which skips the write-ahead log; log, which sends the data to the"
@@ -1177,7 +1314,10 @@ public enum Property {
 
   private static final EnumSet<Property> fixedProperties =
       EnumSet.of(Property.TSERV_CLIENTPORT, Property.TSERV_NATIVEMAP_ENABLED,
-          Property.TSERV_SCAN_MAX_OPENFILES, Property.MASTER_CLIENTPORT, Property.GC_PORT);
+          Property.TSERV_OFFHEAPMAP_ENABLED, Property.TSERV_SCAN_MAX_OPENFILES,
+          Property.TSERV_SCAN_SHARED_READERS, Property.TSERV_VISIBILITYCACHE_SIZE,
+          Property.TSERV_CACHE_L2_DIR, Property.TSERV_CACHE_L2_SIZE,
+          Property.TSERV_VIRTUAL_THREADS_ENABLED, Property.MASTER_CLIENTPORT, Property.GC_PORT);
 
   /**
    * Checks if the given property may be changed via Zookeeper, but not recognized until the restart
@@ -20,15 +20,19 @@ package org.apache.accumulo.core.file;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
@@ -37,7 +41,11 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
+import org.apache.accumulo.core.bloomfilter.BlockedBloomFilter;
 import org.apache.accumulo.core.bloomfilter.DynamicBloomFilter;
 import org.apache.accumulo.core.conf.AccumuloConfiguration;
 import org.apache.accumulo.core.conf.ConfigurationCopy;
@@ -48,11 +56,14 @@ import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.PartialKey;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile.CachedBlockRead;
 import org.apache.accumulo.core.file.keyfunctor.KeyFunctor;
+import org.apache.accumulo.core.file.keyfunctor.RowPrefixFunctor;
 import org.apache.accumulo.core.file.rfile.RFile;
 import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.sample.impl.SamplerConfigurationImpl;
+import org.apache.accumulo.core.spi.cache.CacheEntry.Weighable;
 import org.apache.accumulo.core.util.NamingThreadFactory;
 import org.apache.accumulo.fate.util.LoggingRunnable;
 import org.apache.accumulo.start.classloader.vfs.AccumuloVFSClassLoader;
@@ -71,8 +82,281 @@ import org.slf4j.LoggerFactory;
 public class BloomFilterLayer {
   private static final Logger LOG = LoggerFactory.getLogger(BloomFilterLayer.class);
   public static final String BLOOM_FILE_NAME = "acu_bloom";
+  public static final String BLOCKED_BLOOM_FILE_NAME = "acu_bloom_blocked";
+  public static final String BLOOM_PARTITION_INDEX_NAME = "acu_bloom_partitions";
+  public static final String BLOOM_PARTITION_PREFIX = "acu_bloom_partition_";
   public static final int HASH_COUNT = 5;
 
+  // totals across all files, for tablet server metrics
+  private static final LongAdder totalChecks = new LongAdder();
+  private static final LongAdder totalNegatives = new LongAdder();
+  private static final LongAdder totalFalsePositives = new LongAdder();
+
+  /**
+   * @return the number of seeks that checked a bloom filter
+   */
+  public static long getTotalChecks() {
+    return totalChecks.sum();
+  }
+
+  /**
+   * @return the number of seeks a bloom filter showed could not find anything, so the file was
+   *         skipped
+   */
+  public static long getTotalNegatives() {
+    return totalNegatives.sum();
+  }
+
+  /**
+   * @return the number of seeks a bloom filter let through that then found nothing
+   */
+  public static long getTotalFalsePositives() {
+    return totalFalsePositives.sum();
+  }
+
+  private enum Membership {
+    ABSENT, MAYBE_PRESENT, UNKNOWN
+  }
+
+  /**
+   * Bloom filter data parsed from a meta block. Once read, this is kept with the file's cached meta
+   * block so later opens of the file do not parse it again.
+   */
+  abstract static class CachedBloomData implements Weighable {
+    private volatile boolean loaded = false;
+
+    abstract void read(DataInput in) throws IOException;
+
+    /**
+     * Reads the data unless it was read already.
+     *
+     * @return true if the data was read by this call
+     */
+    boolean readOnce(DataInput in) throws IOException {
+      if (loaded) {
+        return false;
+      }
+      synchronized (this) {
+        if (loaded) {
+          return false;
+        }
+        read(in);
+        loaded = true;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Reads bloom filter data from a meta block. When the meta block came from the index cache the
+   * parsed data is kept with the cached block, so other readers of the file share it.
+   */
+  static <T extends CachedBloomData> T readCached(DataInputStream in, Supplier<T> supplier)
+      throws IOException {
+    if (in instanceof CachedBlockRead && ((CachedBlockRead) in).isIndexable()) {
+      CachedBlockRead cbr = (CachedBlockRead) in;
+      T data = cbr.getIndex(supplier);
+      if (data.readOnce(cbr)) {
+        cbr.indexWeightChanged();
+      }
+      return data;
+    }
+
+    T data = supplier.get();
+    data.readOnce(in);
+    return data;
+  }
+
+  /**
+   * The blocked bloom filters of a file together with the key functor they were built with. A
+   * filter holds up to the table's bloom size in keys, and another filter is started when one is
+   * full.
+   */
+  static class BlockedFilters extends CachedBloomData {
+    private String functorClass;
+    private int prefixLength;
+    private final ArrayList<BlockedBloomFilter> filters = new ArrayList<>();
+
+    BlockedFilters() {}
+
+    BlockedFilters(KeyFunctor functor) {
+      this.functorClass = functor.getClass().getName();
+      if (functor instanceof RowPrefixFunctor) {
+        this.prefixLength = ((RowPrefixFunctor) functor).getPrefixLength();
+      }
+    }
+
+    boolean membershipTest(byte[] key) {
+      for (BlockedBloomFilter filter : filters) {
+        if (filter.membershipTest(key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void write(DataOutput out) throws IOException {
+      out.writeUTF(functorClass);
+      out.writeInt(prefixLength);
+      out.writeInt(filters.size());
+      for (BlockedBloomFilter filter : filters) {
+        filter.write(out);
+      }
+    }
+
+    @Override
+    void read(DataInput in) throws IOException {
+      filters.clear();
+      functorClass = in.readUTF();
+      prefixLength = in.readInt();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        BlockedBloomFilter filter = new BlockedBloomFilter();
+        filter.readFields(in);
+        filters.add(filter);
+      }
+    }
+
+    @Override
+    public int weight() {
+      long size = 64;
+      for (BlockedBloomFilter filter : filters) {
+        size += filter.getSizeInBytes() + 32;
+      }
+      return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+  }
+
+  /**
+   * The index of a file's partitioned bloom filters. Each partition is a blocked bloom filter
+   * stored in its own meta block, holding the keys of a run of rows. The index holds the first and
+   * last row of every partition, so a lookup only reads the partitions whose rows overlap the
+   * range being checked. Rows start over in each locality group, so the partitions are sorted by
+   * row within each group and the index records where each group's partitions start.
+   */
+  static class PartitionIndex extends CachedBloomData {
+    private String functorClass;
+    private int prefixLength;
+    private Text[] firstRows;
+    private Text[] lastRows;
+    // the first partition of each locality group, followed by the number of partitions
+    private int[] groupStarts;
+
+    PartitionIndex() {}
+
+    static void write(DataOutput out, KeyFunctor functor, List<Text> firstRows,
+        List<Text> lastRows, List<Integer> groupStarts) throws IOException {
+      out.writeUTF(functor.getClass().getName());
+      out.writeInt(
+          functor instanceof RowPrefixFunctor ? ((RowPrefixFunctor) functor).getPrefixLength() : 0);
+      out.writeInt(firstRows.size());
+      for (int i = 0; i < firstRows.size(); i++) {
+        firstRows.get(i).write(out);
+        lastRows.get(i).write(out);
+      }
+      out.writeInt(groupStarts.size());
+      for (int start : groupStarts) {
+        out.writeInt(start);
+      }
+    }
+
+    @Override
+    void read(DataInput in) throws IOException {
+      functorClass = in.readUTF();
+      prefixLength = in.readInt();
+      int count = in.readInt();
+      Text[] tmpFirst = new Text[count];
+      Text[] tmpLast = new Text[count];
+      for (int i = 0; i < count; i++) {
+        tmpFirst[i] = new Text();
+        tmpFirst[i].readFields(in);
+        tmpLast[i] = new Text();
+        tmpLast[i].readFields(in);
+      }
+      int groups = in.readInt();
+      int[] tmpStarts = new int[groups + 1];
+      for (int i = 0; i < groups; i++) {
+        tmpStarts[i] = in.readInt();
+      }
+      tmpStarts[groups] = count;
+      firstRows = tmpFirst;
+      lastRows = tmpLast;
+      groupStarts = tmpStarts;
+    }
+
+    int size() {
+      return firstRows.length;
+    }
+
+    int groups() {
+      return groupStarts.length - 1;
+    }
+
+    /**
+     * @return the first partition of the locality group
+     */
+    int groupStart(int group) {
+      return groupStarts[group];
+    }
+
+    /**
+     * @return the partition after the last partition of the locality group
+     */
+    int groupEnd(int group) {
+      return groupStarts[group + 1];
+    }
+
+    /**
+     * @return the first partition of the locality group whose last row is not before the row, or
+     *         the end of the group if there is none
+     */
+    int findFirst(int group, Text row) {
+      int low = groupStart(group);
+      int high = groupEnd(group);
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (lastRows[mid].compareTo(row) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    @Override
+    public int weight() {
+      long size = 64;
+      for (int i = 0; i < firstRows.length; i++) {
+        size += firstRows[i].getLength() + lastRows[i].getLength() + 64;
+      }
+      size += groupStarts.length * 4;
+      return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+  }
+
+  /**
+   * One partition of a partitioned bloom filter, kept with its cached meta block.
+   */
+  static class CachedPartition extends CachedBloomData {
+    private volatile BlockedBloomFilter filter;
+
+    CachedPartition() {}
+
+    @Override
+    void read(DataInput in) throws IOException {
+      BlockedBloomFilter tmpFilter = new BlockedBloomFilter();
+      tmpFilter.readFields(in);
+      filter = tmpFilter;
+    }
+
+    @Override
+    public int weight() {
+      BlockedBloomFilter f = filter;
+      return f == null ? 64 : f.getSizeInBytes() + 64;
+    }
+  }
+
   private static ExecutorService loadThreadPool = null;
 
   private static synchronized ExecutorService getLoadThreadPool(int maxLoadThreads) {
@@ -91,6 +375,19 @@ public class BloomFilterLayer {
 
   public static class Writer implements FileSKVWriter {
     private DynamicBloomFilter bloomFilter;
+    // used instead of bloomFilter when the table uses blocked or partitioned bloom filters
+    private BlockedFilters blockedFilters;
+    private BlockedBloomFilter currentBlockedFilter;
+    private int blockedKeys;
+    private int keysPerBlockedFilter;
+    private byte[] lastBloomKey;
+    private double errorRate;
+    // the rows covered by each filter, when the filters are written as partitions
+    private boolean partitioned;
+    private List<Text> firstRows;
+    private List<Text> lastRows;
+    private List<Integer> groupStarts;
+    private final Text lastRow = new Text();
     private int numKeys;
     private int vectorSize;
 
@@ -113,11 +410,16 @@ public class BloomFilterLayer {
       // <code>n</code> is the number of keys and <code>c</code> is the desired
       // max. error rate.
       // Our desired error rate is by default 0.005, i.e. 0.5%
-      double errorRate = acuconf.getFraction(Property.TABLE_BLOOM_ERRORRATE);
-      vectorSize = (int) Math
-          .ceil(-HASH_COUNT * numKeys / Math.log(1.0 - Math.pow(errorRate, 1.0 / HASH_COUNT)));
-      bloomFilter = new DynamicBloomFilter(vectorSize, HASH_COUNT,
-          Hash.parseHashType(acuconf.get(Property.TABLE_BLOOM_HASHTYPE)), numKeys);
+      errorRate = acuconf.getFraction(Property.TABLE_BLOOM_ERRORRATE);
+      String bloomType = acuconf.get(Property.TABLE_BLOOM_TYPE);
+      partitioned = bloomType.equals("partitioned");
+      boolean blocked = partitioned || bloomType.equals("blocked");
+      if (!blocked) {
+        vectorSize = (int) Math
+            .ceil(-HASH_COUNT * numKeys / Math.log(1.0 - Math.pow(errorRate, 1.0 / HASH_COUNT)));
+        bloomFilter = new DynamicBloomFilter(vectorSize, HASH_COUNT,
+            Hash.parseHashType(acuconf.get(Property.TABLE_BLOOM_HASHTYPE)), numKeys);
+      }
 
       /**
        * load KeyFunctor
@@ -143,6 +445,68 @@ public class BloomFilterLayer {
 
       }
 
+      if (transformer instanceof RowPrefixFunctor) {
+        // the prefix length is only stored with blocked and partitioned bloom filters
+        if (!blocked) {
+          throw new IllegalArgumentException(RowPrefixFunctor.class.getSimpleName() + " requires "
+              + Property.TABLE_BLOOM_TYPE.getKey() + "=blocked or partitioned");
+        }
+        ((RowPrefixFunctor) transformer)
+            .setPrefixLength(acuconf.getCount(Property.TABLE_BLOOM_KEY_PREFIX_LENGTH));
+      }
+
+      if (blocked) {
+        blockedFilters = new BlockedFilters(transformer);
+        keysPerBlockedFilter = numKeys;
+      }
+      if (partitioned) {
+        keysPerBlockedFilter =
+            Math.min(numKeys, acuconf.getCount(Property.TABLE_BLOOM_PARTITION_SIZE));
+        firstRows = new ArrayList<>();
+        lastRows = new ArrayList<>();
+        groupStarts = new ArrayList<>();
+        groupStarts.add(0);
+      }
+    }
+
+    /**
+     * Ends the current partition when a locality group starts, because the rows of the next group
+     * start over and a partition only covers increasing rows.
+     */
+    private void startPartitionGroup() {
+      if (!partitioned || currentBlockedFilter == null) {
+        return;
+      }
+      lastRows.add(new Text(lastRow));
+      currentBlockedFilter = null;
+      // the next group may start with the last bloom key of this one
+      lastBloomKey = null;
+      groupStarts.add(firstRows.size());
+    }
+
+    private void addBlocked(org.apache.accumulo.core.data.Key key, byte[] bloomKey) {
+      // sorted keys often map to the same bloom key many times in a row
+      if (!Arrays.equals(bloomKey, lastBloomKey)) {
+        lastBloomKey = bloomKey;
+
+        if (currentBlockedFilter == null || blockedKeys >= keysPerBlockedFilter) {
+          if (partitioned && currentBlockedFilter != null) {
+            lastRows.add(new Text(lastRow));
+          }
+          currentBlockedFilter = new BlockedBloomFilter(keysPerBlockedFilter, errorRate);
+          blockedFilters.filters.add(currentBlockedFilter);
+          blockedKeys = 0;
+          if (partitioned) {
+            firstRows.add(key.getRow());
+          }
+        }
+        currentBlockedFilter.add(bloomKey);
+        blockedKeys++;
+      }
+
+      if (partitioned) {
+        key.getRow(lastRow);
+      }
     }
 
     @Override
@@ -150,8 +514,12 @@ public class BloomFilterLayer {
         throws IOException {
       writer.append(key, val);
       Key bloomKey = transformer.transform(key);
-      if (bloomKey.getBytes().length > 0)
-        bloomFilter.add(bloomKey);
+      if (bloomKey.getBytes().length > 0) {
+        if (blockedFilters != null)
+          addBlocked(key, bloomKey.getBytes());
+        else
+          bloomFilter.add(bloomKey);
+      }
     }
 
     @Override
@@ -160,9 +528,31 @@ public class BloomFilterLayer {
       if (closed)
         return;
 
-      DataOutputStream out = writer.createMetaStore(BLOOM_FILE_NAME);
-      out.writeUTF(transformer.getClass().getName());
-      bloomFilter.write(out);
+      DataOutputStream out;
+      if (partitioned) {
+        if (currentBlockedFilter != null) {
+          lastRows.add(new Text(lastRow));
+        }
+        // a group started after the last partition has no partitions
+        if (groupStarts.get(groupStarts.size() - 1) == firstRows.size()) {
+          groupStarts.remove(groupStarts.size() - 1);
+        }
+        List<BlockedBloomFilter> filters = blockedFilters.filters;
+        for (int i = 0; i < filters.size(); i++) {
+          try (DataOutputStream partOut = writer.createMetaStore(BLOOM_PARTITION_PREFIX + i)) {
+            filters.get(i).write(partOut);
+          }
+        }
+        out = writer.createMetaStore(BLOOM_PARTITION_INDEX_NAME);
+        PartitionIndex.write(out, transformer, firstRows, lastRows, groupStarts);
+      } else if (blockedFilters != null) {
+        out = writer.createMetaStore(BLOCKED_BLOOM_FILE_NAME);
+        blockedFilters.write(out);
+      } else {
+        out = writer.createMetaStore(BLOOM_FILE_NAME);
+        out.writeUTF(transformer.getClass().getName());
+        bloomFilter.write(out);
+      }
       out.flush();
       out.close();
       writer.close();
@@ -176,15 +566,17 @@ public class BloomFilterLayer {
     }
 
     @Override
-    public void startDefaultLocalityGroup() throws IOException {
+    public synchronized void startDefaultLocalityGroup() throws IOException {
       writer.startDefaultLocalityGroup();
+      startPartitionGroup();
 
     }
 
     @Override
-    public void startNewLocalityGroup(String name, Set<ByteSequence> columnFamilies)
+    public synchronized void startNewLocalityGroup(String name, Set<ByteSequence> columnFamilies)
         throws IOException {
       writer.startNewLocalityGroup(name, columnFamilies);
+      startPartitionGroup();
     }
 
     @Override
@@ -204,6 +596,12 @@ public class BloomFilterLayer {
   static class BloomFilterLoader {
 
     private volatile DynamicBloomFilter bloomFilter;
+    private volatile BlockedFilters blockedFilters;
+    private volatile PartitionIndex partitionIndex;
+    // partitions read while the index cache was not in use
+    private volatile AtomicReferenceArray<BlockedBloomFilter> uncachedPartitions;
+    private final FileSKVIterator reader;
+    private final String context;
     private int loadRequest = 0;
     private int loadThreshold = 1;
     private int maxLoadThreads;
@@ -211,13 +609,22 @@ public class BloomFilterLayer {
     private volatile KeyFunctor transformer = null;
     private volatile boolean closed = false;
 
-    BloomFilterLoader(final FileSKVIterator reader, AccumuloConfiguration acuconf) {
+    private final String fileName;
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    BloomFilterLoader(final FileSKVIterator reader, AccumuloConfiguration acuconf,
+        String fileName) {
+
+      this.fileName = fileName;
+      this.reader = reader;
 
       maxLoadThreads = acuconf.getCount(Property.TSERV_BLOOM_LOAD_MAXCONCURRENT);
 
       loadThreshold = acuconf.getCount(Property.TABLE_BLOOM_LOAD_THRESHOLD);
 
-      final String context = acuconf.get(Property.TABLE_CLASSPATH);
+      context = acuconf.get(Property.TABLE_CLASSPATH);
 
       loadTask = () -> {
         // no need to load the bloom filter if the map file is closed
@@ -227,6 +634,28 @@ public class BloomFilterLayer {
         DataInputStream in = null;
 
         try {
+          try {
+            in = reader.getMetaStore(BLOCKED_BLOOM_FILE_NAME);
+          } catch (NoSuchMetaStoreException nsme) {
+            // file was written with the default bloom filter type, or has no bloom filter
+          }
+
+          if (in != null) {
+            if (closed)
+              return;
+
+            BlockedFilters tmpFilters = readCached(in, BlockedFilters::new);
+            ClassName = tmpFilters.functorClass;
+            KeyFunctor tmpTransformer = loadKeyFunctor(context, ClassName);
+            if (tmpTransformer instanceof RowPrefixFunctor) {
+              ((RowPrefixFunctor) tmpTransformer).setPrefixLength(tmpFilters.prefixLength);
+            }
+            transformer = tmpTransformer;
+            // only set the filters after the functor they need is set
+            blockedFilters = tmpFilters;
+            return;
+          }
+
           in = reader.getMetaStore(BLOOM_FILE_NAME);
           DynamicBloomFilter tmpBloomFilter = new DynamicBloomFilter();
 
@@ -239,13 +668,7 @@ public class BloomFilterLayer {
            */
           ClassName = in.readUTF();
 
-          Class<? extends KeyFunctor> clazz;
-          if (context != null && !context.equals(""))
-            clazz = AccumuloVFSClassLoader.getContextManager().loadClass(context, ClassName,
-                KeyFunctor.class);
-          else
-            clazz = AccumuloVFSClassLoader.loadClass(ClassName, KeyFunctor.class);
-          transformer = clazz.getDeclaredConstructor().newInstance();
+          transformer = loadKeyFunctor(context, ClassName);
 
           /**
            * read in bloom filter
@@ -289,6 +712,108 @@ public class BloomFilterLayer {
 
     }
 
+    private static KeyFunctor loadKeyFunctor(String context, String className)
+        throws IOException, ReflectiveOperationException {
+      Class<? extends KeyFunctor> clazz;
+      if (context != null && !context.equals(""))
+        clazz = AccumuloVFSClassLoader.getContextManager().loadClass(context, className,
+            KeyFunctor.class);
+      else
+        clazz = AccumuloVFSClassLoader.loadClass(className, KeyFunctor.class);
+      return clazz.getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Reads the index of a partitioned bloom filter. The index is small, so it is read in the
+     * foreground and the partitions are read as lookups need them.
+     *
+     * @return false if the file does not have partitioned bloom filters or their index could not
+     *         be read, in which case the other bloom filter types are tried
+     */
+    private boolean loadPartitionIndex() {
+      if (closed)
+        return false;
+      String className = null;
+      try (DataInputStream in = reader.getMetaStore(BLOOM_PARTITION_INDEX_NAME)) {
+        PartitionIndex tmpIndex = readCached(in, PartitionIndex::new);
+        className = tmpIndex.functorClass;
+        KeyFunctor tmpTransformer = loadKeyFunctor(context, className);
+        if (tmpTransformer instanceof RowPrefixFunctor) {
+          ((RowPrefixFunctor) tmpTransformer).setPrefixLength(tmpIndex.prefixLength);
+        }
+        transformer = tmpTransformer;
+        uncachedPartitions = new AtomicReferenceArray<>(tmpIndex.size());
+        // only set the index after the functor and partitions it needs are set
+        partitionIndex = tmpIndex;
+      } catch (NoSuchMetaStoreException nsme) {
+        return false;
+      } catch (IOException ioe) {
+        if (!closed)
+          LOG.warn("Can't open BloomFilter partition index", ioe);
+        else
+          LOG.debug("Can't open BloomFilter partition index, file closed : {}", ioe.getMessage());
+      } catch (ReflectiveOperationException e) {
+        LOG.error("Could not instantiate KeyFunctor: " + sanitize(className), e);
+      } catch (RuntimeException rte) {
+        if (!closed)
+          throw rte;
+        else
+          LOG.debug("Can't open BloomFilter partition index, RTE after closed ", rte);
+      }
+      return partitionIndex != null;
+    }
+
+    /**
+     * @return the partition's filter, or null if it could not be read
+     */
+    private BlockedBloomFilter getPartition(int partition) {
+      AtomicReferenceArray<BlockedBloomFilter> uncached = uncachedPartitions;
+      BlockedBloomFilter filter = uncached.get(partition);
+      if (filter != null)
+        return filter;
+
+      try (DataInputStream in = reader.getMetaStore(BLOOM_PARTITION_PREFIX + partition)) {
+        if (in instanceof CachedBlockRead && ((CachedBlockRead) in).isIndexable()) {
+          // leave the partition in the index cache, which decides how long it is kept
+          return readCached(in, CachedPartition::new).filter;
+        }
+        filter = new BlockedBloomFilter();
+        filter.readFields(in);
+        uncached.set(partition, filter);
+        return filter;
+      } catch (IOException ioe) {
+        if (!closed)
+          LOG.warn("Can't read BloomFilter partition " + partition, ioe);
+        else
+          LOG.debug("Can't read BloomFilter partition, file closed : {}", ioe.getMessage());
+        return null;
+      }
+    }
+
+    /**
+     * Checks the partitions of each locality group whose rows overlap the range. Any partition
+     * that can not be read is treated as possibly having the key.
+     */
+    private boolean partitionsMayContain(PartitionIndex index, Range range, byte[] bloomKey) {
+      Text startRow = range.getStartKey() == null ? null : range.getStartKey().getRow();
+      Text endRow = range.getEndKey() == null ? null : range.getEndKey().getRow();
+
+      for (int group = 0; group < index.groups(); group++) {
+        int partition =
+            startRow == null ? index.groupStart(group) : index.findFirst(group, startRow);
+        for (; partition < index.groupEnd(group); partition++) {
+          if (endRow != null && index.firstRows[partition].compareTo(endRow) > 0) {
+            break;
+          }
+          BlockedBloomFilter filter = getPartition(partition);
+          if (filter == null || filter.membershipTest(bloomKey)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
     /**
      * Prevent potential CRLF injection into logs from read in user data See
      * https://find-sec-bugs.github.io/bugs.htm#CRLF_INJECTION_LOGS
@@ -302,13 +827,16 @@ public class BloomFilterLayer {
       // only taking action when loadTask != null
       if (loadTask != null && loadRequest >= loadThreshold) {
         try {
-          ExecutorService ltp = getLoadThreadPool(maxLoadThreads);
-          if (ltp == null) {
-            // load the bloom filter in the foreground
-            loadTask.run();
-          } else {
-            // load the bloom filter in the background
-            ltp.execute(new LoggingRunnable(LOG, loadTask));
+          // partitioned bloom filters only need their index before they can be used
+          if (!loadPartitionIndex()) {
+            ExecutorService ltp = getLoadThreadPool(maxLoadThreads);
+            if (ltp == null) {
+              // load the bloom filter in the foreground
+              loadTask.run();
+            } else {
+              // load the bloom filter in the background
+              ltp.execute(new LoggingRunnable(LOG, loadTask));
+            }
           }
         } finally {
           // set load task to null so no one else can initiate the load
@@ -328,22 +856,58 @@ public class BloomFilterLayer {
      * @return false iff key doesn't exist, true if key probably exists.
      */
     boolean probablyHasKey(Range range) {
-      if (bloomFilter == null) {
+      return checkMembership(range) != Membership.ABSENT;
+    }
+
+    private Membership checkMembership(Range range) {
+      if (!isLoaded()) {
         initiateLoad(maxLoadThreads);
-        if (bloomFilter == null)
-          return true;
+        if (!isLoaded())
+          return Membership.UNKNOWN;
       }
 
       Key bloomKey = transformer.transform(range);
 
       if (bloomKey == null || bloomKey.getBytes().length == 0)
-        return true;
+        return Membership.UNKNOWN;
+
+      checks.increment();
+      totalChecks.increment();
+
+      PartitionIndex partitions = partitionIndex;
+      BlockedFilters blocked = blockedFilters;
+      boolean present;
+      if (partitions != null) {
+        present = partitionsMayContain(partitions, range, bloomKey.getBytes());
+      } else if (blocked != null) {
+        present = blocked.membershipTest(bloomKey.getBytes());
+      } else {
+        present = bloomFilter.membershipTest(bloomKey);
+      }
+      if (!present) {
+        negatives.increment();
+        totalNegatives.increment();
+        return Membership.ABSENT;
+      }
+      return Membership.MAYBE_PRESENT;
+    }
+
+    private boolean isLoaded() {
+      return bloomFilter != null || blockedFilters != null || partitionIndex != null;
+    }
 
-      return bloomFilter.membershipTest(bloomKey);
+    void recordFalsePositive() {
+      falsePositives.increment();
+      totalFalsePositives.increment();
     }
 
     public void close() {
       this.closed = true;
+      long checked = checks.sum();
+      if (checked > 0 && LOG.isDebugEnabled()) {
+        LOG.debug("Bloom filter of {} checked {} times, skipped file {} times, {} false positives",
+            fileName, checked, negatives.sum(), falsePositives.sum());
+      }
     }
   }
 
@@ -351,10 +915,16 @@ public class BloomFilterLayer {
 
     private BloomFilterLoader bfl;
     private FileSKVIterator reader;
+    // shared readers leave the bloom filter to the reader they were shared from
+    private boolean ownsBloomFilter = true;
 
     public Reader(FileSKVIterator reader, AccumuloConfiguration acuconf) {
+      this(reader, acuconf, null);
+    }
+
+    public Reader(FileSKVIterator reader, AccumuloConfiguration acuconf, String fileName) {
       this.reader = reader;
-      bfl = new BloomFilterLoader(reader, acuconf);
+      bfl = new BloomFilterLoader(reader, acuconf, fileName);
     }
 
     private Reader(FileSKVIterator src, BloomFilterLoader bfl) {
@@ -373,17 +943,22 @@ public class BloomFilterLayer {
     public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive)
         throws IOException {
 
-      if (!bfl.probablyHasKey(range)) {
+      Membership membership = bfl.checkMembership(range);
+      if (membership == Membership.ABSENT) {
         checkSuper = false;
       } else {
         reader.seek(range, columnFamilies, inclusive);
         checkSuper = true;
+        if (membership == Membership.MAYBE_PRESENT && !reader.hasTop()) {
+          bfl.recordFalsePositive();
+        }
       }
     }
 
     @Override
     public synchronized void close() throws IOException {
-      bfl.close();
+      if (ownsBloomFilter)
+        bfl.close();
       reader.close();
     }
 
@@ -445,6 +1020,17 @@ public class BloomFilterLayer {
       return new BloomFilterLayer.Reader(reader.getSample(sampleConfig), bfl);
     }
 
+    @Override
+    public FileSKVIterator newSharedReader() {
+      FileSKVIterator shared = reader.newSharedReader();
+      if (shared == null)
+        return null;
+
+      BloomFilterLayer.Reader sharedReader = new BloomFilterLayer.Reader(shared, bfl);
+      sharedReader.ownsBloomFilter = false;
+      return sharedReader;
+    }
+
   }
 
   public static void main(String[] args) throws IOException {
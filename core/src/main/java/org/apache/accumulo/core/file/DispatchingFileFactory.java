@@ -82,7 +82,8 @@ class DispatchingFileFactory extends FileOperations {
   protected FileSKVIterator openReader(FileOptions options) throws IOException {
     FileSKVIterator iter = findFileFactory(options).openReader(options);
     if (options.getTableConfiguration().getBoolean(Property.TABLE_BLOOM_ENABLED)) {
-      return new BloomFilterLayer.Reader(iter, options.getTableConfiguration());
+      return new BloomFilterLayer.Reader(iter, options.getTableConfiguration(),
+          options.getFilename());
     } else {
       return iter;
     }
@@ -34,6 +34,18 @@ public interface FileSKVIterator extends InterruptibleIterator, AutoCloseable {
 
   void closeDeepCopies() throws IOException;
 
+  /**
+   * Returns a new reader over the same file that shares this reader's open file and index but can
+   * be used by another thread concurrently with this reader. Closing the returned reader does not
+   * close the file, so this reader must stay open until all readers shared from it are closed.
+   *
+   * @return the shared reader, or null if this file format does not support sharing
+   * @since 2.1.0
+   */
+  default FileSKVIterator newSharedReader() {
+    return null;
+  }
+
   @Override
   void close() throws IOException;
 }
@@ -0,0 +1,394 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache.disk;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Stores cached blocks in files on local disk, so they survive a restart of the process.
+ *
+ * <p>
+ * Blocks are appended to segment files. A segment is closed once it is full and a new one is
+ * started. When the segments use more than the configured size, the oldest segment is deleted along
+ * with all blocks in it. An index of the blocks is kept in memory and is rebuilt by reading the
+ * record headers of all segments when the store is opened. A record that was partially written when
+ * the process died ends the segment it is in.
+ *
+ * <p>
+ * Every record stores the length of the file the block was read from. A block is only returned if
+ * the caller passes the same file length, which protects against a file that was replaced by
+ * another one with the same name. The data of a record is also protected by a checksum.
+ *
+ * <p>
+ * Blocks are written by a background thread. If writes fall behind, new blocks are dropped rather
+ * than delaying the threads that loaded them.
+ */
+public class DiskBlockStore implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(DiskBlockStore.class);
+
+  private static final int MAGIC = 0x4c32424b;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".blocks";
+  // magic, key length, file length, data length and checksum
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+  private static final int MAX_KEY_LENGTH = 64 * 1024;
+  private static final long MAX_SEGMENT_SIZE = 256L * 1024 * 1024;
+  private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+  private static final int MAX_PENDING_WRITES = 1024;
+
+  private static final class Location {
+    final long segment;
+    final long offset;
+    final long fileLength;
+    final int dataLength;
+    final int crc;
+
+    Location(long segment, long offset, long fileLength, int dataLength, int crc) {
+      this.segment = segment;
+      this.offset = offset;
+      this.fileLength = fileLength;
+      this.dataLength = dataLength;
+      this.crc = crc;
+    }
+  }
+
+  private final Path dir;
+  private final long maxSize;
+  private final long segmentSize;
+
+  private final Map<String,Location> index = new ConcurrentHashMap<>();
+  private final Map<Long,FileChannel> channels = new ConcurrentHashMap<>();
+
+  // guarded by this
+  private final TreeMap<Long,Long> segmentSizes = new TreeMap<>();
+  private long totalSize = 0;
+  private long currentSegment = -1;
+  private long currentOffset;
+
+  private final ThreadPoolExecutor writer;
+  private final LongAdder writesDropped = new LongAdder();
+
+  /**
+   * Opens a store in the given directory, keeping any blocks stored there by an earlier process.
+   *
+   * @param maxSize
+   *          the most disk space all segments may use
+   */
+  public DiskBlockStore(Path dir, long maxSize) throws IOException {
+    this.dir = dir;
+    this.maxSize = maxSize;
+    this.segmentSize = Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxSize / 8));
+
+    Files.createDirectories(dir);
+    recover();
+
+    writer =
+        new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_WRITES), new ThreadFactoryBuilder()
+                .setNameFormat("DiskBlockStore writer").setDaemon(true).build(),
+            (r, executor) -> writesDropped.increment());
+  }
+
+  private static Path segmentPath(Path dir, long segment) {
+    return dir.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+  }
+
+  private void recover() throws IOException {
+    TreeMap<Long,Path> segments = new TreeMap<>();
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          segments.put(
+              Long.parseLong(
+                  name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())),
+              file);
+        } catch (NumberFormatException e) {
+          log.warn("Ignoring unexpected file {}", file);
+        }
+      }
+    }
+
+    for (Map.Entry<Long,Path> entry : segments.entrySet()) {
+      long segment = entry.getKey();
+      FileChannel channel =
+          FileChannel.open(entry.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long end = recoverSegment(segment, channel);
+      if (end < channel.size()) {
+        log.info("Truncating {} from {} to {} bytes", entry.getValue(), channel.size(), end);
+        channel.truncate(end);
+      }
+      channels.put(segment, channel);
+      segmentSizes.put(segment, end);
+      totalSize += end;
+      currentSegment = segment;
+      currentOffset = end;
+    }
+
+    evictSegments();
+    log.info("Opened block store {} with {} blocks in {} segments using {} bytes", dir,
+        index.size(), segmentSizes.size(), totalSize);
+  }
+
+  /**
+   * Adds the records of a segment to the index.
+   *
+   * @return the end of the last complete record in the segment
+   */
+  private long recoverSegment(long segment, FileChannel channel) throws IOException {
+    long size = channel.size();
+    long offset = 0;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (offset + HEADER_SIZE <= size) {
+      header.clear();
+      readFully(channel, header, offset);
+      header.flip();
+      int magic = header.getInt();
+      int keyLength = header.getInt();
+      long fileLength = header.getLong();
+      int dataLength = header.getInt();
+      int crc = header.getInt();
+      if (magic != MAGIC || keyLength < 0 || keyLength > MAX_KEY_LENGTH || dataLength < 0
+          || offset + HEADER_SIZE + keyLength + dataLength > size) {
+        break;
+      }
+
+      ByteBuffer key = ByteBuffer.allocate(keyLength);
+      readFully(channel, key, offset + HEADER_SIZE);
+      index.put(new String(key.array(), UTF_8),
+          new Location(segment, offset + HEADER_SIZE + keyLength, fileLength, dataLength, crc));
+      offset += HEADER_SIZE + keyLength + dataLength;
+    }
+    return offset;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buf, long position)
+      throws IOException {
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, position + buf.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+  }
+
+  /**
+   * @return the stored block, or null if the block is not stored or was read from a file of a
+   *         different length
+   */
+  public byte[] get(String key, long fileLength) {
+    Location loc = index.get(key);
+    if (loc == null) {
+      return null;
+    }
+
+    if (loc.fileLength != fileLength) {
+      index.remove(key, loc);
+      return null;
+    }
+
+    try {
+      FileChannel channel = getChannel(loc.segment);
+      if (channel == null) {
+        // the segment was deleted
+        return null;
+      }
+
+      ByteBuffer buf = ByteBuffer.allocate(loc.dataLength);
+      readFully(channel, buf, loc.offset);
+      byte[] data = buf.array();
+      CRC32 crc = new CRC32();
+      crc.update(data);
+      if ((int) crc.getValue() != loc.crc) {
+        log.warn("Checksum mismatch for block {} in segment {}", key, loc.segment);
+        index.remove(key, loc);
+        return null;
+      }
+      return data;
+    } catch (ClosedChannelException e) {
+      // the segment was deleted or another reader was interrupted while reading it
+      return null;
+    } catch (IOException e) {
+      log.debug("Failed to read block {} from segment {}", key, loc.segment, e);
+      index.remove(key, loc);
+      return null;
+    }
+  }
+
+  /**
+   * @return an open channel for the segment, or null if the segment was deleted
+   */
+  private FileChannel getChannel(long segment) throws IOException {
+    FileChannel channel = channels.get(segment);
+    if (channel != null && !channel.isOpen()) {
+      synchronized (this) {
+        channel = channels.get(segment);
+        if (channel != null && !channel.isOpen()) {
+          // a channel is closed when a thread that is reading it gets interrupted
+          channel = FileChannel.open(segmentPath(dir, segment), StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+          channels.put(segment, channel);
+        }
+      }
+    }
+    return channel;
+  }
+
+  /**
+   * Stores a block in the background, unless it is already stored.
+   */
+  public void put(String key, long fileLength, byte[] data) {
+    Location loc = index.get(key);
+    if (loc != null && loc.fileLength == fileLength) {
+      return;
+    }
+    writer.execute(() -> {
+      try {
+        write(key, fileLength, data);
+      } catch (IOException e) {
+        log.warn("Failed to store block {} in {}", key, dir, e);
+      }
+    });
+  }
+
+  private synchronized void write(String key, long fileLength, byte[] data) throws IOException {
+    byte[] keyBytes = key.getBytes(UTF_8);
+    int recordLength = HEADER_SIZE + keyBytes.length + data.length;
+    if (keyBytes.length > MAX_KEY_LENGTH || recordLength > segmentSize) {
+      return;
+    }
+
+    if (currentSegment < 0 || currentOffset + recordLength > segmentSize) {
+      startSegment();
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(data);
+
+    ByteBuffer record = ByteBuffer.allocate(recordLength);
+    record.putInt(MAGIC).putInt(keyBytes.length).putLong(fileLength).putInt(data.length)
+        .putInt((int) crc.getValue()).put(keyBytes).put(data);
+    record.flip();
+    long offset = currentOffset;
+    while (record.hasRemaining()) {
+      getChannel(currentSegment).write(record, offset + record.position());
+    }
+
+    currentOffset += recordLength;
+    segmentSizes.put(currentSegment, currentOffset);
+    totalSize += recordLength;
+    index.put(key, new Location(currentSegment, offset + HEADER_SIZE + keyBytes.length, fileLength,
+        data.length, (int) crc.getValue()));
+
+    evictSegments();
+  }
+
+  private void startSegment() throws IOException {
+    currentSegment++;
+    FileChannel channel = FileChannel.open(segmentPath(dir, currentSegment),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    currentOffset = 0;
+    channels.put(currentSegment, channel);
+    segmentSizes.put(currentSegment, 0L);
+  }
+
+  /**
+   * Deletes the oldest segments until the store fits in its size. The segment being written is
+   * never deleted.
+   */
+  private synchronized void evictSegments() throws IOException {
+    while (totalSize > maxSize && segmentSizes.size() > 1) {
+      Map.Entry<Long,Long> oldest = segmentSizes.pollFirstEntry();
+      long segment = oldest.getKey();
+      totalSize -= oldest.getValue();
+      index.values().removeIf(loc -> loc.segment == segment);
+      FileChannel channel = channels.remove(segment);
+      if (channel != null) {
+        channel.close();
+      }
+      Files.deleteIfExists(segmentPath(dir, segment));
+    }
+  }
+
+  /**
+   * @return the number of blocks that were not stored because the writer fell behind
+   */
+  public long getWritesDropped() {
+    return writesDropped.sum();
+  }
+
+  public synchronized long getSize() {
+    return totalSize;
+  }
+
+  @VisibleForTesting
+  int getBlockCount() {
+    return index.size();
+  }
+
+  /**
+   * Waits for pending writes to finish.
+   */
+  @VisibleForTesting
+  void flush() throws InterruptedException {
+    while (!writer.getQueue().isEmpty() || writer.getActiveCount() > 0) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.shutdown();
+    try {
+      writer.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      for (FileChannel channel : channels.values()) {
+        channel.close();
+      }
+      channels.clear();
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache.disk;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.accumulo.core.spi.cache.BlockCache;
+import org.apache.accumulo.core.spi.cache.CacheEntry;
+
+/**
+ * A block cache with two tiers. The first tier is any {@link BlockCache}, the second is a
+ * {@link DiskBlockStore} on local disk. Blocks missing from the first tier are looked up in the
+ * second tier before they are read from their file, and blocks read from their file are added to
+ * both tiers. Since the second tier survives restarts, a tablet server that restarts or takes over
+ * tablets gets warm hits for blocks it read before.
+ *
+ * <p>
+ * Only blocks loaded through {@link #getBlock(String, Loader)} whose loader knows the length of its
+ * file use the second tier, because the length is used to check that a stored block is still valid.
+ */
+public class TieredBlockCache implements BlockCache {
+
+  private final BlockCache l1;
+  private final DiskBlockStore l2;
+  private final String keyPrefix;
+
+  private final LongAdder l2Hits = new LongAdder();
+  private final LongAdder l2Requests = new LongAdder();
+
+  /**
+   * @param keyPrefix
+   *          added to the names of blocks stored in the second tier, which allows caches of
+   *          different types to share a store
+   */
+  public TieredBlockCache(BlockCache l1, DiskBlockStore l2, String keyPrefix) {
+    this.l1 = l1;
+    this.l2 = l2;
+    this.keyPrefix = keyPrefix;
+  }
+
+  @Override
+  public CacheEntry cacheBlock(String blockName, byte[] buf) {
+    return l1.cacheBlock(blockName, buf);
+  }
+
+  @Override
+  public CacheEntry getBlock(String blockName) {
+    return l1.getBlock(blockName);
+  }
+
+  @Override
+  public CacheEntry getBlock(String blockName, Loader loader) {
+    return l1.getBlock(blockName, new TieredLoader(blockName, loader));
+  }
+
+  private class TieredLoader implements Loader {
+
+    private final String blockName;
+    private final Loader loader;
+
+    TieredLoader(String blockName, Loader loader) {
+      this.blockName = blockName;
+      this.loader = loader;
+    }
+
+    @Override
+    public Map<String,Loader> getDependencies() {
+      Map<String,Loader> deps = loader.getDependencies();
+      if (deps.isEmpty()) {
+        return deps;
+      }
+      Map<String,Loader> tieredDeps = new HashMap<>();
+      for (Entry<String,Loader> entry : deps.entrySet()) {
+        tieredDeps.put(entry.getKey(), new TieredLoader(entry.getKey(), entry.getValue()));
+      }
+      return tieredDeps;
+    }
+
+    @Override
+    public long getFileLength() {
+      return loader.getFileLength();
+    }
+
+    @Override
+    public byte[] load(int maxSize, Map<String,byte[]> dependencies) {
+      long fileLength = loader.getFileLength();
+      if (fileLength < 0) {
+        return loader.load(maxSize, dependencies);
+      }
+
+      String key = keyPrefix + blockName;
+      l2Requests.increment();
+      byte[] data = l2.get(key, fileLength);
+      if (data != null && data.length <= maxSize) {
+        l2Hits.increment();
+        return data;
+      }
+
+      data = loader.load(maxSize, dependencies);
+      if (data != null) {
+        l2.put(key, fileLength, data);
+      }
+      return data;
+    }
+  }
+
+  @Override
+  public long getMaxHeapSize() {
+    return l1.getMaxHeapSize();
+  }
+
+  @Override
+  public long getMaxSize() {
+    return l1.getMaxSize();
+  }
+
+  /**
+   * @return the statistics of the first tier
+   */
+  @Override
+  public Stats getStats() {
+    return l1.getStats();
+  }
+
+  /**
+   * @return the statistics of the second tier, which only sees requests that missed the first tier
+   */
+  public Stats getL2Stats() {
+    return new Stats() {
+      @Override
+      public long hitCount() {
+        return l2Hits.sum();
+      }
+
+      @Override
+      public long requestCount() {
+        return l2Requests.sum();
+      }
+    };
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache.offheap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Cleaner.Cleanable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.accumulo.core.conf.ConfigurationTypeHelper;
+import org.apache.accumulo.core.file.blockfile.cache.offheap.SlabAllocator.Chunk;
+import org.apache.accumulo.core.spi.cache.BlockCache;
+import org.apache.accumulo.core.spi.cache.BlockCacheManager.Configuration;
+import org.apache.accumulo.core.spi.cache.CacheEntry;
+import org.apache.accumulo.core.spi.cache.CacheEntry.Weighable;
+import org.apache.accumulo.core.spi.cache.CacheType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * A block cache that stores blocks outside of the Java heap. This allows caches much larger than
+ * what the Java GC can handle, since the heap only holds the keys of the cache and any indexes
+ * built for its blocks. The indexes are kept in a cache of their own, bounded by the
+ * {@value #INDEX_HEAP_SIZE_PROPERTY} property, which defaults to a sixteenth of the cache size.
+ *
+ * <p>
+ * Blocks are copied into chunks of large slabs handed out by a {@link SlabAllocator}. The slabs are
+ * direct byte buffers, or regions of a memory mapped file when the {@value #MMAP_DIR_PROPERTY}
+ * property is set. Like
+ * {@link org.apache.accumulo.core.file.blockfile.cache.tinylfu .TinyLfuBlockCache} a Caffeine cache
+ * decides which blocks to admit and evict using W-TinyLFU, and every block is weighed by the exact
+ * size of the chunk it holds. So the cache never uses more than its configured size outside of the
+ * heap.
+ *
+ * <p>
+ * The entries returned by this cache expose their chunk through {@link CacheEntry#getByteBuffer()},
+ * which lets RFile read cached blocks without copying them. Each entry holds a reference on its
+ * block, and the chunk of an evicted block is only reused after every entry for it was released.
+ * Entries that are never released are released when they are garbage collected.
+ *
+ * <p>
+ * Direct slabs count against the JVM limit on direct memory, so -XX:MaxDirectMemorySize must be set
+ * larger than the cache.
+ */
+public final class OffHeapBlockCache implements BlockCache {
+  private static final Logger log = LoggerFactory.getLogger(OffHeapBlockCache.class);
+  private static final int STATS_PERIOD_SEC = 60;
+
+  public static final String PROPERTY_PREFIX = "offheap";
+  public static final String SLAB_SIZE_PROPERTY = "slab.size";
+  public static final String MMAP_DIR_PROPERTY = "mmap.dir";
+  public static final String DEFAULT_SLAB_SIZE = "4M";
+  public static final String INDEX_HEAP_SIZE_PROPERTY = "index.heap.size";
+
+  private static final int MIN_SLABS = 64;
+  private static final long MIN_SLAB_SIZE = 64 * 1024;
+
+  // how many of the coldest blocks are looked at to make room when no chunk is free
+  private static final int EVICTION_SCAN = 32;
+
+  // rough cost of an index cache node and its key object
+  private static final int INDEX_OVERHEAD = 96;
+
+  private static final Cleaner cleaner = Cleaner.create(
+      new ThreadFactoryBuilder().setNameFormat("OffHeapBlockCacheCleaner").setDaemon(true).build());
+
+  private final SlabAllocator allocator;
+  private final Cache<String,Block> cache;
+  private final Policy.Eviction<String,Block> policy;
+  // indexes built for cached blocks, keyed by block name, they live on the heap
+  private final Cache<String,Weighable> indexes;
+  private final long maxIndexHeapSize;
+  private final ScheduledExecutorService statsExecutor;
+
+  public OffHeapBlockCache(Configuration conf, CacheType type) {
+    Map<String,String> props = conf.getProperties(PROPERTY_PREFIX, type);
+    long maxSize = conf.getMaxSize(type);
+    long slabSize = ConfigurationTypeHelper
+        .getFixedMemoryAsBytes(props.getOrDefault(SLAB_SIZE_PROPERTY, DEFAULT_SLAB_SIZE));
+    // Each size class needs a slab of its own, so a small cache gets smaller slabs. Blocks larger
+    // than a slab are not cached.
+    slabSize = Math.min(slabSize, Math.max(maxSize / MIN_SLABS, MIN_SLAB_SIZE));
+    if (slabSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Slab size is too large " + slabSize);
+    }
+    long maxSlabs = Math.max(1, maxSize / slabSize);
+    if (maxSlabs > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many slabs " + maxSlabs + ", increase the slab size");
+    }
+    String mmapDir = props.get(MMAP_DIR_PROPERTY);
+    allocator = new SlabAllocator((int) slabSize, (int) maxSlabs,
+        mmapDir == null ? null : openSlabFile(mmapDir));
+
+    String indexHeapSize = props.get(INDEX_HEAP_SIZE_PROPERTY);
+    maxIndexHeapSize = indexHeapSize == null ? maxSize / 16
+        : ConfigurationTypeHelper.getFixedMemoryAsBytes(indexHeapSize);
+    indexes = Caffeine.newBuilder()
+        .weigher((String blockName, Weighable index) -> INDEX_OVERHEAD + 2 * blockName.length()
+            + index.weight())
+        .maximumWeight(maxIndexHeapSize).executor(Runnable::run).build();
+
+    cache =
+        Caffeine.newBuilder().initialCapacity((int) Math.ceil(1.2 * maxSize / conf.getBlockSize()))
+            .weigher((String blockName, Block block) -> block.chunk.capacity())
+            .maximumWeight(allocator.getMaxSize())
+            // release chunks of evicted blocks right away, so they can be reused by the next insert
+            .executor(Runnable::run)
+            .removalListener((String blockName, Block block, RemovalCause cause) -> {
+              block.release();
+              if (cause != RemovalCause.REPLACED) {
+                indexes.invalidate(blockName);
+              }
+            }).recordStats().build();
+    policy = cache.policy().eviction().get();
+    statsExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("OffHeapBlockCacheStatsExecutor").setDaemon(true).build());
+    statsExecutor.scheduleAtFixedRate(this::logStats, STATS_PERIOD_SEC, STATS_PERIOD_SEC,
+        TimeUnit.SECONDS);
+  }
+
+  @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN",
+      justification = "directory is set by the administrator")
+  private static FileChannel openSlabFile(String dir) {
+    try {
+      Path file = Files.createTempFile(Paths.get(dir), "block-cache-", ".slabs");
+      FileChannel channel =
+          FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      // the open channel and its mappings keep the data, this just ensures no file is left behind
+      Files.delete(file);
+      return channel;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to create block cache file in " + dir, e);
+    }
+  }
+
+  @Override
+  public long getMaxHeapSize() {
+    // block data is off the heap, the cache keys are small next to the indexes
+    return maxIndexHeapSize;
+  }
+
+  @Override
+  public long getMaxSize() {
+    return policy.getMaximum();
+  }
+
+  @Override
+  public CacheEntry getBlock(String blockName) {
+    Block block = cache.getIfPresent(blockName);
+    if (block != null && block.retain()) {
+      return new OffHeapCacheEntry(blockName, block);
+    }
+    // a block that could not be retained was evicted after the lookup
+    return null;
+  }
+
+  @Override
+  public CacheEntry cacheBlock(String blockName, byte[] buffer) {
+    Block block = newBlock(buffer);
+    if (block == null) {
+      return new UncachedEntry(buffer);
+    }
+    // take the reference for the returned entry before the cache can evict the block
+    block.retain();
+    cache.put(blockName, block);
+    return new OffHeapCacheEntry(blockName, block);
+  }
+
+  /**
+   * Copies data into a new off heap block, making room by evicting cold blocks if no chunk is free.
+   * This removes entries from the cache, so it must not be called from a cache load or compute
+   * function.
+   *
+   * @return the new block, or null if there was no room for it
+   */
+  private Block newBlock(byte[] data) {
+    int chunkSize = allocator.chunkSize(data.length);
+    if (chunkSize < 0) {
+      return null;
+    }
+
+    Chunk chunk = allocator.allocate(data.length);
+    if (chunk == null) {
+      // Either the cache is full, or its free memory is held by slabs of other size classes. So
+      // first evict cold blocks that free a chunk of the needed size, then any cold blocks in the
+      // hope that a whole slab becomes free.
+      chunk = evictAndAllocate(data.length, chunkSize);
+      if (chunk == null) {
+        chunk = evictAndAllocate(data.length, -1);
+      }
+      if (chunk == null) {
+        return null;
+      }
+    }
+
+    chunk.buffer(data.length).put(data);
+    return new Block(chunk, data.length);
+  }
+
+  private Chunk evictAndAllocate(int size, int chunkSize) {
+    for (Entry<String,Block> entry : policy.coldest(EVICTION_SCAN).entrySet()) {
+      Block victim = entry.getValue();
+      if ((chunkSize < 0 || victim.chunk.capacity() == chunkSize)
+          && cache.asMap().remove(entry.getKey(), victim)) {
+        Chunk chunk = allocator.allocate(size);
+        if (chunk != null) {
+          return chunk;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public BlockCache.Stats getStats() {
+    CacheStats stats = cache.stats();
+    return new BlockCache.Stats() {
+      @Override
+      public long hitCount() {
+        return stats.hitCount();
+      }
+
+      @Override
+      public long requestCount() {
+        return stats.requestCount();
+      }
+    };
+  }
+
+  private void logStats() {
+    double maxMB = ((double) policy.getMaximum()) / ((double) (1024 * 1024));
+    double sizeMB = ((double) policy.weightedSize().getAsLong()) / ((double) (1024 * 1024));
+    double freeMB = maxMB - sizeMB;
+    double slabMB = ((double) allocator.getAllocatedSize()) / ((double) (1024 * 1024));
+    log.debug("Cache Size={}MB, Free={}MB, Max={}MB, Slabs={}MB, Blocks={}", sizeMB, freeMB, maxMB,
+        slabMB, cache.estimatedSize());
+    log.debug(cache.stats().toString());
+  }
+
+  private final class Block {
+
+    private final Chunk chunk;
+    private final int length;
+    // one reference is held by the cache and one by every entry that was not released
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    Block(Chunk chunk, int length) {
+      this.chunk = chunk;
+      this.length = length;
+    }
+
+    boolean retain() {
+      int count;
+      do {
+        count = refs.get();
+        if (count == 0) {
+          // the chunk was already freed
+          return false;
+        }
+      } while (!refs.compareAndSet(count, count + 1));
+      return true;
+    }
+
+    void release() {
+      if (refs.decrementAndGet() == 0) {
+        allocator.free(chunk);
+      }
+    }
+
+    ByteBuffer getByteBuffer() {
+      return chunk.buffer(length).asReadOnlyBuffer();
+    }
+  }
+
+  private final class OffHeapCacheEntry implements CacheEntry {
+
+    private final String blockName;
+    private final Block block;
+    private final Cleanable cleanable;
+
+    OffHeapCacheEntry(String blockName, Block block) {
+      this.blockName = blockName;
+      this.block = block;
+      // the cleaning action must not reference this entry, or it would never become unreachable
+      this.cleanable = cleaner.register(this, block::release);
+    }
+
+    @Override
+    public byte[] getBuffer() {
+      ByteBuffer buf = block.getByteBuffer();
+      byte[] copy = new byte[buf.remaining()];
+      buf.get(copy);
+      return copy;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+      return block.getByteBuffer();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Weighable> T getIndex(Supplier<T> supplier) {
+      // the index is built from this entry's data and does not access the index cache
+      return (T) indexes.get(blockName, k -> supplier.get());
+    }
+
+    @Override
+    public void indexWeightChanged() {
+      // computing the same value again weighs the index again
+      indexes.asMap().computeIfPresent(blockName, (k, index) -> index);
+    }
+
+    @Override
+    public void release() {
+      // runs the release at most once, even if also called by the cleaner
+      cleanable.clean();
+    }
+  }
+
+  /**
+   * Returned for blocks that did not fit in the cache.
+   */
+  private static final class UncachedEntry implements CacheEntry {
+
+    private final byte[] buffer;
+
+    UncachedEntry(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+      return buffer;
+    }
+
+    @Override
+    public <T extends Weighable> T getIndex(Supplier<T> supplier) {
+      return null;
+    }
+
+    @Override
+    public void indexWeightChanged() {}
+  }
+
+  private Map<String,byte[]> resolveDependencies(Map<String,Loader> deps) {
+    HashMap<String,byte[]> resolvedDeps = new HashMap<>();
+    for (Entry<String,Loader> entry : deps.entrySet()) {
+      CacheEntry ce = getBlock(entry.getKey(), entry.getValue());
+      if (ce == null) {
+        return null;
+      }
+      resolvedDeps.put(entry.getKey(), ce.getBuffer());
+      ce.release();
+    }
+    return resolvedDeps;
+  }
+
+  @Override
+  public CacheEntry getBlock(String blockName, Loader loader) {
+    CacheEntry ce = getBlock(blockName);
+    if (ce != null) {
+      return ce;
+    }
+
+    // Loading dependencies accesses the cache, and making room for the new block evicts from it.
+    // Cache load functions must not access the cache, so the block is loaded and copied off the
+    // heap first and only then added.
+    Map<String,Loader> deps = loader.getDependencies();
+    Map<String,byte[]> resolvedDeps = Collections.emptyMap();
+    if (deps.size() > 0) {
+      resolvedDeps = resolveDependencies(deps);
+      if (resolvedDeps == null) {
+        return null;
+      }
+    }
+
+    byte[] data = loader.load((int) Math.min(Integer.MAX_VALUE, policy.getMaximum()), resolvedDeps);
+    if (data == null) {
+      return null;
+    }
+
+    Block block = newBlock(data);
+    if (block == null) {
+      return new UncachedEntry(data);
+    }
+
+    // retain before the cache sees the block, since it may be evicted right after it is added
+    block.retain();
+    Block existing = cache.asMap().putIfAbsent(blockName, block);
+    if (existing == null) {
+      return new OffHeapCacheEntry(blockName, block);
+    }
+
+    // another thread loaded the block first, free the chunk of this copy
+    block.release();
+    block.release();
+    if (existing.retain()) {
+      return new OffHeapCacheEntry(blockName, existing);
+    }
+    // the other thread's block was already evicted again
+    return new UncachedEntry(data);
+  }
+}
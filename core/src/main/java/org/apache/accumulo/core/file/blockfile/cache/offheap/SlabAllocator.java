@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache.offheap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hands out chunks of memory from large slabs that are allocated outside of the Java heap. Slabs
+ * are either direct byte buffers or regions of a memory mapped file.
+ *
+ * <p>
+ * Every chunk belongs to a size class, and the sizes of the classes grow by 25% from
+ * {@link #MIN_CHUNK_SIZE} up to the slab size, so at most about a fifth of a chunk is wasted. A
+ * slab is carved into equal chunks of one size class while it is in use. Once all chunks of a slab
+ * are free again the slab can be used by any size class, which lets the memory follow changes in
+ * the sizes of cached blocks.
+ */
+final class SlabAllocator {
+
+  static final int MIN_CHUNK_SIZE = 1024;
+
+  private static final double GROWTH_FACTOR = 1.25;
+
+  private final int slabSize;
+  private final int maxSlabs;
+  private final FileChannel channel;
+  private final int[] chunkSizes;
+  private final SizeClass[] sizeClasses;
+
+  // slabs that are not used by any size class, guarded by this
+  private final ArrayDeque<ByteBuffer> freeSlabs = new ArrayDeque<>();
+  private final List<ByteBuffer> slabs = new ArrayList<>();
+
+  static final class Chunk {
+    private final Slab slab;
+    private final int offset;
+    private final int capacity;
+
+    private Chunk(Slab slab, int offset, int capacity) {
+      this.slab = slab;
+      this.offset = offset;
+      this.capacity = capacity;
+    }
+
+    int capacity() {
+      return capacity;
+    }
+
+    /**
+     * @return a buffer over the first length bytes of this chunk, positioned at zero
+     */
+    ByteBuffer buffer(int length) {
+      ByteBuffer buf = slab.buffer.duplicate();
+      buf.position(offset).limit(offset + length);
+      return buf.slice();
+    }
+  }
+
+  private static final class Slab {
+    private final ByteBuffer buffer;
+    private final SizeClass sizeClass;
+    private final int[] free;
+    private int numFree;
+
+    Slab(ByteBuffer buffer, SizeClass sizeClass) {
+      this.buffer = buffer;
+      this.sizeClass = sizeClass;
+      this.free = new int[buffer.capacity() / sizeClass.chunkSize];
+      for (int i = 0; i < free.length; i++) {
+        free[i] = free.length - 1 - i;
+      }
+      this.numFree = free.length;
+    }
+  }
+
+  private static final class SizeClass {
+    private final int chunkSize;
+    // slabs of this size class that have free chunks, guarded by this
+    private final ArrayDeque<Slab> partial = new ArrayDeque<>();
+
+    SizeClass(int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+  }
+
+  /**
+   * @param channel
+   *          if non null slabs are mapped from this file, otherwise direct byte buffers are used
+   */
+  SlabAllocator(int slabSize, int maxSlabs, FileChannel channel) {
+    if (slabSize < MIN_CHUNK_SIZE)
+      throw new IllegalArgumentException(
+          "Slab size " + slabSize + " is less than " + MIN_CHUNK_SIZE);
+    if (maxSlabs < 1)
+      throw new IllegalArgumentException("Need at least one slab " + maxSlabs);
+
+    this.slabSize = slabSize;
+    this.maxSlabs = maxSlabs;
+    this.channel = channel;
+
+    int[] sizes = new int[64];
+    int numSizes = 0;
+    long size = MIN_CHUNK_SIZE;
+    while (size < slabSize) {
+      if (numSizes == sizes.length)
+        sizes = Arrays.copyOf(sizes, sizes.length * 2);
+      sizes[numSizes++] = (int) size;
+      // keep chunks 8 byte aligned
+      size = Math.max(size + 8, ((long) (size * GROWTH_FACTOR) + 7) & ~7L);
+    }
+    if (numSizes == sizes.length)
+      sizes = Arrays.copyOf(sizes, sizes.length + 1);
+    sizes[numSizes++] = slabSize;
+
+    this.chunkSizes = Arrays.copyOf(sizes, numSizes);
+    this.sizeClasses = new SizeClass[numSizes];
+    for (int i = 0; i < numSizes; i++) {
+      sizeClasses[i] = new SizeClass(chunkSizes[i]);
+    }
+  }
+
+  int getSlabSize() {
+    return slabSize;
+  }
+
+  long getMaxSize() {
+    return (long) slabSize * maxSlabs;
+  }
+
+  /**
+   * @return the amount of memory allocated for slabs so far
+   */
+  synchronized long getAllocatedSize() {
+    return (long) slabSize * slabs.size();
+  }
+
+  private int sizeClassIndex(int size) {
+    if (size > slabSize)
+      return -1;
+    int idx = Arrays.binarySearch(chunkSizes, Math.max(size, 1));
+    return idx >= 0 ? idx : -idx - 1;
+  }
+
+  /**
+   * @return the capacity of the chunk that would be allocated for the given size, or -1 if a chunk
+   *         of that size can never be allocated
+   */
+  int chunkSize(int size) {
+    int idx = sizeClassIndex(size);
+    return idx < 0 ? -1 : chunkSizes[idx];
+  }
+
+  /**
+   * @return a chunk of at least size bytes, or null if there is no free memory for it
+   */
+  Chunk allocate(int size) {
+    int idx = sizeClassIndex(size);
+    if (idx < 0)
+      return null;
+
+    SizeClass sc = sizeClasses[idx];
+    synchronized (sc) {
+      Slab slab = sc.partial.peekFirst();
+      if (slab == null) {
+        ByteBuffer buffer = takeSlab();
+        if (buffer == null)
+          return null;
+        slab = new Slab(buffer, sc);
+        sc.partial.addFirst(slab);
+      }
+
+      int chunk = slab.free[--slab.numFree];
+      if (slab.numFree == 0)
+        sc.partial.removeFirst();
+      return new Chunk(slab, chunk * sc.chunkSize, sc.chunkSize);
+    }
+  }
+
+  void free(Chunk chunk) {
+    Slab slab = chunk.slab;
+    SizeClass sc = slab.sizeClass;
+    synchronized (sc) {
+      if (slab.numFree == 0)
+        sc.partial.addLast(slab);
+      slab.free[slab.numFree++] = chunk.offset / sc.chunkSize;
+      if (slab.numFree == slab.free.length) {
+        sc.partial.remove(slab);
+        returnSlab(slab.buffer);
+      }
+    }
+  }
+
+  private synchronized ByteBuffer takeSlab() {
+    ByteBuffer slab = freeSlabs.pollFirst();
+    if (slab == null && slabs.size() < maxSlabs) {
+      if (channel == null) {
+        slab = ByteBuffer.allocateDirect(slabSize);
+      } else {
+        try {
+          slab = channel.map(MapMode.READ_WRITE, (long) slabSize * slabs.size(), slabSize);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      slabs.add(slab);
+    }
+    return slab;
+  }
+
+  private synchronized void returnSlab(ByteBuffer slab) {
+    freeSlabs.addFirst(slab);
+  }
+}
@@ -21,6 +21,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
@@ -31,6 +32,7 @@ import java.util.function.Supplier;
 import org.apache.accumulo.core.file.rfile.bcfile.BCFile;
 import org.apache.accumulo.core.file.rfile.bcfile.BCFile.Reader.BlockReader;
 import org.apache.accumulo.core.file.rfile.bcfile.MetaBlockDoesNotExist;
+import org.apache.accumulo.core.file.streams.PositionedReads;
 import org.apache.accumulo.core.file.streams.RateLimitedInputStream;
 import org.apache.accumulo.core.spi.cache.BlockCache;
 import org.apache.accumulo.core.spi.cache.BlockCache.Loader;
@@ -75,6 +77,7 @@ public class CachableBlockFile {
     RateLimiter readLimiter = null;
     Configuration hadoopConf = null;
     CryptoService cryptoService = null;
+    long maxCoalescedRead = 0;
 
     public CachableBuilder cacheId(String id) {
       this.cacheId = id;
@@ -127,6 +130,16 @@ public class CachableBlockFile {
       this.cryptoService = cryptoService;
       return this;
     }
+
+    /**
+     * @param maxBytes
+     *          the most bytes of adjacent data blocks to fetch in one read, 0 disables coalesced
+     *          reads
+     */
+    public CachableBuilder coalescedReads(long maxBytes) {
+      this.maxCoalescedRead = maxBytes;
+      return this;
+    }
   }
 
   /**
@@ -144,9 +157,12 @@ public class CachableBlockFile {
     private final Configuration conf;
     private final CryptoService cryptoService;
 
+    private final long maxCoalescedRead;
     private final IoeSupplier<InputStream> inputSupplier;
     private final IoeSupplier<Long> lengthSupplier;
     private final AtomicReference<BCFile.Reader> bcfr = new AtomicReference<>();
+    // the file length reported to caches that keep blocks across restarts, -1 until it is needed
+    private volatile long fileLength = -1;
 
     private static final String ROOT_BLOCK_NAME = "!RootData";
 
@@ -209,13 +225,30 @@ public class CachableBlockFile {
       if (_iCache != null) {
         CacheEntry mce = _iCache.getBlock(cacheId + ROOT_BLOCK_NAME, new BCFileLoader());
         if (mce != null) {
-          return getBCFile(mce.getBuffer());
+          try {
+            return getBCFile(mce.getBuffer());
+          } finally {
+            mce.release();
+          }
         }
       }
 
       return getBCFile(null);
     }
 
+    private long getFileLength() {
+      long len = fileLength;
+      if (len < 0) {
+        try {
+          len = fileLenCache == null ? lengthSupplier.get() : getCachedFileLen();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        fileLength = len;
+      }
+      return len;
+    }
+
     private class BCFileLoader implements Loader {
 
       @Override
@@ -223,6 +256,11 @@ public class CachableBlockFile {
         return Collections.emptyMap();
       }
 
+      @Override
+      public long getFileLength() {
+        return Reader.this.getFileLength();
+      }
+
       @Override
       public byte[] load(int maxSize, Map<String,byte[]> dependencies) {
         try {
@@ -316,6 +354,11 @@ public class CachableBlockFile {
         this.loadingMetaBlock = loadingMetaBlock;
       }
 
+      @Override
+      public long getFileLength() {
+        return Reader.this.getFileLength();
+      }
+
       @Override
       public Map<String,Loader> getDependencies() {
         if (bcfr.get() == null && loadingMetaBlock) {
@@ -372,6 +415,7 @@ public class CachableBlockFile {
       this.readLimiter = b.readLimiter;
       this.conf = b.hadoopConf;
       this.cryptoService = Objects.requireNonNull(b.cryptoService);
+      this.maxCoalescedRead = Math.min(b.maxCoalescedRead, MAX_ARRAY_SIZE);
     }
 
     /**
@@ -384,7 +428,7 @@ public class CachableBlockFile {
         try {
           CacheEntry ce = _iCache.getBlock(_lookup, new MetaBlockLoader(blockName));
           if (ce != null) {
-            return new CachedBlockRead(ce, ce.getBuffer());
+            return new CachedBlockRead(ce);
           }
         } catch (UncheckedIOException uioe) {
           if (uioe.getCause() instanceof MetaBlockDoesNotExist) {
@@ -408,7 +452,7 @@ public class CachableBlockFile {
         CacheEntry ce =
             _iCache.getBlock(_lookup, new RawBlockLoader(offset, compressedSize, rawSize, true));
         if (ce != null) {
-          return new CachedBlockRead(ce, ce.getBuffer());
+          return new CachedBlockRead(ce);
         }
       }
 
@@ -429,7 +473,7 @@ public class CachableBlockFile {
         String _lookup = this.cacheId + "O" + blockIndex;
         CacheEntry ce = _dCache.getBlock(_lookup, new OffsetBlockLoader(blockIndex, false));
         if (ce != null) {
-          return new CachedBlockRead(ce, ce.getBuffer());
+          return new CachedBlockRead(ce);
         }
       }
 
@@ -444,7 +488,7 @@ public class CachableBlockFile {
         CacheEntry ce =
             _dCache.getBlock(_lookup, new RawBlockLoader(offset, compressedSize, rawSize, false));
         if (ce != null) {
-          return new CachedBlockRead(ce, ce.getBuffer());
+          return new CachedBlockRead(ce);
         }
       }
 
@@ -452,6 +496,98 @@ public class CachableBlockFile {
       return new CachedBlockRead(_currBlock);
     }
 
+    /**
+     * @return the most bytes {@link #prefetchDataBlocks(long, long[], long[])} should be asked to
+     *         read at once, or 0 if coalesced reads are disabled or there is no data cache to load
+     *         the blocks into
+     */
+    public long getMaxCoalescedRead() {
+      return _dCache == null ? 0 : maxCoalescedRead;
+    }
+
+    /**
+     * Loads data blocks that are stored one after another in the file, starting at offset, into the
+     * data cache. Blocks already cached at either end of the run are skipped and the rest are
+     * fetched with a single positioned read, instead of one read per block. Later calls to
+     * {@link #getDataBlock(long, long, long)} for these blocks are then served from the cache.
+     */
+    public void prefetchDataBlocks(long offset, long[] compressedSizes, long[] rawSizes)
+        throws IOException {
+      if (_dCache == null)
+        return;
+
+      long[] offsets = new long[compressedSizes.length];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = offset;
+        offset += compressedSizes[i];
+      }
+
+      int first = 0;
+      int last = offsets.length - 1;
+      while (first <= last && isDataBlockCached(offsets[first]))
+        first++;
+      while (last > first && isDataBlockCached(offsets[last]))
+        last--;
+
+      // a single block is read the usual way when it is needed
+      if (first >= last)
+        return;
+
+      long length = offsets[last] + compressedSizes[last] - offsets[first];
+      if (length > MAX_ARRAY_SIZE)
+        return;
+
+      BCFile.Reader bcfile = getBCFile();
+      InputStream in = fin;
+      if (in == null) {
+        // another thread is still publishing the stream it opened
+        return;
+      }
+
+      byte[] buf = new byte[(int) length];
+      PositionedReads.readFully(in, offsets[first], buf, 0, buf.length);
+
+      for (int i = first; i <= last; i++) {
+        if (rawSizes[i] > MAX_ARRAY_SIZE)
+          continue;
+
+        try (BlockReader blockReader = bcfile.getDataBlock(offsets[i], compressedSizes[i],
+            rawSizes[i], buf, (int) (offsets[i] - offsets[first]))) {
+          byte[] b = new byte[(int) rawSizes[i]];
+          blockReader.readFully(b);
+          _dCache.cacheBlock(cacheId + "R" + offsets[i], b);
+        }
+      }
+    }
+
+    /**
+     * Reads a data block as it is stored in the file, without decompressing or decrypting it, so
+     * it can be copied into another file.
+     */
+    public byte[] getRawDataBlock(long offset, long compressedSize) throws IOException {
+      if (compressedSize > MAX_ARRAY_SIZE) {
+        throw new IOException("Data block of " + compressedSize + " bytes is too large to copy");
+      }
+
+      getBCFile();
+      InputStream in = fin;
+      if (in == null) {
+        throw new IOException("Stream for " + cacheId + " is not open yet");
+      }
+
+      byte[] buf = new byte[(int) compressedSize];
+      PositionedReads.readFully(in, offset, buf, 0, buf.length);
+      return buf;
+    }
+
+    private boolean isDataBlockCached(long offset) {
+      CacheEntry ce = _dCache.getBlock(cacheId + "R" + offset);
+      if (ce == null)
+        return false;
+      ce.release();
+      return true;
+    }
+
     @Override
     public synchronized void close() throws IOException {
       if (closed)
@@ -476,6 +612,9 @@ public class CachableBlockFile {
 
   public static class CachedBlockRead extends DataInputStream {
     private SeekableByteArrayInputStream seekableInput;
+    // set instead of seekableInput when the cached block is not stored on the Java heap
+    private SeekableByteBufferInputStream bufferInput;
+    private byte[] bufferCopy;
     private final CacheEntry cb;
     boolean indexable;
 
@@ -490,18 +629,45 @@ public class CachableBlockFile {
       this(new SeekableByteArrayInputStream(buf), cb);
     }
 
-    private CachedBlockRead(SeekableByteArrayInputStream seekableInput, CacheEntry cb) {
-      super(seekableInput);
-      this.seekableInput = seekableInput;
+    /**
+     * Reads a cached block. If the block is stored outside of the Java heap it is read in place,
+     * otherwise its byte array is read.
+     */
+    public CachedBlockRead(CacheEntry cb) {
+      this(openCacheEntry(cb), cb);
+    }
+
+    private static InputStream openCacheEntry(CacheEntry cb) {
+      ByteBuffer bb = cb.getByteBuffer();
+      if (bb.isDirect()) {
+        return new SeekableByteBufferInputStream(bb);
+      }
+      return new SeekableByteArrayInputStream(cb.getBuffer());
+    }
+
+    private CachedBlockRead(InputStream input, CacheEntry cb) {
+      super(input);
+      if (input instanceof SeekableByteBufferInputStream) {
+        this.bufferInput = (SeekableByteBufferInputStream) input;
+      } else {
+        this.seekableInput = (SeekableByteArrayInputStream) input;
+      }
       this.cb = cb;
       indexable = true;
     }
 
     public void seek(int position) {
-      seekableInput.seek(position);
+      if (bufferInput != null) {
+        bufferInput.seek(position);
+      } else {
+        seekableInput.seek(position);
+      }
     }
 
     public int getPosition() {
+      if (bufferInput != null) {
+        return bufferInput.getPosition();
+      }
       return seekableInput.getPosition();
     }
 
@@ -509,10 +675,36 @@ public class CachableBlockFile {
       return indexable;
     }
 
+    /**
+     * Returns the array backing this block. For blocks stored outside of the Java heap this is a
+     * copy that is made the first time this method is called.
+     */
     public byte[] getBuffer() {
+      if (bufferInput != null) {
+        if (bufferCopy == null) {
+          bufferCopy = bufferInput.copyBuffer();
+        }
+        return bufferCopy;
+      }
       return seekableInput.getBuffer();
     }
 
+    /**
+     * @return true if {@link #getBuffer()} returns a heap copy of the block rather than the array
+     *         the cache holds, so anything keeping the array keeps memory the cache does not count
+     */
+    public boolean isBufferCopy() {
+      return bufferInput != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      if (cb != null) {
+        cb.release();
+      }
+    }
+
     public <T extends Weighable> T getIndex(Supplier<T> indexSupplier) {
       return cb.getIndex(indexSupplier);
     }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The same as {@link SeekableByteArrayInputStream}, but reads from a byte buffer. This allows
+ * reading blocks that are stored outside of the Java heap without copying them.
+ */
+public class SeekableByteBufferInputStream extends InputStream {
+
+  private final ByteBuffer buffer;
+
+  public SeekableByteBufferInputStream(ByteBuffer buf) {
+    requireNonNull(buf, "buf argument was null");
+    this.buffer = buf.duplicate();
+    this.buffer.position(0);
+  }
+
+  @Override
+  public int read() {
+    if (buffer.hasRemaining()) {
+      return buffer.get() & 0xff;
+    } else {
+      return -1;
+    }
+  }
+
+  @Override
+  public int read(byte[] b, int offset, int length) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+
+    if (length < 0 || offset < 0 || length > b.length - offset) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    if (length == 0) {
+      return 0;
+    }
+
+    int avail = buffer.remaining();
+
+    if (avail <= 0) {
+      return -1;
+    }
+
+    if (length > avail) {
+      length = avail;
+    }
+
+    buffer.get(b, offset, length);
+    return length;
+  }
+
+  @Override
+  public long skip(long requestedSkip) {
+    int actualSkip = buffer.remaining();
+    if (requestedSkip < actualSkip)
+      if (requestedSkip < 0)
+        actualSkip = 0;
+      else
+        actualSkip = (int) requestedSkip;
+
+    buffer.position(buffer.position() + actualSkip);
+    return actualSkip;
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readAheadLimit) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public synchronized void reset() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() throws IOException {}
+
+  public void seek(int position) {
+    if (position < 0 || position >= buffer.limit())
+      throw new IllegalArgumentException(
+          "position = " + position + " maxOffset = " + buffer.limit());
+    buffer.position(position);
+  }
+
+  public int getPosition() {
+    return buffer.position();
+  }
+
+  /**
+   * @return a copy of all the data in the buffer
+   */
+  byte[] copyBuffer() {
+    byte[] copy = new byte[buffer.limit()];
+    buffer.duplicate().position(0).get(copy);
+    return copy;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.keyfunctor;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Range;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.bloom.Key;
+
+/**
+ * Puts a fixed length prefix of each row in the bloom filter, so seeks to a range whose rows all
+ * share one prefix, such as one made with {@link Range#prefix(Text)}, can skip files that do not
+ * have the prefix. Rows shorter than the prefix length are added whole.
+ *
+ * <p>
+ * The prefix length comes from {@code table.bloom.key.prefix.length} when a file is written and is
+ * stored with the file's bloom filter. This functor can only be used with the {@code blocked}
+ * bloom filter type.
+ */
+public class RowPrefixFunctor implements KeyFunctor {
+
+  private int prefixLength;
+
+  public RowPrefixFunctor() {
+    this(8);
+  }
+
+  public RowPrefixFunctor(int prefixLength) {
+    setPrefixLength(prefixLength);
+  }
+
+  public int getPrefixLength() {
+    return prefixLength;
+  }
+
+  public void setPrefixLength(int prefixLength) {
+    if (prefixLength <= 0) {
+      throw new IllegalArgumentException("prefix length must be positive : " + prefixLength);
+    }
+    this.prefixLength = prefixLength;
+  }
+
+  @Override
+  public Key transform(org.apache.accumulo.core.data.Key acuKey) {
+    ByteSequence row = acuKey.getRowData();
+    int len = Math.min(row.length(), prefixLength);
+    byte[] keyData = new byte[len];
+    System.arraycopy(row.getBackingArray(), row.offset(), keyData, 0, len);
+    return new Key(keyData, 1.0);
+  }
+
+  @Override
+  public Key transform(Range range) {
+    if (range.getStartKey() == null || range.getEndKey() == null) {
+      return null;
+    }
+
+    ByteSequence startRow = range.getStartKey().getRowData();
+    if (startRow.length() < prefixLength) {
+      return null;
+    }
+    ByteSequence prefix = startRow.subSequence(0, prefixLength);
+
+    ByteSequence endRow = range.getEndKey().getRowData();
+    if (endRow.length() >= prefixLength && endRow.subSequence(0, prefixLength).equals(prefix)) {
+      // every row between two rows with the same prefix has that prefix
+      return transform(range.getStartKey());
+    }
+
+    // the range ends right before the first row after the prefix, like the ranges Range.prefix()
+    // creates
+    Text following = Range.followingPrefix(new Text(prefix.toArray()));
+    if (following != null && !range.isEndKeyInclusive()
+        && range.getEndKey().equals(new org.apache.accumulo.core.data.Key(following))) {
+      return transform(range.getStartKey());
+    }
+
+    return null;
+  }
+}
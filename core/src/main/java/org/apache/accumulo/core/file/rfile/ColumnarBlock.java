@@ -0,0 +1,424 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.rfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.blockfile.cache.impl.ClassSize;
+import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile.CachedBlockRead;
+import org.apache.accumulo.core.spi.cache.CacheEntry.Weighable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A data block whose key fields and values are stored as separate streams, so each stream holds
+ * similar data and compresses well. In order, a block holds:
+ *
+ * <ul>
+ * <li>the number of entries
+ * <li>rows as runs of equal rows, each run prefix encoded against the previous run's row
+ * <li>column families as a dictionary followed by runs of dictionary indexes
+ * <li>column qualifiers, each prefix encoded against the previous qualifier
+ * <li>column visibilities as a dictionary followed by runs of dictionary indexes
+ * <li>the first timestamp followed by the difference of each timestamp from the previous one
+ * <li>delete flags as alternating runs of live and deleted entries, starting with live
+ * <li>the length of each value
+ * <li>the bytes of all values
+ * </ul>
+ *
+ * <p>
+ * A block is decoded all at once. When it comes from the block cache the decoded form is kept with
+ * the cached block, so later reads of the block decode nothing. Values are not copied out of the
+ * block until they are asked for.
+ */
+class ColumnarBlock implements Weighable {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private int numEntries;
+  private byte[][] rows;
+  private byte[][] families;
+  private byte[][] qualifiers;
+  private byte[][] visibilities;
+  private long[] timestamps;
+  private boolean[] deleted;
+  private int[] valueOffsets;
+  private byte[] valueData;
+  private int weight;
+  private volatile boolean decoded = false;
+
+  /**
+   * Gets the decoded form of a block, decoding it if it has not been already.
+   */
+  static ColumnarBlock read(CachedBlockRead block) throws IOException {
+    if (block.isIndexable()) {
+      ColumnarBlock cached = block.getIndex(ColumnarBlock::new);
+      if (cached != null) {
+        if (cached.decodeOnce(block)) {
+          block.indexWeightChanged();
+        }
+        return cached;
+      }
+    }
+
+    ColumnarBlock columnarBlock = new ColumnarBlock();
+    columnarBlock.decode(block);
+    return columnarBlock;
+  }
+
+  private boolean decodeOnce(CachedBlockRead block) throws IOException {
+    if (decoded) {
+      return false;
+    }
+    synchronized (this) {
+      if (decoded) {
+        return false;
+      }
+      decode(block);
+      return true;
+    }
+  }
+
+  private void decode(CachedBlockRead in) throws IOException {
+    int count = WritableUtils.readVInt(in);
+    long size = ClassSize.OBJECT + 8L * ClassSize.ARRAY;
+
+    rows = new byte[count][];
+    int pos = 0;
+    int runs = WritableUtils.readVInt(in);
+    byte[] row = EMPTY;
+    for (int i = 0; i < runs; i++) {
+      int runLength = WritableUtils.readVInt(in);
+      row = readPrefixed(in, row);
+      size += row.length;
+      for (int j = 0; j < runLength; j++) {
+        rows[pos++] = row;
+      }
+    }
+
+    families = new byte[count][];
+    size += readDictionaryRuns(in, families);
+
+    qualifiers = new byte[count][];
+    byte[] qualifier = EMPTY;
+    for (int i = 0; i < count; i++) {
+      byte[] next = readPrefixed(in, qualifier);
+      if (next != qualifier) {
+        size += next.length;
+      }
+      qualifier = next;
+      qualifiers[i] = qualifier;
+    }
+
+    visibilities = new byte[count][];
+    size += readDictionaryRuns(in, visibilities);
+
+    timestamps = new long[count];
+    long ts = 0;
+    for (int i = 0; i < count; i++) {
+      ts += WritableUtils.readVLong(in);
+      timestamps[i] = ts;
+    }
+
+    deleted = new boolean[count];
+    runs = WritableUtils.readVInt(in);
+    pos = 0;
+    for (int i = 0; i < runs; i++) {
+      int runLength = WritableUtils.readVInt(in);
+      boolean runDeleted = (i & 1) == 1;
+      for (int j = 0; j < runLength; j++) {
+        deleted[pos++] = runDeleted;
+      }
+    }
+
+    valueOffsets = new int[count + 1];
+    for (int i = 0; i < count; i++) {
+      valueOffsets[i + 1] = valueOffsets[i] + WritableUtils.readVInt(in);
+    }
+
+    // only count memory allocated here, values read in place belong to the cached block
+    int valueLength = valueOffsets[count];
+    if (in.isIndexable()) {
+      // refer to the values in place instead of copying them
+      int start = in.getPosition();
+      valueData = in.getBuffer();
+      if (in.isBufferCopy()) {
+        // the block is cached off heap, so the heap copy of it is only kept alive by this block
+        size += ClassSize.ARRAY + valueData.length;
+      }
+      for (int i = 0; i <= count; i++) {
+        valueOffsets[i] += start;
+      }
+      in.skipBytes(valueLength);
+    } else {
+      valueData = new byte[valueLength];
+      in.readFully(valueData);
+      size += ClassSize.ARRAY + valueLength;
+    }
+
+    size += (long) count * (4 * ClassSize.REFERENCE + Long.BYTES + 1 + Integer.BYTES);
+    weight = (int) Math.min(Integer.MAX_VALUE, size);
+    numEntries = count;
+    decoded = true;
+  }
+
+  private static byte[] readPrefixed(DataInput in, byte[] prev) throws IOException {
+    int prefix = WritableUtils.readVInt(in);
+    int suffix = WritableUtils.readVInt(in);
+    if (suffix == 0 && prefix == prev.length) {
+      return prev;
+    }
+    byte[] data = new byte[prefix + suffix];
+    System.arraycopy(prev, 0, data, 0, prefix);
+    in.readFully(data, prefix, suffix);
+    return data;
+  }
+
+  private static long readDictionaryRuns(DataInput in, byte[][] dest) throws IOException {
+    long size = 0;
+    byte[][] dictionary = new byte[WritableUtils.readVInt(in)][];
+    for (int i = 0; i < dictionary.length; i++) {
+      dictionary[i] = new byte[WritableUtils.readVInt(in)];
+      in.readFully(dictionary[i]);
+      size += dictionary[i].length + ClassSize.ARRAY;
+    }
+
+    int runs = WritableUtils.readVInt(in);
+    int pos = 0;
+    for (int i = 0; i < runs; i++) {
+      byte[] data = dictionary[WritableUtils.readVInt(in)];
+      int runLength = WritableUtils.readVInt(in);
+      for (int j = 0; j < runLength; j++) {
+        dest[pos++] = data;
+      }
+    }
+    return size;
+  }
+
+  int size() {
+    return numEntries;
+  }
+
+  /**
+   * @return a new key object for the entry at the given position. Its fields share the decoded
+   *         arrays, which must not be changed.
+   */
+  Key getKey(int i) {
+    return new Key(rows[i], families[i], qualifiers[i], visibilities[i], timestamps[i], deleted[i],
+        false);
+  }
+
+  Value getValue(int i) {
+    return new Value(valueData, valueOffsets[i], valueOffsets[i + 1] - valueOffsets[i]);
+  }
+
+  /**
+   * @return the position of the first entry at or after the given position whose key is greater
+   *         than or equal to the given key, or {@link #size()} if there is none
+   */
+  int seek(Key key, int from) {
+    int low = from;
+    int high = numEntries;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getKey(mid).compareTo(key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public int weight() {
+    return weight;
+  }
+
+  /**
+   * Buffers the entries of a block until it is written.
+   */
+  static class Writer {
+    private final List<Key> keys = new ArrayList<>();
+    private final List<Value> values = new ArrayList<>();
+    private long rawSize = 0;
+
+    void append(Key key, Value value) {
+      Key prev = keys.isEmpty() ? null : keys.get(keys.size() - 1);
+      keys.add(key);
+      values.add(value);
+
+      // estimate what the entry adds to the encoded block, so blocks end up about as large as
+      // relatively encoded blocks
+      if (prev == null) {
+        rawSize += key.getSize() + 8;
+      } else {
+        rawSize += estimateSize(prev.getRowData(), key.getRowData(), true);
+        rawSize += estimateSize(prev.getColumnFamilyData(), key.getColumnFamilyData(), false);
+        rawSize += estimateSize(prev.getColumnQualifierData(), key.getColumnQualifierData(), true);
+        rawSize +=
+            estimateSize(prev.getColumnVisibilityData(), key.getColumnVisibilityData(), false);
+        rawSize += WritableUtils.getVIntSize(key.getTimestamp() - prev.getTimestamp());
+      }
+      rawSize += WritableUtils.getVIntSize(value.getSize()) + value.getSize();
+    }
+
+    private static int estimateSize(ByteSequence prev, ByteSequence data, boolean prefixed) {
+      if (prev.equals(data)) {
+        return 0;
+      }
+      int prefix = 0;
+      if (prefixed) {
+        int max = Math.min(prev.length(), data.length());
+        while (prefix < max && prev.byteAt(prefix) == data.byteAt(prefix)) {
+          prefix++;
+        }
+      }
+      return data.length() - prefix + 2;
+    }
+
+    /**
+     * @return an estimate of the size of the buffered entries once encoded
+     */
+    long getRawSize() {
+      return rawSize;
+    }
+
+    void write(DataOutput out) throws IOException {
+      int count = keys.size();
+      WritableUtils.writeVInt(out, count);
+
+      List<Integer> runStarts = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        if (i == 0 || !keys.get(i).getRowData().equals(keys.get(i - 1).getRowData())) {
+          runStarts.add(i);
+        }
+      }
+      WritableUtils.writeVInt(out, runStarts.size());
+      ByteSequence prevRow = new ArrayByteSequence(EMPTY);
+      for (int r = 0; r < runStarts.size(); r++) {
+        int end = r + 1 < runStarts.size() ? runStarts.get(r + 1) : count;
+        ByteSequence row = keys.get(runStarts.get(r)).getRowData();
+        WritableUtils.writeVInt(out, end - runStarts.get(r));
+        writePrefixed(out, prevRow, row);
+        prevRow = row;
+      }
+
+      writeDictionaryRuns(out, Key::getColumnFamilyData);
+
+      ByteSequence prevQualifier = new ArrayByteSequence(EMPTY);
+      for (Key key : keys) {
+        ByteSequence qualifier = key.getColumnQualifierData();
+        writePrefixed(out, prevQualifier, qualifier);
+        prevQualifier = qualifier;
+      }
+
+      writeDictionaryRuns(out, Key::getColumnVisibilityData);
+
+      long prevTs = 0;
+      for (Key key : keys) {
+        WritableUtils.writeVLong(out, key.getTimestamp() - prevTs);
+        prevTs = key.getTimestamp();
+      }
+
+      List<Integer> deleteRuns = new ArrayList<>();
+      boolean runDeleted = false;
+      int runLength = 0;
+      for (Key key : keys) {
+        if (key.isDeleted() != runDeleted) {
+          deleteRuns.add(runLength);
+          runDeleted = !runDeleted;
+          runLength = 0;
+        }
+        runLength++;
+      }
+      deleteRuns.add(runLength);
+      WritableUtils.writeVInt(out, deleteRuns.size());
+      for (int length : deleteRuns) {
+        WritableUtils.writeVInt(out, length);
+      }
+
+      for (Value value : values) {
+        WritableUtils.writeVInt(out, value.getSize());
+      }
+      for (Value value : values) {
+        out.write(value.get(), 0, value.getSize());
+      }
+    }
+
+    private static void writePrefixed(DataOutput out, ByteSequence prev, ByteSequence data)
+        throws IOException {
+      int max = Math.min(prev.length(), data.length());
+      int prefix = 0;
+      while (prefix < max && prev.byteAt(prefix) == data.byteAt(prefix)) {
+        prefix++;
+      }
+      WritableUtils.writeVInt(out, prefix);
+      WritableUtils.writeVInt(out, data.length() - prefix);
+      out.write(data.getBackingArray(), data.offset() + prefix, data.length() - prefix);
+    }
+
+    private void writeDictionaryRuns(DataOutput out, Function<Key,ByteSequence> field)
+        throws IOException {
+      Map<ByteSequence,Integer> dictionary = new HashMap<>();
+      List<ByteSequence> entries = new ArrayList<>();
+      List<int[]> runs = new ArrayList<>();
+      for (Key key : keys) {
+        ByteSequence data = field.apply(key);
+        Integer index = dictionary.get(data);
+        if (index == null) {
+          index = entries.size();
+          dictionary.put(data, index);
+          entries.add(data);
+        }
+        int[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+        if (last != null && last[0] == index) {
+          last[1]++;
+        } else {
+          runs.add(new int[] {index, 1});
+        }
+      }
+
+      WritableUtils.writeVInt(out, entries.size());
+      for (ByteSequence data : entries) {
+        WritableUtils.writeVInt(out, data.length());
+        out.write(data.getBackingArray(), data.offset(), data.length());
+      }
+      WritableUtils.writeVInt(out, runs.size());
+      for (int[] run : runs) {
+        WritableUtils.writeVInt(out, run[0]);
+        WritableUtils.writeVInt(out, run[1]);
+      }
+    }
+
+    void clear() {
+      keys.clear();
+      values.clear();
+      rawSize = 0;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.rfile;
+
+/**
+ * How the keys and values in RFile data blocks are laid out.
+ */
+public enum DataBlockEncoding {
+  /**
+   * Each key is written relative to the previous key and followed by its value.
+   */
+  RELATIVE(0),
+  /**
+   * The rows, column families, qualifiers, visibilities, timestamps, delete flags and values of a
+   * block are each written as a separate stream. See {@link ColumnarBlock}.
+   */
+  COLUMNAR(1),
+  /**
+   * Like relative encoding, but every few entries a key is written in full and the block ends with
+   * the offsets of those keys, so seeks can binary search a block. See {@link RestartPoints}.
+   */
+  RESTART(2);
+
+  private final byte id;
+
+  DataBlockEncoding(int id) {
+    this.id = (byte) id;
+  }
+
+  byte getId() {
+    return id;
+  }
+
+  static DataBlockEncoding fromId(byte id) {
+    for (DataBlockEncoding encoding : values()) {
+      if (encoding.id == id) {
+        return encoding;
+      }
+    }
+    throw new IllegalArgumentException("Unknown data block encoding " + id);
+  }
+
+  /**
+   * Parses the value of
+   * {@link org.apache.accumulo.core.conf.Property#TABLE_FILE_DATA_BLOCK_ENCODING}.
+   */
+  public static DataBlockEncoding fromProperty(String value) {
+    return valueOf(value.trim().toUpperCase());
+  }
+}
@@ -34,6 +34,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -89,6 +90,10 @@ public class RFile {
 
   private static final int RINDEX_MAGIC = 0x20637474;
 
+  static final int RINDEX_VER_9 = 9; // Added support for data block encodings other than relative
+                                     // encoding. A byte naming the encoding of the data blocks
+                                     // follows the version. Files using relative encoding are still
+                                     // written as version 8, so that older readers can open them.
   static final int RINDEX_VER_8 = 8; // Added sample storage. There is a sample locality group for
                                      // each locality group. Sample are built using a Sampler and
                                      // sampler configuration. The Sampler and its configuration are
@@ -240,6 +245,47 @@ public class RFile {
 
     }
 
+    /**
+     * Adds the column family counts of another locality group with the same column families, whose
+     * blocks were copied into this one.
+     */
+    private void addColumnCounts(LocalityGroupMetadata other) {
+      if (columnFamilies == null) {
+        // no longer keeping track of column families
+        return;
+      }
+
+      if (other.columnFamilies == null) {
+        columnFamilies = null;
+        return;
+      }
+
+      for (Entry<ByteSequence,MutableLong> entry : other.columnFamilies.entrySet()) {
+        ByteSequence cf = entry.getKey();
+        MutableLong count = columnFamilies.get(cf);
+
+        if (count == null) {
+          if (!isDefaultLG) {
+            throw new IllegalArgumentException("invalid column family : " + cf);
+          }
+
+          if (previousColumnFamilies.contains(cf)) {
+            throw new IllegalArgumentException("Added column family \"" + cf
+                + "\" to default locality group that was in previous locality group");
+          }
+
+          if (columnFamilies.size() > Writer.MAX_CF_IN_DLG) {
+            columnFamilies = null;
+            return;
+          }
+          count = new MutableLong(0);
+          columnFamilies.put(cf, count);
+        }
+
+        count.add(entry.getValue().longValue());
+      }
+    }
+
     @Override
     public void readFields(DataInput in) throws IOException {
 
@@ -437,17 +483,34 @@ public class RFile {
 
     private SampleLocalityGroupWriter sample;
 
+    // buffers the entries of the current block when the blocks are columnar
+    private final ColumnarBlock.Writer columnarWriter;
+    // records where full keys are written when the blocks have restart points
+    private final RestartPoints.Writer restartWriter;
+    // the index entry of the last block copied from another file, held back until it is known
+    // whether it is the last block of the locality group
+    private IndexEntry copiedBlock = null;
+
     // Use windowed stats to fix ACCUMULO-4669
     private RollingStats keyLenStats = new RollingStats(2017);
     private double averageKeySize = 0;
 
     LocalityGroupWriter(BCFile.Writer fileWriter, long blockSize, long maxBlockSize,
-        LocalityGroupMetadata currentLocalityGroup, SampleLocalityGroupWriter sample) {
+        LocalityGroupMetadata currentLocalityGroup, SampleLocalityGroupWriter sample,
+        DataBlockEncoding encoding, int restartInterval) {
       this.fileWriter = fileWriter;
       this.blockSize = blockSize;
       this.maxBlockSize = maxBlockSize;
       this.currentLocalityGroup = currentLocalityGroup;
       this.sample = sample;
+      this.columnarWriter =
+          encoding == DataBlockEncoding.COLUMNAR ? new ColumnarBlock.Writer() : null;
+      this.restartWriter = encoding == DataBlockEncoding.RESTART
+          ? new RestartPoints.Writer(restartInterval) : null;
+    }
+
+    private long getBlockRawSize() {
+      return columnarWriter == null ? blockWriter.getRawSize() : columnarWriter.getRawSize();
     }
 
     private boolean isGiantKey(Key k) {
@@ -475,7 +538,7 @@ public class RFile {
 
       if (blockWriter == null) {
         blockWriter = fileWriter.prepareDataBlock();
-      } else if (blockWriter.getRawSize() > blockSize) {
+      } else if (getBlockRawSize() > blockSize) {
 
         // Look for a key that's short to put in the index, defining short as average or below.
         if (averageKeySize == 0) {
@@ -487,7 +550,7 @@ public class RFile {
         // shortened, it may not be below average.
         Key closeKey = KeyShortener.shorten(prevKey, key);
 
-        if ((closeKey.getSize() <= averageKeySize || blockWriter.getRawSize() > maxBlockSize)
+        if ((closeKey.getSize() <= averageKeySize || getBlockRawSize() > maxBlockSize)
             && !isGiantKey(closeKey)) {
           closeBlock(closeKey, false);
           blockWriter = fileWriter.prepareDataBlock();
@@ -496,7 +559,7 @@ public class RFile {
           // To constrain the growth of data blocks, we limit our worst case scenarios to closing
           // blocks if they reach the maximum configurable block size of Integer.MAX_VALUE.
           // 128 bytes added for metadata overhead
-        } else if (((long) key.getSize() + (long) value.getSize() + blockWriter.getRawSize() + 128L)
+        } else if (((long) key.getSize() + (long) value.getSize() + getBlockRawSize() + 128L)
             >= Integer.MAX_VALUE) {
           closeBlock(closeKey, false);
           blockWriter = fileWriter.prepareDataBlock();
@@ -505,22 +568,41 @@ public class RFile {
         }
       }
 
-      RelativeKey rk = new RelativeKey(lastKeyInBlock, key);
+      prevKey = new Key(key);
+
+      if (columnarWriter == null) {
+        Key relativeTo = lastKeyInBlock;
+        if (restartWriter != null && restartWriter.startEntry(blockWriter.getRawSize())) {
+          relativeTo = null;
+        }
+        RelativeKey rk = new RelativeKey(relativeTo, key);
 
-      rk.write(blockWriter);
-      value.write(blockWriter);
+        rk.write(blockWriter);
+        value.write(blockWriter);
+      } else {
+        columnarWriter.append(prevKey, new Value(value));
+      }
       entries++;
 
       keyLenStats.addValue(key.getSize());
 
-      prevKey = new Key(key);
       lastKeyInBlock = prevKey;
 
     }
 
     private void closeBlock(Key key, boolean lastBlock) throws IOException {
+      if (columnarWriter != null) {
+        columnarWriter.write(blockWriter);
+        columnarWriter.clear();
+      }
+      if (restartWriter != null) {
+        restartWriter.write(blockWriter);
+        restartWriter.clear();
+      }
       blockWriter.close();
 
+      addCopiedBlock();
+
       if (lastBlock)
         currentLocalityGroup.indexWriter.addLast(key, entries, blockWriter.getStartPos(),
             blockWriter.getCompressedSize(), blockWriter.getRawSize());
@@ -536,9 +618,58 @@ public class RFile {
       entries = 0;
     }
 
+    private void addCopiedBlock() throws IOException {
+      if (copiedBlock != null) {
+        currentLocalityGroup.indexWriter.add(copiedBlock.getKey(), copiedBlock.getNumEntries(),
+            copiedBlock.getOffset(), copiedBlock.getCompressedSize(), copiedBlock.getRawSize());
+        copiedBlock = null;
+      }
+    }
+
+    /**
+     * Copies the data blocks of a locality group of another file after the entries written so far.
+     */
+    void appendBlocks(LocalityGroupMetadata source, CachableBlockFile.Reader sourceBlocks)
+        throws IOException {
+      if (source.indexReader.size() == 0) {
+        return;
+      }
+
+      if (source.getFirstKey().compareTo(prevKey) < 0) {
+        throw new IllegalArgumentException("Blocks appended out-of-order.  First key "
+            + source.getFirstKey() + ", previous key " + prevKey);
+      }
+
+      if (blockWriter != null) {
+        closeBlock(lastKeyInBlock, false);
+      }
+
+      currentLocalityGroup.addColumnCounts(source);
+      if (currentLocalityGroup.getFirstKey() == null) {
+        currentLocalityGroup.setFirstKey(source.getFirstKey());
+      }
+
+      IndexIterator iter = source.indexReader.lookup(new Key());
+      while (iter.hasNext()) {
+        IndexEntry entry = iter.next();
+        byte[] block = sourceBlocks.getRawDataBlock(entry.getOffset(), entry.getCompressedSize());
+        long offset = fileWriter.appendRawDataBlock(block);
+        addCopiedBlock();
+        copiedBlock = new IndexEntry(entry.getKey(), entry.getNumEntries(), offset,
+            entry.getCompressedSize(), entry.getRawSize());
+      }
+
+      // the last index entry of a locality group is its last key
+      prevKey = new Key(source.indexReader.getLastKey());
+    }
+
     public void close() throws IOException {
       if (blockWriter != null) {
         closeBlock(lastKeyInBlock, true);
+      } else if (copiedBlock != null) {
+        currentLocalityGroup.indexWriter.addLast(copiedBlock.getKey(), copiedBlock.getNumEntries(),
+            copiedBlock.getOffset(), copiedBlock.getCompressedSize(), copiedBlock.getRawSize());
+        copiedBlock = null;
       }
 
       if (sample != null) {
@@ -574,6 +705,8 @@ public class RFile {
 
     private SamplerConfigurationImpl samplerConfig;
     private Sampler sampler;
+    private final DataBlockEncoding encoding;
+    private final int restartInterval;
 
     public Writer(BCFile.Writer bfw, int blockSize) throws IOException {
       this(bfw, blockSize, (int) DefaultConfiguration.getInstance()
@@ -582,6 +715,18 @@ public class RFile {
 
     public Writer(BCFile.Writer bfw, int blockSize, int indexBlockSize,
         SamplerConfigurationImpl samplerConfig, Sampler sampler) {
+      this(bfw, blockSize, indexBlockSize, samplerConfig, sampler, DataBlockEncoding.RELATIVE);
+    }
+
+    public Writer(BCFile.Writer bfw, int blockSize, int indexBlockSize,
+        SamplerConfigurationImpl samplerConfig, Sampler sampler, DataBlockEncoding encoding) {
+      this(bfw, blockSize, indexBlockSize, samplerConfig, sampler, encoding,
+          RestartPoints.DEFAULT_INTERVAL);
+    }
+
+    public Writer(BCFile.Writer bfw, int blockSize, int indexBlockSize,
+        SamplerConfigurationImpl samplerConfig, Sampler sampler, DataBlockEncoding encoding,
+        int restartInterval) {
       this.blockSize = blockSize;
       this.maxBlockSize = (long) (blockSize * MAX_BLOCK_MULTIPLIER);
       this.indexBlockSize = indexBlockSize;
@@ -589,6 +734,8 @@ public class RFile {
       previousColumnFamilies = new HashSet<>();
       this.samplerConfig = samplerConfig;
       this.sampler = sampler;
+      this.encoding = encoding;
+      this.restartInterval = restartInterval;
     }
 
     @Override
@@ -603,7 +750,12 @@ public class RFile {
       BlockAppender mba = fileWriter.prepareMetaBlock("RFile.index");
 
       mba.writeInt(RINDEX_MAGIC);
-      mba.writeInt(RINDEX_VER_8);
+      if (encoding == DataBlockEncoding.RELATIVE) {
+        mba.writeInt(RINDEX_VER_8);
+      } else {
+        mba.writeInt(RINDEX_VER_9);
+        mba.writeByte(encoding.getId());
+      }
 
       if (currentLocalityGroup != null) {
         localityGroups.add(currentLocalityGroup);
@@ -658,6 +810,53 @@ public class RFile {
       lgWriter.append(key, value);
     }
 
+    /**
+     * @return true if {@link #appendBlocks(Reader)} can be used, which requires that this file is
+     *         not sampled or encrypted
+     */
+    public boolean canAppendBlocks() {
+      return sampler == null && fileWriter.supportsRawDataBlocks();
+    }
+
+    /**
+     * Copies the data blocks of the same locality group of another RFile, as they are stored, after
+     * the entries written so far. This avoids decoding and encoding each entry when combining files
+     * that hold disjoint, ordered ranges. The source must hold keys that sort after the ones
+     * written so far and must have been written with the same compression and data block encoding
+     * as this file, without encryption.
+     */
+    public void appendBlocks(Reader source) throws IOException {
+      if (dataClosed) {
+        throw new IllegalStateException("Cannont append, data closed");
+      }
+
+      if (lgWriter == null) {
+        throw new IllegalStateException("No locality group started");
+      }
+
+      if (!canAppendBlocks()) {
+        throw new IllegalStateException("Can not copy blocks into a sampled or encrypted file");
+      }
+
+      if (source.rfileVersion != RINDEX_VER_8 && source.rfileVersion != RINDEX_VER_9) {
+        throw new IllegalArgumentException("Can not copy blocks from RFile version "
+            + source.rfileVersion);
+      }
+
+      if (source.dataBlockEncoding != encoding) {
+        throw new IllegalArgumentException("Can not copy " + source.dataBlockEncoding
+            + " blocks into a file with " + encoding + " blocks");
+      }
+
+      for (LocalityGroupMetadata lgm : source.localityGroups) {
+        if (lgm.isDefaultLG == currentLocalityGroup.isDefaultLG
+            && Objects.equals(lgm.name, currentLocalityGroup.name)) {
+          lgWriter.appendBlocks(lgm, source.reader);
+          return;
+        }
+      }
+    }
+
     @Override
     public DataOutputStream createMetaStore(String name) throws IOException {
       closeData();
@@ -707,12 +906,11 @@ public class RFile {
 
       SampleLocalityGroupWriter sampleWriter = null;
       if (sampler != null) {
-        sampleWriter = new SampleLocalityGroupWriter(
-            new LocalityGroupWriter(fileWriter, blockSize, maxBlockSize, sampleLocalityGroup, null),
-            sampler);
+        sampleWriter = new SampleLocalityGroupWriter(new LocalityGroupWriter(fileWriter, blockSize,
+            maxBlockSize, sampleLocalityGroup, null, encoding, restartInterval), sampler);
       }
       lgWriter = new LocalityGroupWriter(fileWriter, blockSize, maxBlockSize, currentLocalityGroup,
-          sampleWriter);
+          sampleWriter, encoding, restartInterval);
     }
 
     @Override
@@ -753,15 +951,22 @@ public class RFile {
     private boolean closed = false;
     private int version;
     private boolean checkRange = true;
+    // the file region of the last run of blocks prefetched
+    private long prefetchStart = -1;
+    private long prefetchEnd = -1;
+    private final boolean columnar;
+    private final boolean restarts;
 
     private LocalityGroupReader(CachableBlockFile.Reader reader, LocalityGroupMetadata lgm,
-        int version) {
+        int version, DataBlockEncoding encoding) {
       super(lgm.columnFamilies, lgm.isDefaultLG);
       this.firstKey = lgm.firstKey;
       this.index = lgm.indexReader;
       this.startBlock = lgm.startBlock;
       blockCount = index.size();
       this.version = version;
+      this.columnar = encoding == DataBlockEncoding.COLUMNAR;
+      this.restarts = encoding == DataBlockEncoding.RESTART;
 
       this.reader = reader;
 
@@ -775,6 +980,8 @@ public class RFile {
       this.blockCount = lgr.blockCount;
       this.reader = lgr.reader;
       this.version = lgr.version;
+      this.columnar = lgr.columnar;
+      this.restarts = lgr.restarts;
     }
 
     Iterator<IndexEntry> getIndex() throws IOException {
@@ -800,13 +1007,23 @@ public class RFile {
     private boolean hasTop = false;
     private AtomicBoolean interruptFlag;
 
+    // the decoded current block, the position of the top entry in it and the top key, used instead
+    // of rk when the data blocks are columnar
+    private ColumnarBlock colBlock;
+    private int colPos;
+    private Key colKey;
+
     @Override
     public Key getTopKey() {
-      return rk.getKey();
+      return columnar ? colKey : rk.getKey();
     }
 
     @Override
     public Value getTopValue() {
+      if (columnar && val == null) {
+        // values of columnar blocks are only copied out when asked for
+        val = colBlock.getValue(colPos);
+      }
       return val;
     }
 
@@ -818,7 +1035,10 @@ public class RFile {
     @Override
     public void next() throws IOException {
       try {
-        _next();
+        if (columnar)
+          _nextColumnar();
+        else
+          _next();
       } catch (IOException ioe) {
         reset();
         throw ioe;
@@ -830,27 +1050,8 @@ public class RFile {
       if (!hasTop)
         throw new IllegalStateException();
 
-      if (entriesLeft == 0) {
-        currBlock.close();
-        if (metricsGatherer != null)
-          metricsGatherer.startBlock();
-
-        if (iiter.hasNext()) {
-          IndexEntry indexEntry = iiter.next();
-          entriesLeft = indexEntry.getNumEntries();
-          currBlock = getDataBlock(indexEntry);
-
-          checkRange = range.afterEndKey(indexEntry.getKey());
-          if (!checkRange)
-            hasTop = true;
-
-        } else {
-          rk = null;
-          val = null;
-          hasTop = false;
-          return;
-        }
-      }
+      if (entriesLeft == 0 && !nextBlock())
+        return;
 
       prevKey = rk.getKey();
       rk.readFields(currBlock);
@@ -864,6 +1065,61 @@ public class RFile {
         hasTop = !range.afterEndKey(rk.getKey());
     }
 
+    private void _nextColumnar() throws IOException {
+
+      if (!hasTop)
+        throw new IllegalStateException();
+
+      if (entriesLeft == 0) {
+        if (!nextBlock())
+          return;
+        colBlock = ColumnarBlock.read(currBlock);
+        colPos = -1;
+      }
+
+      prevKey = colKey;
+      colPos++;
+      colKey = colBlock.getKey(colPos);
+      val = null;
+
+      if (metricsGatherer != null)
+        metricsGatherer.addMetric(colKey, getTopValue());
+
+      entriesLeft--;
+      if (checkRange)
+        hasTop = !range.afterEndKey(colKey);
+    }
+
+    /**
+     * Moves to the next data block, or clears the top entry if there are no more blocks.
+     *
+     * @return true if there is a next block
+     */
+    private boolean nextBlock() throws IOException {
+      currBlock.close();
+      if (metricsGatherer != null)
+        metricsGatherer.startBlock();
+
+      if (!iiter.hasNext()) {
+        rk = null;
+        colBlock = null;
+        colKey = null;
+        val = null;
+        hasTop = false;
+        return false;
+      }
+
+      IndexEntry indexEntry = iiter.next();
+      entriesLeft = indexEntry.getNumEntries();
+      currBlock = getDataBlock(indexEntry);
+
+      checkRange = range.afterEndKey(indexEntry.getKey());
+      if (!checkRange)
+        hasTop = true;
+
+      return true;
+    }
+
     private CachableBlockFile.CachedBlockRead getDataBlock(IndexEntry indexEntry)
         throws IOException {
       if (interruptFlag != null && interruptFlag.get())
@@ -871,10 +1127,63 @@ public class RFile {
 
       if (version == RINDEX_VER_3 || version == RINDEX_VER_4)
         return reader.getDataBlock(startBlock + iiter.previousIndex());
-      else
-        return reader.getDataBlock(indexEntry.getOffset(), indexEntry.getCompressedSize(),
-            indexEntry.getRawSize());
 
+      prefetchAdjacentBlocks(indexEntry);
+      return reader.getDataBlock(indexEntry.getOffset(), indexEntry.getCompressedSize(),
+          indexEntry.getRawSize());
+
+    }
+
+    /**
+     * When the current range extends past the block about to be read, fetches that block together
+     * with the following blocks the range covers in a single read, as long as they are stored next
+     * to each other in the file. Expects iiter to be positioned just after the given entry.
+     */
+    private void prefetchAdjacentBlocks(IndexEntry indexEntry) throws IOException {
+      long maxRead = reader.getMaxCoalescedRead();
+      if (maxRead <= 0 || range.afterEndKey(indexEntry.getKey()))
+        return;
+
+      // the blocks of the last run were already prefetched or found in the cache
+      if (indexEntry.getOffset() >= prefetchStart && indexEntry.getOffset() < prefetchEnd)
+        return;
+
+      List<IndexEntry> run = new ArrayList<>();
+      run.add(indexEntry);
+      long length = indexEntry.getCompressedSize();
+      long nextOffset = indexEntry.getOffset() + indexEntry.getCompressedSize();
+
+      int stepped = 0;
+      while (iiter.hasNext()) {
+        IndexEntry next = iiter.next();
+        stepped++;
+        if (next.getOffset() != nextOffset || length + next.getCompressedSize() > maxRead)
+          break;
+
+        run.add(next);
+        length += next.getCompressedSize();
+        nextOffset += next.getCompressedSize();
+
+        if (range.afterEndKey(next.getKey()))
+          break;
+      }
+
+      for (; stepped > 0; stepped--)
+        iiter.previous();
+
+      if (run.size() < 2)
+        return;
+
+      long[] compressedSizes = new long[run.size()];
+      long[] rawSizes = new long[run.size()];
+      for (int i = 0; i < run.size(); i++) {
+        compressedSizes[i] = run.get(i).getCompressedSize();
+        rawSizes[i] = run.get(i).getRawSize();
+      }
+
+      reader.prefetchDataBlocks(indexEntry.getOffset(), compressedSizes, rawSizes);
+      prefetchStart = indexEntry.getOffset();
+      prefetchEnd = nextOffset;
     }
 
     @Override
@@ -892,7 +1201,10 @@ public class RFile {
       }
 
       try {
-        _seek(range);
+        if (columnar)
+          _seekColumnar(range);
+        else
+          _seek(range);
       } catch (IOException ioe) {
         reset();
         throw ioe;
@@ -901,6 +1213,8 @@ public class RFile {
 
     private void reset() {
       rk = null;
+      colBlock = null;
+      colKey = null;
       hasTop = false;
       if (currBlock != null) {
         try {
@@ -1027,7 +1341,20 @@ public class RFile {
 
           Key currKey = null;
 
-          if (currBlock.isIndexable()) {
+          if (currBlock.isIndexable() && restarts) {
+            // binary search the restart points instead of building a block index
+            RestartPoints.Restart restart = RestartPoints.seek(currBlock, startKey);
+            if (restart != null) {
+              val = restart.value;
+              valbs = new MutableByteSequence(val.get(), 0, val.getSize());
+
+              // the restart entry was consumed, and it sorts before the start key so fastSkip will
+              // move past it and replace prevKey
+              entriesLeft = indexEntry.getNumEntries() - restart.entry - 1;
+              prevKey = restart.key;
+              currKey = restart.key;
+            }
+          } else if (currBlock.isIndexable()) {
             BlockIndex blockIndex = BlockIndex.getIndex(currBlock, indexEntry);
             if (blockIndex != null) {
               BlockIndexEntry bie = blockIndex.seekBlock(startKey, currBlock);
@@ -1073,6 +1400,130 @@ public class RFile {
       }
     }
 
+    /**
+     * Seeks when the data blocks are columnar. Makes the same decisions about whether to reseek as
+     * {@link #_seek(Range)}, but positions within a block by binary searching the decoded block.
+     */
+    private void _seekColumnar(Range range) throws IOException {
+
+      this.range = range;
+      this.checkRange = true;
+
+      if (blockCount == 0) {
+        // its an empty file
+        colKey = null;
+        return;
+      }
+
+      Key startKey = range.getStartKey();
+      if (startKey == null)
+        startKey = new Key();
+
+      boolean reseek = true;
+
+      if (range.afterEndKey(firstKey)) {
+        // range is before first key in rfile, so there is nothing to do
+        reset();
+        reseek = false;
+      }
+
+      if (colKey != null) {
+        if (range.beforeStartKey(prevKey) && range.afterEndKey(colKey)) {
+          // range is between the two keys in the file where the last range seeked to stopped
+          reseek = false;
+        }
+
+        if (startKey.compareTo(colKey) <= 0 && startKey.compareTo(prevKey) > 0) {
+          // current location in file can satisfy this request, no need to seek
+          reseek = false;
+        }
+
+        if (entriesLeft > 0 && startKey.compareTo(colKey) >= 0
+            && startKey.compareTo(iiter.peekPrevious().getKey()) <= 0) {
+          // start key is within the unconsumed portion of the current block
+          positionInBlock(colBlock, colBlock.seek(startKey, colPos));
+          reseek = false;
+        }
+
+        if (entriesLeft == 0 && startKey.compareTo(colKey) > 0
+            && startKey.compareTo(iiter.peekPrevious().getKey()) <= 0) {
+          // in the empty space at the end of a block that shortened index keys can leave, just
+          // proceed to the next block
+          reseek = false;
+        }
+
+        if (iiter.previousIndex() == 0 && colKey.equals(firstKey)
+            && startKey.compareTo(firstKey) <= 0) {
+          // seeking before the beginning of the file, and already positioned at the first key in
+          // the file so there is nothing to do
+          reseek = false;
+        }
+      }
+
+      if (reseek) {
+        iiter = index.lookup(startKey);
+
+        reset();
+
+        if (iiter.hasNext()) {
+
+          // if the index contains the same key multiple times, then go to the
+          // earliest index entry containing the key
+          while (iiter.hasPrevious()
+              && iiter.peekPrevious().getKey().equals(iiter.peek().getKey())) {
+            iiter.previous();
+          }
+
+          if (iiter.hasPrevious())
+            prevKey = new Key(iiter.peekPrevious().getKey());
+          else
+            prevKey = new Key();
+
+          IndexEntry indexEntry = iiter.next();
+          currBlock = getDataBlock(indexEntry);
+
+          checkRange = range.afterEndKey(indexEntry.getKey());
+          if (!checkRange)
+            hasTop = true;
+
+          ColumnarBlock block = ColumnarBlock.read(currBlock);
+          colPos = -1;
+          entriesLeft = indexEntry.getNumEntries();
+          // set colBlock when everything above is successful
+          positionInBlock(block, block.seek(startKey, 0));
+        }
+      }
+
+      hasTop = colKey != null && !range.afterEndKey(colKey);
+
+      while (hasTop() && range.beforeStartKey(getTopKey())) {
+        next();
+      }
+
+      if (metricsGatherer != null) {
+        metricsGatherer.startLocalityGroup(colKey.getColumnFamily());
+        metricsGatherer.addMetric(colKey, getTopValue());
+      }
+    }
+
+    /**
+     * Moves forward to the given position in the current columnar block. When the position is past
+     * the end of the block, stays on the last entry so that the next call to next() moves on to the
+     * following block.
+     */
+    private void positionInBlock(ColumnarBlock block, int pos) {
+      pos = Math.min(pos, block.size() - 1);
+      if (pos > colPos) {
+        if (pos > 0)
+          prevKey = block.getKey(pos - 1);
+        entriesLeft -= pos - colPos;
+        colBlock = block;
+        colPos = pos;
+        colKey = block.getKey(pos);
+        val = null;
+      }
+    }
+
     @Override
     public Key getFirstKey() {
       return firstKey;
@@ -1143,12 +1594,15 @@ public class RFile {
 
     private List<Reader> deepCopies;
     private boolean deepCopy = false;
+    // true when the block file is owned by another reader that this one was shared from
+    private boolean sharedBlockFile = false;
 
     private AtomicBoolean interruptFlag;
 
     private SamplerConfigurationImpl samplerConfig = null;
 
     private int rfileVersion;
+    private DataBlockEncoding dataBlockEncoding;
 
     public Reader(CachableBlockFile.Reader rdr) throws IOException {
       this.reader = rdr;
@@ -1161,10 +1615,21 @@ public class RFile {
 
         if (magic != RINDEX_MAGIC)
           throw new IOException("Did not see expected magic number, saw " + magic);
-        if (ver != RINDEX_VER_8 && ver != RINDEX_VER_7 && ver != RINDEX_VER_6 && ver != RINDEX_VER_4
-            && ver != RINDEX_VER_3)
+        if (ver != RINDEX_VER_9 && ver != RINDEX_VER_8 && ver != RINDEX_VER_7 && ver != RINDEX_VER_6
+            && ver != RINDEX_VER_4 && ver != RINDEX_VER_3)
           throw new IOException("Did not see expected version, saw " + ver);
 
+        if (ver == RINDEX_VER_9) {
+          byte encodingId = mb.readByte();
+          try {
+            dataBlockEncoding = DataBlockEncoding.fromId(encodingId);
+          } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+          }
+        } else {
+          dataBlockEncoding = DataBlockEncoding.RELATIVE;
+        }
+
         int size = mb.readInt();
         currentReaders = new LocalityGroupReader[size];
 
@@ -1175,12 +1640,12 @@ public class RFile {
           lgm.readFields(mb);
           localityGroups.add(lgm);
 
-          currentReaders[i] = new LocalityGroupReader(reader, lgm, ver);
+          currentReaders[i] = new LocalityGroupReader(reader, lgm, ver, dataBlockEncoding);
         }
 
         readers = currentReaders;
 
-        if (ver == RINDEX_VER_8 && mb.readBoolean()) {
+        if ((ver == RINDEX_VER_8 || ver == RINDEX_VER_9) && mb.readBoolean()) {
           sampleReaders = new LocalityGroupReader[size];
 
           for (int i = 0; i < size; i++) {
@@ -1188,7 +1653,7 @@ public class RFile {
             lgm.readFields(mb);
             sampleGroups.add(lgm);
 
-            sampleReaders[i] = new LocalityGroupReader(reader, lgm, ver);
+            sampleReaders[i] = new LocalityGroupReader(reader, lgm, ver, dataBlockEncoding);
           }
 
           samplerConfig = new SamplerConfigurationImpl(mb);
@@ -1216,6 +1681,7 @@ public class RFile {
       this.sampleReaders = r.sampleReaders;
       this.samplerConfig = r.samplerConfig;
       this.rfileVersion = r.rfileVersion;
+      this.dataBlockEncoding = r.dataBlockEncoding;
       for (int i = 0; i < sampleReaders.length; i++) {
         this.currentReaders[i] = sampleReaders[i];
         this.currentReaders[i].setInterruptFlag(r.interruptFlag);
@@ -1231,6 +1697,7 @@ public class RFile {
       this.deepCopy = true;
       this.samplerConfig = r.samplerConfig;
       this.rfileVersion = r.rfileVersion;
+      this.dataBlockEncoding = r.dataBlockEncoding;
       this.readers = r.readers;
       this.sampleReaders = r.sampleReaders;
 
@@ -1247,6 +1714,35 @@ public class RFile {
       this.lgContext = new LocalityGroupContext(currentReaders);
     }
 
+    private Reader(Reader r) {
+      super(r.readers.length);
+      this.reader = r.reader;
+      this.localityGroups.addAll(r.localityGroups);
+      this.sampleGroups.addAll(r.sampleGroups);
+      this.deepCopies = new LinkedList<>();
+      this.sharedBlockFile = true;
+      this.samplerConfig = r.samplerConfig;
+      this.rfileVersion = r.rfileVersion;
+      this.dataBlockEncoding = r.dataBlockEncoding;
+
+      this.currentReaders = new LocalityGroupReader[r.readers.length];
+      for (int i = 0; i < r.readers.length; i++) {
+        this.currentReaders[i] = new LocalityGroupReader(r.readers[i]);
+      }
+      this.readers = currentReaders;
+
+      if (r.sampleReaders != null) {
+        this.sampleReaders = new LocalityGroupReader[r.sampleReaders.length];
+        for (int i = 0; i < r.sampleReaders.length; i++) {
+          this.sampleReaders[i] = new LocalityGroupReader(r.sampleReaders[i]);
+        }
+      } else {
+        this.sampleReaders = null;
+      }
+
+      this.lgContext = new LocalityGroupContext(currentReaders);
+    }
+
     public Reader(CachableBlockFile.CachableBuilder b) throws IOException {
       this(new CachableBlockFile.Reader(b));
     }
@@ -1290,6 +1786,9 @@ public class RFile {
         }
       }
 
+      if (sharedBlockFile)
+        return;
+
       try {
         reader.close();
       } finally {
@@ -1299,6 +1798,21 @@ public class RFile {
       }
     }
 
+    /**
+     * Returns a reader with its own position, deep copies, and interrupt flag that shares this
+     * reader's open block file and index. Blocks are read from the file with positioned reads, so
+     * the returned reader may be used by another thread concurrently with this one. Closing the
+     * returned reader does not close the underlying file, so this reader must not be closed until
+     * every shared reader is done with it.
+     */
+    @Override
+    public FileSKVIterator newSharedReader() {
+      if (deepCopy)
+        throw new RuntimeException("Calling newSharedReader on a deep copy is not supported");
+
+      return new Reader(this);
+    }
+
     @Override
     public Key getFirstKey() throws IOException {
       if (currentReaders.length == 0) {
@@ -1475,6 +1989,7 @@ public class RFile {
     public void printInfo(boolean includeIndexDetails) throws IOException {
 
       System.out.printf("%-24s : %d\n", "RFile Version", rfileVersion);
+      System.out.printf("%-24s : %s\n", "Data block encoding", dataBlockEncoding);
       System.out.println();
 
       for (LocalityGroupMetadata lgm : localityGroups) {
@@ -45,11 +45,15 @@ public class RFileOperations extends FileOperations {
   private static final Collection<ByteSequence> EMPTY_CF_SET = Collections.emptySet();
 
   private static RFile.Reader getReader(FileOptions options) throws IOException {
+    AccumuloConfiguration acuconf = options.getTableConfiguration();
     CachableBuilder cb =
         new CachableBuilder().fsPath(options.getFileSystem(), new Path(options.getFilename()))
             .conf(options.getConfiguration()).fileLen(options.getFileLenCache())
             .data(options.getDataCache()).index(options.getIndexCache())
             .readLimiter(options.getRateLimiter()).cryptoService(options.getCryptoService());
+    if (acuconf != null) {
+      cb.coalescedReads(acuconf.getAsBytes(Property.TABLE_FILE_READ_COALESCE_MAX));
+    }
     return new RFile.Reader(cb);
   }
 
@@ -132,6 +136,10 @@ public class RFileOperations extends FileOperations {
     BCFile.Writer _cbw = new BCFile.Writer(outputStream, options.getRateLimiter(), compression,
         conf, options.cryptoService);
 
-    return new RFile.Writer(_cbw, (int) blockSize, (int) indexBlockSize, samplerConfig, sampler);
+    DataBlockEncoding encoding =
+        DataBlockEncoding.fromProperty(acuconf.get(Property.TABLE_FILE_DATA_BLOCK_ENCODING));
+
+    return new RFile.Writer(_cbw, (int) blockSize, (int) indexBlockSize, samplerConfig, sampler,
+        encoding, acuconf.getCount(Property.TABLE_FILE_DATA_BLOCK_RESTART_INTERVAL));
   }
 }
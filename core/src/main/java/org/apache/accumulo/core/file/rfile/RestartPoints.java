@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.rfile;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile.CachedBlockRead;
+
+/**
+ * The restart points of a data block written with {@link DataBlockEncoding#RESTART}. Entries are
+ * written as {@link RelativeKey}s followed by values, like relative encoding, except that every
+ * interval'th entry is written in full instead of relative to the previous key. After the last
+ * entry, a block holds:
+ *
+ * <ul>
+ * <li>the offset in the block of each restart entry, as an int
+ * <li>the restart interval, as an int
+ * <li>the number of restart points, as an int
+ * </ul>
+ *
+ * <p>
+ * A restart entry can be decoded without the keys before it, so a seek within a block can binary
+ * search the restart entries and then read forward from the closest one. Reading a block from start
+ * to end works the same as for relative encoding, and stops before the restart points since the
+ * index records how many entries a block has.
+ */
+class RestartPoints {
+
+  static final int DEFAULT_INTERVAL = 16;
+
+  private static final int TRAILER_SIZE = 2 * Integer.BYTES;
+
+  /**
+   * Records the restart points of a block while it is written.
+   */
+  static class Writer {
+    private final int interval;
+    private int[] offsets = new int[64];
+    private int count = 0;
+    private int entries = 0;
+
+    Writer(int interval) {
+      if (interval <= 0) {
+        throw new IllegalArgumentException("restart interval must be positive : " + interval);
+      }
+      this.interval = interval;
+    }
+
+    /**
+     * Called before each entry is written to the block.
+     *
+     * @param blockPos
+     *          the number of bytes written to the block so far
+     * @return true if the entry must be written in full
+     */
+    boolean startEntry(long blockPos) {
+      boolean restart = entries % interval == 0;
+      if (restart) {
+        if (count == offsets.length) {
+          offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = (int) blockPos;
+      }
+      entries++;
+      return restart;
+    }
+
+    void write(DataOutput out) throws IOException {
+      for (int i = 0; i < count; i++) {
+        out.writeInt(offsets[i]);
+      }
+      out.writeInt(interval);
+      out.writeInt(count);
+    }
+
+    void clear() {
+      count = 0;
+      entries = 0;
+    }
+  }
+
+  /**
+   * A restart entry found by {@link RestartPoints#seek(CachedBlockRead, Key)}.
+   */
+  static class Restart {
+    final Key key;
+    final Value value;
+    // the position of the entry in the block
+    final int entry;
+
+    private Restart(Key key, Value value, int entry) {
+      this.key = key;
+      this.value = value;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * Finds the last restart entry whose row, column family and qualifier sort before the seek key,
+   * so reading forward from it reaches the first entry that can satisfy the seek. The block must be
+   * positioned at its start.
+   *
+   * @return the restart entry, with the block positioned after it, or null if the block should be
+   *         read from its start, with the block positioned at its start
+   */
+  static Restart seek(CachedBlockRead block, Key seekKey) throws IOException {
+    int start = block.getPosition();
+    int end = start + block.available();
+
+    if (end - start < TRAILER_SIZE) {
+      throw new IOException("Data block too small for restart points : " + (end - start));
+    }
+
+    block.seek(end - TRAILER_SIZE);
+    int interval = block.readInt();
+    int count = block.readInt();
+    int offsetsPos = end - TRAILER_SIZE - count * Integer.BYTES;
+    if (interval <= 0 || count < 0 || offsetsPos < start) {
+      throw new IOException(
+          "Invalid restart points, interval : " + interval + " count : " + count);
+    }
+
+    RelativeKey rk = new RelativeKey();
+    int low = 0;
+    int high = count - 1;
+    int found = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      readRestart(block, start, offsetsPos, mid, rk);
+      if (rk.getKey().compareTo(seekKey, PartialKey.ROW_COLFAM_COLQUAL) < 0) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    if (found == -1) {
+      block.seek(start);
+      return null;
+    }
+
+    readRestart(block, start, offsetsPos, found, rk);
+    Value value = new Value();
+    value.readFields(block);
+    return new Restart(rk.getKey(), value, found * interval);
+  }
+
+  private static void readRestart(CachedBlockRead block, int start, int offsetsPos, int restart,
+      RelativeKey rk) throws IOException {
+    block.seek(offsetsPos + restart * Integer.BYTES);
+    block.seek(start + block.readInt());
+    rk.setPrevKey(null);
+    rk.readFields(block);
+  }
+}
@@ -433,6 +433,39 @@ public final class BCFile {
       return ba;
     }
 
+    /**
+     * @return true if {@link #appendRawDataBlock(byte[])} can be used, which requires that this file
+     *         is not encrypted
+     */
+    public boolean supportsRawDataBlocks() {
+      return encrypter instanceof NoFileEncrypter;
+    }
+
+    /**
+     * Copies a data block from another unencrypted file, as it is stored, to the end of this file.
+     * The block must have been compressed with this file's compression algorithm. The same rules
+     * apply as for {@link #prepareDataBlock()}.
+     *
+     * @return the offset of the block in this file
+     */
+    public long appendRawDataBlock(byte[] block) throws IOException {
+      if (blkInProgress) {
+        throw new IllegalStateException("Cannot copy Data Block until previous block is closed.");
+      }
+
+      if (metaBlkSeen) {
+        throw new IllegalStateException("Cannot copy Data Block after Meta Blocks.");
+      }
+
+      if (!supportsRawDataBlocks()) {
+        throw new IllegalStateException("Cannot copy Data Block into an encrypted file.");
+      }
+
+      long start = out.position();
+      out.write(block);
+      return start;
+    }
+
     /**
      * Callback to make sure a meta block is added to the internal list when its stream is closed.
      */
@@ -478,16 +511,23 @@ public final class BCFile {
       public <InputStreamType extends InputStream & Seekable> RBlockState(Algorithm compressionAlgo,
           InputStreamType fsin, BlockRegion region, Configuration conf, FileDecrypter decrypter)
           throws IOException {
+        this(compressionAlgo, region,
+            new BoundedRangeFileInputStream(fsin, region.getOffset(), region.getCompressedSize()),
+            conf, decrypter);
+      }
+
+      /**
+       * @param compressed
+       *          the stored bytes of the block, starting at the beginning of the block
+       */
+      RBlockState(Algorithm compressionAlgo, BlockRegion region, InputStream compressed,
+          Configuration conf, FileDecrypter decrypter) throws IOException {
         this.compressAlgo = compressionAlgo;
         this.region = region;
         this.decompressor = compressionAlgo.getDecompressor();
 
-        BoundedRangeFileInputStream boundedRangeFileInputStream = new BoundedRangeFileInputStream(
-            fsin, this.region.getOffset(), this.region.getCompressedSize());
-
         try {
-          InputStream inputStreamToBeCompressed =
-              decrypter.decryptStream(boundedRangeFileInputStream);
+          InputStream inputStreamToBeCompressed = decrypter.decryptStream(compressed);
           this.in = compressAlgo.createDecompressionStream(inputStreamToBeCompressed, decompressor,
               getFSInputBufferSize(conf));
         } catch (IOException e) {
@@ -737,6 +777,23 @@ public final class BCFile {
       return createReader(dataIndex.getDefaultCompressionAlgorithm(), region);
     }
 
+    /**
+     * Access to a data block whose stored bytes were already read from the file, for example as
+     * part of a single read that covered several adjacent blocks.
+     *
+     * @param buf
+     *          holds the stored bytes of the block
+     * @param bufOffset
+     *          where the block starts in buf
+     */
+    public BlockReader getDataBlock(long offset, long compressedSize, long rawSize, byte[] buf,
+        int bufOffset) throws IOException {
+      BlockRegion region = new BlockRegion(offset, compressedSize, rawSize);
+      RBlockState rbs = new RBlockState(dataIndex.getDefaultCompressionAlgorithm(), region,
+          new ByteArrayInputStream(buf, bufOffset, (int) compressedSize), conf, decrypter);
+      return new BlockReader(rbs);
+    }
+
     public long getDataBlockRawSize(int blockIndex) {
       if (blockIndex < 0 || blockIndex >= getBlockCount()) {
         throw new IndexOutOfBoundsException(
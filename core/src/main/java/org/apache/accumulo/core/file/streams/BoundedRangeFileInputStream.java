@@ -19,17 +19,24 @@ package org.apache.accumulo.core.file.streams;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.hadoop.fs.PositionedReadable;
 import org.apache.hadoop.fs.Seekable;
 
 /**
  * BoundedRangeFIleInputStream abstracts a contiguous region of a Hadoop FSDataInputStream as a
  * regular input stream. One can create multiple BoundedRangeFileInputStream on top of the same
  * FSDataInputStream and they would not interfere with each other.
+ *
+ * <p>
+ * When the underlying stream supports positioned reads, reads do not move or lock the shared
+ * stream, so BoundedRangeFileInputStreams on the same stream can be read from different threads at
+ * once.
  */
 public class BoundedRangeFileInputStream extends InputStream {
 
   private volatile boolean closed = false;
   private final InputStream in;
+  private final boolean positionedReads;
   private long pos;
   private long end;
   private long mark;
@@ -55,6 +62,7 @@ public class BoundedRangeFileInputStream extends InputStream {
     }
 
     this.in = in;
+    this.positionedReads = PositionedReads.isSupported(in);
     this.pos = offset;
     this.end = offset + length;
     this.mark = -1;
@@ -88,13 +96,24 @@ public class BoundedRangeFileInputStream extends InputStream {
     if (n == 0)
       return -1;
     int ret = 0;
-    synchronized (in) {
-      // ensuring we are not closed which would be followed by someone else reusing the decompressor
-      if (closed) {
-        throw new IOException("Stream closed");
+    if (positionedReads) {
+      // the shared stream is not locked, this stream's monitor keeps close waiting for the read
+      synchronized (this) {
+        if (closed) {
+          throw new IOException("Stream closed");
+        }
+        ret = ((PositionedReadable) in).read(pos, b, off, n);
+      }
+    } else {
+      synchronized (in) {
+        // ensuring we are not closed which would be followed by someone else reusing the
+        // decompressor
+        if (closed) {
+          throw new IOException("Stream closed");
+        }
+        ((Seekable) in).seek(pos);
+        ret = in.read(b, off, n);
       }
-      ((Seekable) in).seek(pos);
-      ret = in.read(b, off, n);
     }
     if (ret < 0) {
       end = pos;
@@ -133,13 +152,16 @@ public class BoundedRangeFileInputStream extends InputStream {
 
   @Override
   public void close() {
-    // Synchronize on the FSDataInputStream to ensure we are blocked if in the read method:
-    // Once this close completes, the underlying decompression stream may be returned to
-    // the pool and subsequently used. Turns out this is a problem if currently using it to read.
+    // Synchronize on the FSDataInputStream, and on this stream for positioned reads, to ensure we
+    // are blocked if in the read method: Once this close completes, the underlying decompression
+    // stream may be returned to the pool and subsequently used. Turns out this is a problem if
+    // currently using it to read.
     if (!closed) {
-      synchronized (in) {
-        // Invalidate the state of the stream.
-        closed = true;
+      synchronized (this) {
+        synchronized (in) {
+          // Invalidate the state of the stream.
+          closed = true;
+        }
       }
     }
   }
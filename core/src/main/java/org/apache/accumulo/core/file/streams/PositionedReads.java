@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.streams;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSInputChecker;
+import org.apache.hadoop.fs.PositionedReadable;
+import org.apache.hadoop.fs.Seekable;
+
+/**
+ * Reads from a position in a stream without moving the stream. Streams that support positioned
+ * reads are read without any locking, so many threads can read different parts of the same file at
+ * once. Other streams fall back to a seek and read done while holding the stream's lock.
+ */
+public class PositionedReads {
+
+  private PositionedReads() {}
+
+  /**
+   * @return true if the stream can be read at a position without seeking it
+   */
+  public static boolean isSupported(InputStream in) {
+    if (in instanceof FSDataInputStream) {
+      // FSDataInputStream implements PositionedReadable, but only works if the stream it wraps does
+      return isSupported(((FSDataInputStream) in).getWrappedStream());
+    }
+    if (in instanceof FSInputChecker) {
+      // Checksummed file systems, like the local file system, implement a positioned read by
+      // opening the file again. That is slow, and fails if the file was deleted after it was
+      // opened.
+      return false;
+    }
+    return in instanceof PositionedReadable;
+  }
+
+  /**
+   * Reads up to length bytes starting at position in the stream.
+   *
+   * @return the number of bytes read, or -1 at the end of the stream
+   */
+  public static int read(InputStream in, long position, byte[] buffer, int offset, int length)
+      throws IOException {
+    if (isSupported(in)) {
+      return ((PositionedReadable) in).read(position, buffer, offset, length);
+    }
+
+    synchronized (in) {
+      ((Seekable) in).seek(position);
+      return in.read(buffer, offset, length);
+    }
+  }
+
+  /**
+   * Reads exactly length bytes starting at position in the stream.
+   */
+  public static void readFully(InputStream in, long position, byte[] buffer, int offset, int length)
+      throws IOException {
+    int nread = 0;
+    while (nread < length) {
+      int ret = read(in, position + nread, buffer, offset + nread, length - nread);
+      if (ret < 0) {
+        throw new EOFException("End of file reached before reading fully.");
+      }
+      nread += ret;
+    }
+  }
+}
@@ -22,12 +22,14 @@ import java.io.InputStream;
 
 import org.apache.accumulo.core.util.ratelimit.NullRateLimiter;
 import org.apache.accumulo.core.util.ratelimit.RateLimiter;
+import org.apache.hadoop.fs.PositionedReadable;
 import org.apache.hadoop.fs.Seekable;
 
 /**
  * A decorator for an {@code InputStream} which limits the rate at which reads are performed.
  */
-public class RateLimitedInputStream extends FilterInputStream implements Seekable {
+public class RateLimitedInputStream extends FilterInputStream
+    implements Seekable, PositionedReadable {
   private final RateLimiter rateLimiter;
 
   public <StreamType extends InputStream & Seekable> RateLimitedInputStream(StreamType stream,
@@ -54,6 +56,25 @@ public class RateLimitedInputStream extends FilterInputStream implements Seekabl
     return count;
   }
 
+  @Override
+  public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+    int count = PositionedReads.read(in, position, buffer, offset, length);
+    if (count > 0) {
+      rateLimiter.acquire(count);
+    }
+    return count;
+  }
+
+  @Override
+  public void readFully(long position, byte[] buffer, int offset, int length) throws IOException {
+    PositionedReads.readFully(this, position, buffer, offset, length);
+  }
+
+  @Override
+  public void readFully(long position, byte[] buffer) throws IOException {
+    readFully(position, buffer, 0, buffer.length);
+  }
+
   @Override
   public void seek(long pos) throws IOException {
     ((Seekable) in).seek(pos);
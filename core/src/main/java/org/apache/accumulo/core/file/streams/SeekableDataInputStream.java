@@ -20,17 +20,34 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.hadoop.fs.PositionedReadable;
 import org.apache.hadoop.fs.Seekable;
 
 /**
  * A wrapper converting a {@link Seekable} {@code InputStream} into a {@code Seekable}
  * {@link DataInputStream}
  */
-public class SeekableDataInputStream extends DataInputStream implements Seekable {
+public class SeekableDataInputStream extends DataInputStream
+    implements Seekable, PositionedReadable {
   public <StreamType extends InputStream & Seekable> SeekableDataInputStream(StreamType stream) {
     super(stream);
   }
 
+  @Override
+  public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+    return PositionedReads.read(in, position, buffer, offset, length);
+  }
+
+  @Override
+  public void readFully(long position, byte[] buffer, int offset, int length) throws IOException {
+    PositionedReads.readFully(in, position, buffer, offset, length);
+  }
+
+  @Override
+  public void readFully(long position, byte[] buffer) throws IOException {
+    readFully(position, buffer, 0, buffer.length);
+  }
+
   @Override
   public void seek(long pos) throws IOException {
     ((Seekable) in).seek(pos);
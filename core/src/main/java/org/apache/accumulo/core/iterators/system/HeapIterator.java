@@ -17,109 +17,180 @@
 package org.apache.accumulo.core.iterators.system;
 
 import java.io.IOException;
-import java.util.PriorityQueue;
+import java.util.Arrays;
 
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 
 /**
- * Constructs a {@link PriorityQueue} of multiple SortedKeyValueIterators. Provides a simple way to
- * interact with multiple SortedKeyValueIterators in sorted order.
+ * Merges multiple SortedKeyValueIterators using a loser tree. Provides a simple way to interact
+ * with multiple SortedKeyValueIterators in sorted order.
+ *
+ * <p>
+ * Each internal node of the tree holds the source that lost the match played at that node, and the
+ * overall winner is kept separately. When the winner advances, only the matches on the path from
+ * its leaf to the root are replayed, with one comparison at each level.
  */
 public abstract class HeapIterator implements SortedKeyValueIterator<Key,Value> {
-  private PriorityQueue<SortedKeyValueIterator<Key,Value>> heap;
+  private SortedKeyValueIterator<Key,Value>[] sources;
+  // the current top key of each source, null when the source is exhausted
+  private Key[] keys;
+  private int numSources;
+
+  // tree[0] is the index of the winning source, tree[1..capacity-1] hold the losers
+  private int[] tree;
+  private int capacity;
+  private boolean rebuild = false;
+
   private SortedKeyValueIterator<Key,Value> topIdx = null;
-  private Key nextKey;
 
   protected HeapIterator() {
-    heap = null;
+    sources = null;
   }
 
   protected HeapIterator(int maxSize) {
     createHeap(maxSize);
   }
 
+  @SuppressWarnings("unchecked")
   protected void createHeap(int maxSize) {
-    if (heap != null)
+    if (sources != null)
       throw new IllegalStateException("heap already exist");
 
-    heap = new PriorityQueue<>(maxSize == 0 ? 1 : maxSize,
-        (si1, si2) -> si1.getTopKey().compareTo(si2.getTopKey()));
+    int size = maxSize == 0 ? 1 : maxSize;
+    sources = new SortedKeyValueIterator[size];
+    keys = new Key[size];
+    tree = new int[1];
+    capacity = 1;
   }
 
   @Override
   public final Key getTopKey() {
+    if (rebuild)
+      build();
     return topIdx.getTopKey();
   }
 
   @Override
   public final Value getTopValue() {
+    if (rebuild)
+      build();
     return topIdx.getTopValue();
   }
 
   @Override
   public final boolean hasTop() {
+    if (rebuild)
+      build();
     return topIdx != null;
   }
 
   @Override
   public final void next() throws IOException {
+    if (rebuild)
+      build();
+
     if (topIdx == null) {
       throw new IllegalStateException("Called next() when there is no top");
     }
 
+    int winner = tree[0];
     topIdx.next();
-    if (!topIdx.hasTop()) {
-      if (nextKey == null) {
-        // No iterators left
-        topIdx = null;
-        return;
-      }
+    keys[winner] = topIdx.hasTop() ? topIdx.getTopKey() : null;
 
-      pullReferencesFromHeap();
-    } else {
-      if (nextKey == null) {
-        // topIdx is the only iterator
-        return;
-      }
+    replay(winner);
+    pullReferencesFromTree();
+  }
 
-      if (nextKey.compareTo(topIdx.getTopKey()) < 0) {
-        // Grab the next top iterator and put the current top iterator back on the heap
-        // This updating of references is special-cased to save on percolation on edge cases
-        // since the current top is guaranteed to not be the minimum
-        SortedKeyValueIterator<Key,Value> nextTopIdx = heap.remove();
-        heap.add(topIdx);
+  /**
+   * Returns true if the source at index a sorts before the source at index b. Exhausted sources and
+   * the padding leaves past {@link #numSources} sort after everything else.
+   */
+  private boolean less(int a, int b) {
+    Key ka = a < numSources ? keys[a] : null;
+    if (ka == null)
+      return false;
+    Key kb = b < numSources ? keys[b] : null;
+    if (kb == null)
+      return true;
+    return ka.compareTo(kb) < 0;
+  }
 
-        topIdx = nextTopIdx;
-        nextKey = heap.peek().getTopKey();
+  /**
+   * Replays the matches on the path from the leaf of the given source to the root, leaving the new
+   * winner in tree[0].
+   */
+  private void replay(int source) {
+    int winner = source;
+    for (int node = (source + capacity) >>> 1; node > 0; node >>>= 1) {
+      // the source replayed was the overall winner, so the loser at each node on its path is the
+      // winner of the sibling subtree
+      int loser = tree[node];
+      if (less(loser, winner)) {
+        tree[node] = winner;
+        winner = loser;
       }
     }
+    tree[0] = winner;
+  }
+
+  private void pullReferencesFromTree() {
+    int winner = tree[0];
+    topIdx = winner < numSources && keys[winner] != null ? sources[winner] : null;
   }
 
-  private void pullReferencesFromHeap() {
-    topIdx = heap.remove();
-    if (!heap.isEmpty()) {
-      nextKey = heap.peek().getTopKey();
-    } else {
-      nextKey = null;
+  /**
+   * Plays every match bottom up once all sources have been added.
+   */
+  private void build() {
+    rebuild = false;
+
+    int cap = 1;
+    while (cap < numSources)
+      cap <<= 1;
+    if (tree.length < cap)
+      tree = new int[cap];
+    capacity = cap;
+
+    // winners[n] is the winner of the match at node n, leaves start at capacity
+    int[] winners = new int[cap << 1];
+    for (int i = 0; i < cap; i++)
+      winners[cap + i] = i;
+    for (int node = cap - 1; node > 0; node--) {
+      int left = winners[node << 1];
+      int right = winners[(node << 1) + 1];
+      if (less(right, left)) {
+        winners[node] = right;
+        tree[node] = left;
+      } else {
+        winners[node] = left;
+        tree[node] = right;
+      }
     }
+    tree[0] = winners[1];
+
+    pullReferencesFromTree();
   }
 
   protected final void clear() {
-    heap.clear();
+    Arrays.fill(sources, 0, numSources, null);
+    Arrays.fill(keys, 0, numSources, null);
+    numSources = 0;
+    rebuild = false;
     topIdx = null;
-    nextKey = null;
   }
 
   protected final void addSource(SortedKeyValueIterator<Key,Value> source) {
     if (source.hasTop()) {
-      heap.add(source);
-      if (topIdx != null) {
-        heap.add(topIdx);
+      if (numSources == sources.length) {
+        sources = Arrays.copyOf(sources, numSources << 1);
+        keys = Arrays.copyOf(keys, numSources << 1);
       }
-
-      pullReferencesFromHeap();
+      sources[numSources] = source;
+      keys[numSources] = source.getTopKey();
+      numSources++;
+      rebuild = true;
     }
   }
 }
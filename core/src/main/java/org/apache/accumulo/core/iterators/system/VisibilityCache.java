@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.iterators.system;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.security.CompiledVisibility;
+import org.apache.accumulo.core.security.CompiledVisibility.Ordinals;
+import org.apache.accumulo.core.security.VisibilityEvaluator;
+import org.apache.accumulo.core.security.VisibilityParseException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * A memory bounded cache of compiled column visibility expressions and of their evaluation results,
+ * meant to be shared by every {@link VisibilityFilter} in a process. Results are keyed by the
+ * authorizations they were evaluated against, so scans by users with the same authorizations share
+ * entries and a new scan does not start with a cold cache.
+ *
+ * <p>
+ * Authorizations are interned so that result lookups compare them by reference. Callers must pass
+ * {@link #evaluate(Authorizations, ByteSequence)} an instance returned by
+ * {@link #intern(Authorizations)}.
+ *
+ * <p>
+ * Expressions are compiled against an {@link Ordinals} table of bounded size. When it fills up, it
+ * is replaced by an empty one and the expressions compiled against it are dropped, so authorizations
+ * that are no longer used do not stay on the heap.
+ */
+public class VisibilityCache {
+
+  // rough per entry cost of the cache node, the key object and the boxed result or compiled tree
+  private static final int ENTRY_OVERHEAD = 96;
+
+  private final Interner<Authorizations> authorizations = Interners.newWeakInterner();
+  private final Cache<ByteSequence,CompiledVisibility> compiled;
+  private final Cache<ResultKey,Boolean> results;
+  private final AtomicReference<OrdinalTable> table = new AtomicReference<>(new OrdinalTable());
+
+  /**
+   * An ordinal table and the bit sets of the authorizations converted with it.
+   */
+  private static class OrdinalTable {
+    private final Ordinals ordinals = new Ordinals();
+    // authorizations are interned, so weak keys comparing by identity find the same instance
+    private final Cache<Authorizations,long[]> authBits = Caffeine.newBuilder().weakKeys().build();
+
+    long[] toBitSet(Authorizations auths) {
+      return authBits.get(auths, ordinals::toBitSet);
+    }
+  }
+
+  private static class ResultKey {
+    private final Authorizations auths;
+    private final ByteSequence visibility;
+    private final int hash;
+
+    ResultKey(Authorizations auths, ByteSequence visibility) {
+      this.auths = auths;
+      this.visibility = visibility;
+      this.hash = 31 * System.identityHashCode(auths) + visibility.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof ResultKey) {
+        ResultKey ork = (ResultKey) o;
+        return auths == ork.auths && visibility.equals(ork.visibility);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * @param maxSize
+   *          approximate number of bytes the cache may hold, split between compiled expressions and
+   *          evaluation results
+   */
+  public VisibilityCache(long maxSize) {
+    compiled = Caffeine.newBuilder()
+        .weigher((ByteSequence vis, CompiledVisibility cv) -> ENTRY_OVERHEAD + 3 * vis.length())
+        .maximumWeight(maxSize / 2).recordStats().build();
+    results = Caffeine.newBuilder()
+        .weigher((ResultKey key, Boolean b) -> ENTRY_OVERHEAD + key.visibility.length())
+        .maximumWeight(maxSize / 2).recordStats().build();
+  }
+
+  /**
+   * Returns the canonical instance of the given authorizations, to be used for every call to
+   * {@link #evaluate(Authorizations, ByteSequence)}.
+   */
+  public Authorizations intern(Authorizations auths) {
+    return authorizations.intern(auths);
+  }
+
+  /**
+   * Evaluates the visibility expression, reusing a previous result for the same authorizations or a
+   * previously compiled expression when one is cached.
+   *
+   * @param auths
+   *          authorizations returned by {@link #intern(Authorizations)}
+   * @param visibility
+   *          the visibility expression, which is copied before being cached
+   */
+  public boolean evaluate(Authorizations auths, ByteSequence visibility)
+      throws VisibilityParseException {
+    Boolean result = results.getIfPresent(new ResultKey(auths, visibility));
+    if (result != null)
+      return result;
+
+    ByteSequence copy = new ArrayByteSequence(visibility.toArray());
+    ColumnVisibility cvis = null;
+    OrdinalTable current = table.get();
+    CompiledVisibility cv = compiled.getIfPresent(copy);
+    if (cv == null || !cv.isCompiledWith(current.ordinals)) {
+      cvis = new ColumnVisibility(copy.toArray());
+      cv = CompiledVisibility.compile(cvis, current.ordinals);
+      if (cv == null) {
+        // the table is full, start over with an empty one
+        if (table.compareAndSet(current, new OrdinalTable()))
+          compiled.invalidateAll();
+        current = table.get();
+        cv = CompiledVisibility.compile(cvis, current.ordinals);
+      }
+      if (cv != null)
+        compiled.put(copy, cv);
+    }
+
+    boolean b;
+    if (cv != null) {
+      b = cv.evaluate(current.toBitSet(auths));
+    } else {
+      // more distinct authorizations than a table holds were seen at once
+      b = new VisibilityEvaluator(auths).evaluate(cvis);
+    }
+    results.put(new ResultKey(auths, copy), b);
+    return b;
+  }
+
+  /**
+   * @return hit and miss counts for evaluation results
+   */
+  public CacheStats getResultStats() {
+    return results.stats();
+  }
+
+  /**
+   * @return hit and miss counts for compiled expressions, only consulted on a result miss
+   */
+  public CacheStats getParseStats() {
+    return compiled.stats();
+  }
+}
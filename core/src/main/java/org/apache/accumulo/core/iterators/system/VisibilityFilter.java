@@ -41,25 +41,31 @@ import org.slf4j.LoggerFactory;
  * class.
  */
 public class VisibilityFilter extends SynchronizedServerFilter {
+  // evaluates expressions when there is no shared cache, the shared cache compiles them instead
   protected VisibilityEvaluator ve;
   protected ByteSequence defaultVisibility;
   protected LRUMap<ByteSequence,Boolean> cache;
   protected Authorizations authorizations;
+  protected VisibilityCache sharedCache;
 
   private static final Logger log = LoggerFactory.getLogger(VisibilityFilter.class);
 
   private VisibilityFilter(SortedKeyValueIterator<Key,Value> iterator,
-      Authorizations authorizations, byte[] defaultVisibility) {
+      Authorizations authorizations, byte[] defaultVisibility, VisibilityCache sharedCache) {
     super(iterator);
-    this.ve = new VisibilityEvaluator(authorizations);
-    this.authorizations = authorizations;
+    if (sharedCache == null) {
+      this.ve = new VisibilityEvaluator(authorizations);
+    }
+    this.authorizations = sharedCache == null ? authorizations : sharedCache.intern(authorizations);
     this.defaultVisibility = new ArrayByteSequence(defaultVisibility);
     this.cache = new LRUMap<>(1000);
+    this.sharedCache = sharedCache;
   }
 
   @Override
   public synchronized SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
-    return new VisibilityFilter(source.deepCopy(env), authorizations, defaultVisibility.toArray());
+    return new VisibilityFilter(source.deepCopy(env), authorizations, defaultVisibility.toArray(),
+        sharedCache);
   }
 
   @Override
@@ -76,7 +82,15 @@ public class VisibilityFilter extends SynchronizedServerFilter {
       return b;
 
     try {
-      boolean bb = ve.evaluate(new ColumnVisibility(testVis.toArray()));
+      boolean bb;
+      if (sharedCache == null) {
+        // an expression that misses the filter's own cache is rarely seen again, so compiling it
+        // would cost more than evaluating it once
+        bb = ve.evaluate(new ColumnVisibility(testVis.toArray()));
+      } else {
+        // the process wide cache lets a new scan reuse what earlier scans already evaluated
+        bb = sharedCache.evaluate(authorizations, testVis);
+      }
       cache.put(testVis, bb);
       return bb;
     } catch (VisibilityParseException e) {
@@ -107,10 +121,20 @@ public class VisibilityFilter extends SynchronizedServerFilter {
 
   public static SortedKeyValueIterator<Key,Value> wrap(SortedKeyValueIterator<Key,Value> source,
       Authorizations authorizations, byte[] defaultVisibility) {
+    return wrap(source, authorizations, defaultVisibility, null);
+  }
+
+  /**
+   * @param sharedCache
+   *          cache shared with other filters in this process that is consulted when this filter's
+   *          own cache misses, may be null
+   */
+  public static SortedKeyValueIterator<Key,Value> wrap(SortedKeyValueIterator<Key,Value> source,
+      Authorizations authorizations, byte[] defaultVisibility, VisibilityCache sharedCache) {
     if (authorizations.isEmpty() && defaultVisibility.length == 0) {
       return new EmptyAuthsVisibilityFilter(source);
     } else {
-      return new VisibilityFilter(source, authorizations, defaultVisibility);
+      return new VisibilityFilter(source, authorizations, defaultVisibility, sharedCache);
     }
   }
 }
@@ -164,6 +164,10 @@ public interface Ample {
 
     public TabletMutator putChopped();
 
+    public TabletMutator putHotRows(Collection<Text> rows);
+
+    public TabletMutator deleteHotRows();
+
     /**
      * This method persist (or queues for persisting) previous put and deletes against this object.
      * Unless this method is called, previous calls will never be persisted. The purpose of this
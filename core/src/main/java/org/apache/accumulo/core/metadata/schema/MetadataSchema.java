@@ -17,8 +17,14 @@
 package org.apache.accumulo.core.metadata.schema;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+
 import org.apache.accumulo.core.client.admin.TimeType;
 import org.apache.accumulo.core.data.ArrayByteSequence;
 import org.apache.accumulo.core.data.Key;
@@ -28,6 +34,7 @@ import org.apache.accumulo.core.data.TableId;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.schema.Section;
 import org.apache.accumulo.core.util.ColumnFQ;
+import org.apache.accumulo.core.util.TextUtil;
 import org.apache.accumulo.fate.FateTxId;
 import org.apache.hadoop.io.Text;
 
@@ -131,6 +138,32 @@ public class MetadataSchema {
        */
       public static final String LOCK_QUAL = "lock";
       public static final ColumnFQ LOCK_COLUMN = new ColumnFQ(NAME, new Text(LOCK_QUAL));
+      /**
+       * Holds rows recently read from the tablet, written when the tablet is unloaded so the next
+       * tablet server to load it can warm its block caches
+       */
+      public static final String HOT_ROWS_QUAL = "hotRows";
+      public static final ColumnFQ HOT_ROWS_COLUMN = new ColumnFQ(NAME, new Text(HOT_ROWS_QUAL));
+
+      public static Value encodeHotRows(Collection<Text> rows) {
+        StringBuilder sb = new StringBuilder();
+        for (Text row : rows) {
+          if (sb.length() > 0)
+            sb.append(',');
+          sb.append(Base64.getEncoder().encodeToString(TextUtil.getBytes(row)));
+        }
+        return new Value(sb.toString().getBytes(UTF_8));
+      }
+
+      public static List<Text> decodeHotRows(String val) {
+        List<Text> rows = new ArrayList<>();
+        if (!val.isEmpty()) {
+          for (String row : val.split(",")) {
+            rows.add(new Text(Base64.getDecoder().decode(row)));
+          }
+        }
+        return rows;
+      }
     }
 
     /**
@@ -20,6 +20,7 @@ package org.apache.accumulo.core.metadata.schema;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.COMPACT_QUAL;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.DIRECTORY_QUAL;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.FLUSH_QUAL;
+import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.HOT_ROWS_QUAL;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.TIME_QUAL;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.TabletColumnFamily.OLD_PREV_ROW_QUAL;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.TabletColumnFamily.PREV_ROW_QUAL;
@@ -88,6 +89,7 @@ public class TabletMetadata {
   private List<LogEntry> logs;
   private OptionalLong compact = OptionalLong.empty();
   private Double splitRatio = null;
+  private List<Text> hotRows = List.of();
 
   public enum LocationType {
     CURRENT, FUTURE, LAST
@@ -107,7 +109,8 @@ public class TabletMetadata {
     FLUSH_ID,
     LOGS,
     COMPACT_ID,
-    SPLIT_RATIO
+    SPLIT_RATIO,
+    HOT_ROWS
   }
 
   public static class Location {
@@ -263,6 +266,11 @@ public class TabletMetadata {
     return splitRatio;
   }
 
+  public List<Text> getHotRows() {
+    ensureFetched(ColumnType.HOT_ROWS);
+    return hotRows;
+  }
+
   public SortedMap<Key,Value> getKeyValues() {
     Preconditions.checkState(keyValues != null, "Requested key values when it was not saved");
     return keyValues;
@@ -336,6 +344,9 @@ public class TabletMetadata {
             case COMPACT_QUAL:
               te.compact = OptionalLong.of(Long.parseLong(val));
               break;
+            case HOT_ROWS_QUAL:
+              te.hotRows = List.copyOf(ServerColumnFamily.decodeHotRows(val));
+              break;
           }
           break;
         case DataFileColumnFamily.STR_NAME:
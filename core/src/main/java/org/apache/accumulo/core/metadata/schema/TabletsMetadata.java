@@ -20,6 +20,7 @@ package org.apache.accumulo.core.metadata.schema;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.COMPACT_COLUMN;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.DIRECTORY_COLUMN;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.FLUSH_COLUMN;
+import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.HOT_ROWS_COLUMN;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ServerColumnFamily.TIME_COLUMN;
 import static org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.TabletColumnFamily.PREV_ROW_COLUMN;
 
@@ -164,6 +165,9 @@ public class TabletsMetadata implements Iterable<TabletMetadata>, AutoCloseable
           case FLUSH_ID:
             qualifiers.add(FLUSH_COLUMN);
             break;
+          case HOT_ROWS:
+            qualifiers.add(HOT_ROWS_COLUMN);
+            break;
           case LAST:
             families.add(LastLocationColumnFamily.NAME);
             break;
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.security.ColumnVisibility.Node;
+import org.apache.accumulo.core.security.ColumnVisibility.NodeType;
+
+/**
+ * A column visibility expression compiled into checks over a bit set of authorizations. Each
+ * distinct authorization is assigned an ordinal by an {@link Ordinals} table, and a set of
+ * authorizations becomes a bit set over those ordinals with {@link Ordinals#toBitSet}. An
+ * expression can only be evaluated with bit sets from the table it was compiled against.
+ *
+ * <p>
+ * Terms that are direct children of the same AND or OR node are folded into one mask per 64 bit
+ * word, so an expression like {@code A&B&C} or {@code A|B|C} evaluates with a single masked
+ * comparison and no allocation. The results match {@link VisibilityEvaluator}.
+ */
+public final class CompiledVisibility {
+
+  /**
+   * Assigns ordinals to authorizations, up to a fixed number of them. Once the table is full no more
+   * ordinals are assigned, and expressions with authorizations that have none cannot be compiled
+   * against it. Ordinals are never reassigned, so bit sets and compiled expressions from the same
+   * table stay consistent.
+   */
+  public static final class Ordinals {
+
+    /**
+     * Enough for the distinct authorizations of most instances, and keeps a bit set under 512
+     * bytes.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final ConcurrentHashMap<ByteSequence,Integer> ordinals = new ConcurrentHashMap<>();
+    private final AtomicInteger nextOrdinal = new AtomicInteger();
+    private final int capacity;
+
+    public Ordinals() {
+      this(DEFAULT_CAPACITY);
+    }
+
+    public Ordinals(int capacity) {
+      this.capacity = capacity;
+    }
+
+    /**
+     * @return the ordinal of the authorization, or -1 if it has none and the table is full
+     */
+    private int ordinal(ByteSequence auth) {
+      Integer ordinal = ordinals.get(auth);
+      if (ordinal == null) {
+        if (nextOrdinal.get() >= capacity)
+          return -1;
+        ordinal = ordinals.computeIfAbsent(new ArrayByteSequence(auth.toArray()), k -> {
+          int next = nextOrdinal.getAndIncrement();
+          return next < capacity ? next : null;
+        });
+        if (ordinal == null)
+          return -1;
+      }
+      return ordinal;
+    }
+
+    /**
+     * Converts authorizations to a bit set over the ordinals of this table. Authorizations that are
+     * assigned ordinals later, while compiling expressions, are not in the given set, so they do
+     * not need bits in the returned array. Authorizations left without an ordinal because the table
+     * is full can never get one, so no expression compiled against this table refers to them.
+     */
+    public long[] toBitSet(Authorizations authorizations) {
+      long[] bits = new long[0];
+      for (byte[] auth : authorizations.getAuthorizations()) {
+        // expression terms are kept escaped, so ordinals are assigned to the escaped form
+        int ordinal = ordinal(new ArrayByteSequence(VisibilityEvaluator.escape(auth, false)));
+        if (ordinal < 0)
+          continue;
+        int word = ordinal >>> 6;
+        if (word >= bits.length)
+          bits = Arrays.copyOf(bits, word + 1);
+        bits[word] |= 1L << ordinal;
+      }
+      return bits;
+    }
+  }
+
+  private static final CompiledVisibility ALWAYS = new CompiledVisibility(null, new Op() {
+    @Override
+    boolean eval(long[] auths) {
+      return true;
+    }
+  });
+
+  private final Ordinals ordinals;
+  private final Op root;
+
+  private CompiledVisibility(Ordinals ordinals, Op root) {
+    this.ordinals = ordinals;
+    this.root = root;
+  }
+
+  /**
+   * @param auths
+   *          bit set returned by {@link Ordinals#toBitSet(Authorizations)} of the table this
+   *          expression was compiled against
+   * @return true if the authorizations satisfy this expression
+   */
+  public boolean evaluate(long[] auths) {
+    return root.eval(auths);
+  }
+
+  /**
+   * @return true if this expression can be evaluated with bit sets from the given table
+   */
+  public boolean isCompiledWith(Ordinals table) {
+    return ordinals == null || ordinals == table;
+  }
+
+  /**
+   * Compiles the parse tree of the given visibility against an ordinal table.
+   *
+   * @return the compiled expression, or null if the table is full and has no ordinal for one of the
+   *         expression's authorizations, in which case the expression must be evaluated with a
+   *         {@link VisibilityEvaluator}
+   * @throws VisibilityParseException
+   *           if an AND or OR subexpression has less than two children, or a subexpression is of an
+   *           unknown type
+   */
+  public static CompiledVisibility compile(ColumnVisibility visibility, Ordinals ordinals)
+      throws VisibilityParseException {
+    byte[] expression = visibility.getExpression();
+    if (expression.length == 0)
+      return ALWAYS;
+    Op root = compile(expression, visibility.getParseTree(), ordinals);
+    return root == null ? null : new CompiledVisibility(ordinals, root);
+  }
+
+  private static Op compile(byte[] expression, Node node, Ordinals ordinals)
+      throws VisibilityParseException {
+    switch (node.getType()) {
+      case TERM:
+        int term = ordinals.ordinal(node.getTerm(expression));
+        return term < 0 ? null : new Terms(new int[] {term}, true);
+      case AND:
+      case OR:
+        boolean and = node.getType() == NodeType.AND;
+        List<Node> children = node.getChildren();
+        if (children == null || children.size() < 2)
+          throw new VisibilityParseException(node.getType() + " has less than 2 children",
+              expression, node.getTermStart());
+
+        int[] terms = new int[children.size()];
+        int numTerms = 0;
+        List<Op> ops = new ArrayList<>();
+        for (Node child : children) {
+          if (child.getType() == NodeType.TERM) {
+            int ordinal = ordinals.ordinal(child.getTerm(expression));
+            if (ordinal < 0)
+              return null;
+            terms[numTerms++] = ordinal;
+          } else {
+            Op op = compile(expression, child, ordinals);
+            if (op == null)
+              return null;
+            ops.add(op);
+          }
+        }
+
+        if (numTerms > 0) {
+          Op termOp = new Terms(Arrays.copyOf(terms, numTerms), and);
+          if (ops.isEmpty())
+            return termOp;
+          // check the cheap folded terms before any nested expression
+          ops.add(0, termOp);
+        }
+        Op[] opArray = ops.toArray(new Op[0]);
+        return and ? new And(opArray) : new Or(opArray);
+      default:
+        throw new VisibilityParseException("No such node type", expression, node.getTermStart());
+    }
+  }
+
+  private abstract static class Op {
+    abstract boolean eval(long[] auths);
+  }
+
+  /**
+   * Requires all or any of a set of authorizations, grouped into one mask per word of the bit set.
+   */
+  private static class Terms extends Op {
+    private final int[] words;
+    private final long[] masks;
+    private final boolean all;
+
+    Terms(int[] ordinals, boolean all) {
+      Arrays.sort(ordinals);
+      int[] w = new int[ordinals.length];
+      long[] m = new long[ordinals.length];
+      int n = -1;
+      for (int ordinal : ordinals) {
+        int word = ordinal >>> 6;
+        if (n < 0 || w[n] != word) {
+          n++;
+          w[n] = word;
+        }
+        m[n] |= 1L << ordinal;
+      }
+      this.words = Arrays.copyOf(w, n + 1);
+      this.masks = Arrays.copyOf(m, n + 1);
+      this.all = all;
+    }
+
+    @Override
+    boolean eval(long[] auths) {
+      for (int i = 0; i < words.length; i++) {
+        long bits = words[i] < auths.length ? auths[words[i]] & masks[i] : 0;
+        if (all) {
+          if (bits != masks[i])
+            return false;
+        } else if (bits != 0) {
+          return true;
+        }
+      }
+      return all;
+    }
+  }
+
+  private static class And extends Op {
+    private final Op[] children;
+
+    And(Op[] children) {
+      this.children = children;
+    }
+
+    @Override
+    boolean eval(long[] auths) {
+      for (Op child : children) {
+        if (!child.eval(auths))
+          return false;
+      }
+      return true;
+    }
+  }
+
+  private static class Or extends Op {
+    private final Op[] children;
+
+    Or(Op[] children) {
+      this.children = children;
+    }
+
+    @Override
+    boolean eval(long[] auths) {
+      for (Op child : children) {
+        if (child.eval(auths))
+          return true;
+      }
+      return false;
+    }
+  }
+}
@@ -62,6 +62,18 @@ public interface BlockCache {
      * @return The loaded block or null if loading the block would exceed maxSize.
      */
     byte[] load(int maxSize, Map<String,byte[]> dependencies);
+
+    /**
+     * The length of the file the block is loaded from. A cache that keeps blocks after they were
+     * evicted or across restarts can store this with a block, and only use the block later if the
+     * file still has the same length.
+     *
+     * @return the file length, or -1 if it is not known
+     * @since 2.1.0
+     */
+    default long getFileLength() {
+      return -1;
+    }
   }
 
   /**
@@ -16,6 +16,7 @@
  */
 package org.apache.accumulo.core.spi.cache;
 
+import java.nio.ByteBuffer;
 import java.util.function.Supplier;
 
 /**
@@ -43,4 +44,24 @@ public interface CacheEntry {
    * call this method whenever the weight of that object changes.
    */
   void indexWeightChanged();
+
+  /**
+   * Returns a read only view of the cached data. Implementations that keep data outside of the Java
+   * heap can override this method so Accumulo can read a block without first copying it to a byte
+   * array. The view must remain valid until {@link #release()} is called.
+   *
+   * @since 2.1.0
+   */
+  default ByteBuffer getByteBuffer() {
+    return ByteBuffer.wrap(getBuffer()).asReadOnlyBuffer();
+  }
+
+  /**
+   * Accumulo calls this method when it is done reading an entry. Implementations that reuse the
+   * memory of evicted entries can use it to learn when that memory is no longer being read. Any
+   * buffer obtained from this entry must not be used after calling this method.
+   *
+   * @since 2.1.0
+   */
+  default void release() {}
 }
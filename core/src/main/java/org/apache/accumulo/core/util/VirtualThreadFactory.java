@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.util;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.accumulo.fate.util.LoggingRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates named virtual threads. Virtual threads are only available on newer Java runtimes than
+ * Accumulo is built for, so they are found by reflection; check {@link #isSupported()} before
+ * creating a factory.
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreadFactory.class);
+
+  private static final UncaughtExceptionHandler UEH = new AccumuloUncaughtExceptionHandler();
+
+  private static final Method OF_VIRTUAL;
+  private static final Method NAME;
+  private static final Method UNSTARTED;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method unstarted = null;
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      name = builder.getMethod("name", String.class);
+      unstarted = builder.getMethod("unstarted", Runnable.class);
+      // The methods exist on runtimes where virtual threads are a preview feature, but fail there
+      // unless previews are enabled, so build a thread to be sure they work.
+      unstarted.invoke(name.invoke(ofVirtual.invoke(null), "probe"), (Runnable) () -> {});
+    } catch (Exception | LinkageError e) {
+      log.debug("Virtual threads are not supported by this JVM", e);
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    UNSTARTED = unstarted;
+  }
+
+  private final AtomicInteger threadNum = new AtomicInteger(1);
+  private final String name;
+
+  public VirtualThreadFactory(String name) {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+    }
+    this.name = name;
+  }
+
+  /**
+   * @return true if the running JVM created a virtual thread when this class was loaded
+   */
+  public static boolean isSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  @Override
+  public Thread newThread(Runnable r) {
+    try {
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = NAME.invoke(builder, name + " " + threadNum.getAndIncrement());
+      Thread thread = (Thread) UNSTARTED.invoke(builder, new LoggingRunnable(log, r));
+      thread.setUncaughtExceptionHandler(UEH);
+      return thread;
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("Failed to create virtual thread", e);
+    }
+  }
+}
@@ -19,15 +19,15 @@ package org.apache.accumulo.fate.zookeeper;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.security.SecureRandom;
-import java.util.Collections;
 import java.util.ConcurrentModificationException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.LockSupport;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
@@ -43,6 +43,11 @@ import com.google.common.base.Preconditions;
 
 /**
  * A cache for values stored in ZooKeeper. Values are kept up to date as they change.
+ *
+ * <p>
+ * Reads of cached values do not lock. The absence of a node is cached like any other value, and is
+ * invalidated by the watch set when the node was found missing. When several threads miss on the
+ * same path at once, only one of them reads ZooKeeper and the others wait for its result.
  */
 public class ZooCache {
   private static final Logger log = LoggerFactory.getLogger(ZooCache.class);
@@ -50,13 +55,19 @@ public class ZooCache {
   private final ZCacheWatcher watcher = new ZCacheWatcher();
   private final Watcher externalWatcher;
 
-  private final ReadWriteLock cacheLock = new ReentrantReadWriteLock(false);
-  private final Lock cacheWriteLock = cacheLock.writeLock();
-  private final Lock cacheReadLock = cacheLock.readLock();
+  private final ConcurrentHashMap<String,ZcNode> cache;
+  private final ConcurrentHashMap<String,ZcChildren> childrenCache;
+
+  // reads of ZooKeeper in progress, keyed by path
+  private final ConcurrentHashMap<String,Load<ZcNode>> dataLoads = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String,Load<ZcChildren>> childrenLoads =
+      new ConcurrentHashMap<>();
 
-  private final HashMap<String,byte[]> cache;
-  private final HashMap<String,ZcStat> statCache;
-  private final HashMap<String,List<String>> childrenCache;
+  private final AtomicLong updateCount = new AtomicLong(0);
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder zooKeeperReads = new LongAdder();
+  private final LongAdder coalescedReads = new LongAdder();
 
   private final ZooReader zReader;
   private final SecureRandom secureRandom = new SecureRandom();
@@ -93,46 +104,43 @@ public class ZooCache {
     }
   }
 
-  private static class ImmutableCacheCopies {
-    final Map<String,byte[]> cache;
-    final Map<String,ZcStat> statCache;
-    final Map<String,List<String>> childrenCache;
-    final long updateCount;
-
-    ImmutableCacheCopies(long updateCount) {
-      this.updateCount = updateCount;
-      cache = Collections.emptyMap();
-      statCache = Collections.emptyMap();
-      childrenCache = Collections.emptyMap();
-    }
+  /**
+   * The cached data and status of a node. Both are null when the node does not exist.
+   */
+  private static class ZcNode {
+    final byte[] data;
+    final ZcStat stat;
 
-    ImmutableCacheCopies(long updateCount, Map<String,byte[]> cache, Map<String,ZcStat> statCache,
-        Map<String,List<String>> childrenCache) {
-      this.updateCount = updateCount;
-      this.cache = Collections.unmodifiableMap(new HashMap<>(cache));
-      this.statCache = Collections.unmodifiableMap(new HashMap<>(statCache));
-      this.childrenCache = Collections.unmodifiableMap(new HashMap<>(childrenCache));
+    ZcNode(byte[] data, ZcStat stat) {
+      this.data = data;
+      this.stat = stat;
     }
+  }
 
-    ImmutableCacheCopies(long updateCount, ImmutableCacheCopies prev,
-        Map<String,List<String>> childrenCache) {
-      this.updateCount = updateCount;
-      this.cache = prev.cache;
-      this.statCache = prev.statCache;
-      this.childrenCache = Collections.unmodifiableMap(new HashMap<>(childrenCache));
-    }
+  /**
+   * The cached children of a node. The list is null when the node has no children or does not
+   * exist.
+   */
+  private static class ZcChildren {
+    final List<String> children;
 
-    ImmutableCacheCopies(long updateCount, Map<String,byte[]> cache, Map<String,ZcStat> statCache,
-        ImmutableCacheCopies prev) {
-      this.updateCount = updateCount;
-      this.cache = Collections.unmodifiableMap(new HashMap<>(cache));
-      this.statCache = Collections.unmodifiableMap(new HashMap<>(statCache));
-      this.childrenCache = prev.childrenCache;
+    ZcChildren(List<String> children) {
+      this.children = children;
     }
   }
 
-  private volatile ImmutableCacheCopies immutableCache = new ImmutableCacheCopies(0);
-  private long updateCount = 0;
+  /**
+   * A read of ZooKeeper that other threads missing on the same path can wait for. A watch event for
+   * the path while the read is in progress invalidates it, so its possibly stale result is not left
+   * in the cache.
+   */
+  private static class Load<T> extends CompletableFuture<T> {
+    volatile boolean invalidated = false;
+  }
+
+  private interface ZooRead<T> {
+    T read() throws KeeperException, InterruptedException;
+  }
 
   /**
    * Returns a ZooKeeper session. Calls should be made within run of ZooRunnable after caches are
@@ -233,9 +241,8 @@ public class ZooCache {
    */
   public ZooCache(ZooReader reader, Watcher watcher) {
     this.zReader = reader;
-    this.cache = new HashMap<>();
-    this.statCache = new HashMap<>();
-    this.childrenCache = new HashMap<>();
+    this.cache = new ConcurrentHashMap<>();
+    this.childrenCache = new ConcurrentHashMap<>();
     this.externalWatcher = watcher;
   }
 
@@ -288,7 +295,6 @@ public class ZooCache {
         }
 
         try {
-          // do not hold lock while sleeping
           Thread.sleep(sleepTime);
         } catch (InterruptedException e) {
           log.debug("Wait in retry() was interrupted.", e);
@@ -302,6 +308,52 @@ public class ZooCache {
 
   }
 
+  /**
+   * Reads a path from ZooKeeper and caches the result, unless another thread is already reading it,
+   * in which case that thread's result is returned.
+   */
+  private <T> T load(ConcurrentHashMap<String,Load<T>> loads, Map<String,T> cached, String zPath,
+      ZooRead<T> zooRead) throws KeeperException, InterruptedException {
+    Load<T> load = new Load<>();
+    Load<T> inProgress = loads.putIfAbsent(zPath, load);
+    if (inProgress != null) {
+      coalescedReads.increment();
+      try {
+        return inProgress.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof KeeperException) {
+          throw (KeeperException) e.getCause();
+        }
+        // the other read was interrupted or raced with a change, so retry
+        throw new ConcurrentModificationException();
+      }
+    }
+
+    try {
+      T value = zooRead.read();
+      cached.put(zPath, value);
+      // Set the flag before clearing the cache when invalidating. Checking it after the put means
+      // either the invalidation removes this value, or the value is removed here.
+      if (load.invalidated) {
+        cached.remove(zPath, value);
+      }
+      updateCount.incrementAndGet();
+      load.complete(value);
+      return value;
+    } catch (KeeperException | InterruptedException | RuntimeException e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loads.remove(zPath, load);
+    }
+  }
+
+  private static void invalidate(Load<?> load) {
+    if (load != null) {
+      load.invalidated = true;
+    }
+  }
+
   /**
    * Gets the children of the given node. A watch is established by this call.
    *
@@ -316,36 +368,29 @@ public class ZooCache {
 
       @Override
       public List<String> run() throws KeeperException, InterruptedException {
-
-        // only read volatile once for consistency
-        ImmutableCacheCopies lic = immutableCache;
-        if (lic.childrenCache.containsKey(zPath)) {
-          return lic.childrenCache.get(zPath);
+        ZcChildren cached = childrenCache.get(zPath);
+        if (cached != null) {
+          hits.increment();
+          return cached.children;
         }
+        misses.increment();
 
-        cacheWriteLock.lock();
-        try {
-          if (childrenCache.containsKey(zPath)) {
-            return childrenCache.get(zPath);
-          }
-
+        return load(childrenLoads, childrenCache, zPath, () -> {
           final ZooKeeper zooKeeper = getZooKeeper();
-
-          List<String> children = zooKeeper.getChildren(zPath, watcher);
-          if (children != null) {
-            children = List.copyOf(children);
-          }
-          childrenCache.put(zPath, children);
-          immutableCache = new ImmutableCacheCopies(++updateCount, immutableCache, childrenCache);
-          return children;
-        } catch (KeeperException ke) {
-          if (ke.code() != Code.NONODE) {
-            throw ke;
+          zooKeeperReads.increment();
+          try {
+            List<String> children = zooKeeper.getChildren(zPath, watcher);
+            return new ZcChildren(children == null ? null : List.copyOf(children));
+          } catch (KeeperException.NoNodeException e) {
+            // getChildren does not leave a watch on a missing node, so set one with exists() to
+            // be told when the node is created. Only then can its absence be cached.
+            zooKeeperReads.increment();
+            if (zooKeeper.exists(zPath, watcher) != null) {
+              throw new ConcurrentModificationException();
+            }
+            return new ZcChildren(null);
           }
-        } finally {
-          cacheWriteLock.unlock();
-        }
-        return null;
+        }).children;
       }
 
     };
@@ -381,18 +426,13 @@ public class ZooCache {
 
       @Override
       public byte[] run() throws KeeperException, InterruptedException {
-        ZcStat zstat = null;
-
-        // only read volatile once so following code works with a consistent snapshot
-        ImmutableCacheCopies lic = immutableCache;
-        byte[] val = lic.cache.get(zPath);
-        if (val != null || lic.cache.containsKey(zPath)) {
-          if (status != null) {
-            zstat = lic.statCache.get(zPath);
-            copyStats(status, zstat);
-          }
-          return val;
+        ZcNode node = cache.get(zPath);
+        if (node != null) {
+          hits.increment();
+          copyStats(status, node.stat);
+          return node.data;
         }
+        misses.increment();
 
         /*
          * The following call to exists() is important, since we are caching that a node does not
@@ -402,33 +442,31 @@ public class ZooCache {
          * a special case that looks for Code.NONODE in the KeeperException, then non-existence can
          * not be cached.
          */
-        cacheWriteLock.lock();
-        try {
+        node = load(dataLoads, cache, zPath, () -> {
           final ZooKeeper zooKeeper = getZooKeeper();
+          zooKeeperReads.increment();
           Stat stat = zooKeeper.exists(zPath, watcher);
-          byte[] data = null;
           if (stat == null) {
             if (log.isTraceEnabled()) {
               log.trace("zookeeper did not contain {}", zPath);
             }
-          } else {
-            try {
-              data = zooKeeper.getData(zPath, watcher, stat);
-              zstat = new ZcStat(stat);
-            } catch (KeeperException.BadVersionException | KeeperException.NoNodeException e1) {
-              throw new ConcurrentModificationException();
-            }
-            if (log.isTraceEnabled()) {
-              log.trace("zookeeper contained {} {}", zPath,
-                  (data == null ? null : new String(data, UTF_8)));
-            }
+            return new ZcNode(null, null);
           }
-          put(zPath, data, zstat);
-          copyStats(status, zstat);
-          return data;
-        } finally {
-          cacheWriteLock.unlock();
-        }
+          byte[] data;
+          try {
+            zooKeeperReads.increment();
+            data = zooKeeper.getData(zPath, watcher, stat);
+          } catch (KeeperException.BadVersionException | KeeperException.NoNodeException e1) {
+            throw new ConcurrentModificationException();
+          }
+          if (log.isTraceEnabled()) {
+            log.trace("zookeeper contained {} {}", zPath,
+                (data == null ? null : new String(data, UTF_8)));
+          }
+          return new ZcNode(data, new ZcStat(stat));
+        });
+        copyStats(status, node.stat);
+        return node.data;
       }
     };
 
@@ -450,29 +488,12 @@ public class ZooCache {
     }
   }
 
-  private void put(String zPath, byte[] data, ZcStat stat) {
-    cacheWriteLock.lock();
-    try {
-      cache.put(zPath, data);
-      statCache.put(zPath, stat);
-
-      immutableCache = new ImmutableCacheCopies(++updateCount, cache, statCache, immutableCache);
-    } finally {
-      cacheWriteLock.unlock();
-    }
-  }
-
   private void remove(String zPath) {
-    cacheWriteLock.lock();
-    try {
-      cache.remove(zPath);
-      childrenCache.remove(zPath);
-      statCache.remove(zPath);
-
-      immutableCache = new ImmutableCacheCopies(++updateCount, cache, statCache, childrenCache);
-    } finally {
-      cacheWriteLock.unlock();
-    }
+    invalidate(dataLoads.get(zPath));
+    invalidate(childrenLoads.get(zPath));
+    cache.remove(zPath);
+    childrenCache.remove(zPath);
+    updateCount.incrementAndGet();
   }
 
   /**
@@ -480,16 +501,11 @@ public class ZooCache {
    */
   public void clear() {
     Preconditions.checkState(!closed);
-    cacheWriteLock.lock();
-    try {
-      cache.clear();
-      childrenCache.clear();
-      statCache.clear();
-
-      immutableCache = new ImmutableCacheCopies(++updateCount);
-    } finally {
-      cacheWriteLock.unlock();
-    }
+    dataLoads.values().forEach(ZooCache::invalidate);
+    childrenLoads.values().forEach(ZooCache::invalidate);
+    cache.clear();
+    childrenCache.clear();
+    updateCount.incrementAndGet();
   }
 
   public void close() {
@@ -502,7 +518,36 @@ public class ZooCache {
    */
   public long getUpdateCount() {
     Preconditions.checkState(!closed);
-    return immutableCache.updateCount;
+    return updateCount.get();
+  }
+
+  /**
+   * @return the number of reads answered from the cache, including cached absent nodes
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of reads not answered from the cache
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the number of calls made to ZooKeeper to fill the cache
+   */
+  public long getZooKeeperReadCount() {
+    return zooKeeperReads.sum();
+  }
+
+  /**
+   * @return the number of misses that waited for another thread's read of the same path instead of
+   *         reading ZooKeeper
+   */
+  public long getCoalescedReadCount() {
+    return coalescedReads.sum();
   }
 
   /**
@@ -514,12 +559,7 @@ public class ZooCache {
    */
   @VisibleForTesting
   boolean dataCached(String zPath) {
-    cacheReadLock.lock();
-    try {
-      return immutableCache.cache.containsKey(zPath) && cache.containsKey(zPath);
-    } finally {
-      cacheReadLock.unlock();
-    }
+    return cache.containsKey(zPath);
   }
 
   /**
@@ -531,12 +571,7 @@ public class ZooCache {
    */
   @VisibleForTesting
   boolean childrenCached(String zPath) {
-    cacheReadLock.lock();
-    try {
-      return immutableCache.childrenCache.containsKey(zPath) && childrenCache.containsKey(zPath);
-    } finally {
-      cacheReadLock.unlock();
-    }
+    return childrenCache.containsKey(zPath);
   }
 
   /**
@@ -547,15 +582,16 @@ public class ZooCache {
    */
   public void clear(String zPath) {
     Preconditions.checkState(!closed);
-    cacheWriteLock.lock();
-    try {
-      cache.keySet().removeIf(path -> path.startsWith(zPath));
-      childrenCache.keySet().removeIf(path -> path.startsWith(zPath));
-      statCache.keySet().removeIf(path -> path.startsWith(zPath));
-
-      immutableCache = new ImmutableCacheCopies(++updateCount, cache, statCache, childrenCache);
-    } finally {
-      cacheWriteLock.unlock();
-    }
+    dataLoads.forEach((path, load) -> {
+      if (path.startsWith(zPath))
+        invalidate(load);
+    });
+    childrenLoads.forEach((path, load) -> {
+      if (path.startsWith(zPath))
+        invalidate(load);
+    });
+    cache.keySet().removeIf(path -> path.startsWith(zPath));
+    childrenCache.keySet().removeIf(path -> path.startsWith(zPath));
+    updateCount.incrementAndGet();
   }
 }
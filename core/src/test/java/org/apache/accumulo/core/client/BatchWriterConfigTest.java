@@ -39,6 +39,7 @@ public class BatchWriterConfigTest {
     long expectedMaxLatency = 120000L;
     long expectedTimeout = Long.MAX_VALUE;
     int expectedMaxWriteThreads = 3;
+    int expectedMaxInFlight = 1;
     Durability expectedDurability = Durability.DEFAULT;
 
     BatchWriterConfig defaults = new BatchWriterConfig();
@@ -46,6 +47,7 @@ public class BatchWriterConfigTest {
     assertEquals(expectedMaxLatency, defaults.getMaxLatency(TimeUnit.MILLISECONDS));
     assertEquals(expectedTimeout, defaults.getTimeout(TimeUnit.MILLISECONDS));
     assertEquals(expectedMaxWriteThreads, defaults.getMaxWriteThreads());
+    assertEquals(expectedMaxInFlight, defaults.getMaxInFlightBatchesPerServer());
     assertEquals(expectedDurability, defaults.getDurability());
   }
 
@@ -56,12 +58,14 @@ public class BatchWriterConfigTest {
     bwConfig.setMaxLatency(22, TimeUnit.HOURS);
     bwConfig.setTimeout(33, TimeUnit.DAYS);
     bwConfig.setMaxWriteThreads(42);
+    bwConfig.setMaxInFlightBatchesPerServer(4);
     bwConfig.setDurability(Durability.NONE);
 
     assertEquals(1123581321L, bwConfig.getMaxMemory());
     assertEquals(22 * 60 * 60 * 1000L, bwConfig.getMaxLatency(TimeUnit.MILLISECONDS));
     assertEquals(33 * 24 * 60 * 60 * 1000L, bwConfig.getTimeout(TimeUnit.MILLISECONDS));
     assertEquals(42, bwConfig.getMaxWriteThreads());
+    assertEquals(4, bwConfig.getMaxInFlightBatchesPerServer());
     assertEquals(Durability.NONE, bwConfig.getDurability());
   }
 
@@ -128,6 +132,12 @@ public class BatchWriterConfigTest {
     bwConfig.setMaxWriteThreads(-1);
   }
 
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroMaxInFlight() {
+    BatchWriterConfig bwConfig = new BatchWriterConfig();
+    bwConfig.setMaxInFlightBatchesPerServer(0);
+  }
+
   @Test
   public void testSerialize() throws IOException {
     // make sure we aren't testing defaults
@@ -135,6 +145,7 @@ public class BatchWriterConfigTest {
     assertNotEquals(7654321L, bwDefaults.getMaxLatency(TimeUnit.MILLISECONDS));
     assertNotEquals(9898989L, bwDefaults.getTimeout(TimeUnit.MILLISECONDS));
     assertNotEquals(42, bwDefaults.getMaxWriteThreads());
+    assertNotEquals(5, bwDefaults.getMaxInFlightBatchesPerServer());
     assertNotEquals(1123581321L, bwDefaults.getMaxMemory());
     assertNotEquals(Durability.FLUSH, bwDefaults.getDurability());
 
@@ -144,6 +155,7 @@ public class BatchWriterConfigTest {
     bwConfig.setTimeout(9898989L, TimeUnit.MILLISECONDS);
     bwConfig.setMaxWriteThreads(42);
     bwConfig.setMaxMemory(1123581321L);
+    bwConfig.setMaxInFlightBatchesPerServer(5);
     bwConfig.setDurability(Durability.FLUSH);
     byte[] bytes = createBytes(bwConfig);
     checkBytes(bwConfig, bytes);
@@ -168,6 +180,13 @@ public class BatchWriterConfigTest {
     bwConfig.setDurability(Durability.LOG);
     bytes = createBytes(bwConfig);
     assertEquals("     e#durability=LOG", new String(bytes, UTF_8));
+
+    // test human-readable in flight batches
+    bwConfig = new BatchWriterConfig();
+    bwConfig.setMaxInFlightBatchesPerServer(8);
+    bytes = createBytes(bwConfig);
+    assertEquals("     d#maxInFlight=8", new String(bytes, UTF_8));
+    checkBytes(bwConfig, bytes);
   }
 
   @Test
@@ -206,6 +225,7 @@ public class BatchWriterConfigTest {
     cfg1.setMaxMemory(1234);
     cfg2.setMaxMemory(5858);
     cfg2.setDurability(Durability.LOG);
+    cfg2.setMaxInFlightBatchesPerServer(2);
     cfg2.setMaxLatency(456, TimeUnit.MILLISECONDS);
 
     assertEquals(Durability.DEFAULT, cfg1.getDurability());
@@ -216,6 +236,7 @@ public class BatchWriterConfigTest {
     assertEquals(Durability.LOG, merged.getDurability());
     assertEquals(456, merged.getMaxLatency(TimeUnit.MILLISECONDS));
     assertEquals(3, merged.getMaxWriteThreads());
+    assertEquals(2, merged.getMaxInFlightBatchesPerServer());
   }
 
   private byte[] createBytes(BatchWriterConfig bwConfig) throws IOException {
@@ -235,6 +256,8 @@ public class BatchWriterConfigTest {
     assertEquals(bwConfig.getTimeout(TimeUnit.MILLISECONDS),
         createdConfig.getTimeout(TimeUnit.MILLISECONDS));
     assertEquals(bwConfig.getMaxWriteThreads(), createdConfig.getMaxWriteThreads());
+    assertEquals(bwConfig.getMaxInFlightBatchesPerServer(),
+        createdConfig.getMaxInFlightBatchesPerServer());
   }
 
   @Test
@@ -242,7 +265,7 @@ public class BatchWriterConfigTest {
     // count the number in case one gets added to in one place but not the other
     ClientProperty[] bwProps = Arrays.stream(ClientProperty.values())
         .filter(c -> c.name().startsWith("BATCH_WRITER")).toArray(ClientProperty[]::new);
-    assertEquals(5, bwProps.length);
+    assertEquals(6, bwProps.length);
   }
 
 }
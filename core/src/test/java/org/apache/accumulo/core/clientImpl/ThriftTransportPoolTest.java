@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.clientImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.accumulo.core.clientImpl.ThriftTransportPool.CachedTTransport;
+import org.apache.accumulo.core.clientImpl.ThriftTransportPool.ConnectionStats;
+import org.apache.accumulo.core.util.HostAndPort;
+import org.apache.thrift.transport.TTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThriftTransportPoolTest {
+
+  private ServerSocket server;
+  private ThriftTransportKey key;
+  private ThriftTransportPool pool;
+
+  @Before
+  public void setup() throws Exception {
+    // connections only need to be accepted by the OS, nothing is ever read or written
+    server = new ServerSocket(0, 100);
+    key = new ThriftTransportKey(HostAndPort.fromParts("localhost", server.getLocalPort()), 10000L,
+        null, null);
+    pool = new ThriftTransportPool();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    TTransport first = pool.getTransport(key);
+    pool.returnTransport(first);
+    TTransport second = pool.getTransport(key);
+    assertSame(first, second);
+
+    // a second concurrent user needs its own connection
+    TTransport third = pool.getTransport(key);
+    assertNotSame(second, third);
+    pool.returnTransport(second);
+    pool.returnTransport(third);
+
+    ConnectionStats stats = pool.getConnectionStats().get(key);
+    assertEquals(2, stats.getCreated());
+    assertEquals(1, stats.getReused());
+    assertEquals(0, stats.getErrors());
+  }
+
+  @Test
+  public void testErrorClosesIdleConnections() throws Exception {
+    TTransport first = pool.getTransport(key);
+    TTransport second = pool.getTransport(key);
+    pool.returnTransport(first);
+
+    ((CachedTTransport) second).sawError();
+    pool.returnTransport(second);
+
+    // the idle connection was closed along with the one that saw the error
+    TTransport third = pool.getTransport(key);
+    assertNotSame(first, third);
+    assertNotSame(second, third);
+    pool.returnTransport(third);
+
+    ConnectionStats stats = pool.getConnectionStats().get(key);
+    assertEquals(3, stats.getCreated());
+    assertEquals(0, stats.getReused());
+    assertEquals(1, stats.getErrors());
+  }
+
+  @Test
+  public void testConcurrentUse() throws Exception {
+    final int threads = 16;
+    final int iterations = 500;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < iterations; i++) {
+            TTransport transport = pool.getTransport(key);
+            pool.returnTransport(transport);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    ConnectionStats stats = pool.getConnectionStats().get(key);
+    // reserving a connection that is in use fails, so no two threads ever shared one
+    assertEquals(threads * iterations, stats.getCreated() + stats.getReused());
+    assertTrue(stats.getCreated() <= threads);
+  }
+}
@@ -16,25 +16,34 @@
  */
 package org.apache.accumulo.core.file;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.accumulo.core.conf.ConfigurationCopy;
 import org.apache.accumulo.core.conf.DefaultConfiguration;
 import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.crypto.CryptoServiceFactory;
+import org.apache.accumulo.core.data.ArrayByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.PartialKey;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.file.keyfunctor.ColumnFamilyFunctor;
+import org.apache.accumulo.core.file.keyfunctor.RowPrefixFunctor;
 import org.apache.accumulo.core.file.rfile.RFile;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -144,6 +153,221 @@ public class BloomFilterLayerLookupTest {
     assertTrue(rate1 > rate2);
   }
 
+  @Test
+  public void testBlockedRowPrefix() throws Exception {
+    testRowPrefix("blocked");
+  }
+
+  @Test
+  public void testPartitionedRowPrefix() throws Exception {
+    testRowPrefix("partitioned");
+  }
+
+  private static ConfigurationCopy rowPrefixConf(String bloomType) {
+    ConfigurationCopy acuconf = new ConfigurationCopy(DefaultConfiguration.getInstance());
+    acuconf.set(Property.TABLE_BLOOM_ENABLED, "true");
+    acuconf.set(Property.TABLE_BLOOM_TYPE, bloomType);
+    acuconf.set(Property.TABLE_BLOOM_PARTITION_SIZE, "300");
+    acuconf.set(Property.TABLE_BLOOM_KEY_FUNCTOR, RowPrefixFunctor.class.getName());
+    acuconf.set(Property.TABLE_BLOOM_KEY_PREFIX_LENGTH, "5");
+    acuconf.set(Property.TABLE_BLOOM_SIZE, "1000");
+    acuconf.set(Property.TABLE_FILE_TYPE, RFile.EXTENSION);
+    acuconf.set(Property.TABLE_BLOOM_LOAD_THRESHOLD, "0");
+    acuconf.set(Property.TSERV_BLOOM_LOAD_MAXCONCURRENT, "1");
+    return acuconf;
+  }
+
+  private String writeRowPrefixFile(ConfigurationCopy acuconf, FileSystem fs, Configuration conf)
+      throws IOException {
+    String suffix = FileOperations.getNewFileExtension(acuconf);
+    String fname = new File(tempDir.getRoot(), testName + "." + suffix).getAbsolutePath();
+    FileSKVWriter bmfw = FileOperations.getInstance().newWriterBuilder()
+        .forFile(fname, fs, conf, CryptoServiceFactory.newDefaultInstance())
+        .withTableConfiguration(acuconf).build();
+
+    // only even prefixes are written, with more prefixes than fit in one filter
+    bmfw.startDefaultLocalityGroup();
+    for (int p = 0; p < 5000; p += 2) {
+      for (int r = 0; r < 3; r++) {
+        bmfw.append(new Key(new Text(String.format("p%04d_%03d", p, r)), new Text("cf")),
+            new Value(("v" + p).getBytes()));
+      }
+    }
+    bmfw.close();
+    return fname;
+  }
+
+  private void testRowPrefix(String bloomType) throws Exception {
+    ConfigurationCopy acuconf = rowPrefixConf(bloomType);
+
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    String fname = writeRowPrefixFile(acuconf, fs, conf);
+
+    FileSKVIterator bmfr = FileOperations.getInstance().newReaderBuilder()
+        .forFile(fname, fs, conf, CryptoServiceFactory.newDefaultInstance())
+        .withTableConfiguration(acuconf).build();
+
+    for (int p = 0; p < 5000; p += 2) {
+      bmfr.seek(Range.prefix(String.format("p%04d", p)), new ArrayList<>(), false);
+      assertTrue(bmfr.hasTop());
+    }
+
+    // the filter may be loading in the background, so wait for it to skip absent prefixes
+    long negatives = BloomFilterLayer.getTotalNegatives();
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (BloomFilterLayer.getTotalNegatives() == negatives
+        && System.currentTimeMillis() < deadline) {
+      for (int p = 1; p < 5000; p += 2) {
+        bmfr.seek(Range.prefix(String.format("p%04d", p)), new ArrayList<>(), false);
+        assertFalse(bmfr.hasTop());
+      }
+      Thread.sleep(10);
+    }
+    assertTrue(BloomFilterLayer.getTotalNegatives() > negatives);
+
+    // a range that spans prefixes can not use the filter
+    bmfr.seek(new Range("p0001", "p0003"), new ArrayList<>(), false);
+    assertTrue(bmfr.hasTop());
+    bmfr.close();
+  }
+
+  /**
+   * Opens the file without a bloom filter layer and wraps it in one that reads the bloom filter
+   * meta blocks through the given function.
+   */
+  private static FileSKVIterator openWithBloomLayer(String fname, FileSystem fs,
+      Configuration conf, ConfigurationCopy acuconf, MetaStoreReads reads) throws IOException {
+    ConfigurationCopy noBloom = new ConfigurationCopy(acuconf);
+    noBloom.set(Property.TABLE_BLOOM_ENABLED, "false");
+    FileSKVIterator reader = FileOperations.getInstance().newReaderBuilder()
+        .forFile(fname, fs, conf, CryptoServiceFactory.newDefaultInstance())
+        .withTableConfiguration(noBloom).build();
+    FileSKVIterator counting = (FileSKVIterator) Proxy.newProxyInstance(
+        FileSKVIterator.class.getClassLoader(), new Class<?>[] {FileSKVIterator.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("getMetaStore")) {
+            reads.read((String) args[0]);
+          }
+          try {
+            return method.invoke(reader, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+    return new BloomFilterLayer.Reader(counting, acuconf);
+  }
+
+  private interface MetaStoreReads {
+    void read(String name) throws IOException;
+  }
+
+  @Test
+  public void testPartitionReads() throws Exception {
+    ConfigurationCopy acuconf = rowPrefixConf("partitioned");
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    String fname = writeRowPrefixFile(acuconf, fs, conf);
+
+    AtomicInteger partitionReads = new AtomicInteger();
+    FileSKVIterator bmfr = openWithBloomLayer(fname, fs, conf, acuconf, name -> {
+      if (name.startsWith(BloomFilterLayer.BLOOM_PARTITION_PREFIX)) {
+        partitionReads.incrementAndGet();
+      }
+    });
+
+    // a lookup reads only the partition covering its prefix
+    bmfr.seek(Range.prefix("p0000"), new ArrayList<>(), false);
+    assertTrue(bmfr.hasTop());
+    assertEquals(1, partitionReads.get());
+
+    // partitions are kept once read
+    bmfr.seek(Range.prefix("p0002"), new ArrayList<>(), false);
+    assertTrue(bmfr.hasTop());
+    bmfr.seek(Range.prefix("p0001"), new ArrayList<>(), false);
+    assertFalse(bmfr.hasTop());
+    assertEquals(1, partitionReads.get());
+
+    // 2500 prefixes with 300 in each partition
+    for (int p = 0; p < 5000; p += 2) {
+      bmfr.seek(Range.prefix(String.format("p%04d", p)), new ArrayList<>(), false);
+      assertTrue(bmfr.hasTop());
+    }
+    assertEquals(9, partitionReads.get());
+    bmfr.close();
+  }
+
+  @Test
+  public void testPartitionIndexReadFailure() throws Exception {
+    ConfigurationCopy acuconf = rowPrefixConf("partitioned");
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    String fname = writeRowPrefixFile(acuconf, fs, conf);
+
+    Set<String> reads = ConcurrentHashMap.newKeySet();
+    FileSKVIterator bmfr = openWithBloomLayer(fname, fs, conf, acuconf, name -> {
+      reads.add(name);
+      if (name.equals(BloomFilterLayer.BLOOM_PARTITION_INDEX_NAME)) {
+        throw new IOException("test failure");
+      }
+    });
+
+    // lookups do not use the filter, and the loader falls back to the other filter types
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (!reads.contains(BloomFilterLayer.BLOOM_FILE_NAME)
+        && System.currentTimeMillis() < deadline) {
+      bmfr.seek(Range.prefix("p0000"), new ArrayList<>(), false);
+      assertTrue(bmfr.hasTop());
+      Thread.sleep(10);
+    }
+    assertTrue(reads.contains(BloomFilterLayer.BLOOM_FILE_NAME));
+
+    long negatives = BloomFilterLayer.getTotalNegatives();
+    bmfr.seek(Range.prefix("p0001"), new ArrayList<>(), false);
+    assertFalse(bmfr.hasTop());
+    assertEquals(negatives, BloomFilterLayer.getTotalNegatives());
+    bmfr.close();
+  }
+
+  @Test
+  public void testPartitionedLocalityGroups() throws Exception {
+    ConfigurationCopy acuconf = rowPrefixConf("partitioned");
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    String suffix = FileOperations.getNewFileExtension(acuconf);
+    String fname = new File(tempDir.getRoot(), testName + "." + suffix).getAbsolutePath();
+    FileSKVWriter bmfw = FileOperations.getInstance().newWriterBuilder()
+        .forFile(fname, fs, conf, CryptoServiceFactory.newDefaultInstance())
+        .withTableConfiguration(acuconf).build();
+
+    // rows start over in each group, the second group only has odd prefixes
+    bmfw.startNewLocalityGroup("g1", Collections.singleton(new ArrayByteSequence("cf1")));
+    for (int p = 0; p < 5000; p += 2) {
+      bmfw.append(new Key(new Text(String.format("p%04d_000", p)), new Text("cf1")),
+          new Value(("v" + p).getBytes()));
+    }
+    bmfw.startNewLocalityGroup("g2", Collections.singleton(new ArrayByteSequence("cf2")));
+    for (int p = 1; p < 5000; p += 4) {
+      bmfw.append(new Key(new Text(String.format("p%04d_000", p)), new Text("cf2")),
+          new Value(("v" + p).getBytes()));
+    }
+    bmfw.startDefaultLocalityGroup();
+    // the last row of the previous group starts this one
+    bmfw.append(new Key(new Text("p4997_000"), new Text("cf3")), new Value("v".getBytes()));
+    bmfw.close();
+
+    FileSKVIterator bmfr = openWithBloomLayer(fname, fs, conf, acuconf, name -> {});
+
+    // the partitions of every group are checked, and absent prefixes are still skipped
+    long negatives = BloomFilterLayer.getTotalNegatives();
+    for (int p = 0; p < 5000; p++) {
+      bmfr.seek(Range.prefix(String.format("p%04d", p)), new ArrayList<>(), false);
+      assertEquals("prefix " + p, p % 2 == 0 || p % 4 == 1, bmfr.hasTop());
+    }
+    assertTrue(BloomFilterLayer.getTotalNegatives() > negatives);
+    bmfr.close();
+  }
+
   private void seek(FileSKVIterator bmfr, int row) throws IOException {
     String fi = String.format("%010d", row);
     // bmfr.seek(new Range(new Text("r"+fi)));
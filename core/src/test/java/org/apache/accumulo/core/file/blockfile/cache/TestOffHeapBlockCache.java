@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.DefaultConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.file.blockfile.cache.impl.BlockCacheConfiguration;
+import org.apache.accumulo.core.file.blockfile.cache.offheap.OffHeapBlockCache;
+import org.apache.accumulo.core.spi.cache.BlockCache.Loader;
+import org.apache.accumulo.core.spi.cache.BlockCacheManager;
+import org.apache.accumulo.core.spi.cache.CacheEntry;
+import org.apache.accumulo.core.spi.cache.CacheEntry.Weighable;
+import org.apache.accumulo.core.spi.cache.CacheType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+@SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "paths not set by user input")
+public class TestOffHeapBlockCache {
+
+  @Rule
+  public TemporaryFolder tempFolder =
+      new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
+
+  private static OffHeapBlockCache newCache(long maxSize, String slabSize, String mmapDir) {
+    ConfigurationCopy cc = new ConfigurationCopy(DefaultConfiguration.getInstance());
+    cc.set(Property.TSERV_DEFAULT_BLOCKSIZE, Long.toString(8192));
+    cc.set(Property.TSERV_DATACACHE_SIZE, Long.toString(maxSize));
+    String prefix = BlockCacheManager
+        .getFullyQualifiedPropertyPrefix(OffHeapBlockCache.PROPERTY_PREFIX, CacheType.DATA);
+    cc.set(prefix + OffHeapBlockCache.SLAB_SIZE_PROPERTY, slabSize);
+    if (mmapDir != null) {
+      cc.set(prefix + OffHeapBlockCache.MMAP_DIR_PROPERTY, mmapDir);
+    }
+    return new OffHeapBlockCache(new BlockCacheConfiguration(cc), CacheType.DATA);
+  }
+
+  private static byte[] newBlock(Random rand, int size) {
+    byte[] block = new byte[size];
+    rand.nextBytes(block);
+    return block;
+  }
+
+  private static byte[] read(ByteBuffer buf) {
+    byte[] data = new byte[buf.remaining()];
+    buf.duplicate().get(data);
+    return data;
+  }
+
+  private void checkCacheSimple(OffHeapBlockCache cache) {
+    Random rand = new Random(3);
+    byte[][] blocks = new byte[100][];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = newBlock(rand, 1 + rand.nextInt(20000));
+      CacheEntry ce = cache.cacheBlock("b" + i, blocks[i]);
+      assertArrayEquals(blocks[i], ce.getBuffer());
+      ce.release();
+    }
+
+    for (int i = 0; i < blocks.length; i++) {
+      CacheEntry ce = cache.getBlock("b" + i);
+      assertNotNull(ce);
+      ByteBuffer buf = ce.getByteBuffer();
+      assertTrue(buf.isDirect());
+      assertTrue(buf.isReadOnly());
+      assertArrayEquals(blocks[i], read(buf));
+      assertArrayEquals(blocks[i], ce.getBuffer());
+      ce.release();
+    }
+
+    assertNull(cache.getBlock("b" + blocks.length));
+    assertEquals(100, cache.getStats().hitCount());
+  }
+
+  @Test
+  public void testCacheSimple() {
+    checkCacheSimple(newCache(10 << 20, "1M", null));
+  }
+
+  @Test
+  public void testMemoryMappedSlabs() throws Exception {
+    checkCacheSimple(newCache(10 << 20, "1M", tempFolder.newFolder().getAbsolutePath()));
+  }
+
+  @Test
+  public void testEviction() {
+    OffHeapBlockCache cache = newCache(1 << 20, "64K", null);
+    assertEquals(1 << 20, cache.getMaxSize());
+    assertEquals((1 << 20) / 16, cache.getMaxHeapSize());
+
+    Random rand = new Random(7);
+    byte[][] blocks = new byte[1000][];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = newBlock(rand, 1000 + rand.nextInt(15000));
+      cache.cacheBlock("b" + i, blocks[i]).release();
+    }
+
+    // evicted blocks are gone, and the blocks still cached fit in the cache and are intact
+    long cachedBytes = 0;
+    for (int i = 0; i < blocks.length; i++) {
+      CacheEntry ce = cache.getBlock("b" + i);
+      if (ce != null) {
+        assertArrayEquals(blocks[i], read(ce.getByteBuffer()));
+        cachedBytes += blocks[i].length;
+        ce.release();
+      }
+    }
+    assertTrue(cachedBytes > 0);
+    assertTrue(cachedBytes <= cache.getMaxSize());
+  }
+
+  @Test
+  public void testEvictedBlockStaysReadable() {
+    OffHeapBlockCache cache = newCache(1 << 20, "64K", null);
+    Random rand = new Random(11);
+
+    byte[] first = newBlock(rand, 8000);
+    cache.cacheBlock("first", first).release();
+    CacheEntry held = cache.getBlock("first");
+    assertNotNull(held);
+
+    // write enough blocks of the same size to evict the held block many times over, reading each
+    // a few times so TinyLFU prefers them over the held block
+    for (int i = 0; i < 1000; i++) {
+      cache.cacheBlock("b" + i, newBlock(rand, 8000)).release();
+      for (int j = 0; j < 3; j++) {
+        CacheEntry ce = cache.getBlock("b" + i);
+        if (ce != null) {
+          ce.release();
+        }
+      }
+    }
+    assertNull(cache.getBlock("first"));
+
+    // the chunk of the held block was not reused
+    assertArrayEquals(first, read(held.getByteBuffer()));
+    held.release();
+    // releasing again does nothing
+    held.release();
+  }
+
+  @Test
+  public void testBlockLargerThanSlab() {
+    OffHeapBlockCache cache = newCache(1 << 20, "64K", null);
+    byte[] big = newBlock(new Random(5), 100000);
+    CacheEntry ce = cache.cacheBlock("big", big);
+    // too big to cache, but the data is still returned
+    assertArrayEquals(big, ce.getBuffer());
+    assertNull(cache.getBlock("big"));
+  }
+
+  @Test
+  public void testLoader() {
+    OffHeapBlockCache cache = newCache(1 << 20, "64K", null);
+    byte[] data = newBlock(new Random(13), 5000);
+    AtomicInteger loads = new AtomicInteger();
+    Loader loader = new Loader() {
+      @Override
+      public Map<String,Loader> getDependencies() {
+        return Collections.emptyMap();
+      }
+
+      @Override
+      public byte[] load(int maxSize, Map<String,byte[]> dependencies) {
+        loads.incrementAndGet();
+        return data;
+      }
+    };
+
+    for (int i = 0; i < 3; i++) {
+      CacheEntry ce = cache.getBlock("loaded", loader);
+      assertArrayEquals(data, read(ce.getByteBuffer()));
+      ce.release();
+    }
+    assertEquals(1, loads.get());
+  }
+
+  private static Loader loaderOf(byte[] data, AtomicInteger loads) {
+    return new Loader() {
+      @Override
+      public Map<String,Loader> getDependencies() {
+        return Collections.emptyMap();
+      }
+
+      @Override
+      public byte[] load(int maxSize, Map<String,byte[]> dependencies) {
+        loads.incrementAndGet();
+        return data;
+      }
+    };
+  }
+
+  @Test
+  public void testLoaderEvicts() {
+    // loading into a full cache evicts other blocks, which must not happen inside a cache load
+    OffHeapBlockCache cache = newCache(1 << 20, "64K", null);
+    Random rand = new Random(17);
+    AtomicInteger loads = new AtomicInteger();
+    for (int i = 0; i < 1000; i++) {
+      byte[] data = newBlock(rand, 1000 + rand.nextInt(15000));
+      CacheEntry ce = cache.getBlock("b" + i, loaderOf(data, loads));
+      assertArrayEquals(data, ce.getBuffer());
+      ce.release();
+    }
+    assertEquals(1000, loads.get());
+  }
+
+  private static class TestIndex implements Weighable {
+    final int weight;
+
+    TestIndex(int weight) {
+      this.weight = weight;
+    }
+
+    @Override
+    public int weight() {
+      return weight;
+    }
+  }
+
+  private static int buildIndexes(OffHeapBlockCache cache, String prefix, int indexWeight) {
+    AtomicInteger built = new AtomicInteger();
+    for (int i = 0; i < 10; i++) {
+      CacheEntry ce = cache.getBlock(prefix + i);
+      TestIndex index = ce.getIndex(() -> {
+        built.incrementAndGet();
+        return new TestIndex(indexWeight);
+      });
+      assertEquals(indexWeight, index.weight());
+      ce.release();
+    }
+    return built.get();
+  }
+
+  @Test
+  public void testIndexesBounded() {
+    OffHeapBlockCache cache = newCache(1 << 20, "64K", null);
+    Random rand = new Random(19);
+    for (int i = 0; i < 10; i++) {
+      cache.cacheBlock("small" + i, newBlock(rand, 1000)).release();
+      cache.cacheBlock("large" + i, newBlock(rand, 1000)).release();
+    }
+
+    // small indexes all fit, so they are built once
+    assertEquals(10, buildIndexes(cache, "small", 100));
+    assertEquals(0, buildIndexes(cache, "small", 100));
+
+    // each of these takes a third of the heap allowed for indexes, so most do not stay cached
+    int largeWeight = (int) (cache.getMaxHeapSize() / 3);
+    int built = buildIndexes(cache, "large", largeWeight);
+    built += buildIndexes(cache, "large", largeWeight);
+    assertTrue(built >= 17);
+  }
+}
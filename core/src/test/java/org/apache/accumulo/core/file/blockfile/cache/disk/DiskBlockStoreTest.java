@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache.disk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.DefaultConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.file.blockfile.cache.impl.BlockCacheConfiguration;
+import org.apache.accumulo.core.file.blockfile.cache.tinylfu.TinyLfuBlockCache;
+import org.apache.accumulo.core.spi.cache.BlockCache;
+import org.apache.accumulo.core.spi.cache.BlockCache.Loader;
+import org.apache.accumulo.core.spi.cache.CacheEntry;
+import org.apache.accumulo.core.spi.cache.CacheType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+@SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "paths not set by user input")
+public class DiskBlockStoreTest {
+
+  @Rule
+  public TemporaryFolder tempFolder =
+      new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
+
+  private static byte[] newBlock(Random rand, int size) {
+    byte[] block = new byte[size];
+    rand.nextBytes(block);
+    return block;
+  }
+
+  @Test
+  public void testSurvivesRestart() throws Exception {
+    Path dir = tempFolder.newFolder().toPath();
+    Random rand = new Random(1);
+    byte[][] blocks = new byte[50][];
+
+    try (DiskBlockStore store = new DiskBlockStore(dir, 100 << 20)) {
+      for (int i = 0; i < blocks.length; i++) {
+        blocks[i] = newBlock(rand, 1 + rand.nextInt(10000));
+        store.put("file1R" + i, 1000 + i, blocks[i]);
+      }
+      store.flush();
+      assertEquals(blocks.length, store.getBlockCount());
+      assertArrayEquals(blocks[7], store.get("file1R7", 1007));
+    }
+
+    try (DiskBlockStore store = new DiskBlockStore(dir, 100 << 20)) {
+      assertEquals(blocks.length, store.getBlockCount());
+      for (int i = 0; i < blocks.length; i++) {
+        assertArrayEquals(blocks[i], store.get("file1R" + i, 1000 + i));
+      }
+      assertNull(store.get("file2R0", 1000));
+    }
+  }
+
+  @Test
+  public void testFileLengthChanged() throws Exception {
+    try (DiskBlockStore store = new DiskBlockStore(tempFolder.newFolder().toPath(), 100 << 20)) {
+      byte[] block = newBlock(new Random(2), 1000);
+      store.put("file1R0", 5000, block);
+      store.flush();
+      assertNull(store.get("file1R0", 5001));
+      // a stale block is dropped
+      assertNull(store.get("file1R0", 5000));
+    }
+  }
+
+  @Test
+  public void testOldSegmentsDeleted() throws Exception {
+    Path dir = tempFolder.newFolder().toPath();
+    long maxSize = 4 << 20;
+    try (DiskBlockStore store = new DiskBlockStore(dir, maxSize)) {
+      Random rand = new Random(3);
+      byte[] last = null;
+      for (int i = 0; i < 200; i++) {
+        last = newBlock(rand, 50000);
+        store.put("b" + i, 1, last);
+        store.flush();
+      }
+      assertTrue(store.getSize() <= maxSize);
+      assertNull(store.get("b0", 1));
+      assertArrayEquals(last, store.get("b199", 1));
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      long size = files.mapToLong(p -> p.toFile().length()).sum();
+      assertTrue(size <= maxSize);
+    }
+  }
+
+  @Test
+  public void testPartialRecord() throws Exception {
+    Path dir = tempFolder.newFolder().toPath();
+    Random rand = new Random(4);
+    byte[] block = newBlock(rand, 3000);
+    try (DiskBlockStore store = new DiskBlockStore(dir, 100 << 20)) {
+      store.put("b0", 1, block);
+      store.flush();
+    }
+
+    // simulate a record that was being written when the process died
+    Path segment;
+    try (Stream<Path> files = Files.list(dir)) {
+      segment = files.findFirst().get();
+    }
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(newBlock(rand, 30)));
+    }
+
+    try (DiskBlockStore store = new DiskBlockStore(dir, 100 << 20)) {
+      assertArrayEquals(block, store.get("b0", 1));
+      byte[] block2 = newBlock(rand, 2000);
+      store.put("b1", 1, block2);
+      store.flush();
+      assertArrayEquals(block2, store.get("b1", 1));
+    }
+
+    try (DiskBlockStore store = new DiskBlockStore(dir, 100 << 20)) {
+      assertEquals(2, store.getBlockCount());
+    }
+  }
+
+  private static BlockCache newL1() {
+    ConfigurationCopy cc = new ConfigurationCopy(DefaultConfiguration.getInstance());
+    cc.set(Property.TSERV_DATACACHE_SIZE, Long.toString(10 << 20));
+    cc.set(Property.TSERV_DEFAULT_BLOCKSIZE, Long.toString(8192));
+    return new TinyLfuBlockCache(new BlockCacheConfiguration(cc), CacheType.DATA);
+  }
+
+  private static class CountingLoader implements Loader {
+    final AtomicInteger loads = new AtomicInteger();
+    final byte[] data;
+
+    CountingLoader(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public Map<String,Loader> getDependencies() {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public byte[] load(int maxSize, Map<String,byte[]> dependencies) {
+      loads.incrementAndGet();
+      return data;
+    }
+
+    @Override
+    public long getFileLength() {
+      return 12345;
+    }
+  }
+
+  @Test
+  public void testTieredCache() throws IOException, InterruptedException {
+    Path dir = tempFolder.newFolder().toPath();
+    byte[] data = newBlock(new Random(5), 4000);
+    CountingLoader loader = new CountingLoader(data);
+
+    try (DiskBlockStore store = new DiskBlockStore(dir, 100 << 20)) {
+      TieredBlockCache cache = new TieredBlockCache(newL1(), store, "d");
+      CacheEntry ce = cache.getBlock("file1R0", loader);
+      assertArrayEquals(data, ce.getBuffer());
+      assertEquals(1, loader.loads.get());
+      assertEquals(1, cache.getL2Stats().requestCount());
+      assertEquals(0, cache.getL2Stats().hitCount());
+      store.flush();
+    }
+
+    // after a restart the first tier is empty, but the block comes from the second tier
+    try (DiskBlockStore store = new DiskBlockStore(dir, 100 << 20)) {
+      TieredBlockCache cache = new TieredBlockCache(newL1(), store, "d");
+      for (int i = 0; i < 3; i++) {
+        assertArrayEquals(data, cache.getBlock("file1R0", loader).getBuffer());
+      }
+      assertEquals(1, loader.loads.get());
+      assertEquals(1, cache.getL2Stats().hitCount());
+      assertEquals(2, cache.getStats().hitCount());
+
+      // a cache of another type does not see the block
+      TieredBlockCache indexCache = new TieredBlockCache(newL1(), store, "i");
+      assertArrayEquals(data, indexCache.getBlock("file1R0", loader).getBuffer());
+      assertEquals(2, loader.loads.get());
+    }
+  }
+}
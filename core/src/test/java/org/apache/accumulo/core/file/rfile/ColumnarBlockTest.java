@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.rfile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.blockfile.cache.impl.ClassSize;
+import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile.CachedBlockRead;
+import org.apache.accumulo.core.spi.cache.CacheEntry;
+import org.junit.Test;
+
+public class ColumnarBlockTest {
+
+  private static class MyCacheEntry implements CacheEntry {
+    Object idx;
+    byte[] data;
+    int weightChanges = 0;
+
+    MyCacheEntry(byte[] d) {
+      this.data = d;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Weighable> T getIndex(Supplier<T> indexSupplier) {
+      if (idx == null) {
+        idx = indexSupplier.get();
+      }
+      return (T) idx;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+      return data;
+    }
+
+    @Override
+    public void indexWeightChanged() {
+      weightChanges++;
+    }
+  }
+
+  private static TreeMap<Key,Value> randomData(Random rand, int num) {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    String[] families = {"attr", "data", "meta"};
+    String[] visibilities = {"", "A", "A&B"};
+    while (data.size() < num) {
+      String row = String.format("row%05d", rand.nextInt(num / 4));
+      String qual = "q" + rand.nextInt(20);
+      Key key = new Key(row.getBytes(UTF_8), families[rand.nextInt(3)].getBytes(UTF_8),
+          qual.getBytes(UTF_8), visibilities[rand.nextInt(3)].getBytes(UTF_8),
+          rand.nextInt(1000) + 1_000_000_000L, rand.nextInt(10) == 0, true);
+      byte[] val = new byte[rand.nextInt(20)];
+      rand.nextBytes(val);
+      data.put(key, new Value(val));
+    }
+    return data;
+  }
+
+  private static byte[] write(TreeMap<Key,Value> data) throws IOException {
+    ColumnarBlock.Writer writer = new ColumnarBlock.Writer();
+    data.forEach(writer::append);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    writer.write(out);
+    out.close();
+    return baos.toByteArray();
+  }
+
+  private static void verify(TreeMap<Key,Value> data, ColumnarBlock block) {
+    List<Key> keys = new ArrayList<>(data.keySet());
+    assertEquals(keys.size(), block.size());
+    for (int i = 0; i < keys.size(); i++) {
+      assertEquals(keys.get(i), block.getKey(i));
+      assertEquals(keys.get(i).isDeleted(), block.getKey(i).isDeleted());
+      assertEquals(data.get(keys.get(i)), block.getValue(i));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    TreeMap<Key,Value> data = randomData(new Random(42), 2000);
+    byte[] encoded = write(data);
+
+    verify(data, ColumnarBlock.read(new CachedBlockRead(new ByteArrayInputStream(encoded))));
+
+    MyCacheEntry ce = new MyCacheEntry(encoded);
+    ColumnarBlock block = ColumnarBlock.read(new CachedBlockRead(ce, encoded));
+    verify(data, block);
+    assertEquals(1, ce.weightChanges);
+
+    // the decoded block is kept with the cache entry
+    assertSame(block, ColumnarBlock.read(new CachedBlockRead(ce, encoded)));
+    assertEquals(1, ce.weightChanges);
+  }
+
+  @Test
+  public void testWeight() throws IOException {
+    TreeMap<Key,Value> data = randomData(new Random(11), 1000);
+    byte[] encoded = write(data);
+    long valueBytes = 0;
+    for (Value value : data.values()) {
+      valueBytes += value.getSize();
+    }
+
+    ColumnarBlock copied =
+        ColumnarBlock.read(new CachedBlockRead(new ByteArrayInputStream(encoded)));
+    ColumnarBlock inPlace =
+        ColumnarBlock.read(new CachedBlockRead(new MyCacheEntry(encoded), encoded));
+
+    // values read in place share the cached block's buffer and do not add to the weight
+    assertEquals(ClassSize.ARRAY + valueBytes, copied.weight() - inPlace.weight());
+    assertTrue(inPlace.weight() > 0);
+
+    // a block cached off heap is read from a heap copy, which only the decoded block keeps
+    ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+    direct.put(encoded).flip();
+    MyCacheEntry offHeapEntry = new MyCacheEntry(encoded) {
+      @Override
+      public ByteBuffer getByteBuffer() {
+        return direct.asReadOnlyBuffer();
+      }
+    };
+    ColumnarBlock offHeap = ColumnarBlock.read(new CachedBlockRead(offHeapEntry));
+    verify(data, offHeap);
+    assertEquals(ClassSize.ARRAY + encoded.length, offHeap.weight() - inPlace.weight());
+  }
+
+  @Test
+  public void testSingleEntry() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    data.put(new Key("r", "f", "q", "", 5), new Value(new byte[0]));
+    verify(data, ColumnarBlock.read(new CachedBlockRead(new ByteArrayInputStream(write(data)))));
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    Random rand = new Random(7);
+    TreeMap<Key,Value> data = randomData(rand, 500);
+    byte[] encoded = write(data);
+    ColumnarBlock block =
+        ColumnarBlock.read(new CachedBlockRead(new ByteArrayInputStream(encoded)));
+    List<Key> keys = new ArrayList<>(data.keySet());
+
+    assertEquals(0, block.seek(new Key(), 0));
+    assertEquals(keys.size(), block.seek(new Key("row99999"), 0));
+
+    for (int i = 0; i < 200; i++) {
+      Key seekKey = new Key(String.format("row%05d", rand.nextInt(130)), "data", "q" + i % 20);
+      int expected = keys.size() - data.tailMap(seekKey, true).size();
+      assertEquals(expected, block.seek(seekKey, 0));
+      assertEquals(expected, block.seek(seekKey, expected / 2));
+      // seeking from past the key does not move backwards
+      assertEquals(Math.max(expected, 10), block.seek(seekKey, Math.max(expected, 10)));
+    }
+  }
+}
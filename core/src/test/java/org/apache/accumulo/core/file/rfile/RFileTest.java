@@ -45,6 +45,7 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.accumulo.core.Constants;
 import org.apache.accumulo.core.client.sample.RowSampler;
@@ -67,8 +68,8 @@ import org.apache.accumulo.core.dataImpl.KeyExtent;
 import org.apache.accumulo.core.file.FileSKVIterator;
 import org.apache.accumulo.core.file.blockfile.cache.impl.BlockCacheConfiguration;
 import org.apache.accumulo.core.file.blockfile.cache.impl.BlockCacheManagerFactory;
-import org.apache.accumulo.core.file.blockfile.cache.lru.LruBlockCache;
 import org.apache.accumulo.core.file.blockfile.cache.lru.LruBlockCacheManager;
+import org.apache.accumulo.core.file.blockfile.cache.offheap.OffHeapBlockCacheManager;
 import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile.CachableBuilder;
 import org.apache.accumulo.core.file.rfile.RFile.Reader;
 import org.apache.accumulo.core.file.rfile.bcfile.BCFile;
@@ -80,6 +81,7 @@ import org.apache.accumulo.core.metadata.schema.MetadataSchema;
 import org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection;
 import org.apache.accumulo.core.sample.impl.SamplerConfigurationImpl;
 import org.apache.accumulo.core.sample.impl.SamplerFactory;
+import org.apache.accumulo.core.spi.cache.BlockCache;
 import org.apache.accumulo.core.spi.cache.BlockCacheManager;
 import org.apache.accumulo.core.spi.cache.CacheType;
 import org.apache.hadoop.conf.Configuration;
@@ -138,6 +140,8 @@ public class RFileTest {
   static class SeekableByteArrayInputStream extends ByteArrayInputStream
       implements Seekable, PositionedReadable {
 
+    final AtomicInteger positionedReads = new AtomicInteger();
+
     public SeekableByteArrayInputStream(byte[] buf) {
       super(buf);
     }
@@ -167,6 +171,7 @@ public class RFileTest {
     @Override
     public int read(long position, byte[] buffer, int offset, int length) {
 
+      positionedReads.incrementAndGet();
       if (position >= buf.length)
         throw new IllegalArgumentException();
       if (position + length > buf.length)
@@ -230,6 +235,8 @@ public class RFileTest {
     protected AccumuloConfiguration accumuloConfiguration;
     public Reader reader;
     public SortedKeyValueIterator<Key,Value> iter;
+    public long maxCoalescedRead = 0;
+    public String cacheManager = LruBlockCacheManager.class.getName();
     private BlockCacheManager manager;
 
     public TestRFile(AccumuloConfiguration accumuloConfiguration) {
@@ -256,7 +263,10 @@ public class RFileTest {
         sampler = SamplerFactory.newSampler(samplerConfig, accumuloConfiguration);
       }
 
-      writer = new RFile.Writer(_cbw, blockSize, 1000, samplerConfig, sampler);
+      DataBlockEncoding encoding = DataBlockEncoding
+          .fromProperty(accumuloConfiguration.get(Property.TABLE_FILE_DATA_BLOCK_ENCODING));
+      writer = new RFile.Writer(_cbw, blockSize, 1000, samplerConfig, sampler, encoding,
+          accumuloConfiguration.getCount(Property.TABLE_FILE_DATA_BLOCK_RESTART_INTERVAL));
 
       if (startDLG)
         writer.startDefaultLocalityGroup();
@@ -294,7 +304,7 @@ public class RFileTest {
 
       DefaultConfiguration dc = DefaultConfiguration.getInstance();
       ConfigurationCopy cc = new ConfigurationCopy(dc);
-      cc.set(Property.TSERV_CACHE_MANAGER_IMPL, LruBlockCacheManager.class.getName());
+      cc.set(Property.TSERV_CACHE_MANAGER_IMPL, cacheManager);
       try {
         manager = BlockCacheManagerFactory.getInstance(cc);
       } catch (Exception e) {
@@ -304,12 +314,13 @@ public class RFileTest {
       cc.set(Property.TSERV_DATACACHE_SIZE, Long.toString(100000000));
       cc.set(Property.TSERV_INDEXCACHE_SIZE, Long.toString(100000000));
       manager.start(new BlockCacheConfiguration(cc));
-      LruBlockCache indexCache = (LruBlockCache) manager.getBlockCache(CacheType.INDEX);
-      LruBlockCache dataCache = (LruBlockCache) manager.getBlockCache(CacheType.DATA);
+      BlockCache indexCache = manager.getBlockCache(CacheType.INDEX);
+      BlockCache dataCache = manager.getBlockCache(CacheType.DATA);
 
-      CachableBuilder cb = new CachableBuilder().cacheId("source-1").input(in).length(fileLength)
-          .conf(conf).data(dataCache).index(indexCache).cryptoService(
-              CryptoServiceFactory.newInstance(accumuloConfiguration, ClassloaderType.JAVA));
+      CachableBuilder cb =
+          new CachableBuilder().cacheId("source-1").input(in).length(fileLength).conf(conf)
+              .data(dataCache).index(indexCache).coalescedReads(maxCoalescedRead).cryptoService(
+                  CryptoServiceFactory.newInstance(accumuloConfiguration, ClassloaderType.JAVA));
       reader = new RFile.Reader(cb);
       if (cfsi)
         iter = new ColumnFamilySkippingIterator(reader);
@@ -1703,6 +1714,149 @@ public class RFileTest {
     trf.closeReader();
   }
 
+  @Test
+  public void testSharedReaders() throws Exception {
+    TestRFile trf = new TestRFile(conf);
+
+    trf.openWriter(false, 100);
+    trf.writer.startNewLocalityGroup("lg1", newColFamByteSequence("cf1"));
+    for (int i = 0; i < 2500; i++) {
+      trf.writer.append(newKey(formatString("r_", i), "cf1", "cq1", "L1", 42), newValue("foo" + i));
+    }
+    trf.writer.startDefaultLocalityGroup();
+    for (int i = 0; i < 2500; i++) {
+      trf.writer.append(newKey(formatString("r_", i), "cf2", "cq1", "L1", 42), newValue("bar" + i));
+    }
+    trf.closeWriter();
+    trf.openReader();
+
+    List<FileSKVIterator> sharedReaders = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      sharedReaders.add(trf.reader.newSharedReader());
+    }
+
+    // each shared reader keeps its own position while the others read concurrently
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> threads = new ArrayList<>();
+    for (FileSKVIterator sharedReader : sharedReaders) {
+      Thread thread = new Thread(() -> {
+        try {
+          Random rand = new SecureRandom();
+          for (int count = 0; count < 50; count++) {
+            int start = rand.nextInt(2400);
+            sharedReader.seek(new Range(formatString("r_", start), formatString("r_", start + 99)),
+                EMPTY_COL_FAMS, false);
+            for (int j = start; j < start + 100; j++) {
+              for (String cf : new String[] {"cf1", "cf2"}) {
+                assertTrue(sharedReader.hasTop());
+                assertEquals(newKey(formatString("r_", j), cf, "cq1", "L1", 42),
+                    sharedReader.getTopKey());
+                sharedReader.next();
+              }
+            }
+            assertFalse(sharedReader.hasTop());
+          }
+        } catch (Throwable t) {
+          errors.add(t);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Collections.emptyList(), errors);
+
+    // closing the shared readers leaves the file open for the reader they were shared from
+    for (FileSKVIterator sharedReader : sharedReaders) {
+      sharedReader.close();
+    }
+
+    trf.reader.seek(new Range(), EMPTY_COL_FAMS, false);
+    int count = 0;
+    while (trf.reader.hasTop()) {
+      count++;
+      trf.reader.next();
+    }
+    assertEquals(5000, count);
+
+    trf.closeReader();
+  }
+
+  private int scanWithCoalescedReads(long maxCoalescedRead) throws IOException {
+    TestRFile trf = new TestRFile(conf);
+
+    trf.openWriter(100);
+    for (int i = 0; i < 2000; i++) {
+      trf.writer.append(newKey(formatString("r_", i), "cf1", "cq1", "L1", 42), newValue("foo" + i));
+    }
+    trf.closeWriter();
+
+    trf.maxCoalescedRead = maxCoalescedRead;
+    trf.openReader();
+    int readsBefore = trf.bais.positionedReads.get();
+
+    trf.iter.seek(new Range(formatString("r_", 500), formatString("r_", 1499)), EMPTY_COL_FAMS,
+        false);
+    for (int i = 500; i < 1500; i++) {
+      assertTrue(trf.iter.hasTop());
+      assertEquals(newKey(formatString("r_", i), "cf1", "cq1", "L1", 42), trf.iter.getTopKey());
+      assertEquals(newValue("foo" + i), trf.iter.getTopValue());
+      trf.iter.next();
+    }
+    assertFalse(trf.iter.hasTop());
+
+    int reads = trf.bais.positionedReads.get() - readsBefore;
+    trf.closeReader();
+    return reads;
+  }
+
+  @Test
+  public void testCoalescedReads() throws Exception {
+    int separateReads = scanWithCoalescedReads(0);
+    int coalescedReads = scanWithCoalescedReads(1 << 20);
+    assertTrue("separate reads " + separateReads + " coalesced reads " + coalescedReads,
+        coalescedReads * 10 < separateReads);
+  }
+
+  @Test
+  public void testOffHeapCache() throws IOException {
+    TestRFile trf = new TestRFile(conf);
+
+    trf.openWriter(100);
+    for (int i = 0; i < 2000; i++) {
+      trf.writer.append(newKey(formatString("r_", i), "cf1", "cq1", "L1", 42), newValue("foo" + i));
+    }
+    trf.closeWriter();
+
+    trf.cacheManager = OffHeapBlockCacheManager.class.getName();
+    trf.openReader();
+
+    int readsAfterFirstScan = 0;
+    for (int scan = 0; scan < 2; scan++) {
+      for (int start : new int[] {0, 3, 500, 1999}) {
+        trf.iter.seek(new Range(formatString("r_", start), null), EMPTY_COL_FAMS, false);
+        for (int i = start; i < 2000; i++) {
+          assertTrue(trf.iter.hasTop());
+          assertEquals(newKey(formatString("r_", i), "cf1", "cq1", "L1", 42), trf.iter.getTopKey());
+          assertEquals(newValue("foo" + i), trf.iter.getTopValue());
+          trf.iter.next();
+        }
+        assertFalse(trf.iter.hasTop());
+      }
+
+      if (scan == 0) {
+        readsAfterFirstScan = trf.bais.positionedReads.get();
+      }
+    }
+
+    // every block was read from the off heap cache on the second scan
+    assertEquals(readsAfterFirstScan, trf.bais.positionedReads.get());
+    trf.closeReader();
+  }
+
   @Test(expected = NullPointerException.class)
   public void testMissingUnreleasedVersions() throws Exception {
     runVersionTest(5, getAccumuloConfig(CryptoTest.CRYPTO_OFF_CONF));
@@ -1942,6 +2096,110 @@ public class RFileTest {
     conf = null;
   }
 
+  private static ConfigurationCopy getColumnarConfig() {
+    ConfigurationCopy cfg = new ConfigurationCopy(DefaultConfiguration.getInstance());
+    cfg.set(Property.TABLE_FILE_DATA_BLOCK_ENCODING, "columnar");
+    return cfg;
+  }
+
+  @Test
+  public void testColumnarRFiles() throws Exception {
+    conf = getColumnarConfig();
+    // test3 is left out because it expects the block boundaries of relative encoding
+    test1();
+    test2();
+    test4();
+    test5();
+    test6();
+    test7();
+    test8();
+    test9();
+    test10();
+    test11();
+    test12();
+    test13();
+    test14();
+    test16();
+    test17();
+    test18();
+    test19();
+    conf = null;
+  }
+
+  @Test
+  public void testColumnarReseek() throws Exception {
+    conf = getColumnarConfig();
+    testReseekUnconsumed();
+    testSharedReaders();
+    testBigKeys();
+    conf = null;
+  }
+
+  @Test
+  public void testColumnarSample() throws IOException {
+    conf = getColumnarConfig();
+    testSample();
+    testSampleLG();
+    conf = null;
+  }
+
+  @Test
+  public void testColumnarEncrypted() throws Exception {
+    conf = getAccumuloConfig(CryptoTest.CRYPTO_ON_CONF);
+    ((ConfigurationCopy) conf).set(Property.TABLE_FILE_DATA_BLOCK_ENCODING, "columnar");
+    test11();
+    test17();
+    conf = null;
+  }
+
+  private static ConfigurationCopy getRestartConfig() {
+    ConfigurationCopy cfg = new ConfigurationCopy(DefaultConfiguration.getInstance());
+    cfg.set(Property.TABLE_FILE_DATA_BLOCK_ENCODING, "restart");
+    cfg.set(Property.TABLE_FILE_DATA_BLOCK_RESTART_INTERVAL, "3");
+    return cfg;
+  }
+
+  @Test
+  public void testRestartRFiles() throws Exception {
+    conf = getRestartConfig();
+    // test3 is left out because it expects the block boundaries of relative encoding
+    test1();
+    test2();
+    test4();
+    test5();
+    test6();
+    test7();
+    test8();
+    test9();
+    test10();
+    test11();
+    test12();
+    test13();
+    test14();
+    test16();
+    test17();
+    test18();
+    test19();
+    conf = null;
+  }
+
+  @Test
+  public void testRestartReseek() throws Exception {
+    conf = getRestartConfig();
+    testReseekUnconsumed();
+    testSharedReaders();
+    testBigKeys();
+    conf = null;
+  }
+
+  @Test
+  public void testRestartSample() throws IOException {
+    conf = getRestartConfig();
+    testSample();
+    testSampleLG();
+    conf = null;
+  }
+
   private Key newKey(int r, int c) {
     String row = String.format("r%06d", r);
     switch (c) {
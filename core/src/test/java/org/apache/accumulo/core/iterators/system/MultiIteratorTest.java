@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
 import java.util.TreeMap;
 
 import org.apache.accumulo.core.data.ByteSequence;
@@ -417,4 +419,45 @@ public class MultiIteratorTest {
     mi.seek(r7, EMPTY_COL_FAMS, false);
     assertFalse(mi.hasTop());
   }
+
+  @Test
+  public void testManySources() throws IOException {
+    Random rand = new Random(27);
+    for (int numSources : new int[] {2, 3, 8, 17, 32, 128}) {
+      List<TreeMap<Key,Value>> maps = new ArrayList<>(numSources);
+      TreeMap<Key,Value> expected = new TreeMap<>();
+      for (int i = 0; i < numSources; i++) {
+        TreeMap<Key,Value> tm = new TreeMap<>();
+        // some sources are empty and some hold long runs of adjacent rows
+        int count = rand.nextInt(4) == 0 ? 0 : rand.nextInt(200);
+        int row = rand.nextInt(1000);
+        for (int j = 0; j < count; j++) {
+          row += rand.nextInt(10) == 0 ? rand.nextInt(100) : 1;
+          newKeyValue(tm, row, i, false, i + "_" + j);
+        }
+        maps.add(tm);
+        expected.putAll(tm);
+      }
+
+      List<SortedKeyValueIterator<Key,Value>> iters = new ArrayList<>(numSources);
+      for (TreeMap<Key,Value> map : maps) {
+        iters.add(new SortedMapIterator(map));
+      }
+      MultiIterator mi = new MultiIterator(iters, true);
+
+      for (int i = 0; i < 10; i++) {
+        Range range = i == 0 ? new Range() : newRange(rand.nextInt(1500), rand.nextInt(200));
+        mi.seek(range, EMPTY_COL_FAMS, false);
+        for (Entry<Key,Value> entry : expected
+            .tailMap(range.getStartKey() == null ? expected.firstKey() : range.getStartKey())
+            .entrySet()) {
+          assertTrue(mi.hasTop());
+          assertEquals(entry.getKey(), mi.getTopKey());
+          assertEquals(entry.getValue(), mi.getTopValue());
+          mi.next();
+        }
+        assertFalse(mi.hasTop());
+      }
+    }
+  }
 }
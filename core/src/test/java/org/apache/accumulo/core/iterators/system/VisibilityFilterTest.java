@@ -66,4 +66,56 @@ public class VisibilityFilterTest {
     filter.next();
     assertFalse(filter.hasTop());
   }
+
+  @Test
+  public void testSharedCache() throws IOException {
+    TreeMap<Key,Value> tm = new TreeMap<>();
+
+    tm.put(new Key("r1", "cf1", "cq1", "A&B"), new Value(new byte[0]));
+    tm.put(new Key("r1", "cf1", "cq2", "C"), new Value(new byte[0]));
+    tm.put(new Key("r1", "cf1", "cq3", "A|C"), new Value(new byte[0]));
+    tm.put(new Key("r1", "cf1", "cq4", "A&"), new Value(new byte[0]));
+    tm.put(new Key("r1", "cf1", "cq5", "A&B"), new Value(new byte[0]));
+
+    VisibilityCache cache = new VisibilityCache(1 << 20);
+
+    for (int i = 0; i < 2; i++) {
+      // equal but distinct authorizations on each pass, as from separate scan sessions
+      SortedKeyValueIterator<Key,Value> filter = VisibilityFilter.wrap(new SortedMapIterator(tm),
+          new Authorizations("A", "B"), "".getBytes(), cache);
+
+      filter.seek(new Range(), new HashSet<>(), false);
+      assertTrue(filter.hasTop());
+      assertEquals(new Key("r1", "cf1", "cq1", "A&B"), filter.getTopKey());
+      filter.next();
+      assertTrue(filter.hasTop());
+      assertEquals(new Key("r1", "cf1", "cq3", "A|C"), filter.getTopKey());
+      filter.next();
+      assertTrue(filter.hasTop());
+      assertEquals(new Key("r1", "cf1", "cq5", "A&B"), filter.getTopKey());
+      filter.next();
+      assertFalse(filter.hasTop());
+    }
+
+    // the second pass found the three valid expressions evaluated by the first, the invalid
+    // expression is never cached
+    assertEquals(3, cache.getResultStats().hitCount());
+    assertEquals(5, cache.getResultStats().missCount());
+    assertEquals(5, cache.getParseStats().missCount());
+
+    // different authorizations reuse the parsed expressions but not the results
+    SortedKeyValueIterator<Key,Value> filter = VisibilityFilter.wrap(new SortedMapIterator(tm),
+        new Authorizations("C"), "".getBytes(), cache);
+    filter.seek(new Range(), new HashSet<>(), false);
+    assertTrue(filter.hasTop());
+    assertEquals(new Key("r1", "cf1", "cq2", "C"), filter.getTopKey());
+    filter.next();
+    assertTrue(filter.hasTop());
+    assertEquals(new Key("r1", "cf1", "cq3", "A|C"), filter.getTopKey());
+    filter.next();
+    assertFalse(filter.hasTop());
+    assertEquals(3, cache.getResultStats().hitCount());
+    assertEquals(3, cache.getParseStats().hitCount());
+    assertEquals(6, cache.getParseStats().missCount());
+  }
 }
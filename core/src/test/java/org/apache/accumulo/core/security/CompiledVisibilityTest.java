@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.security;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.accumulo.core.security.ColumnVisibility.quote;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.accumulo.core.security.CompiledVisibility.Ordinals;
+import org.junit.Test;
+
+public class CompiledVisibilityTest {
+
+  private static boolean eval(String expression, Authorizations auths)
+      throws VisibilityParseException {
+    Ordinals ordinals = new Ordinals();
+    return CompiledVisibility.compile(new ColumnVisibility(expression), ordinals)
+        .evaluate(ordinals.toBitSet(auths));
+  }
+
+  @Test
+  public void testSimple() throws VisibilityParseException {
+    Authorizations auths = new Authorizations("one", "two", "three", "four", "a\"b", "c\\d");
+
+    assertTrue(eval("", auths));
+    assertTrue(eval("one", auths));
+    assertTrue(eval("one&two", auths));
+    assertTrue(eval("five|four", auths));
+    assertTrue(eval("(one&two)|(foo&bar)", auths));
+    assertTrue(eval("((one|foo)|bar)&two", auths));
+    assertTrue(eval(quote("a\"b") + "&" + quote("c\\d"), auths));
+
+    assertFalse(eval("five", auths));
+    assertFalse(eval("one&five", auths));
+    assertFalse(eval("((one|foo)|bar)&goober", auths));
+    assertFalse(eval(quote("a\"b") + "&" + quote("e\\f"), auths));
+    assertFalse(eval("one", Authorizations.EMPTY));
+  }
+
+  private static String randomExpression(Random rand, int depth, int labels) {
+    if (depth == 0 || rand.nextInt(3) == 0) {
+      int label = rand.nextInt(labels);
+      return label % 10 == 0 ? quote("l\"" + label) : "l" + label;
+    }
+    String op = rand.nextBoolean() ? "&" : "|";
+    int children = 2 + rand.nextInt(4);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < children; i++) {
+      if (i > 0)
+        sb.append(op);
+      sb.append('(').append(randomExpression(rand, depth - 1, labels)).append(')');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testMatchesEvaluator() throws VisibilityParseException {
+    Random rand = new Random(42);
+    // more labels than fit in a single word of the bit set
+    int labels = 150;
+    Ordinals ordinals = new Ordinals();
+
+    for (int i = 0; i < 100; i++) {
+      List<byte[]> authList = new ArrayList<>();
+      for (int label = 0; label < labels; label++) {
+        if (rand.nextInt(3) != 0)
+          authList.add((label % 10 == 0 ? "l\"" + label : "l" + label).getBytes(UTF_8));
+      }
+      Authorizations auths = new Authorizations(authList);
+      VisibilityEvaluator ve = new VisibilityEvaluator(auths);
+      long[] bits = ordinals.toBitSet(auths);
+
+      for (int j = 0; j < 100; j++) {
+        ColumnVisibility cv = new ColumnVisibility(randomExpression(rand, 4, labels));
+        assertEquals(cv.toString(), ve.evaluate(cv),
+            CompiledVisibility.compile(cv, ordinals).evaluate(bits));
+      }
+    }
+  }
+
+  @Test
+  public void testFullTable() throws VisibilityParseException {
+    Ordinals ordinals = new Ordinals(3);
+    Authorizations auths = new Authorizations("a", "b", "c", "d");
+    long[] bits = ordinals.toBitSet(auths);
+
+    assertTrue(CompiledVisibility.compile(new ColumnVisibility("a&b&c"), ordinals).evaluate(bits));
+    assertNotNull(CompiledVisibility.compile(new ColumnVisibility(""), ordinals));
+    // d did not fit in the table, so expressions using it can not be compiled against it
+    assertNull(CompiledVisibility.compile(new ColumnVisibility("d"), ordinals));
+    assertNull(CompiledVisibility.compile(new ColumnVisibility("a|(b&e)"), ordinals));
+
+    CompiledVisibility aOrB = CompiledVisibility.compile(new ColumnVisibility("a|b"), ordinals);
+    assertTrue(aOrB.isCompiledWith(ordinals));
+    assertFalse(aOrB.isCompiledWith(new Ordinals()));
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class VirtualThreadFactoryTest {
+
+  @Test
+  public void testNewThread() throws Exception {
+    assumeTrue(VirtualThreadFactory.isSupported());
+
+    CountDownLatch ran = new CountDownLatch(1);
+    Thread thread = new VirtualThreadFactory("test").newThread(ran::countDown);
+    assertEquals("test 1", thread.getName());
+    assertTrue(thread.isDaemon());
+    thread.start();
+    assertTrue(ran.await(30, TimeUnit.SECONDS));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testUnsupported() {
+    assumeFalse(VirtualThreadFactory.isSupported());
+    new VirtualThreadFactory("test");
+  }
+}
@@ -32,7 +32,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.accumulo.fate.zookeeper.ZooCache.ZcStat;
 import org.apache.zookeeper.KeeperException;
@@ -212,10 +217,99 @@ public class ZooCacheTest {
   public void testGetChildren_EatNoNode() throws Exception {
     expect(zk.getChildren(eq(ZPATH), anyObject(Watcher.class)))
         .andThrow(new KeeperException.NoNodeException(ZPATH));
+    expect(zk.exists(eq(ZPATH), anyObject(Watcher.class))).andReturn(null);
     replay(zk);
 
     assertNull(zc.getChildren(ZPATH));
     verify(zk);
+
+    // the missing node is cached
+    assertTrue(zc.childrenCached(ZPATH));
+    assertNull(zc.getChildren(ZPATH));
+  }
+
+  @Test
+  public void testGetChildren_NoNodeCreated() throws Exception {
+    // the node was created between the two calls, so nothing is cached and the read is retried
+    expect(zk.getChildren(eq(ZPATH), anyObject(Watcher.class)))
+        .andThrow(new KeeperException.NoNodeException(ZPATH));
+    expect(zk.exists(eq(ZPATH), anyObject(Watcher.class))).andReturn(new Stat());
+    expect(zk.getChildren(eq(ZPATH), anyObject(Watcher.class))).andReturn(CHILDREN);
+    replay(zk);
+
+    assertEquals(CHILDREN, zc.getChildren(ZPATH));
+    verify(zk);
+  }
+
+  @Test
+  public void testStats() throws Exception {
+    Stat existsStat = new Stat();
+    expect(zk.exists(eq(ZPATH), anyObject(Watcher.class))).andReturn(existsStat);
+    expect(zk.getData(eq(ZPATH), anyObject(Watcher.class), eq(existsStat))).andReturn(DATA);
+    replay(zk);
+
+    zc.get(ZPATH);
+    zc.get(ZPATH);
+    zc.get(ZPATH);
+    verify(zk);
+
+    assertEquals(2, zc.getHitCount());
+    assertEquals(1, zc.getMissCount());
+    assertEquals(2, zc.getZooKeeperReadCount());
+    assertEquals(0, zc.getCoalescedReadCount());
+  }
+
+  @Test
+  public void testConcurrentMissesCoalesced() throws Exception {
+    CountDownLatch readStarted = new CountDownLatch(1);
+    CountDownLatch finishRead = new CountDownLatch(1);
+    Stat existsStat = new Stat();
+    expect(zk.exists(eq(ZPATH), anyObject(Watcher.class))).andAnswer(() -> {
+      readStarted.countDown();
+      finishRead.await();
+      return existsStat;
+    });
+    expect(zk.getData(eq(ZPATH), anyObject(Watcher.class), eq(existsStat))).andReturn(DATA);
+    replay(zk);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<byte[]>> results = new ArrayList<>();
+      results.add(executor.submit(() -> zc.get(ZPATH)));
+      readStarted.await();
+      for (int i = 0; i < 3; i++) {
+        results.add(executor.submit(() -> zc.get(ZPATH)));
+      }
+      while (zc.getCoalescedReadCount() < 3) {
+        Thread.sleep(10);
+      }
+      finishRead.countDown();
+      for (Future<byte[]> result : results) {
+        assertArrayEquals(DATA, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    verify(zk);
+    assertEquals(4, zc.getMissCount());
+  }
+
+  @Test
+  public void testChangeDuringReadNotCached() throws Exception {
+    Capture<Watcher> cw = EasyMock.newCapture();
+    Stat existsStat = new Stat();
+    expect(zk.exists(eq(ZPATH), capture(cw))).andReturn(existsStat);
+    expect(zk.getData(eq(ZPATH), anyObject(Watcher.class), eq(existsStat))).andAnswer(() -> {
+      // the node changes after the watch was set but before the read returns
+      cw.getValue().process(new WatchedEvent(Watcher.Event.EventType.NodeDataChanged,
+          Watcher.Event.KeeperState.SyncConnected, ZPATH));
+      return DATA;
+    });
+    replay(zk);
+
+    assertArrayEquals(DATA, zc.get(ZPATH));
+    verify(zk);
+    assertFalse(zc.dataCached(ZPATH));
   }
 
   private static class TestWatcher implements Watcher {
@@ -76,7 +76,8 @@ public class MetadataConstraints implements Constraint {
           TabletsSection.ServerColumnFamily.TIME_COLUMN,
           TabletsSection.ServerColumnFamily.LOCK_COLUMN,
           TabletsSection.ServerColumnFamily.FLUSH_COLUMN,
-          TabletsSection.ServerColumnFamily.COMPACT_COLUMN));
+          TabletsSection.ServerColumnFamily.COMPACT_COLUMN,
+          TabletsSection.ServerColumnFamily.HOT_ROWS_COLUMN));
 
   private static final HashSet<Text> validColumnFams = new HashSet<>(Arrays.asList(
       TabletsSection.BulkFileColumnFamily.NAME, LogColumnFamily.NAME, ScanFileColumnFamily.NAME,
@@ -17,6 +17,8 @@
 
 package org.apache.accumulo.server.metadata;
 
+import java.util.Collection;
+
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.dataImpl.KeyExtent;
@@ -193,6 +195,21 @@ public abstract class TabletMutatorBase implements Ample.TabletMutator {
     return this;
   }
 
+  @Override
+  public Ample.TabletMutator putHotRows(Collection<Text> rows) {
+    Preconditions.checkState(updatesEnabled, "Cannot make updates after calling mutate.");
+    TabletsSection.ServerColumnFamily.HOT_ROWS_COLUMN.put(mutation,
+        TabletsSection.ServerColumnFamily.encodeHotRows(rows));
+    return this;
+  }
+
+  @Override
+  public Ample.TabletMutator deleteHotRows() {
+    Preconditions.checkState(updatesEnabled, "Cannot make updates after calling mutate.");
+    TabletsSection.ServerColumnFamily.HOT_ROWS_COLUMN.putDelete(mutation);
+    return this;
+  }
+
   protected Mutation getMutation() {
     updatesEnabled = false;
     return mutation;
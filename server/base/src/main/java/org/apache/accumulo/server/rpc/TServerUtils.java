@@ -28,7 +28,9 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLServerSocket;
 
@@ -40,6 +42,7 @@ import org.apache.accumulo.core.rpc.UGIAssumingTransportFactory;
 import org.apache.accumulo.core.util.Daemon;
 import org.apache.accumulo.core.util.HostAndPort;
 import org.apache.accumulo.core.util.SimpleThreadPool;
+import org.apache.accumulo.core.util.VirtualThreadFactory;
 import org.apache.accumulo.fate.util.LoggingRunnable;
 import org.apache.accumulo.server.ServerContext;
 import org.apache.accumulo.server.util.Halt;
@@ -121,6 +124,29 @@ public class TServerUtils {
       String threadName, Property portSearchProperty, Property minThreadProperty,
       Property timeBetweenThreadChecksProperty, Property maxMessageSizeProperty)
       throws UnknownHostException {
+    return startServer(metricsSystem, service, hostname, portHintProperty, processor, serverName,
+        threadName, portSearchProperty, minThreadProperty, timeBetweenThreadChecksProperty,
+        maxMessageSizeProperty, null, null);
+  }
+
+  /**
+   * Start a server, at the given port, or higher, if that port is not available, optionally
+   * handling requests on virtual threads.
+   *
+   * @param virtualThreadsProperty
+   *          A boolean Property to control if requests are handled on virtual threads, or null to
+   *          disable
+   * @param maxVirtualThreadsProperty
+   *          A Property to control the most requests handled at once on virtual threads
+   * @see #startServer(MetricsSystem, ServerContext, String, Property, TProcessor, String, String,
+   *      Property, Property, Property, Property)
+   */
+  public static ServerAddress startServer(MetricsSystem metricsSystem, ServerContext service,
+      String hostname, Property portHintProperty, TProcessor processor, String serverName,
+      String threadName, Property portSearchProperty, Property minThreadProperty,
+      Property timeBetweenThreadChecksProperty, Property maxMessageSizeProperty,
+      Property virtualThreadsProperty, Property maxVirtualThreadsProperty)
+      throws UnknownHostException {
     final AccumuloConfiguration config = service.getConfiguration();
 
     final int[] portHint = config.getPort(portHintProperty);
@@ -145,6 +171,16 @@ public class TServerUtils {
       portSearch = config.getBoolean(portSearchProperty);
     }
 
+    int maxVirtualThreads = 0;
+    if (virtualThreadsProperty != null && config.getBoolean(virtualThreadsProperty)) {
+      if (VirtualThreadFactory.isSupported()) {
+        maxVirtualThreads = config.getCount(maxVirtualThreadsProperty);
+      } else {
+        log.warn("{} is set, but this JVM does not support virtual threads",
+            virtualThreadsProperty.getKey());
+      }
+    }
+
     final int simpleTimerThreadpoolSize =
         config.getCount(Property.GENERAL_SIMPLETIMER_THREADPOOL_SIZE);
     final ThriftServerType serverType = service.getThriftServerType();
@@ -160,10 +196,10 @@ public class TServerUtils {
 
     HostAndPort[] addresses = getHostAndPorts(hostname, portHint);
     try {
-      return TServerUtils.startTServer(serverType, timedProcessor, serverName, threadName,
-          minThreads, simpleTimerThreadpoolSize, timeBetweenThreadChecks, maxMessageSize,
-          service.getServerSslParams(), service.getSaslParams(), service.getClientTimeoutInMillis(),
-          addresses);
+      return TServerUtils.startTServer(serverType, timedProcessor, ThriftUtil.protocolFactory(),
+          serverName, threadName, minThreads, simpleTimerThreadpoolSize, timeBetweenThreadChecks,
+          maxMessageSize, service.getServerSslParams(), service.getSaslParams(),
+          service.getClientTimeoutInMillis(), maxVirtualThreads, addresses);
     } catch (TTransportException e) {
       if (portSearch) {
         HostAndPort last = addresses[addresses.length - 1];
@@ -175,10 +211,11 @@ public class TServerUtils {
           }
           try {
             HostAndPort addr = HostAndPort.fromParts(hostname, port);
-            return TServerUtils.startTServer(serverType, timedProcessor, serverName, threadName,
-                minThreads, simpleTimerThreadpoolSize, timeBetweenThreadChecks, maxMessageSize,
+            return TServerUtils.startTServer(serverType, timedProcessor,
+                ThriftUtil.protocolFactory(), serverName, threadName, minThreads,
+                simpleTimerThreadpoolSize, timeBetweenThreadChecks, maxMessageSize,
                 service.getServerSslParams(), service.getSaslParams(),
-                service.getClientTimeoutInMillis(), addr);
+                service.getClientTimeoutInMillis(), maxVirtualThreads, addr);
           } catch (TTransportException tte) {
             log.info("Unable to use port {}, retrying. (Thread Name = {})", port, threadName);
           }
@@ -194,12 +231,13 @@ public class TServerUtils {
 
   /**
    * Create a non blocking server with multiple select threads and a custom thread pool that can
-   * dynamically resize itself.
+   * dynamically resize itself, or a pool of up to maxVirtualThreads virtual threads when that is
+   * greater than zero.
    */
   public static ServerAddress createThreadedSelectorServer(HostAndPort address,
       TProcessor processor, TProtocolFactory protocolFactory, final String serverName,
       final int numThreads, final int numSTThreads, long timeBetweenThreadChecks,
-      long maxMessageSize) throws TTransportException {
+      long maxMessageSize, int maxVirtualThreads) throws TTransportException {
 
     final TNonblockingServerSocket transport =
         new TNonblockingServerSocket(new InetSocketAddress(address.getHost(), address.getPort()));
@@ -215,7 +253,9 @@ public class TServerUtils {
 
     // Create our own very special thread pool.
     ThreadPoolExecutor pool =
-        createSelfResizingThreadPool(serverName, numThreads, numSTThreads, timeBetweenThreadChecks);
+        maxVirtualThreads > 0 ? createVirtualThreadPool(serverName, maxVirtualThreads)
+            : createSelfResizingThreadPool(serverName, numThreads, numSTThreads,
+                timeBetweenThreadChecks);
 
     options.executorService(pool);
     options.processorFactory(new TProcessorFactory(processor));
@@ -229,12 +269,13 @@ public class TServerUtils {
 
   /**
    * Create a NonBlockingServer with a single select threads and a custom thread pool that can
-   * dynamically resize itself.
+   * dynamically resize itself, or a pool of up to maxVirtualThreads virtual threads when that is
+   * greater than zero.
    */
   public static ServerAddress createNonBlockingServer(HostAndPort address, TProcessor processor,
       TProtocolFactory protocolFactory, final String serverName, final int numThreads,
-      final int numSTThreads, long timeBetweenThreadChecks, long maxMessageSize)
-      throws TTransportException {
+      final int numSTThreads, long timeBetweenThreadChecks, long maxMessageSize,
+      int maxVirtualThreads) throws TTransportException {
 
     final TNonblockingServerSocket transport =
         new TNonblockingServerSocket(new InetSocketAddress(address.getHost(), address.getPort()));
@@ -247,7 +288,9 @@ public class TServerUtils {
 
     // Create our own very special thread pool.
     ThreadPoolExecutor pool =
-        createSelfResizingThreadPool(serverName, numThreads, numSTThreads, timeBetweenThreadChecks);
+        maxVirtualThreads > 0 ? createVirtualThreadPool(serverName, maxVirtualThreads)
+            : createSelfResizingThreadPool(serverName, numThreads, numSTThreads,
+                timeBetweenThreadChecks);
 
     options.executorService(pool);
     options.processorFactory(new TProcessorFactory(processor));
@@ -259,6 +302,17 @@ public class TServerUtils {
     return new ServerAddress(new CustomNonBlockingServer(options), address);
   }
 
+  /**
+   * Creates a pool that starts a virtual thread for each request, up to the given maximum, and lets
+   * threads end once idle. Unlike platform threads there is no need to resize it with load.
+   */
+  public static ThreadPoolExecutor createVirtualThreadPool(String serverName, int maxThreads) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 4L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new VirtualThreadFactory("ClientPool " + serverName));
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
   /**
    * Creates a {@link SimpleThreadPool} which uses {@link SimpleTimer} to inspect the core pool size
    * and number of active threads of the {@link ThreadPoolExecutor} and increase or decrease the
@@ -582,6 +636,24 @@ public class TServerUtils {
       int numSTThreads, long timeBetweenThreadChecks, long maxMessageSize,
       SslConnectionParams sslParams, SaslServerConnectionParams saslParams,
       long serverSocketTimeout, HostAndPort... addresses) throws TTransportException {
+    return startTServer(serverType, processor, protocolFactory, serverName, threadName, numThreads,
+        numSTThreads, timeBetweenThreadChecks, maxMessageSize, sslParams, saslParams,
+        serverSocketTimeout, 0, addresses);
+  }
+
+  /**
+   * Start the appropriate Thrift server for the given parameters. When maxVirtualThreads is greater
+   * than zero, the non-blocking server types handle requests on up to that many virtual threads.
+   *
+   * @see #startTServer(ThriftServerType, TimedProcessor, TProtocolFactory, String, String, int,
+   *      int, long, long, SslConnectionParams, SaslServerConnectionParams, long, HostAndPort...)
+   */
+  public static ServerAddress startTServer(ThriftServerType serverType, TimedProcessor processor,
+      TProtocolFactory protocolFactory, String serverName, String threadName, int numThreads,
+      int numSTThreads, long timeBetweenThreadChecks, long maxMessageSize,
+      SslConnectionParams sslParams, SaslServerConnectionParams saslParams,
+      long serverSocketTimeout, int maxVirtualThreads, HostAndPort... addresses)
+      throws TTransportException {
 
     // This is presently not supported. It's hypothetically possible, I believe, to work, but it
     // would require changes in how the transports
@@ -614,12 +686,14 @@ public class TServerUtils {
           case THREADED_SELECTOR:
             log.debug("Instantiating default, unsecure Threaded selector Thrift server");
             serverAddress = createThreadedSelectorServer(address, processor, protocolFactory,
-                serverName, numThreads, numSTThreads, timeBetweenThreadChecks, maxMessageSize);
+                serverName, numThreads, numSTThreads, timeBetweenThreadChecks, maxMessageSize,
+                maxVirtualThreads);
             break;
           case CUSTOM_HS_HA:
             log.debug("Instantiating unsecure custom half-async Thrift server");
-            serverAddress = createNonBlockingServer(address, processor, protocolFactory, serverName,
-                numThreads, numSTThreads, timeBetweenThreadChecks, maxMessageSize);
+            serverAddress =
+                createNonBlockingServer(address, processor, protocolFactory, serverName, numThreads,
+                    numSTThreads, timeBetweenThreadChecks, maxMessageSize, maxVirtualThreads);
             break;
           default:
             throw new IllegalArgumentException("Unknown server type " + serverType);
@@ -213,6 +213,21 @@ public class MasterMetadataUtil {
     tablet.mutate();
   }
 
+  /**
+   * Records the rows recently read from a tablet, or removes the old record when there are none.
+   */
+  public static void updateTabletHotRows(ServerContext context, KeyExtent extent,
+      Collection<Text> hotRows, ZooLock zooLock) {
+    TabletMutator tablet = context.getAmple().mutateTablet(extent);
+    if (hotRows.isEmpty()) {
+      tablet.deleteHotRows();
+    } else {
+      tablet.putHotRows(hotRows);
+    }
+    tablet.putZooLock(zooLock);
+    tablet.mutate();
+  }
+
   /**
    * new data file update function adds one data file to a tablet's list
    *
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.accumulo.core.client.SampleNotPresentException;
 import org.apache.accumulo.core.conf.Property;
@@ -102,9 +103,35 @@ public class FileManager {
     }
   }
 
+  /**
+   * A reserved file that concurrent scans share. Each scan gets its own reader from
+   * {@link FileSKVIterator#newSharedReader()}, the file is released once all of them are.
+   */
+  private static class SharedFile {
+    final FileSKVIterator reader;
+    int refCount = 1;
+    boolean sawIOException = false;
+
+    SharedFile(FileSKVIterator reader) {
+      this.reader = reader;
+    }
+  }
+
   private Map<String,List<OpenReader>> openFiles;
   private HashMap<FileSKVIterator,String> reservedReaders;
 
+  private final boolean shareReaders;
+  // reserved readers that were shared from a file in sharedFiles
+  private HashMap<FileSKVIterator,SharedFile> sharedReaders;
+  // the shared file later scans of a file will share
+  private HashMap<String,SharedFile> sharedFiles;
+  // all shared files still in use, including ones no longer offered for sharing
+  private int numSharedFiles = 0;
+
+  private final LongAdder readersCreated = new LongAdder();
+  private final LongAdder readersReused = new LongAdder();
+  private final LongAdder filePermitWaitTime = new LongAdder();
+
   private Semaphore filePermits;
 
   private VolumeManager fs;
@@ -184,6 +211,10 @@ public class FileManager {
 
     this.openFiles = new HashMap<>();
     this.reservedReaders = new HashMap<>();
+    this.sharedReaders = new HashMap<>();
+    this.sharedFiles = new HashMap<>();
+
+    this.shareReaders = context.getConfiguration().getBoolean(Property.TSERV_SCAN_SHARED_READERS);
 
     this.maxIdleTime = context.getConfiguration().getTimeInMillis(Property.TSERV_MAX_IDLE);
     SimpleTimer.getInstance(context.getConfiguration()).schedule(new IdleFileCloser(), maxIdleTime,
@@ -193,6 +224,13 @@ public class FileManager {
         context.getConfiguration().getTimeInMillis(Property.TSERV_SLOW_FILEPERMIT_MILLIS);
   }
 
+  /**
+   * @return the number of files held open by reserved readers
+   */
+  private int countReservedFiles() {
+    return reservedReaders.size() - sharedReaders.size() + numSharedFiles;
+  }
+
   private static int countReaders(Map<String,List<OpenReader>> files) {
     int count = 0;
 
@@ -274,6 +312,56 @@ public class FileManager {
     return filesToOpen;
   }
 
+  /**
+   * Reserves readers shared from files that other scans already hold open. These readers do not
+   * need a file permit.
+   *
+   * @return the files that could not be shared
+   */
+  private Collection<String> takeSharedFiles(Collection<String> files,
+      Map<FileSKVIterator,String> readersReserved) {
+    List<String> filesToReserve = new ArrayList<>(files.size());
+    for (String file : files) {
+      SharedFile sharedFile = sharedFiles.get(file);
+      if (sharedFile != null) {
+        FileSKVIterator reader = sharedFile.reader.newSharedReader();
+        sharedFile.refCount++;
+        sharedReaders.put(reader, sharedFile);
+        readersReserved.put(reader, file);
+        readersReused.increment();
+      } else {
+        filesToReserve.add(file);
+      }
+    }
+    return filesToReserve;
+  }
+
+  /**
+   * Offers newly reserved files for sharing and replaces their readers with shared readers, so that
+   * the reader holding the file open is only closed once every scan sharing it is done.
+   */
+  private Map<FileSKVIterator,String> shareFiles(Map<FileSKVIterator,String> readers) {
+    Map<FileSKVIterator,String> ret = new HashMap<>();
+    for (Entry<FileSKVIterator,String> entry : readers.entrySet()) {
+      FileSKVIterator reader = entry.getKey();
+      String file = entry.getValue();
+      FileSKVIterator shared = reader.newSharedReader();
+      if (shared == null) {
+        // the file format does not support sharing, so this scan gets the file to itself
+        ret.put(reader, file);
+        continue;
+      }
+
+      SharedFile sharedFile = new SharedFile(reader);
+      numSharedFiles++;
+      // another scan may have reserved the same file concurrently, later scans share that one
+      sharedFiles.putIfAbsent(file, sharedFile);
+      sharedReaders.put(shared, sharedFile);
+      ret.put(shared, file);
+    }
+    return ret;
+  }
+
   private Map<FileSKVIterator,String> reserveReaders(KeyExtent tablet, Collection<String> files,
       boolean continueOnFailure) throws IOException {
 
@@ -289,33 +377,50 @@ public class FileManager {
     List<FileSKVIterator> filesToClose = Collections.emptyList();
     Map<FileSKVIterator,String> readersReserved = new HashMap<>();
 
+    Map<FileSKVIterator,String> sharedReserved = Collections.emptyMap();
+    Collection<String> filesToReserve = files;
+
+    if (shareReaders) {
+      sharedReserved = new HashMap<>();
+      synchronized (this) {
+        filesToReserve = takeSharedFiles(files, sharedReserved);
+        reservedReaders.putAll(sharedReserved);
+      }
+
+      if (filesToReserve.isEmpty()) {
+        return sharedReserved;
+      }
+    }
+
     if (!tablet.isMeta()) {
       long start = System.currentTimeMillis();
-      filePermits.acquireUninterruptibly(files.size());
+      filePermits.acquireUninterruptibly(filesToReserve.size());
       long waitTime = System.currentTimeMillis() - start;
+      filePermitWaitTime.add(waitTime);
 
       if (waitTime >= slowFilePermitMillis) {
         log.info("Slow file permits request: {} ms, files requested: {}, tablet: {}", waitTime,
-            files.size(), tablet);
+            filesToReserve.size(), tablet);
       }
     }
 
     // now that the we are past the semaphore, we have the authority
-    // to open files.size() files
+    // to open filesToReserve.size() files
 
     // determine what work needs to be done in sync block
     // but do the work of opening and closing files outside
     // a synch block
     synchronized (this) {
 
-      filesToOpen = takeOpenFiles(files, readersReserved);
+      filesToOpen = takeOpenFiles(filesToReserve, readersReserved);
+      readersReused.add(filesToReserve.size() - filesToOpen.size());
 
       if (!filesToOpen.isEmpty()) {
         int numOpen = countReaders(openFiles);
+        int numReserved = countReservedFiles();
 
-        if (filesToOpen.size() + numOpen + reservedReaders.size() > maxOpen) {
-          filesToClose =
-              takeLRUOpenFiles((filesToOpen.size() + numOpen + reservedReaders.size()) - maxOpen);
+        if (filesToOpen.size() + numOpen + numReserved > maxOpen) {
+          filesToClose = takeLRUOpenFiles((filesToOpen.size() + numOpen + numReserved) - maxOpen);
         }
       }
     }
@@ -338,6 +443,7 @@ public class FileManager {
                 context.getServerConfFactory().getTableConfiguration(tablet.getTableId()))
             .withBlockCache(dataCache, indexCache).withFileLenCache(fileLenCache).build();
         readersReserved.put(reader, file);
+        readersCreated.increment();
       } catch (Exception e) {
 
         ProblemReports.getInstance(context)
@@ -354,7 +460,11 @@ public class FileManager {
           closeReaders(readersReserved.keySet());
 
           if (!tablet.isMeta()) {
-            filePermits.release(files.size());
+            filePermits.release(filesToReserve.size());
+          }
+
+          if (!sharedReserved.isEmpty()) {
+            releaseReaders(tablet, new ArrayList<>(sharedReserved.keySet()), false);
           }
 
           log.error("Failed to open file {} {}", file, e.getMessage());
@@ -364,10 +474,14 @@ public class FileManager {
     }
 
     synchronized (this) {
+      if (shareReaders) {
+        readersReserved = shareFiles(readersReserved);
+      }
       // update set of reserved readers
       reservedReaders.putAll(readersReserved);
     }
 
+    readersReserved.putAll(sharedReserved);
     return readersReserved;
   }
 
@@ -375,6 +489,9 @@ public class FileManager {
       boolean sawIOException) {
     // put files in openFiles
 
+    List<FileSKVIterator> readersToClose = new ArrayList<>();
+    int filesReleased = 0;
+
     synchronized (this) {
 
       // check that readers were actually reserved ... want to make sure a thread does
@@ -394,21 +511,69 @@ public class FileManager {
 
       for (FileSKVIterator reader : readers) {
         String fileName = reservedReaders.remove(reader);
-        if (!sawIOException)
-          getFileList(fileName, openFiles).add(new OpenReader(fileName, reader));
+        SharedFile sharedFile = sharedReaders.remove(reader);
+
+        if (sharedFile == null) {
+          filesReleased++;
+          if (sawIOException)
+            readersToClose.add(reader);
+          else
+            getFileList(fileName, openFiles).add(new OpenReader(fileName, reader));
+          continue;
+        }
+
+        // closing a shared reader leaves the file open for the other scans sharing it
+        readersToClose.add(reader);
+        sharedFile.refCount--;
+        if (sawIOException) {
+          // stop offering a file that may be bad to new scans
+          sharedFile.sawIOException = true;
+          sharedFiles.remove(fileName, sharedFile);
+        }
+
+        if (sharedFile.refCount == 0) {
+          sharedFiles.remove(fileName, sharedFile);
+          numSharedFiles--;
+          filesReleased++;
+          if (sharedFile.sawIOException)
+            readersToClose.add(sharedFile.reader);
+          else
+            getFileList(fileName, openFiles).add(new OpenReader(fileName, sharedFile.reader));
+        }
       }
     }
 
-    if (sawIOException)
-      closeReaders(readers);
+    closeReaders(readersToClose);
 
     // decrement the semaphore
     if (!tablet.isMeta()) {
-      filePermits.release(readers.size());
+      filePermits.release(filesReleased);
     }
 
   }
 
+  /**
+   * @return the number of files opened for scans
+   */
+  public long getReadersCreated() {
+    return readersCreated.sum();
+  }
+
+  /**
+   * @return the number of times a scan reserved a file that was already open, either idle or shared
+   *         with other scans
+   */
+  public long getReadersReused() {
+    return readersReused.sum();
+  }
+
+  /**
+   * @return the total time in milliseconds scans have waited for file permits
+   */
+  public long getFilePermitWaitTime() {
+    return filePermitWaitTime.sum();
+  }
+
   static class FileDataSource implements DataSource {
 
     private SortedKeyValueIterator<Key,Value> iter;
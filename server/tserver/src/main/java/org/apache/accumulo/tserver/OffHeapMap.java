@@ -0,0 +1,632 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.accumulo.core.client.SampleNotPresentException;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IterationInterruptedException;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.system.InterruptibleIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * This class stores data in off-heap memory slabs allocated by the JVM. Doing this allows a tablet
+ * server to buffer a lot of data in memory without putting pressure on the Java GC and without
+ * requiring the native library used by {@link NativeMap}.
+ *
+ * <p>
+ * Every key/value is written once into a slab as a skip list node. The node holds the fields of the
+ * key, the value and the forward pointers of the skip list, so searching the map does not allocate
+ * any Java objects. Writes are serialized, which allows the skip list to be linked using release
+ * stores and read concurrently without locks. Because nothing is ever removed, the memory used is
+ * simply the size of all slabs allocated.
+ *
+ * <p>
+ * The strategy for dealing with off-heap memory is the same as for {@link NativeMap}. Code using
+ * this map should call {@link #delete()} as soon as it is finished with it, which frees all slabs
+ * at once. If that is never done, the slabs are released when this object is garbage collected.
+ */
+public class OffHeapMap {
+
+  private static final Logger log = LoggerFactory.getLogger(OffHeapMap.class);
+
+  // layout of a node header, all offsets are relative to the start of a node
+  private static final int HEIGHT_OFFSET = 0;
+  private static final int KV_COUNT_OFFSET = 4;
+  private static final int TIMESTAMP_OFFSET = 8;
+  private static final int ROW_LEN_OFFSET = 16;
+  private static final int CF_LEN_OFFSET = 20;
+  private static final int CQ_LEN_OFFSET = 24;
+  private static final int CV_LEN_OFFSET = 28;
+  private static final int VALUE_LEN_OFFSET = 32;
+  private static final int DELETED_OFFSET = 36;
+  // followed by height forward pointers, then row, cf, cq, cv and value data
+  private static final int NEXT_OFFSET = 40;
+
+  @VisibleForTesting
+  static final int MAX_HEIGHT = 16;
+  @VisibleForTesting
+  static final int MIN_SLAB_SIZE = 64 * 1024;
+  @VisibleForTesting
+  static final int MAX_SLAB_SIZE = 2 * 1024 * 1024;
+
+  // node addresses are (slab index + 1) << 32 | offset, so that 0 can be used as null
+  private static final long NULL = 0;
+
+  private static final VarHandle LONG_VIEW =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.warn("Unable to explicitly free direct memory, off-heap maps will be freed by GC", e);
+      unsafe = null;
+      invokeCleaner = null;
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  private final ReadWriteLock rwLock;
+  private final Lock rlock;
+  private final Lock wlock;
+
+  // slabs are only appended by the single writer; readers pick up the new array through the
+  // volatile read that precedes following a pointer into a new slab
+  private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+  private boolean deleted = false;
+
+  // forward pointers of the head of the skip list
+  private final AtomicLongArray head = new AtomicLongArray(MAX_HEIGHT);
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong memoryUsed = new AtomicLong();
+
+  // state only used by the writer, guarded by writeLock
+  private final Object writeLock = new Object();
+  private final long[] preds = new long[MAX_HEIGHT];
+  private final long[] succs = new long[MAX_HEIGHT];
+  private int slabPos = 0;
+  private int nextSlabSize = MIN_SLAB_SIZE;
+
+  public OffHeapMap() {
+    rwLock = new ReentrantReadWriteLock();
+    rlock = rwLock.readLock();
+    wlock = rwLock.writeLock();
+  }
+
+  private static int slabIndex(long address) {
+    return (int) (address >>> 32) - 1;
+  }
+
+  private static int offset(long address) {
+    return (int) address;
+  }
+
+  private static long address(int slabIndex, int offset) {
+    return ((long) (slabIndex + 1) << 32) | offset;
+  }
+
+  private static int align(int size) {
+    return (size + 7) & ~7;
+  }
+
+  // the slabs field is read after the address of a node was obtained, so it always contains the
+  // slab the node lives in
+  private ByteBuffer slab(long node) {
+    return slabs[slabIndex(node)];
+  }
+
+  private long getNext(long node, int level) {
+    if (node == NULL)
+      return head.get(level);
+    return (long) LONG_VIEW.getAcquire(slab(node), offset(node) + NEXT_OFFSET + 8 * level);
+  }
+
+  private void setNext(long node, int level, long next) {
+    if (node == NULL)
+      head.set(level, next);
+    else
+      LONG_VIEW.setRelease(slab(node), offset(node) + NEXT_OFFSET + 8 * level, next);
+  }
+
+  private static int compareBytes(ByteBuffer slab, int off, int len, byte[] b) {
+    int end = Math.min(len, b.length);
+    for (int i = 0; i < end; i++) {
+      int cmp = (slab.get(off + i) & 0xff) - (b[i] & 0xff);
+      if (cmp != 0)
+        return cmp;
+    }
+    return len - b.length;
+  }
+
+  /**
+   * Compares the key stored in a node with the given key fields the same way
+   * {@link MemKeyComparator} would compare a {@link MemKey} to a key. A kvCount less than zero
+   * indicates the key being compared to is not a {@link MemKey}.
+   */
+  private int compare(long node, byte[] row, byte[] cf, byte[] cq, byte[] cv, long ts, boolean del,
+      int kvCount) {
+    ByteBuffer slab = slab(node);
+    int off = offset(node);
+    int pos = off + NEXT_OFFSET + 8 * slab.getInt(off + HEIGHT_OFFSET);
+
+    int len = slab.getInt(off + ROW_LEN_OFFSET);
+    int cmp = compareBytes(slab, pos, len, row);
+    if (cmp != 0)
+      return cmp;
+    pos += len;
+
+    len = slab.getInt(off + CF_LEN_OFFSET);
+    cmp = compareBytes(slab, pos, len, cf);
+    if (cmp != 0)
+      return cmp;
+    pos += len;
+
+    len = slab.getInt(off + CQ_LEN_OFFSET);
+    cmp = compareBytes(slab, pos, len, cq);
+    if (cmp != 0)
+      return cmp;
+    pos += len;
+
+    len = slab.getInt(off + CV_LEN_OFFSET);
+    cmp = compareBytes(slab, pos, len, cv);
+    if (cmp != 0)
+      return cmp;
+
+    // timestamps sort in descending order
+    cmp = Long.compare(ts, slab.getLong(off + TIMESTAMP_OFFSET));
+    if (cmp != 0)
+      return cmp;
+
+    // deletes sort before non deletes
+    boolean nodeDeleted = slab.get(off + DELETED_OFFSET) != 0;
+    if (nodeDeleted != del)
+      return nodeDeleted ? -1 : 1;
+
+    if (kvCount < 0)
+      return 1;
+
+    // more recent updates sort first
+    return Integer.compare(kvCount, slab.getInt(off + KV_COUNT_OFFSET));
+  }
+
+  /**
+   * Finds the last node at each level that sorts before the given key. When preds is null only the
+   * level 0 successor is computed.
+   *
+   * @return the first node at level 0 that sorts at or after the given key
+   */
+  private long findSuccessor(byte[] row, byte[] cf, byte[] cq, byte[] cv, long ts, boolean del,
+      int kvCount, long[] preds, long[] succs) {
+    long x = NULL;
+    long next = NULL;
+    for (int level = MAX_HEIGHT - 1; level >= 0; level--) {
+      next = getNext(x, level);
+      while (next != NULL && compare(next, row, cf, cq, cv, ts, del, kvCount) < 0) {
+        x = next;
+        next = getNext(x, level);
+      }
+      if (preds != null) {
+        preds[level] = x;
+        succs[level] = next;
+      }
+    }
+    return next;
+  }
+
+  private static int randomHeight() {
+    // each level has 1/4 of the nodes of the level below it
+    int height = 1;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    while (height < MAX_HEIGHT && random.nextInt(4) == 0)
+      height++;
+    return height;
+  }
+
+  /**
+   * Allocates space for a node in the current slab, adding a slab when it is full. Must be called
+   * while holding the writeLock.
+   */
+  private long allocate(int nodeSize) {
+    ByteBuffer[] slabArray = slabs;
+    int current = slabArray.length - 1;
+
+    if (current < 0 || slabPos + nodeSize > slabArray[current].capacity()) {
+      int slabSize = Math.max(nextSlabSize, nodeSize + 8);
+      nextSlabSize = Math.min(nextSlabSize * 2, MAX_SLAB_SIZE);
+
+      ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+      // node headers are read with aligned long accesses
+      int misalignment = slab.alignmentOffset(0, 8);
+      slabPos = misalignment == 0 ? 0 : 8 - misalignment;
+
+      slabArray = Arrays.copyOf(slabArray, slabArray.length + 1);
+      slabArray[slabArray.length - 1] = slab;
+      slabs = slabArray;
+      memoryUsed.addAndGet(slabSize);
+      current = slabArray.length - 1;
+    }
+
+    long node = address(current, slabPos);
+    slabPos += nodeSize;
+    return node;
+  }
+
+  private static void put(ByteBuffer slab, int pos, byte[] data) {
+    for (int i = 0; i < data.length; i++)
+      slab.put(pos + i, data[i]);
+  }
+
+  // must be called while holding the writeLock
+  private void insert(byte[] row, byte[] cf, byte[] cq, byte[] cv, long ts, boolean del,
+      byte[] value, int kvCount) {
+    findSuccessor(row, cf, cq, cv, ts, del, kvCount, preds, succs);
+
+    int height = randomHeight();
+    int nodeSize = align(
+        NEXT_OFFSET + 8 * height + row.length + cf.length + cq.length + cv.length + value.length);
+    long node = allocate(nodeSize);
+
+    ByteBuffer slab = slab(node);
+    int off = offset(node);
+
+    slab.putInt(off + HEIGHT_OFFSET, height);
+    slab.putInt(off + KV_COUNT_OFFSET, kvCount);
+    slab.putLong(off + TIMESTAMP_OFFSET, ts);
+    slab.putInt(off + ROW_LEN_OFFSET, row.length);
+    slab.putInt(off + CF_LEN_OFFSET, cf.length);
+    slab.putInt(off + CQ_LEN_OFFSET, cq.length);
+    slab.putInt(off + CV_LEN_OFFSET, cv.length);
+    slab.putInt(off + VALUE_LEN_OFFSET, value.length);
+    slab.put(off + DELETED_OFFSET, (byte) (del ? 1 : 0));
+
+    for (int level = 0; level < height; level++)
+      LONG_VIEW.set(slab, off + NEXT_OFFSET + 8 * level, succs[level]);
+
+    int pos = off + NEXT_OFFSET + 8 * height;
+    put(slab, pos, row);
+    pos += row.length;
+    put(slab, pos, cf);
+    pos += cf.length;
+    put(slab, pos, cq);
+    pos += cq.length;
+    put(slab, pos, cv);
+    pos += cv.length;
+    put(slab, pos, value);
+
+    // the node is fully written, link it in from the bottom up so that concurrent readers always
+    // find it at level 0 once it is reachable from any level
+    for (int level = 0; level < height; level++)
+      setNext(preds[level], level, node);
+
+    size.incrementAndGet();
+  }
+
+  public void mutate(List<Mutation> mutations, int kvCount) {
+    rlock.lock();
+    try {
+      synchronized (writeLock) {
+        if (deleted)
+          throw new IllegalStateException("Off-heap map deleted");
+
+        for (Mutation m : mutations) {
+          byte[] row = m.getRow();
+          for (ColumnUpdate cvp : m.getUpdates()) {
+            insert(row, cvp.getColumnFamily(), cvp.getColumnQualifier(), cvp.getColumnVisibility(),
+                cvp.getTimestamp(), cvp.isDeleted(), cvp.getValue(), kvCount++);
+          }
+        }
+      }
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * @return the number of bytes of off-heap memory allocated for this map
+   */
+  public long getMemoryUsed() {
+    return memoryUsed.get();
+  }
+
+  public void delete() {
+    wlock.lock();
+    try {
+      if (deleted)
+        throw new IllegalStateException("Off-heap map deleted");
+
+      ByteBuffer[] slabArray = slabs;
+      deleted = true;
+      slabs = new ByteBuffer[0];
+
+      log.trace("Freeing {} off-heap slabs holding {} bytes", slabArray.length, memoryUsed.get());
+      if (INVOKE_CLEANER != null) {
+        for (ByteBuffer slab : slabArray) {
+          try {
+            INVOKE_CLEANER.invoke(UNSAFE, slab);
+          } catch (ReflectiveOperationException e) {
+            log.warn("Failed to free off-heap slab, it will be freed by GC", e);
+          }
+        }
+      }
+    } finally {
+      wlock.unlock();
+    }
+  }
+
+  private static byte[] get(ByteBuffer view, int pos, int len) {
+    byte[] data = new byte[len];
+    view.position(pos);
+    view.get(data);
+    return data;
+  }
+
+  /**
+   * Reads batches of entries from the map. Like the native map, a batch is read while holding the
+   * read lock so that readers do not contend on the lock for every entry. Unlike the native map,
+   * nothing is ever removed, so a batch can always continue from the last node read.
+   */
+  private class ConcurrentIterator {
+
+    private static final int MAX_READ_AHEAD_ENTRIES = 16;
+    private static final int READ_AHEAD_BYTES = 4096;
+
+    // private duplicates of the slabs, so positional bulk reads do not interfere with other readers
+    private ByteBuffer[] views = new ByteBuffer[0];
+
+    private final Key[] keys = new Key[MAX_READ_AHEAD_ENTRIES];
+    private final Value[] values = new Value[MAX_READ_AHEAD_ENTRIES];
+    private int readAhead = 1;
+    private int index;
+    private int end;
+    private long nextNode;
+
+    ConcurrentIterator(Key start) {
+      rlock.lock();
+      try {
+        checkNotDeleted();
+        if (start == null) {
+          nextNode = head.get(0);
+        } else {
+          int kvCount = start instanceof MemKey ? ((MemKey) start).getKVCount() : -1;
+          nextNode = findSuccessor(start.getRowData().toArray(),
+              start.getColumnFamilyData().toArray(), start.getColumnQualifierData().toArray(),
+              start.getColumnVisibilityData().toArray(), start.getTimestamp(), start.isDeleted(),
+              kvCount, null, null);
+        }
+        fill();
+      } finally {
+        rlock.unlock();
+      }
+    }
+
+    private void checkNotDeleted() {
+      if (deleted)
+        throw new IllegalStateException("Off-heap map deleted");
+    }
+
+    private ByteBuffer view(int slabIndex) {
+      if (slabIndex >= views.length) {
+        ByteBuffer[] slabArray = slabs;
+        int oldLength = views.length;
+        views = Arrays.copyOf(views, slabArray.length);
+        for (int i = oldLength; i < views.length; i++)
+          views[i] = slabArray[i].duplicate();
+      }
+      return views[slabIndex];
+    }
+
+    // it is assumed the read lock is held when this method is called
+    private void fill() {
+      index = 0;
+      end = 0;
+
+      // as we keep filling, increase the read ahead
+      int amountRead = 0;
+      while (nextNode != NULL && end < readAhead && amountRead <= READ_AHEAD_BYTES) {
+        int off = offset(nextNode);
+        ByteBuffer view = view(slabIndex(nextNode));
+
+        int pos = off + NEXT_OFFSET + 8 * view.getInt(off + HEIGHT_OFFSET);
+        byte[] row = get(view, pos, view.getInt(off + ROW_LEN_OFFSET));
+        pos += row.length;
+        byte[] cf = get(view, pos, view.getInt(off + CF_LEN_OFFSET));
+        pos += cf.length;
+        byte[] cq = get(view, pos, view.getInt(off + CQ_LEN_OFFSET));
+        pos += cq.length;
+        byte[] cv = get(view, pos, view.getInt(off + CV_LEN_OFFSET));
+        pos += cv.length;
+        byte[] val = get(view, pos, view.getInt(off + VALUE_LEN_OFFSET));
+
+        keys[end] = new MemKey(row, cf, cq, cv, view.getLong(off + TIMESTAMP_OFFSET),
+            view.get(off + DELETED_OFFSET) != 0, false, view.getInt(off + KV_COUNT_OFFSET));
+        values[end] = new Value(val, false);
+        end++;
+        amountRead += row.length + cf.length + cq.length + cv.length + val.length;
+
+        nextNode = getNext(nextNode, 0);
+      }
+
+      readAhead = Math.min(readAhead * 2, MAX_READ_AHEAD_ENTRIES);
+    }
+
+    boolean hasNext() {
+      return index < end;
+    }
+
+    Key peekKey() {
+      return keys[index];
+    }
+
+    Value peekValue() {
+      return values[index];
+    }
+
+    void advance() {
+      keys[index] = null;
+      values[index] = null;
+      index++;
+      if (index == end && nextNode != NULL) {
+        rlock.lock();
+        try {
+          checkNotDeleted();
+          fill();
+        } finally {
+          rlock.unlock();
+        }
+      }
+    }
+  }
+
+  private static class OHMSKVIter implements InterruptibleIterator {
+
+    private final OffHeapMap map;
+    private ConcurrentIterator iter;
+    private Key topKey;
+    private Value topValue;
+
+    private Range range;
+    private AtomicBoolean interruptFlag;
+    private int interruptCheckCount = 0;
+
+    private OHMSKVIter(OffHeapMap map, AtomicBoolean interruptFlag) {
+      this.map = map;
+      this.range = new Range();
+      this.interruptFlag = interruptFlag;
+      this.iter = map.new ConcurrentIterator(null);
+      readTop();
+    }
+
+    private void readTop() {
+      if (iter.hasNext() && !range.afterEndKey(iter.peekKey())) {
+        topKey = iter.peekKey();
+        topValue = iter.peekValue();
+      } else {
+        topKey = null;
+        topValue = null;
+      }
+    }
+
+    @Override
+    public Key getTopKey() {
+      return topKey;
+    }
+
+    @Override
+    public Value getTopValue() {
+      return topValue;
+    }
+
+    @Override
+    public boolean hasTop() {
+      return topKey != null;
+    }
+
+    @Override
+    public void next() {
+      if (topKey == null)
+        throw new IllegalStateException();
+
+      // checking the interrupt flag for every call to next had bad a bad performance impact
+      // so check it every 100th time
+      if (interruptFlag != null && interruptCheckCount++ % 100 == 0 && interruptFlag.get())
+        throw new IterationInterruptedException();
+
+      iter.advance();
+      readTop();
+    }
+
+    @Override
+    public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) {
+      if (interruptFlag != null && interruptFlag.get())
+        throw new IterationInterruptedException();
+
+      this.range = range;
+      iter = map.new ConcurrentIterator(range.getStartKey());
+      readTop();
+
+      while (hasTop() && range.beforeStartKey(getTopKey())) {
+        next();
+      }
+    }
+
+    @Override
+    public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options,
+        IteratorEnvironment env) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+      if (env != null && env.isSamplingEnabled()) {
+        throw new SampleNotPresentException();
+      }
+      return new OHMSKVIter(map, interruptFlag);
+    }
+
+    @Override
+    public void setInterruptFlag(AtomicBoolean flag) {
+      this.interruptFlag = flag;
+    }
+  }
+
+  public InterruptibleIterator skvIterator() {
+    return new OHMSKVIter(this, null);
+  }
+}
@@ -59,6 +59,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import org.apache.accumulo.core.Constants;
 import org.apache.accumulo.core.client.AccumuloException;
@@ -109,6 +110,7 @@ import org.apache.accumulo.core.dataImpl.thrift.TSummaries;
 import org.apache.accumulo.core.dataImpl.thrift.TSummaryRequest;
 import org.apache.accumulo.core.dataImpl.thrift.UpdateErrors;
 import org.apache.accumulo.core.iterators.IterationInterruptedException;
+import org.apache.accumulo.core.iterators.system.VisibilityCache;
 import org.apache.accumulo.core.master.thrift.BulkImportState;
 import org.apache.accumulo.core.master.thrift.Compacting;
 import org.apache.accumulo.core.master.thrift.MasterClientService;
@@ -236,6 +238,7 @@ import org.apache.accumulo.tserver.replication.ReplicationWorker;
 import org.apache.accumulo.tserver.scan.LookupTask;
 import org.apache.accumulo.tserver.scan.NextBatchTask;
 import org.apache.accumulo.tserver.scan.ScanRunState;
+import org.apache.accumulo.tserver.scan.ScanTask;
 import org.apache.accumulo.tserver.session.ConditionalSession;
 import org.apache.accumulo.tserver.session.MultiScanSession;
 import org.apache.accumulo.tserver.session.Session;
@@ -292,6 +295,10 @@ public class TabletServer extends AbstractServer {
   private final TabletServerScanMetrics scanMetrics;
   private final TabletServerMinCMetrics mincMetrics;
 
+  public TabletServerUpdateMetrics getUpdateMetrics() {
+    return updateMetrics;
+  }
+
   public TabletServerScanMetrics getScanMetrics() {
     return scanMetrics;
   }
@@ -342,6 +349,9 @@ public class TabletServer extends AbstractServer {
   public static final AtomicLong seekCount = new AtomicLong(0);
 
   private final AtomicLong totalMinorCompactions = new AtomicLong(0);
+  private final AtomicLong hotRowsRecorded = new AtomicLong(0);
+  private final AtomicLong hotRowsPrefetched = new AtomicLong(0);
+  private final AtomicLong hotRowPrefetchTime = new AtomicLong(0);
   private final ServerConfigurationFactory confFactory;
 
   private final ZooAuthenticationKeyWatcher authKeyWatcher;
@@ -585,16 +595,6 @@ public class TabletServer extends AbstractServer {
 
     }
 
-    private ScanDispatcher getScanDispatcher(KeyExtent extent) {
-      if (extent.isRootTablet() || extent.isMeta()) {
-        // dispatcher is only for user tables
-        return null;
-      }
-
-      return getContext().getServerConfFactory().getTableConfiguration(extent.getTableId())
-          .getScanDispatcher();
-    }
-
     @Override
     public InitialScan startScan(TInfo tinfo, TCredentials credentials, TKeyExtent textent,
         TRange range, List<TColumn> columns, int batchSize, List<IterInfo> ssiList,
@@ -650,8 +650,11 @@ public class TabletServer extends AbstractServer {
       }
 
       final SingleScanSession scanSession = new SingleScanSession(credentials, extent, columnSet,
-          ssiList, ssio, new Authorizations(authorizations), readaheadThreshold, batchTimeOut,
-          contextArg, executionHints);
+          ssiList, ssio, new Authorizations(authorizations), readaheadThreshold,
+          TabletServer.this.getConfiguration().getCount(Property.TSERV_SCAN_READAHEAD_BATCHES),
+          TabletServer.this.getConfiguration().getAsBytes(Property.TSERV_SCAN_READAHEAD_MEMORY),
+          TabletServer.this.getConfiguration().getTimeInMillis(Property.TSERV_SCAN_READAHEAD_IDLE),
+          batchTimeOut, contextArg, executionHints);
       scanSession.scanner = tablet.createScanner(new Range(range), batchSize, scanSession.columnSet,
           scanSession.auths, ssiList, ssio, isolated, scanSession.interruptFlag,
           SamplerConfigurationImpl.fromThrift(tSamplerConfig), scanSession.batchTimeOut,
@@ -694,18 +697,18 @@ public class TabletServer extends AbstractServer {
         org.apache.accumulo.core.tabletserver.thrift.TooManyFilesException,
         TSampleNotPresentException {
 
-      if (scanSession.nextBatchTask == null) {
-        scanSession.nextBatchTask =
-            new NextBatchTask(TabletServer.this, scanID, scanSession.interruptFlag);
-        resourceManager.executeReadAhead(scanSession.extent, getScanDispatcher(scanSession.extent),
-            scanSession, scanSession.nextBatchTask);
+      Supplier<ScanTask<ScanBatch>> nextBatch =
+          () -> new NextBatchTask(TabletServer.this, scanID, scanSession.interruptFlag);
+
+      ScanTask<ScanBatch> newTask = scanSession.startNextBatch(nextBatch);
+      if (newTask != null) {
+        executeNextBatch(scanSession, newTask);
       }
 
       ScanBatch bresult;
       try {
         bresult = scanSession.nextBatchTask.get(MAX_TIME_TO_WAIT_FOR_SCAN_RESULT_MILLIS,
             TimeUnit.MILLISECONDS);
-        scanSession.nextBatchTask = null;
       } catch (ExecutionException e) {
         sessionManager.removeSession(scanID);
         if (e.getCause() instanceof NotServingTabletException) {
@@ -719,7 +722,6 @@ public class TabletServer extends AbstractServer {
           sleepUninterruptibly(MAX_TIME_TO_WAIT_FOR_SCAN_RESULT_MILLIS, TimeUnit.MILLISECONDS);
           List<KVEntry> empty = Collections.emptyList();
           bresult = new ScanBatch(empty, true);
-          scanSession.nextBatchTask = null;
         } else {
           throw new RuntimeException(e);
         }
@@ -749,13 +751,11 @@ public class TabletServer extends AbstractServer {
 
       scanSession.batchCount++;
 
-      if (scanResult.more && scanSession.batchCount > scanSession.readaheadThreshold) {
-        // start reading next batch while current batch is transmitted
-        // to client
-        scanSession.nextBatchTask =
-            new NextBatchTask(TabletServer.this, scanID, scanSession.interruptFlag);
-        resourceManager.executeReadAhead(scanSession.extent, getScanDispatcher(scanSession.extent),
-            scanSession, scanSession.nextBatchTask);
+      // start reading next batch while current batch is transmitted to client, unless batches are
+      // already being read ahead
+      newTask = scanSession.batchReturned(bresult, nextBatch);
+      if (newTask != null) {
+        executeNextBatch(scanSession, newTask);
       }
 
       if (!scanResult.more) {
@@ -1044,7 +1044,14 @@ public class TabletServer extends AbstractServer {
       }
     }
 
-    private void flush(UpdateSession us) {
+    /**
+     * Commits the queued mutations of the session. The mutations of tablets that are throttled stay
+     * queued for a later flush, without holding up the other tablets.
+     *
+     * @return how long, in milliseconds, the longest throttled tablet has left to wait, or zero if
+     *         all queued mutations were committed
+     */
+    private long flush(UpdateSession us) {
 
       int mutationCount = 0;
       Map<CommitSession,List<Mutation>> sendables = new HashMap<>();
@@ -1054,15 +1061,21 @@ public class TabletServer extends AbstractServer {
       long pt1 = System.currentTimeMillis();
 
       boolean containsMetadataTablet = false;
+      List<KeyExtent> extents = new ArrayList<>(us.queuedMutations.size());
       for (Tablet tablet : us.queuedMutations.keySet()) {
         if (tablet.getExtent().isMeta()) {
           containsMetadataTablet = true;
         }
+        extents.add(tablet.getExtent());
       }
 
+      Map<KeyExtent,Long> throttled = Collections.emptyMap();
       if (!containsMetadataTablet && us.queuedMutations.size() > 0) {
         TabletServer.this.resourceManager.waitUntilCommitsAreEnabled();
+        throttled = TabletServer.this.resourceManager.throttleWrites(extents);
       }
+      long throttleWait = 0;
+      long deferredSize = 0;
 
       try (TraceScope prep = Trace.startSpan("prep")) {
         for (Entry<Tablet,? extends List<Mutation>> entry : us.queuedMutations.entrySet()) {
@@ -1071,7 +1084,13 @@ public class TabletServer extends AbstractServer {
           Durability durability =
               DurabilityImpl.resolveDurabilty(us.durability, tablet.getDurability());
           List<Mutation> mutations = entry.getValue();
-          if (mutations.size() > 0) {
+          if (mutations.size() > 0 && throttled.containsKey(tablet.getExtent())) {
+            // keep the mutations queued until the tablet accepts writes again
+            throttleWait = Math.max(throttleWait, throttled.get(tablet.getExtent()));
+            for (Mutation mutation : mutations) {
+              deferredSize += mutation.numBytes();
+            }
+          } else if (mutations.size() > 0) {
             try {
               updateMetrics.addMutationArraySize(mutations.size());
 
@@ -1164,14 +1183,17 @@ public class TabletServer extends AbstractServer {
           updateAvgCommitTime(t2 - t1, sendables.size());
         }
       } finally {
-        us.queuedMutations.clear();
-        if (us.currentTablet != null) {
+        Map<KeyExtent,Long> deferred = throttled;
+        us.queuedMutations.entrySet().removeIf(entry -> entry.getValue().isEmpty()
+            || !deferred.containsKey(entry.getKey().getExtent()));
+        if (us.currentTablet != null && !us.queuedMutations.containsKey(us.currentTablet)) {
           us.queuedMutations.put(us.currentTablet, new ArrayList<>());
         }
-        updateTotalQueuedMutationSize(-us.queuedMutationSize);
-        us.queuedMutationSize = 0;
+        updateTotalQueuedMutationSize(deferredSize - us.queuedMutationSize);
+        us.queuedMutationSize = deferredSize;
       }
       us.totalUpdates += mutationCount;
+      return throttleWait;
     }
 
     private void updateWalogWriteTime(long time) {
@@ -1201,7 +1223,12 @@ public class TabletServer extends AbstractServer {
       long opid = writeTracker.startWrite(us.queuedMutations.keySet());
 
       try {
-        flush(us);
+        // the session is no longer reserved, so wait here for throttled tablets
+        long throttleWait = flush(us);
+        while (throttleWait > 0) {
+          sleepUninterruptibly(throttleWait, TimeUnit.MILLISECONDS);
+          throttleWait = flush(us);
+        }
       } catch (HoldTimeoutException e) {
         // Assumption is that the client has timed out and is gone. If that's not the case throw an
         // exception that will cause it to retry.
@@ -1268,6 +1295,7 @@ public class TabletServer extends AbstractServer {
           // was a failure and it should retry.
           throw new NotServingTabletException(tkeyExtent);
         }
+        TabletServer.this.resourceManager.delayWrites(Collections.singleton(keyExtent));
       }
 
       final long opid = writeTracker.startWrite(TabletType.type(keyExtent));
@@ -1523,6 +1551,16 @@ public class TabletServer extends AbstractServer {
         Map<TKeyExtent,List<TConditionalMutation>> mutations, List<String> symbols)
         throws NoSuchScanIDException, TException {
 
+      // wait for throttled tablets before reserving the session
+      List<KeyExtent> extents = new ArrayList<>(mutations.size());
+      for (TKeyExtent tke : mutations.keySet()) {
+        KeyExtent extent = new KeyExtent(tke);
+        if (!extent.isMeta()) {
+          extents.add(extent);
+        }
+      }
+      TabletServer.this.resourceManager.delayWrites(extents);
+
       ConditionalSession cs = (ConditionalSession) sessionManager.reserveSession(sessID);
 
       if (cs == null || cs.interruptFlag.get()) {
@@ -2146,6 +2184,24 @@ public class TabletServer extends AbstractServer {
     return totalQueuedMutationSize.addAndGet(additionalMutationSize);
   }
 
+  private ScanDispatcher getScanDispatcher(KeyExtent extent) {
+    if (extent.isRootTablet() || extent.isMeta()) {
+      // dispatcher is only for user tables
+      return null;
+    }
+
+    return getContext().getServerConfFactory().getTableConfiguration(extent.getTableId())
+        .getScanDispatcher();
+  }
+
+  /**
+   * Executes a task that reads the next batch of a single scan.
+   */
+  public void executeNextBatch(SingleScanSession scanSession, ScanTask<ScanBatch> task) {
+    resourceManager.executeReadAhead(scanSession.extent, getScanDispatcher(scanSession.extent),
+        scanSession, task);
+  }
+
   public Session getSession(long sessionId) {
     return sessionManager.getSession(sessionId);
   }
@@ -2339,6 +2395,11 @@ public class TabletServer extends AbstractServer {
       recentlyUnloadedCache.put(extent, System.currentTimeMillis());
       onlineTablets.remove(extent);
 
+      if (!goalState.equals(TUnloadTabletGoal.DELETED)) {
+        // record the hot rows before unassigning so the next server sees them when it loads
+        recordHotRows(t);
+      }
+
       try {
         TServerInstance instance = new TServerInstance(clientAddress, getLock().getSessionId());
         TabletLocationState tls = null;
@@ -2522,6 +2583,9 @@ public class TabletServer extends AbstractServer {
             recentlyUnloadedCache.remove(tablet.getExtent());
           }
         }
+        if (!extent.isMeta()) {
+          prefetchHotRows(tablet, tabletMetadata.getHotRows());
+        }
         tablet = null; // release this reference
         successful = true;
       } catch (Throwable e) {
@@ -2574,6 +2638,44 @@ public class TabletServer extends AbstractServer {
     }
   }
 
+  private void recordHotRows(Tablet tablet) {
+    if (tablet.getExtent().isMeta()
+        || getConfiguration().getCount(Property.TSERV_MIGRATE_HOT_ROWS_MAX) <= 0) {
+      return;
+    }
+    List<Text> rows = tablet.getHotRows();
+    try {
+      MasterMetadataUtil.updateTabletHotRows(getContext(), tablet.getExtent(), rows, getLock());
+      hotRowsRecorded.addAndGet(rows.size());
+    } catch (RuntimeException e) {
+      log.warn("Failed to record hot rows for {}", tablet.getExtent(), e);
+    }
+  }
+
+  /**
+   * Reads the rows that were hot when the tablet was last unloaded, in the background and subject
+   * to {@link Property#TSERV_MIGRATE_PREFETCH_RATE}, so the first scans of a migrated tablet do not
+   * all miss the block caches.
+   */
+  private void prefetchHotRows(Tablet tablet, List<Text> rows) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    resourceManager.executeHotRowPrefetch(() -> {
+      long t1 = System.currentTimeMillis();
+      try {
+        int count = tablet.prefetchRows(rows, getHotRowPrefetchLimiter());
+        hotRowsPrefetched.addAndGet(count);
+        log.debug("Prefetched {} of {} hot rows for {} in {}ms", count, rows.size(),
+            tablet.getExtent(), System.currentTimeMillis() - t1);
+      } catch (IOException | RuntimeException e) {
+        log.debug("Failed to prefetch hot rows for {}", tablet.getExtent(), e);
+      } finally {
+        hotRowPrefetchTime.addAndGet(System.currentTimeMillis() - t1);
+      }
+    });
+  }
+
   private void acquireRecoveryMemory(KeyExtent extent) {
     if (!extent.isMeta()) {
       recoveryLock.lock();
@@ -2592,7 +2694,8 @@ public class TabletServer extends AbstractServer {
         ? Property.TSERV_MAX_MESSAGE_SIZE : Property.GENERAL_MAX_MESSAGE_SIZE);
     ServerAddress sp = TServerUtils.startServer(getMetricsSystem(), getContext(), address, portHint,
         processor, this.getClass().getSimpleName(), threadName, Property.TSERV_PORTSEARCH,
-        Property.TSERV_MINTHREADS, Property.TSERV_THREADCHECK, maxMessageSizeProperty);
+        Property.TSERV_MINTHREADS, Property.TSERV_THREADCHECK, maxMessageSizeProperty,
+        Property.TSERV_VIRTUAL_THREADS_ENABLED, Property.TSERV_VIRTUAL_THREADS_MAX);
     this.server = sp.server;
     return sp.address;
   }
@@ -2909,6 +3012,12 @@ public class TabletServer extends AbstractServer {
     log.debug("Stopping Thrift Servers");
     TServerUtils.stopTServer(server);
 
+    log.debug("Stopping log sorter");
+    logSorter.close();
+
+    log.debug("Closing block caches");
+    resourceManager.close();
+
     try {
       log.debug("Closing filesystem");
       fs.close();
@@ -3245,10 +3354,58 @@ public class TabletServer extends AbstractServer {
     return totalMinorCompactions.get();
   }
 
+  public long getHotRowsRecorded() {
+    return hotRowsRecorded.get();
+  }
+
+  public long getHotRowsPrefetched() {
+    return hotRowsPrefetched.get();
+  }
+
+  public long getHotRowPrefetchTime() {
+    return hotRowPrefetchTime.get();
+  }
+
+  public VisibilityCache getVisibilityCache() {
+    return resourceManager.getVisibilityCache();
+  }
+
+  public SessionManager getSessionManager() {
+    return sessionManager;
+  }
+
+  public FileManager getFileManager() {
+    return resourceManager.getFileManager();
+  }
+
+  public BlockCache.Stats getIndexCacheStats() {
+    return resourceManager.getIndexCache().getStats();
+  }
+
+  public BlockCache.Stats getDataCacheStats() {
+    return resourceManager.getDataCache().getStats();
+  }
+
+  public BlockCache.Stats getIndexCacheL2Stats() {
+    return resourceManager.getIndexCacheL2Stats();
+  }
+
+  public BlockCache.Stats getDataCacheL2Stats() {
+    return resourceManager.getDataCacheL2Stats();
+  }
+
   public double getHoldTimeMillis() {
     return resourceManager.holdTime();
   }
 
+  public long getThrottledWrites() {
+    return resourceManager.getThrottledWrites();
+  }
+
+  public long getWriteThrottleTime() {
+    return resourceManager.getWriteThrottleTime();
+  }
+
   public SecurityOperation getSecurityOperation() {
     return security;
   }
@@ -3375,8 +3532,11 @@ public class TabletServer extends AbstractServer {
 
   private static final String MAJC_READ_LIMITER_KEY = "tserv_majc_read";
   private static final String MAJC_WRITE_LIMITER_KEY = "tserv_majc_write";
+  private static final String HOT_ROW_PREFETCH_LIMITER_KEY = "tserv_hot_row_prefetch";
   private final RateProvider rateProvider =
       () -> getConfiguration().getAsBytes(Property.TSERV_MAJC_THROUGHPUT);
+  private final RateProvider prefetchRateProvider =
+      () -> getConfiguration().getCount(Property.TSERV_MIGRATE_PREFETCH_RATE);
 
   /**
    * Get the {@link RateLimiter} for reads during major compactions on this tserver. All writes
@@ -3393,4 +3553,13 @@ public class TabletServer extends AbstractServer {
   public final RateLimiter getMajorCompactionWriteLimiter() {
     return SharedRateLimiterFactory.getInstance().create(MAJC_WRITE_LIMITER_KEY, rateProvider);
   }
+
+  /**
+   * Get the RateLimiter for the rows read to warm the caches after loading tablets. Permits are
+   * rows, not bytes.
+   */
+  public final RateLimiter getHotRowPrefetchLimiter() {
+    return SharedRateLimiterFactory.getInstance().create(HOT_ROW_PREFETCH_LIMITER_KEY,
+        prefetchRateProvider);
+  }
 }
@@ -20,6 +20,8 @@ import static java.util.Objects.requireNonNull;
 import static org.apache.accumulo.fate.util.UtilWaitThread.sleepUninterruptibly;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -38,6 +40,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -48,9 +51,13 @@ import org.apache.accumulo.core.conf.AccumuloConfiguration;
 import org.apache.accumulo.core.conf.AccumuloConfiguration.ScanExecutorConfig;
 import org.apache.accumulo.core.conf.ConfigurationTypeHelper;
 import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.cryptoImpl.NoCryptoService;
 import org.apache.accumulo.core.dataImpl.KeyExtent;
+import org.apache.accumulo.core.file.blockfile.cache.disk.DiskBlockStore;
+import org.apache.accumulo.core.file.blockfile.cache.disk.TieredBlockCache;
 import org.apache.accumulo.core.file.blockfile.cache.impl.BlockCacheConfiguration;
 import org.apache.accumulo.core.file.blockfile.cache.impl.BlockCacheManagerFactory;
+import org.apache.accumulo.core.iterators.system.VisibilityCache;
 import org.apache.accumulo.core.metadata.schema.DataFileValue;
 import org.apache.accumulo.core.spi.cache.BlockCache;
 import org.apache.accumulo.core.spi.cache.BlockCacheManager;
@@ -64,6 +71,7 @@ import org.apache.accumulo.core.spi.scan.ScanPrioritizer;
 import org.apache.accumulo.core.spi.scan.SimpleScanDispatcher;
 import org.apache.accumulo.core.util.Daemon;
 import org.apache.accumulo.core.util.NamingThreadFactory;
+import org.apache.accumulo.core.util.VirtualThreadFactory;
 import org.apache.accumulo.fate.util.LoggingRunnable;
 import org.apache.accumulo.server.ServerContext;
 import org.apache.accumulo.server.ServiceEnvironmentImpl;
@@ -104,11 +112,13 @@ public class TabletServerResourceManager {
   private final ExecutorService majorCompactionThreadPool;
   private final ExecutorService rootMajorCompactionThreadPool;
   private final ExecutorService defaultMajorCompactionThreadPool;
+  private final ExecutorService majorCompactionRangePool;
   private final ExecutorService splitThreadPool;
   private final ExecutorService defaultSplitThreadPool;
   private final ExecutorService defaultMigrationPool;
   private final ExecutorService migrationPool;
   private final ExecutorService assignmentPool;
+  private final ExecutorService hotRowPrefetchPool;
   private final ExecutorService assignMetaDataPool;
   private final ExecutorService summaryRetrievalPool;
   private final ExecutorService summaryParitionPool;
@@ -116,6 +126,8 @@ public class TabletServerResourceManager {
   private final Map<String,ExecutorService> threadPools = new TreeMap<>();
 
   private final Map<String,ExecutorService> scanExecutors;
+  private final boolean useVirtualThreads;
+  private final Semaphore virtualScanPermits;
   private final Map<String,ScanExecutor> scanExecutorChoices;
 
   private final ConcurrentHashMap<KeyExtent,RunnableStartedAt> activeAssignments;
@@ -130,6 +142,8 @@ public class TabletServerResourceManager {
   private final BlockCache _dCache;
   private final BlockCache _iCache;
   private final BlockCache _sCache;
+  private final DiskBlockStore l2Store;
+  private final VisibilityCache visibilityCache;
   private final ServerContext context;
 
   private Cache<String,Long> fileLenCache;
@@ -231,6 +245,13 @@ public class TabletServerResourceManager {
 
     scanExecQueues.put(sec.name, queue);
 
+    if (useVirtualThreads) {
+      // Each task gets its own virtual thread once one of the permits shared by all scan executors
+      // is free, so the executor's thread limit and priority do not apply.
+      return addEs("scan-" + sec.name,
+          new VirtualScanExecutor("scan-" + sec.name, queue, virtualScanPermits));
+    }
+
     return createEs(() -> sec.getCurrentMaxThreads(), "scan-" + sec.name, queue, sec.priority);
   }
 
@@ -333,8 +354,8 @@ public class TabletServerResourceManager {
     final AccumuloConfiguration acuConf = context.getConfiguration();
 
     long maxMemory = acuConf.getAsBytes(Property.TSERV_MAXMEM);
-    boolean usingNativeMap =
-        acuConf.getBoolean(Property.TSERV_NATIVEMAP_ENABLED) && NativeMap.isLoaded();
+    boolean usingNativeMap = acuConf.getBoolean(Property.TSERV_OFFHEAPMAP_ENABLED)
+        || (acuConf.getBoolean(Property.TSERV_NATIVEMAP_ENABLED) && NativeMap.isLoaded());
 
     long totalQueueSize = acuConf.getAsBytes(Property.TSERV_TOTAL_MUTATION_QUEUE_MAX);
 
@@ -346,17 +367,38 @@ public class TabletServerResourceManager {
 
     cacheManager.start(new BlockCacheConfiguration(acuConf));
 
-    _iCache = cacheManager.getBlockCache(CacheType.INDEX);
-    _dCache = cacheManager.getBlockCache(CacheType.DATA);
+    String l2Dir = acuConf.get(Property.TSERV_CACHE_L2_DIR);
+    boolean encrypted = !(context.getCryptoService() instanceof NoCryptoService);
+    if (encrypted && l2Dir != null && !l2Dir.isEmpty()) {
+      // the second tier stores decrypted blocks, which would defeat encryption at rest
+      log.warn("Not using the second tier block cache in {}, because files are encrypted with {}",
+          l2Dir, context.getCryptoService().getClass().getName());
+    }
+    if (l2Dir == null || l2Dir.isEmpty() || encrypted) {
+      l2Store = null;
+      _iCache = cacheManager.getBlockCache(CacheType.INDEX);
+      _dCache = cacheManager.getBlockCache(CacheType.DATA);
+    } else {
+      try {
+        l2Store =
+            new DiskBlockStore(Paths.get(l2Dir), acuConf.getAsBytes(Property.TSERV_CACHE_L2_SIZE));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Unable to open second tier block cache in " + l2Dir, e);
+      }
+      _iCache = new TieredBlockCache(cacheManager.getBlockCache(CacheType.INDEX), l2Store, "i");
+      _dCache = new TieredBlockCache(cacheManager.getBlockCache(CacheType.DATA), l2Store, "d");
+    }
     _sCache = cacheManager.getBlockCache(CacheType.SUMMARY);
 
+    visibilityCache = new VisibilityCache(acuConf.getAsBytes(Property.TSERV_VISIBILITYCACHE_SIZE));
+
     long dCacheSize = _dCache.getMaxHeapSize();
     long iCacheSize = _iCache.getMaxHeapSize();
     long sCacheSize = _sCache.getMaxHeapSize();
 
     Runtime runtime = Runtime.getRuntime();
     if (usingNativeMap) {
-      // Still check block cache sizes when using native maps.
+      // Still check block cache sizes when using native or off-heap maps.
       if (dCacheSize + iCacheSize + sCacheSize + totalQueueSize > runtime.maxMemory()) {
         throw new IllegalArgumentException(String.format(
             "Block cache sizes %,d" + " and mutation queue size %,d is too large for this JVM"
@@ -388,6 +430,8 @@ public class TabletServerResourceManager {
         new CompactionQueue().asBlockingQueueOfRunnable());
     rootMajorCompactionThreadPool = createEs(0, 1, 300, "md root major compactor");
     defaultMajorCompactionThreadPool = createEs(0, 1, 300, "md major compactor");
+    majorCompactionRangePool = createIdlingEs(Property.TSERV_MAJC_PARALLEL_THREADS,
+        "major compactor range", 60, TimeUnit.SECONDS);
 
     splitThreadPool = createEs(1, "splitter");
     defaultSplitThreadPool = createEs(0, 1, 60, "md splitter");
@@ -401,6 +445,7 @@ public class TabletServerResourceManager {
     // individual tablet server run
     // concurrent assignments would put more load on the metadata table at startup
     assignmentPool = createEs(Property.TSERV_ASSIGNMENT_MAXCONCURRENT, "tablet assignment");
+    hotRowPrefetchPool = createEs(0, 1, 60, "hot row prefetch");
 
     assignMetaDataPool = createEs(0, 1, 60, "metadata tablet assignment");
 
@@ -415,6 +460,15 @@ public class TabletServerResourceManager {
 
     Collection<ScanExecutorConfig> scanExecCfg = acuConf.getScanExecutors();
     Map<String,Queue<?>> scanExecQueues = new HashMap<>();
+    boolean virtualThreads = acuConf.getBoolean(Property.TSERV_VIRTUAL_THREADS_ENABLED);
+    if (virtualThreads && !VirtualThreadFactory.isSupported()) {
+      log.warn("{} is set, but this JVM does not support virtual threads",
+          Property.TSERV_VIRTUAL_THREADS_ENABLED.getKey());
+      virtualThreads = false;
+    }
+    useVirtualThreads = virtualThreads;
+    virtualScanPermits = virtualThreads
+        ? new Semaphore(acuConf.getCount(Property.TSERV_VIRTUAL_THREADS_MAX), true) : null;
     scanExecutors = createScanExecutors(scanExecCfg, scanExecQueues);
     scanExecutorChoices = createScanExecutorChoices(scanExecCfg, scanExecQueues);
 
@@ -578,20 +632,30 @@ public class TabletServerResourceManager {
             report = memUsageReports.poll();
           }
 
+          AccumuloConfiguration conf = context.getConfiguration();
+          double throttleThreshold = conf.getFraction(Property.TSERV_WRITE_THROTTLE_THRESHOLD);
+
           long delta = System.currentTimeMillis() - lastMemCheckTime;
-          if (holdCommits || delta > 50 || lastMemTotal > 0.90 * maxMem) {
+          if (holdCommits || delta > 50
+              || lastMemTotal > Math.min(0.90, throttleThreshold) * maxMem) {
             lastMemCheckTime = System.currentTimeMillis();
 
             long totalMemUsed = 0;
+            Map<KeyExtent,Long> memTableSizes = new HashMap<>();
 
             synchronized (tabletReports) {
               for (TabletStateImpl tsi : tabletReports.values()) {
                 totalMemUsed += tsi.getMemTableSize();
                 totalMemUsed += tsi.getMinorCompactingMemTableSize();
+                memTableSizes.put(tsi.getExtent(), tsi.getMemTableSize());
               }
             }
 
-            if (totalMemUsed > 0.95 * maxMem) {
+            // slow the tablets filling memory first, and only hold every write as a last resort
+            writeThrottle.update(memTableSizes, totalMemUsed, maxMem, throttleThreshold,
+                HOLD_THRESHOLD, conf.getTimeInMillis(Property.TSERV_WRITE_THROTTLE_MAX_DELAY));
+
+            if (totalMemUsed > HOLD_THRESHOLD * maxMem) {
               holdAllCommits(true);
             } else {
               holdAllCommits(false);
@@ -677,6 +741,10 @@ public class TabletServerResourceManager {
     }
   }
 
+  // the fraction of the in-memory map limit in use at which all writes are held
+  private static final double HOLD_THRESHOLD = 0.95;
+
+  private final WriteThrottle writeThrottle = new WriteThrottle();
   private final Object commitHold = new Object();
   private volatile boolean holdCommits = false;
   private long holdStartTime;
@@ -726,6 +794,36 @@ public class TabletServerResourceManager {
     }
   }
 
+  /**
+   * Finds the tablets among the given ones that can not accept a write yet, because they hold much
+   * of the in-memory map data while memory use is high and accepted a write too recently.
+   *
+   * @return how long, in milliseconds, each of those tablets has left to wait
+   */
+  Map<KeyExtent,Long> throttleWrites(Collection<KeyExtent> extents) {
+    return writeThrottle.throttle(extents, System.currentTimeMillis());
+  }
+
+  /**
+   * Waits until all of the given tablets can accept a write. Tablets that are not throttled do not
+   * add to the wait.
+   */
+  void delayWrites(Collection<KeyExtent> extents) {
+    Map<KeyExtent,Long> waits = throttleWrites(extents);
+    while (!waits.isEmpty()) {
+      sleepUninterruptibly(Collections.max(waits.values()), TimeUnit.MILLISECONDS);
+      waits = throttleWrites(waits.keySet());
+    }
+  }
+
+  public long getThrottledWrites() {
+    return writeThrottle.getThrottledWrites();
+  }
+
+  public long getWriteThrottleTime() {
+    return writeThrottle.getThrottleTime();
+  }
+
   public synchronized TabletResourceManager createTabletResourceManager(KeyExtent extent,
       AccumuloConfiguration conf) {
     return new TabletResourceManager(extent, conf);
@@ -922,6 +1020,13 @@ public class TabletServerResourceManager {
     }
   }
 
+  /**
+   * @return the executor that runs the key ranges of major compactions split for parallelism
+   */
+  public ExecutorService getMajorCompactionRangeExecutor() {
+    return majorCompactionRangePool;
+  }
+
   public void executeReadAhead(KeyExtent tablet, ScanDispatcher dispatcher, ScanSession scanInfo,
       Runnable task) {
 
@@ -968,6 +1073,10 @@ public class TabletServerResourceManager {
         new LoggingRunnable(log, assignmentHandler)));
   }
 
+  public void executeHotRowPrefetch(Runnable prefetch) {
+    hotRowPrefetchPool.execute(new LoggingRunnable(log, prefetch));
+  }
+
   public void addMetaDataAssignment(KeyExtent extent, Logger log,
       AssignmentHandler assignmentHandler) {
     assignMetaDataPool.execute(new ActiveAssignmentRunnable(activeAssignments, extent,
@@ -996,6 +1105,28 @@ public class TabletServerResourceManager {
     return _sCache;
   }
 
+  /**
+   * @return the statistics of the second tier of the index cache, or null if it has no second tier
+   */
+  public BlockCache.Stats getIndexCacheL2Stats() {
+    return _iCache instanceof TieredBlockCache ? ((TieredBlockCache) _iCache).getL2Stats() : null;
+  }
+
+  /**
+   * @return the statistics of the second tier of the data cache, or null if it has no second tier
+   */
+  public BlockCache.Stats getDataCacheL2Stats() {
+    return _dCache instanceof TieredBlockCache ? ((TieredBlockCache) _dCache).getL2Stats() : null;
+  }
+
+  public VisibilityCache getVisibilityCache() {
+    return visibilityCache;
+  }
+
+  public FileManager getFileManager() {
+    return fileManager;
+  }
+
   public Cache<String,Long> getFileLenCache() {
     return fileLenCache;
   }
@@ -1011,4 +1142,17 @@ public class TabletServerResourceManager {
   public ExecutorService getSummaryRemoteExecutor() {
     return summaryRemotePool;
   }
+
+  /**
+   * Closes the second tier of the block cache, so the blocks it holds are usable after a restart.
+   */
+  public void close() {
+    if (l2Store != null) {
+      try {
+        l2Store.close();
+      } catch (IOException e) {
+        log.warn("Failed to close second tier block cache", e);
+      }
+    }
+  }
 }
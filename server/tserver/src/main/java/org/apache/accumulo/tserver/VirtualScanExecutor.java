@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.util.VirtualThreadFactory;
+
+/**
+ * Runs each scan task on its own virtual thread. A dispatcher takes a permit from the permits shared
+ * by all scan executors before it takes the next task from the queue, so tasks wait in the order of
+ * the executor's prioritizer until a permit is free, and never hold a thread while they wait.
+ *
+ * <p>
+ * A virtual thread that blocks inside a synchronized block pins its carrier thread on Java runtimes
+ * before 24. Scans do this when reading files, because the RFile readers and
+ * {@code SynchronizedServerFilter} synchronize around reads. Only as many scans as there are carrier
+ * threads can then wait on reads at once, which is why the permits should stay well below the
+ * number of scans the server could otherwise hold.
+ */
+class VirtualScanExecutor extends AbstractExecutorService {
+
+  private final BlockingQueue<Runnable> queue;
+  private final Semaphore permits;
+  private final ThreadFactory threadFactory;
+  private final Thread dispatcher;
+  private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+  private volatile boolean shutdown = false;
+
+  VirtualScanExecutor(String name, BlockingQueue<Runnable> queue, Semaphore permits) {
+    this.queue = queue;
+    this.permits = permits;
+    this.threadFactory = new VirtualThreadFactory(name);
+    this.dispatcher = new VirtualThreadFactory(name + " dispatcher").newThread(this::dispatch);
+    dispatcher.start();
+  }
+
+  private void dispatch() {
+    while (true) {
+      Runnable task = null;
+      try {
+        permits.acquire();
+        try {
+          task = shutdown ? queue.poll() : queue.take();
+        } finally {
+          if (task == null) {
+            permits.release();
+          }
+        }
+      } catch (InterruptedException e) {
+        // shutdown interrupts a dispatcher waiting for a task, any queued tasks are still run
+        continue;
+      }
+
+      if (task == null) {
+        return;
+      }
+      start(task);
+    }
+  }
+
+  private void start(Runnable task) {
+    Thread thread = threadFactory.newThread(() -> {
+      try {
+        task.run();
+      } finally {
+        running.remove(Thread.currentThread());
+        permits.release();
+      }
+    });
+    running.add(thread);
+    thread.start();
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (shutdown) {
+      throw new RejectedExecutionException("Scan executor is shut down");
+    }
+    queue.add(command);
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    dispatcher.interrupt();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown = true;
+    List<Runnable> queued = new ArrayList<>();
+    queue.drainTo(queued);
+    dispatcher.interrupt();
+    running.forEach(Thread::interrupt);
+    return queued;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown && !dispatcher.isAlive() && running.isEmpty();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    List<Thread> threads = new ArrayList<>();
+    threads.add(dispatcher);
+    for (int i = 0; i < threads.size(); i++) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      TimeUnit.NANOSECONDS.timedJoin(threads.get(i), remaining);
+      if (i == 0) {
+        // the dispatcher starts no more threads once it has stopped
+        threads.addAll(running);
+      }
+    }
+    return isTerminated();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.accumulo.core.dataImpl.KeyExtent;
+
+/**
+ * Slows writes to the tablets holding the most in-memory map data once a tablet server's memory use
+ * passes a threshold, so one hot tablet does not push the server into holding every write.
+ *
+ * <p>
+ * Between the throttle threshold and the hold threshold the delay grows with memory use, and each
+ * tablet's delay is scaled by the size of its in-memory map relative to the largest one. Tablets
+ * with little data in memory are barely delayed at all.
+ *
+ * <p>
+ * A delayed tablet accepts at most one write per delay. Other writes to it wait on the tablet server
+ * until the tablet accepts writes again, while writes to other tablets in the same request go
+ * ahead.
+ */
+class WriteThrottle {
+
+  private volatile Map<KeyExtent,Long> delays = Collections.emptyMap();
+  private final Map<KeyExtent,Long> nextWrites = new ConcurrentHashMap<>();
+  private final AtomicLong throttledWrites = new AtomicLong(0);
+  private final AtomicLong throttleTime = new AtomicLong(0);
+
+  /**
+   * Computes the write delay for each tablet.
+   *
+   * @param memTableSizes
+   *          the size of each tablet's current in-memory map
+   * @param totalMemUsed
+   *          memory used by all in-memory maps, including those being minor compacted
+   * @return the delay in milliseconds for each tablet that should be delayed
+   */
+  static Map<KeyExtent,Long> computeDelays(Map<KeyExtent,Long> memTableSizes, long totalMemUsed,
+      long maxMem, double throttleThreshold, double holdThreshold, long maxDelay) {
+    double throttleStart = throttleThreshold * maxMem;
+    if (totalMemUsed <= throttleStart || maxDelay <= 0) {
+      return Collections.emptyMap();
+    }
+    double pressure =
+        Math.min(1.0, (totalMemUsed - throttleStart) / (holdThreshold * maxMem - throttleStart));
+
+    long largest = 0;
+    for (Entry<KeyExtent,Long> entry : memTableSizes.entrySet()) {
+      if (!entry.getKey().isMeta()) {
+        largest = Math.max(largest, entry.getValue());
+      }
+    }
+    if (largest == 0) {
+      return Collections.emptyMap();
+    }
+
+    Map<KeyExtent,Long> result = new HashMap<>();
+    for (Entry<KeyExtent,Long> entry : memTableSizes.entrySet()) {
+      if (entry.getKey().isMeta()) {
+        continue;
+      }
+      long delay = Math.round(maxDelay * pressure * entry.getValue() / largest);
+      if (delay > 0) {
+        result.put(entry.getKey(), delay);
+      }
+    }
+    return result;
+  }
+
+  void update(Map<KeyExtent,Long> memTableSizes, long totalMemUsed, long maxMem,
+      double throttleThreshold, double holdThreshold, long maxDelay) {
+    delays = computeDelays(memTableSizes, totalMemUsed, maxMem, throttleThreshold, holdThreshold,
+        maxDelay);
+    nextWrites.keySet().retainAll(delays.keySet());
+  }
+
+  long getDelay(KeyExtent extent) {
+    return delays.getOrDefault(extent, 0L);
+  }
+
+  /**
+   * Decides which of the given tablets can not accept a write made now. A delayed tablet accepts a
+   * write once its delay has passed since the last write it accepted.
+   *
+   * @return how long, in milliseconds, each tablet that can not accept the write has left to wait
+   */
+  Map<KeyExtent,Long> throttle(Collection<KeyExtent> extents, long now) {
+    Map<KeyExtent,Long> current = delays;
+    if (current.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<KeyExtent,Long> throttled = new HashMap<>();
+    for (KeyExtent extent : extents) {
+      long delay = current.getOrDefault(extent, 0L);
+      if (delay == 0) {
+        continue;
+      }
+      long[] wait = {0};
+      nextWrites.compute(extent, (k, next) -> {
+        if (next == null || now >= next) {
+          return now + delay;
+        }
+        wait[0] = next - now;
+        return next;
+      });
+      if (wait[0] > 0) {
+        throttled.put(extent, wait[0]);
+        throttledWrites.incrementAndGet();
+        throttleTime.addAndGet(wait[0]);
+      }
+    }
+    return throttled;
+  }
+
+  long getThrottledWrites() {
+    return throttledWrites.get();
+  }
+
+  long getThrottleTime() {
+    return throttleTime.get();
+  }
+}
@@ -68,12 +68,14 @@ import org.apache.accumulo.server.fs.VolumeManager;
 import org.apache.accumulo.tserver.TabletMutations;
 import org.apache.accumulo.tserver.logger.LogFileKey;
 import org.apache.accumulo.tserver.logger.LogFileValue;
+import org.apache.accumulo.tserver.metrics.TabletServerUpdateMetrics;
 import org.apache.accumulo.tserver.tablet.CommitSession;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSOutputStream;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -150,12 +152,17 @@ public class DfsLogger implements Comparable<DfsLogger> {
   private final Object closeLock = new Object();
 
   private static final DfsLogger.LogWork CLOSED_MARKER =
-      new DfsLogger.LogWork(null, Durability.FLUSH);
+      new DfsLogger.LogWork(null, Durability.FLUSH, null, 0);
 
   private static final LogFileValue EMPTY = new LogFileValue();
 
   private boolean closed = false;
 
+  /**
+   * The only thread that writes to the log. Threads logging data serialize it into their own buffer
+   * and put it on the work queue, without holding a lock while doing I/O. This thread drains
+   * everything on the queue, writes it and then flushes or syncs the log once for the whole group.
+   */
   private class LogSyncingTask implements Runnable {
     private int expectedReplication = 0;
 
@@ -173,14 +180,18 @@ public class DfsLogger implements Comparable<DfsLogger> {
         }
         workQueue.drainTo(work);
 
+        boolean written = write(work);
+
         Method durabilityMethod = null;
         loop: for (LogWork logWork : work) {
           switch (logWork.durability) {
             case DEFAULT:
             case NONE:
-            case LOG:
               // shouldn't make it to the work queue
               throw new IllegalArgumentException("unexpected durability " + logWork.durability);
+            case LOG:
+              // written, but no flush or sync needed
+              break;
             case SYNC:
               durabilityMethod = sync;
               break loop;
@@ -194,7 +205,7 @@ public class DfsLogger implements Comparable<DfsLogger> {
 
         long start = System.currentTimeMillis();
         try {
-          if (durabilityMethod != null) {
+          if (written && durabilityMethod != null) {
             durabilityMethod.invoke(logFile);
             if (durabilityMethod == sync) {
               syncCounter.incrementAndGet();
@@ -206,6 +217,9 @@ public class DfsLogger implements Comparable<DfsLogger> {
           fail(work, ex, "synching");
         }
         long duration = System.currentTimeMillis() - start;
+        if (updateMetrics != null && written && durabilityMethod != null) {
+          updateMetrics.addWalogSyncTime(duration);
+        }
         if (duration > slowFlushMillis) {
           String msg = new StringBuilder(128).append("Slow sync cost: ").append(duration)
               .append(" ms, current pipeline: ").append(Arrays.toString(getPipeLine())).toString();
@@ -242,6 +256,40 @@ public class DfsLogger implements Comparable<DfsLogger> {
       }
     }
 
+    /**
+     * Writes the data of all work in the group to the log with a single flush of the encrypting
+     * stream.
+     *
+     * @return false if writing failed, in which case all work in the group has failed
+     */
+    private boolean write(ArrayList<DfsLogger.LogWork> work) {
+      int entries = 0;
+      try {
+        for (DfsLogger.LogWork logWork : work) {
+          if (logWork.data != null) {
+            encryptingLogFile.write(logWork.data.getData(), 0, logWork.data.getLength());
+            entries += logWork.entries;
+          }
+        }
+        if (entries > 0) {
+          encryptingLogFile.flush();
+        }
+      } catch (ClosedChannelException ex) {
+        fail(work, new LogClosedException(), "writing");
+        return false;
+      } catch (Exception ex) {
+        log.error("Failed to write log entries", ex);
+        fail(work, ex, "writing");
+        return false;
+      }
+
+      writes.addAndGet(entries);
+      if (updateMetrics != null && entries > 0) {
+        updateMetrics.addWalogGroupSize(entries);
+      }
+      return true;
+    }
+
     private void fail(ArrayList<DfsLogger.LogWork> work, Exception ex, String why) {
       log.warn("Exception " + why + " " + ex);
       for (DfsLogger.LogWork logWork : work) {
@@ -253,11 +301,17 @@ public class DfsLogger implements Comparable<DfsLogger> {
   private static class LogWork {
     final CountDownLatch latch;
     final Durability durability;
+    // serialized log entries, written by the sync thread
+    final DataOutputBuffer data;
+    final int entries;
     volatile Exception exception;
 
-    public LogWork(CountDownLatch latch, Durability durability) {
+    public LogWork(CountDownLatch latch, Durability durability, DataOutputBuffer data,
+        int entries) {
       this.latch = latch;
       this.durability = durability;
+      this.data = data;
+      this.entries = entries;
     }
   }
 
@@ -286,20 +340,6 @@ public class DfsLogger implements Comparable<DfsLogger> {
     }
   }
 
-  private static class NoWaitLoggerOperation extends LoggerOperation {
-
-    public NoWaitLoggerOperation() {
-      super(null);
-    }
-
-    @Override
-    public void await() {
-      return;
-    }
-  }
-
-  static final LoggerOperation NO_WAIT_LOGGER_OP = new NoWaitLoggerOperation();
-
   @Override
   public boolean equals(Object obj) {
     // filename is unique
@@ -329,8 +369,9 @@ public class DfsLogger implements Comparable<DfsLogger> {
   private String metaReference;
   private AtomicLong syncCounter;
   private AtomicLong flushCounter;
+  private TabletServerUpdateMetrics updateMetrics;
   private final long slowFlushMillis;
-  private long writes = 0;
+  private final AtomicLong writes = new AtomicLong(0);
 
   private DfsLogger(ServerContext context, ServerResources conf) {
     this.context = context;
@@ -340,10 +381,30 @@ public class DfsLogger implements Comparable<DfsLogger> {
   }
 
   public DfsLogger(ServerContext context, ServerResources conf, AtomicLong syncCounter,
-      AtomicLong flushCounter) {
+      AtomicLong flushCounter, TabletServerUpdateMetrics updateMetrics) {
     this(context, conf);
     this.syncCounter = syncCounter;
     this.flushCounter = flushCounter;
+    this.updateMetrics = updateMetrics;
+  }
+
+  /**
+   * Log to an already open stream, without a header or an OPEN entry. Used to test the sync thread
+   * without a file system.
+   */
+  DfsLogger(ServerResources conf, String logPath, FSDataOutputStream logFile,
+      AtomicLong syncCounter, AtomicLong flushCounter) throws IOException {
+    this(null, conf, syncCounter, flushCounter, null);
+    this.logPath = logPath;
+    this.logFile = logFile;
+    this.encryptingLogFile = new NoFlushOutputStream(logFile);
+    try {
+      sync = logFile.getClass().getMethod("hsync");
+      flush = logFile.getClass().getMethod("hflush");
+    } catch (NoSuchMethodException e) {
+      throw new IOException(e);
+    }
+    startSyncThread();
   }
 
   /**
@@ -455,8 +516,7 @@ public class DfsLogger implements Comparable<DfsLogger> {
 
       /**
        * Always wrap the WAL in a NoFlushOutputStream to prevent extra flushing to HDFS. The
-       * {@link #write(LogFileKey, LogFileValue)} method will flush crypto data or do nothing when
-       * crypto is not enabled.
+       * {@link LogSyncingTask} will flush crypto data or do nothing when crypto is not enabled.
        **/
       OutputStream encryptedStream = encrypter.encryptStream(new NoFlushOutputStream(logFile));
       if (encryptedStream instanceof NoFlushOutputStream) {
@@ -478,11 +538,15 @@ public class DfsLogger implements Comparable<DfsLogger> {
       throw new IOException(ex);
     }
 
+    startSyncThread();
+    op.await();
+    log.debug("Got new write-ahead log: {}", this);
+  }
+
+  private void startSyncThread() {
     syncThread = new Daemon(new LoggingRunnable(log, new LogSyncingTask()));
     syncThread.setName("Accumulo WALog thread " + this);
     syncThread.start();
-    op.await();
-    log.debug("Got new write-ahead log: {}", this);
   }
 
   static long getWalBlockSize(AccumuloConfiguration conf) {
@@ -556,9 +620,10 @@ public class DfsLogger implements Comparable<DfsLogger> {
       }
   }
 
-  public synchronized long getWrites() {
-    Preconditions.checkState(writes >= 0);
-    return writes;
+  public long getWrites() {
+    long count = writes.get();
+    Preconditions.checkState(count >= 0);
+    return count;
   }
 
   public LoggerOperation defineTablet(CommitSession cs) throws IOException {
@@ -571,47 +636,50 @@ public class DfsLogger implements Comparable<DfsLogger> {
     return logKeyData(key, Durability.LOG);
   }
 
-  private synchronized void write(LogFileKey key, LogFileValue value) throws IOException {
-    key.write(encryptingLogFile);
-    value.write(encryptingLogFile);
-    encryptingLogFile.flush();
-    writes++;
-  }
-
   private LoggerOperation logKeyData(LogFileKey key, Durability d) throws IOException {
     return logFileData(singletonList(new Pair<>(key, EMPTY)), d);
   }
 
   private LoggerOperation logFileData(List<Pair<LogFileKey,LogFileValue>> keys,
       Durability durability) throws IOException {
-    DfsLogger.LogWork work = new DfsLogger.LogWork(new CountDownLatch(1), durability);
-    try {
-      for (Pair<LogFileKey,LogFileValue> pair : keys) {
-        write(pair.getFirst(), pair.getSecond());
-      }
-    } catch (ClosedChannelException ex) {
-      throw new LogClosedException();
-    } catch (Exception e) {
-      log.error("Failed to write log entries", e);
-      work.exception = e;
+    // serialize into a buffer sized for the data without holding any lock, the sync thread
+    // does all writes to the log
+    DataOutputBuffer data = new DataOutputBuffer(estimateSize(keys));
+    for (Pair<LogFileKey,LogFileValue> pair : keys) {
+      pair.getFirst().write(data);
+      pair.getSecond().write(data);
     }
+    DfsLogger.LogWork work =
+        new DfsLogger.LogWork(new CountDownLatch(1), durability, data, keys.size());
 
     synchronized (closeLock) {
-      // use a different lock for close check so that adding to work queue does not need
-      // to wait on walog I/O operations
+      // only held to check for close, adding to the work queue does not wait on walog I/O
 
       if (closed)
         throw new LogClosedException();
 
-      if (durability == Durability.LOG)
-        return NO_WAIT_LOGGER_OP;
-
       workQueue.add(work);
     }
 
+    // even without a flush or sync, callers wait for the write so a failure reaches them and the
+    // log is rolled
     return new LoggerOperation(work);
   }
 
+  private static int estimateSize(List<Pair<LogFileKey,LogFileValue>> keys) {
+    // enough for the fields of a key plus the serialized mutations
+    long size = 0;
+    for (Pair<LogFileKey,LogFileValue> pair : keys) {
+      size += 128;
+      if (pair.getFirst().filename != null)
+        size += pair.getFirst().filename.length();
+      if (pair.getSecond().mutations != null)
+        for (Mutation m : pair.getSecond().mutations)
+          size += m.numBytes() + 32;
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE - 8);
+  }
+
   public LoggerOperation logManyTablets(Collection<TabletMutations> mutations) throws IOException {
     Durability durability = Durability.NONE;
     List<Pair<LogFileKey,LogFileValue>> data = new ArrayList<>();
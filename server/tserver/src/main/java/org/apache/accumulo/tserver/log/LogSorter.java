@@ -26,7 +26,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.accumulo.core.Constants;
 import org.apache.accumulo.core.clientImpl.ClientContext;
@@ -67,6 +74,12 @@ public class LogSorter {
     private long sortStart = 0;
     private long sortStop = -1;
 
+    // time spent in each phase of the sort, sort and write are summed over all sort threads
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong sortNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
     @Override
     public Processor newProcessor() {
       return new LogProcessor();
@@ -104,6 +117,9 @@ public class LogSorter {
 
       String formerThreadName = Thread.currentThread().getName();
       int part = 0;
+      final List<Future<?>> partWrites = new ArrayList<>();
+      // set when the sort fails, so parts not yet written are skipped and parts being written stop
+      final AtomicBoolean aborted = new AtomicBoolean(false);
       try {
 
         // the following call does not throw an exception if the file/dir does not exist
@@ -118,7 +134,7 @@ public class LogSorter {
             // Creating a 'finished' marker will cause recovery to proceed normally and the
             // empty file will be correctly ignored downstream.
             fs.mkdirs(new Path(destPath));
-            writeBuffer(destPath, Collections.emptyList(), part++);
+            writeBuffer(destPath, Collections.emptyList(), part++, aborted);
             fs.create(SortedLogState.getFinishedMarkerPath(destPath)).close();
             return;
           }
@@ -126,10 +142,18 @@ public class LogSorter {
           this.input = inputStreams.getOriginalInput();
           this.decryptingInput = inputStreams.getDecryptingInputStream();
 
-          final long bufferSize = conf.getAsBytes(Property.TSERV_SORT_BUFFER_SIZE);
+          // This thread reads the log while full buffers are sorted and written by the sort
+          // threads. One buffer is filled while the others are in flight, so split the sort
+          // memory between all of them.
+          final int sortThreads = conf.getCount(Property.TSERV_SORT_THREADS);
+          final long bufferSize =
+              conf.getAsBytes(Property.TSERV_SORT_BUFFER_SIZE) / (sortThreads + 1);
+          final Semaphore buffersInFlight = new Semaphore(sortThreads);
           Thread.currentThread().setName("Sorting " + name + " for recovery");
-          while (true) {
+          boolean eof = false;
+          while (!eof) {
             final ArrayList<Pair<LogFileKey,LogFileValue>> buffer = new ArrayList<>();
+            long readStart = System.nanoTime();
             try {
               long start = input.getPos();
               while (input.getPos() - start < bufferSize) {
@@ -139,18 +163,52 @@ public class LogSorter {
                 value.readFields(decryptingInput);
                 buffer.add(new Pair<>(key, value));
               }
-              writeBuffer(destPath, buffer, part++);
-              buffer.clear();
             } catch (EOFException ex) {
-              writeBuffer(destPath, buffer, part++);
-              break;
+              eof = true;
+            }
+            long waitStart = System.nanoTime();
+            readNanos.addAndGet(waitStart - readStart);
+
+            buffersInFlight.acquire();
+            waitNanos.addAndGet(System.nanoTime() - waitStart);
+
+            final int bufferPart = part++;
+            partWrites.add(sortThreadPool.submit(() -> {
+              try {
+                if (!aborted.get()) {
+                  writeBuffer(destPath, buffer, bufferPart, aborted);
+                }
+              } finally {
+                buffersInFlight.release();
+              }
+              return null;
+            }));
+
+            // stop reading as soon as a part fails to be written
+            for (Future<?> partWrite : partWrites) {
+              if (partWrite.isDone()) {
+                partWrite.get();
+              }
             }
           }
+
+          for (Future<?> partWrite : partWrites) {
+            partWrite.get();
+          }
+
           fs.create(new Path(destPath, "finished")).close();
-          log.info("Finished log sort {} {} bytes {} parts in {}ms", name, getBytesCopied(), part,
-              getSortTime());
+          log.info(
+              "Finished log sort {} {} bytes {} parts in {}ms (read {}ms, waiting on sort"
+                  + " threads {}ms, sort {}ms, write {}ms)",
+              name, getBytesCopied(), part, getSortTime(),
+              TimeUnit.NANOSECONDS.toMillis(readNanos.get()),
+              TimeUnit.NANOSECONDS.toMillis(waitNanos.get()),
+              TimeUnit.NANOSECONDS.toMillis(sortNanos.get()),
+              TimeUnit.NANOSECONDS.toMillis(writeNanos.get()));
         }
       } catch (Throwable t) {
+        // no part may be written after the sort is marked as failed
+        abortPartWrites(partWrites, aborted);
         try {
           // parent dir may not exist
           fs.mkdirs(new Path(destPath));
@@ -172,19 +230,45 @@ public class LogSorter {
       }
     }
 
-    private void writeBuffer(String destPath, List<Pair<LogFileKey,LogFileValue>> buffer, int part)
-        throws IOException {
+    /**
+     * Stops the part writes of a failed sort and waits for the ones already running to finish.
+     */
+    private void abortPartWrites(List<Future<?>> partWrites, AtomicBoolean aborted) {
+      aborted.set(true);
+      for (Future<?> partWrite : partWrites) {
+        try {
+          partWrite.get();
+        } catch (ExecutionException | CancellationException e) {
+          // the sort already failed, the cause of the failure is logged by the caller
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          log.warn("Interrupted waiting for log sort parts to stop");
+          return;
+        }
+      }
+    }
+
+    private void writeBuffer(String destPath, List<Pair<LogFileKey,LogFileValue>> buffer, int part,
+        AtomicBoolean aborted) throws IOException {
       Path path = new Path(destPath, String.format("part-r-%05d", part));
       FileSystem ns = fs.getVolumeByPath(path).getFileSystem();
 
+      long sortBegin = System.nanoTime();
+      Collections.sort(buffer, Comparator.comparing(Pair::getFirst));
+      long writeStart = System.nanoTime();
+      sortNanos.addAndGet(writeStart - sortBegin);
+
       try (MapFile.Writer output = new MapFile.Writer(ns.getConf(), ns.makeQualified(path),
           MapFile.Writer.keyClass(LogFileKey.class),
           MapFile.Writer.valueClass(LogFileValue.class))) {
-        Collections.sort(buffer, Comparator.comparing(Pair::getFirst));
         for (Pair<LogFileKey,LogFileValue> entry : buffer) {
+          if (aborted.get()) {
+            throw new IOException("Log sort aborted while writing " + path);
+          }
           output.append(entry.getFirst(), entry.getSecond());
         }
       }
+      writeNanos.addAndGet(System.nanoTime() - writeStart);
     }
 
     synchronized void close() throws IOException {
@@ -213,6 +297,7 @@ public class LogSorter {
   }
 
   ThreadPoolExecutor threadPool;
+  private final ThreadPoolExecutor sortThreadPool;
   private final ClientContext context;
   private double walBlockSize;
 
@@ -222,9 +307,18 @@ public class LogSorter {
     this.conf = conf;
     int threadPoolSize = conf.getCount(Property.TSERV_RECOVERY_MAX_CONCURRENT);
     this.threadPool = new SimpleThreadPool(threadPoolSize, this.getClass().getName());
+    this.sortThreadPool =
+        new SimpleThreadPool(conf.getCount(Property.TSERV_SORT_THREADS), "log sort");
     this.walBlockSize = DfsLogger.getWalBlockSize(conf);
   }
 
+  /**
+   * Stops the threads that sort and write the parts of recovered logs.
+   */
+  public void close() {
+    sortThreadPool.shutdownNow();
+  }
+
   public void startWatchingForRecoveryLogs(ThreadPoolExecutor distWorkQThreadPool)
       throws KeeperException, InterruptedException {
     this.threadPool = distWorkQThreadPool;
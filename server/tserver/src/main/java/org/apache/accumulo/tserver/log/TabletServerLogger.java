@@ -273,7 +273,8 @@ public class TabletServerLogger {
           DfsLogger alog = null;
 
           try {
-            alog = new DfsLogger(tserver.getContext(), conf, syncCounter, flushCounter);
+            alog = new DfsLogger(tserver.getContext(), conf, syncCounter, flushCounter,
+                tserver.getUpdateMetrics());
             alog.open(tserver.getClientAddressString());
           } catch (Exception t) {
             log.error("Failed to open WAL", t);
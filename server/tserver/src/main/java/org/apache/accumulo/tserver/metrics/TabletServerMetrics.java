@@ -78,6 +78,11 @@ public class TabletServerMetrics extends TServerMetrics {
     builder.addGauge(Interns.info("filesPerTablet", "Number of files per tablet"),
         util.getAverageFilesPerTablet());
     builder.addGauge(Interns.info("holdTime", "Time commits held"), util.getHoldTime());
+    builder.addCounter(
+        Interns.info("throttledWrites", "Writes delayed because their tablets filled memory"),
+        util.getThrottledWrites());
+    builder.addCounter(Interns.info("writeThrottleTime", "Time throttled writes waited (ms)"),
+        util.getWriteThrottleTime());
     builder.addGauge(Interns.info("ingestRate", "Ingest rate (entries/sec)"), util.getIngest());
     builder.addGauge(Interns.info("ingestByteRate", "Ingest rate (bytes/sec)"),
         util.getIngestByteRate());
@@ -85,5 +90,70 @@ public class TabletServerMetrics extends TServerMetrics {
     builder.addGauge(Interns.info("queryByteRate", "Query rate (bytes/sec)"),
         util.getQueryByteRate());
     builder.addGauge(Interns.info("scannedRate", "Scanned rate"), util.getScannedRate());
+    builder.addCounter(Interns.info("visibilityCacheHits", "Visibility evaluations found in cache"),
+        util.getVisibilityCacheHits());
+    builder.addCounter(
+        Interns.info("visibilityCacheMisses", "Visibility evaluations missing from cache"),
+        util.getVisibilityCacheMisses());
+    builder.addCounter(
+        Interns.info("visibilityParses", "Visibility expressions parsed for the cache"),
+        util.getVisibilityParseCacheMisses());
+    builder.addGauge(Interns.info("indexCacheHitRatio", "Index cache hit ratio"),
+        util.getIndexCacheHitRatio());
+    builder.addGauge(
+        Interns.info("indexCacheL2HitRatio",
+            "Index cache second tier hit ratio on first tier misses"),
+        util.getIndexCacheL2HitRatio());
+    builder.addGauge(Interns.info("dataCacheHitRatio", "Data cache hit ratio"),
+        util.getDataCacheHitRatio());
+    builder.addGauge(
+        Interns.info("dataCacheL2HitRatio",
+            "Data cache second tier hit ratio on first tier misses"),
+        util.getDataCacheL2HitRatio());
+    builder.addCounter(Interns.info("scanFilesOpened", "Files opened for scans"),
+        util.getScanFilesOpened());
+    builder.addCounter(
+        Interns.info("scanFilesReused", "Scan file reservations satisfied by an open file"),
+        util.getScanFilesReused());
+    builder.addCounter(
+        Interns.info("scanFilePermitWait", "Time scans waited for file permits (ms)"),
+        util.getScanFilePermitWaitTime());
+    builder.addCounter(
+        Interns.info("hotRowsRecorded", "Hot rows recorded for tablets unloaded by this server"),
+        util.getHotRowsRecorded());
+    builder.addCounter(
+        Interns.info("hotRowsPrefetched", "Hot rows read to warm caches after tablet loads"),
+        util.getHotRowsPrefetched());
+    builder.addCounter(
+        Interns.info("hotRowPrefetchTime", "Time spent reading hot rows after tablet loads (ms)"),
+        util.getHotRowPrefetchTime());
+    builder.addCounter(Interns.info("zooCacheHits", "ZooKeeper cache hits"),
+        util.getZooCacheHits());
+    builder.addCounter(Interns.info("zooCacheMisses", "ZooKeeper cache misses"),
+        util.getZooCacheMisses());
+    builder.addCounter(Interns.info("zooCacheReads", "ZooKeeper calls made to fill the cache"),
+        util.getZooCacheReads());
+    builder.addCounter(
+        Interns.info("zooCacheCoalescedReads",
+            "ZooKeeper cache misses that waited on another read of the same node"),
+        util.getZooCacheCoalescedReads());
+    builder.addCounter(Interns.info("bloomChecks", "Seeks that checked a file's bloom filter"),
+        util.getBloomFilterChecks());
+    builder.addCounter(
+        Interns.info("bloomNegatives", "Seeks that skipped a file because of its bloom filter"),
+        util.getBloomFilterNegatives());
+    builder.addCounter(
+        Interns.info("bloomFalsePositives",
+            "Seeks that passed a file's bloom filter and found nothing"),
+        util.getBloomFilterFalsePositives());
+    builder.addGauge(Interns.info("scanSessions", "Open scan sessions"), util.getScanSessions());
+    builder.addGauge(Interns.info("multiScanSessions", "Open batch scan sessions"),
+        util.getMultiScanSessions());
+    builder.addGauge(Interns.info("updateSessions", "Open update sessions"),
+        util.getUpdateSessions());
+    builder.addGauge(Interns.info("conditionalSessions", "Open conditional update sessions"),
+        util.getConditionalSessions());
+    builder.addGauge(Interns.info("summarySessions", "Open summary sessions"),
+        util.getSummarySessions());
   }
 }
@@ -16,7 +16,14 @@
  */
 package org.apache.accumulo.tserver.metrics;
 
+import org.apache.accumulo.core.file.BloomFilterLayer;
+import org.apache.accumulo.core.spi.cache.BlockCache;
 import org.apache.accumulo.tserver.TabletServer;
+import org.apache.accumulo.tserver.session.ConditionalSession;
+import org.apache.accumulo.tserver.session.MultiScanSession;
+import org.apache.accumulo.tserver.session.SingleScanSession;
+import org.apache.accumulo.tserver.session.SummarySession;
+import org.apache.accumulo.tserver.session.UpdateSession;
 import org.apache.accumulo.tserver.tablet.Tablet;
 
 /**
@@ -167,4 +174,120 @@ public class TabletServerMetricsUtil {
       return 0;
     return result / (double) count;
   }
+
+  public long getVisibilityCacheHits() {
+    return tserver.getVisibilityCache().getResultStats().hitCount();
+  }
+
+  public long getVisibilityCacheMisses() {
+    return tserver.getVisibilityCache().getResultStats().missCount();
+  }
+
+  public long getVisibilityParseCacheMisses() {
+    return tserver.getVisibilityCache().getParseStats().missCount();
+  }
+
+  private static double getHitRatio(BlockCache.Stats stats) {
+    if (stats == null) {
+      return 0;
+    }
+    long requests = stats.requestCount();
+    return requests == 0 ? 0 : (double) stats.hitCount() / requests;
+  }
+
+  public double getIndexCacheHitRatio() {
+    return getHitRatio(tserver.getIndexCacheStats());
+  }
+
+  public double getIndexCacheL2HitRatio() {
+    return getHitRatio(tserver.getIndexCacheL2Stats());
+  }
+
+  public double getDataCacheHitRatio() {
+    return getHitRatio(tserver.getDataCacheStats());
+  }
+
+  public double getDataCacheL2HitRatio() {
+    return getHitRatio(tserver.getDataCacheL2Stats());
+  }
+
+  public long getScanFilesOpened() {
+    return tserver.getFileManager().getReadersCreated();
+  }
+
+  public long getScanFilesReused() {
+    return tserver.getFileManager().getReadersReused();
+  }
+
+  public long getScanFilePermitWaitTime() {
+    return tserver.getFileManager().getFilePermitWaitTime();
+  }
+
+  public long getHotRowsRecorded() {
+    return tserver.getHotRowsRecorded();
+  }
+
+  public long getHotRowsPrefetched() {
+    return tserver.getHotRowsPrefetched();
+  }
+
+  public long getHotRowPrefetchTime() {
+    return tserver.getHotRowPrefetchTime();
+  }
+
+  public long getZooCacheHits() {
+    return tserver.getContext().getZooCache().getHitCount();
+  }
+
+  public long getZooCacheMisses() {
+    return tserver.getContext().getZooCache().getMissCount();
+  }
+
+  public long getZooCacheReads() {
+    return tserver.getContext().getZooCache().getZooKeeperReadCount();
+  }
+
+  public long getZooCacheCoalescedReads() {
+    return tserver.getContext().getZooCache().getCoalescedReadCount();
+  }
+
+  public long getThrottledWrites() {
+    return tserver.getThrottledWrites();
+  }
+
+  public long getWriteThrottleTime() {
+    return tserver.getWriteThrottleTime();
+  }
+
+  public long getBloomFilterChecks() {
+    return BloomFilterLayer.getTotalChecks();
+  }
+
+  public long getBloomFilterNegatives() {
+    return BloomFilterLayer.getTotalNegatives();
+  }
+
+  public long getBloomFilterFalsePositives() {
+    return BloomFilterLayer.getTotalFalsePositives();
+  }
+
+  public long getScanSessions() {
+    return tserver.getSessionManager().getSessionCount(SingleScanSession.class);
+  }
+
+  public long getMultiScanSessions() {
+    return tserver.getSessionManager().getSessionCount(MultiScanSession.class);
+  }
+
+  public long getUpdateSessions() {
+    return tserver.getSessionManager().getSessionCount(UpdateSession.class);
+  }
+
+  public long getConditionalSessions() {
+    return tserver.getSessionManager().getSessionCount(ConditionalSession.class);
+  }
+
+  public long getSummarySessions() {
+    return tserver.getSessionManager().getSessionCount(SummarySession.class);
+  }
 }
@@ -18,6 +18,7 @@ package org.apache.accumulo.tserver.metrics;
 
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableStat;
 
 public class TabletServerUpdateMetrics extends TServerMetrics {
@@ -30,6 +31,10 @@ public class TabletServerUpdateMetrics extends TServerMetrics {
   private final MutableStat walogWriteTimeStat;
   private final MutableStat commitTimeStat;
   private final MutableStat mutationArraySizeStat;
+  private final MutableStat walogGroupSizeStat;
+  private final MutableQuantiles walogGroupSizeQuantiles;
+  private final MutableStat walogSyncTimeStat;
+  private final MutableQuantiles walogSyncTimeQuantiles;
 
   public TabletServerUpdateMetrics() {
     super("Updates");
@@ -48,6 +53,14 @@ public class TabletServerUpdateMetrics extends TServerMetrics {
     commitTimeStat = registry.newStat("commitTime", "committing mutations", "Ops", "Time", true);
     mutationArraySizeStat =
         registry.newStat("mutationArraysSize", "mutation array", "ops", "Size", true);
+    walogGroupSizeStat = registry.newStat("waLogGroupSize",
+        "log entries written to the WAL per group commit", "Ops", "Size", true);
+    walogGroupSizeQuantiles = registry.newQuantiles("waLogGroupSize10m",
+        "log entries written to the WAL per group commit quantiles", "Ops", "Size", 600);
+    walogSyncTimeStat =
+        registry.newStat("waLogSyncTime", "flushing or syncing the WAL", "Ops", "Time", true);
+    walogSyncTimeQuantiles = registry.newQuantiles("waLogSyncTime10m",
+        "flushing or syncing the WAL quantiles in milliseconds", "Ops", "Time", 600);
   }
 
   public void addPermissionErrors(long value) {
@@ -78,4 +91,14 @@ public class TabletServerUpdateMetrics extends TServerMetrics {
     commitTimeStat.add(value);
   }
 
+  public void addWalogGroupSize(long value) {
+    walogGroupSizeStat.add(value);
+    walogGroupSizeQuantiles.add(value);
+  }
+
+  public void addWalogSyncTime(long value) {
+    walogSyncTimeStat.add(value);
+    walogSyncTimeQuantiles.add(value);
+  }
+
 }
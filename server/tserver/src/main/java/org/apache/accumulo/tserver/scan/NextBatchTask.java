@@ -16,6 +16,7 @@
  */
 package org.apache.accumulo.tserver.scan;
 
+import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.accumulo.core.client.SampleNotPresentException;
@@ -69,7 +70,21 @@ public class NextBatchTask extends ScanTask<ScanBatch> {
         return;
       }
 
-      ScanBatch batch = scanSession.scanner.read();
+      ScanBatch batch;
+      if (scanSession.isReadAheadIdle()) {
+        // the client stopped fetching batches, so do not read one ahead for it; if the client
+        // comes back the empty batch makes it ask again
+        batch = new ScanBatch(new ArrayList<>(), true);
+      } else {
+        batch = scanSession.scanner.read();
+      }
+
+      // start reading the following batch before handing this one over, so the client can never
+      // find the window empty while this task is still deciding whether to read ahead
+      ScanTask<ScanBatch> readAhead = scanSession.finishedReading(this, batch,
+          () -> new NextBatchTask(server, scanID, interruptFlag));
+      if (readAhead != null)
+        server.executeNextBatch(scanSession, readAhead);
 
       // there should only be one thing on the queue at a time, so
       // it should be ok to call add()
@@ -96,6 +111,9 @@ public class NextBatchTask extends ScanTask<ScanBatch> {
           + (scanSession == null ? "(unknown)" : scanSession.extent), e);
       addResult(e);
     } finally {
+      // a no-op if the task already finished reading above
+      if (scanSession != null)
+        scanSession.finishedReading(this, null, null);
       runState.set(ScanRunState.FINISHED);
       Thread.currentThread().setName(oldThreadName);
     }
@@ -29,6 +29,7 @@ public class Session {
   public long lastAccessTime;
   public long startTime;
   State state = State.NEW;
+  long sessionId;
   private final TCredentials credentials;
 
   Session(TCredentials credentials) {
@@ -21,7 +21,6 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -29,6 +28,7 @@ import java.util.Set;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.accumulo.core.clientImpl.Translator;
 import org.apache.accumulo.core.clientImpl.Translators;
@@ -48,15 +48,27 @@ import org.apache.accumulo.tserver.tablet.ScanBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 
+/**
+ * Tracks the sessions of a tablet server. Sessions are spread over several maps by id. Idle
+ * sessions are found with a {@link TimingWheel} that holds one entry per session, due when the
+ * session would expire if it is not used again. So a sweep only looks at sessions that may have
+ * expired, not at every session.
+ */
 public class SessionManager {
   private static final Logger log = LoggerFactory.getLogger(SessionManager.class);
 
+  private static final int SHARDS = 16;
+
   private final SecureRandom random;
-  private final ConcurrentMap<Long,Session> sessions = new ConcurrentHashMap<>();
+  private final List<ConcurrentMap<Long,Session>> shards = new ArrayList<>(SHARDS);
+  private final TimingWheel<Session> idleWheel;
+  private final ConcurrentMap<Class<? extends Session>,AtomicLong> sessionCounts =
+      new ConcurrentHashMap<>();
   private final long maxIdle;
   private final long maxUpdateIdle;
   private final List<Session> idleSessions = new ArrayList<>();
@@ -68,6 +80,12 @@ public class SessionManager {
     maxUpdateIdle = conf.getTimeInMillis(Property.TSERV_UPDATE_SESSION_MAXIDLE);
     maxIdle = conf.getTimeInMillis(Property.TSERV_SESSION_MAXIDLE);
 
+    for (int i = 0; i < SHARDS; i++) {
+      shards.add(new ConcurrentHashMap<>());
+    }
+    long tickMillis = Math.max(100, Math.min(1000, Math.min(maxIdle, maxUpdateIdle) / 8));
+    idleWheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+
     SecureRandom sr;
     try {
       // This is faster than the default secure random which uses /dev/urandom
@@ -81,11 +99,19 @@ public class SessionManager {
     Runnable r = new Runnable() {
       @Override
       public void run() {
-        sweep(maxIdle, maxUpdateIdle);
+        sweep(System.currentTimeMillis());
       }
     };
 
-    SimpleTimer.getInstance(conf).schedule(r, 0, Math.max(maxIdle / 2, 1000));
+    SimpleTimer.getInstance(conf).schedule(r, 0, tickMillis);
+  }
+
+  private ConcurrentMap<Long,Session> shard(long sessionId) {
+    return shards.get((int) (sessionId ^ (sessionId >>> 32)) & (SHARDS - 1));
+  }
+
+  private long getMaxIdleTime(Session session) {
+    return session instanceof UpdateSession ? maxUpdateIdle : maxIdle;
   }
 
   public long createSession(Session session, boolean reserve) {
@@ -97,13 +123,36 @@ public class SessionManager {
       session.startTime = session.lastAccessTime = System.currentTimeMillis();
     }
 
-    while (sessions.putIfAbsent(sid, session) != null) {
+    // counted before it is visible, so a concurrent remove always has a count to decrement
+    sessionCounts.computeIfAbsent(session.getClass(), k -> new AtomicLong()).incrementAndGet();
+
+    while (shard(sid).putIfAbsent(sid, session) != null) {
       sid = random.nextLong();
     }
+    session.sessionId = sid;
+
+    idleWheel.schedule(session, session.startTime + getMaxIdleTime(session));
 
     return sid;
   }
 
+  /**
+   * Marks a session removed. Must be called while synchronized on the session, and only when it was
+   * not already removed.
+   */
+  private void markRemoved(Session session) {
+    session.state = State.REMOVED;
+    sessionCounts.get(session.getClass()).decrementAndGet();
+  }
+
+  /**
+   * @return the number of open sessions of exactly the given type
+   */
+  public long getSessionCount(Class<? extends Session> type) {
+    AtomicLong count = sessionCounts.get(type);
+    return count == null ? 0 : count.get();
+  }
+
   public long getMaxIdleTime() {
     return maxIdle;
   }
@@ -113,7 +162,7 @@ public class SessionManager {
    */
 
   public Session reserveSession(long sessionId) {
-    Session session = sessions.get(sessionId);
+    Session session = shard(sessionId).get(sessionId);
     if (session != null) {
       synchronized (session) {
         if (session.state == State.RESERVED)
@@ -130,7 +179,7 @@ public class SessionManager {
   }
 
   public Session reserveSession(long sessionId, boolean wait) {
-    Session session = sessions.get(sessionId);
+    Session session = shard(sessionId).get(sessionId);
     if (session != null) {
       synchronized (session) {
 
@@ -178,7 +227,7 @@ public class SessionManager {
   }
 
   public Session getSession(long sessionId) {
-    Session session = sessions.get(sessionId);
+    Session session = shard(sessionId).get(sessionId);
 
     if (session != null) {
       synchronized (session) {
@@ -198,7 +247,7 @@ public class SessionManager {
 
   public Session removeSession(long sessionId, boolean unreserve) {
 
-    Session session = sessions.remove(sessionId);
+    Session session = shard(sessionId).remove(sessionId);
     if (session != null) {
       boolean doCleanup = false;
       synchronized (session) {
@@ -207,7 +256,7 @@ public class SessionManager {
             unreserveSession(session);
           }
           doCleanup = true;
-          session.state = State.REMOVED;
+          markRemoved(session);
         }
       }
 
@@ -219,27 +268,33 @@ public class SessionManager {
     return session;
   }
 
-  private void sweep(final long maxIdle, final long maxUpdateIdle) {
+  @VisibleForTesting
+  void sweep(final long now) {
     List<Session> sessionsToCleanup = new ArrayList<>();
-    Iterator<Session> iter = sessions.values().iterator();
-    while (iter.hasNext()) {
-      Session session = iter.next();
+    for (Session session : idleWheel.advance(now)) {
+      long configuredIdle = getMaxIdleTime(session);
+      long nextCheck;
       synchronized (session) {
-        if (session.state == State.UNRESERVED) {
-          long configuredIdle = maxIdle;
-          if (session instanceof UpdateSession) {
-            configuredIdle = maxUpdateIdle;
-          }
-          long idleTime = System.currentTimeMillis() - session.lastAccessTime;
+        if (session.state == State.REMOVED) {
+          continue;
+        } else if (session.state == State.RESERVED) {
+          // in use, it can not expire before it is unreserved and then left idle
+          nextCheck = now + configuredIdle;
+        } else {
+          long idleTime = now - session.lastAccessTime;
           if (idleTime > configuredIdle) {
             log.info("Closing idle session from user={}, client={}, idle={}ms", session.getUser(),
                 session.client, idleTime);
-            iter.remove();
+            shard(session.sessionId).remove(session.sessionId, session);
             sessionsToCleanup.add(session);
-            session.state = State.REMOVED;
+            markRemoved(session);
+            continue;
           }
+          // used since it was scheduled, check again when it would expire now
+          nextCheck = session.lastAccessTime + configuredIdle + 1;
         }
       }
+      idleWheel.schedule(session, nextCheck);
     }
 
     // do clean up outside of lock for TabletServer in a synchronized block for simplicity vice a
@@ -260,7 +315,7 @@ public class SessionManager {
   }
 
   public void removeIfNotAccessed(final long sessionId, final long delay) {
-    Session session = sessions.get(sessionId);
+    Session session = shard(sessionId).get(sessionId);
     if (session != null) {
       long tmp;
       synchronized (session) {
@@ -270,12 +325,12 @@ public class SessionManager {
       TimerTask r = new TimerTask() {
         @Override
         public void run() {
-          Session session2 = sessions.get(sessionId);
+          Session session2 = shard(sessionId).get(sessionId);
           if (session2 != null) {
             boolean shouldRemove = false;
             synchronized (session2) {
               if (session2.lastAccessTime == removeTime && session2.state == State.UNRESERVED) {
-                session2.state = State.REMOVED;
+                markRemoved(session2);
                 shouldRemove = true;
               }
             }
@@ -283,7 +338,7 @@ public class SessionManager {
             if (shouldRemove) {
               log.info("Closing not accessed session from user=" + session2.getUser() + ", client="
                   + session2.client + ", duration=" + delay + "ms");
-              sessions.remove(sessionId);
+              shard(sessionId).remove(sessionId);
               session2.cleanup();
             }
           }
@@ -294,6 +349,14 @@ public class SessionManager {
     }
   }
 
+  private Iterable<Entry<Long,Session>> allSessions() {
+    List<Iterable<Entry<Long,Session>>> entrySets = new ArrayList<>(SHARDS);
+    for (ConcurrentMap<Long,Session> shard : shards) {
+      entrySets.add(shard.entrySet());
+    }
+    return Iterables.concat(entrySets);
+  }
+
   public Map<TableId,MapCounter<ScanRunState>> getActiveScansPerTable() {
     Map<TableId,MapCounter<ScanRunState>> counts = new HashMap<>();
 
@@ -308,7 +371,7 @@ public class SessionManager {
       }
     }
 
-    for (Entry<Long,Session> entry : Iterables.concat(sessions.entrySet(), copiedIdleSessions)) {
+    for (Entry<Long,Session> entry : Iterables.concat(allSessions(), copiedIdleSessions)) {
 
       Session session = entry.getValue();
       @SuppressWarnings("rawtypes")
@@ -360,7 +423,7 @@ public class SessionManager {
       }
     }
 
-    for (Entry<Long,Session> entry : Iterables.concat(sessions.entrySet(), copiedIdleSessions)) {
+    for (Entry<Long,Session> entry : Iterables.concat(allSessions(), copiedIdleSessions)) {
       Session session = entry.getValue();
       if (session instanceof SingleScanSession) {
         SingleScanSession ss = (SingleScanSession) session;
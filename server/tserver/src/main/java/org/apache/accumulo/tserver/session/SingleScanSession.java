@@ -16,10 +16,12 @@
  */
 package org.apache.accumulo.tserver.session;
 
+import java.util.ArrayDeque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import org.apache.accumulo.core.data.Column;
 import org.apache.accumulo.core.data.TableId;
@@ -39,20 +41,128 @@ public class SingleScanSession extends ScanSession {
   public volatile ScanTask<ScanBatch> nextBatchTask;
   public Scanner scanner;
   public final long readaheadThreshold;
+  public final int maxBatchesAhead;
+  public final long maxBytesAhead;
+  public final long readAheadIdleTime;
   public final long batchTimeOut;
   public final String context;
 
   public SingleScanSession(TCredentials credentials, KeyExtent extent, HashSet<Column> columnSet,
       List<IterInfo> ssiList, Map<String,Map<String,String>> ssio, Authorizations authorizations,
-      long readaheadThreshold, long batchTimeOut, String context,
-      Map<String,String> executionHints) {
+      long readaheadThreshold, int maxBatchesAhead, long maxBytesAhead, long readAheadIdleTime,
+      long batchTimeOut, String context, Map<String,String> executionHints) {
     super(credentials, columnSet, ssiList, ssio, authorizations, executionHints);
     this.extent = extent;
     this.readaheadThreshold = readaheadThreshold;
+    this.maxBatchesAhead = maxBatchesAhead;
+    this.maxBytesAhead = maxBytesAhead;
+    this.readAheadIdleTime = readAheadIdleTime;
     this.batchTimeOut = batchTimeOut;
     this.context = context;
   }
 
+  /*
+   * Batches are read by a chain of tasks, each one added when the previous one finished reading, so
+   * the scanner is only ever read by one task at a time and batches come out in order. The task
+   * whose batch the client gets next is nextBatchTask and the tasks reading the batches after it
+   * are in readAheadTasks. Together they form a window of at most maxBatchesAhead batches that are
+   * being read or are waiting for the client to ask for them. Reading ahead also stops while the
+   * batches waiting hold more than maxBytesAhead, or when the client has not fetched a batch for
+   * readAheadIdleTime.
+   */
+  private final ArrayDeque<ScanTask<ScanBatch>> readAheadTasks = new ArrayDeque<>();
+  // the last task in the window while it is reading, null once it finished
+  private ScanTask<ScanBatch> readingTask = null;
+  // whether the last task to finish reading saw more data in the tablet
+  private boolean moreToRead = true;
+  // memory used by batches that finished reading and were not yet returned
+  private long bytesAhead = 0;
+  // last time the client asked for a batch
+  private long lastFetchTime = System.currentTimeMillis();
+
+  private int batchesInWindow() {
+    return (nextBatchTask == null ? 0 : 1) + readAheadTasks.size();
+  }
+
+  private boolean shouldReadAhead(boolean more) {
+    return more && !interruptFlag.get() && batchCount > readaheadThreshold
+        && batchesInWindow() < maxBatchesAhead && bytesAhead < maxBytesAhead && !isIdle();
+  }
+
+  private boolean isIdle() {
+    return System.currentTimeMillis() - lastFetchTime > readAheadIdleTime;
+  }
+
+  /**
+   * Returns true if the client has not fetched a batch for so long that batches should no longer be
+   * read ahead for it.
+   */
+  public synchronized boolean isReadAheadIdle() {
+    return isIdle();
+  }
+
+  private ScanTask<ScanBatch> addToWindow(ScanTask<ScanBatch> task) {
+    if (nextBatchTask == null)
+      nextBatchTask = task;
+    else
+      readAheadTasks.add(task);
+    readingTask = task;
+    return task;
+  }
+
+  /**
+   * Returns a new task to execute if no batch is being read for the client, otherwise returns null
+   * and the client should wait on nextBatchTask.
+   */
+  public synchronized ScanTask<ScanBatch> startNextBatch(Supplier<ScanTask<ScanBatch>> factory) {
+    lastFetchTime = System.currentTimeMillis();
+    if (nextBatchTask == null)
+      return addToWindow(factory.get());
+    return null;
+  }
+
+  /**
+   * Called by a task when it finished reading, before it hands its batch or error over. The batch
+   * is null if reading failed. If the window has room, the task for the following batch is created
+   * and returned so it can be executed.
+   */
+  public synchronized ScanTask<ScanBatch> finishedReading(ScanTask<ScanBatch> task, ScanBatch batch,
+      Supplier<ScanTask<ScanBatch>> factory) {
+    if (readingTask != task)
+      return null;
+    readingTask = null;
+    boolean more = batch != null && batch.isMore();
+    moreToRead = more;
+    if (batch != null)
+      bytesAhead += batch.estimateMemoryUsed();
+    if (shouldReadAhead(more))
+      return addToWindow(factory.get());
+    return null;
+  }
+
+  /**
+   * Called after the batch of nextBatchTask was returned to the client. Moves the window forward
+   * and returns a new task to execute if reading had stopped because the window was full.
+   */
+  public synchronized ScanTask<ScanBatch> batchReturned(ScanBatch batch,
+      Supplier<ScanTask<ScanBatch>> factory) {
+    lastFetchTime = System.currentTimeMillis();
+    bytesAhead = Math.max(0, bytesAhead - batch.estimateMemoryUsed());
+    nextBatchTask = readAheadTasks.poll();
+    boolean more = nextBatchTask == null ? batch.isMore() : moreToRead;
+    if (readingTask == null && shouldReadAhead(more))
+      return addToWindow(factory.get());
+    return null;
+  }
+
+  public synchronized int getBatchesAhead() {
+    return batchesInWindow();
+  }
+
+  public synchronized long getBytesAhead() {
+    return bytesAhead;
+  }
+
   @Override
   public Type getScanType() {
     return Type.SINGLE;
@@ -67,8 +177,12 @@ public class SingleScanSession extends ScanSession {
   public boolean cleanup() {
     final boolean ret;
     try {
-      if (nextBatchTask != null)
-        nextBatchTask.cancel(true);
+      synchronized (this) {
+        if (nextBatchTask != null)
+          nextBatchTask.cancel(true);
+        for (ScanTask<ScanBatch> task : readAheadTasks)
+          task.cancel(true);
+      }
     } finally {
       if (scanner != null)
         ret = scanner.close();
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel. Items are scheduled for a deadline and handed back by
+ * {@link #advance(long)} once that deadline has passed. Scheduling an item and expiring it are
+ * constant time no matter how many items are scheduled.
+ *
+ * <p>
+ * Each level has 64 slots. A slot on level 0 covers one tick, a slot on level n covers 64^n ticks.
+ * An item is kept on the lowest level whose current rotation contains its deadline, and is moved
+ * down a level when the wheel reaches the start of its slot.
+ */
+class TimingWheel<T> {
+
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int LEVELS = 4;
+
+  private static class Entry<T> {
+    final T item;
+    final long tick;
+
+    Entry(T item, long tick) {
+      this.item = item;
+      this.tick = tick;
+    }
+  }
+
+  private final long tickMillis;
+  private final List<List<ArrayDeque<Entry<T>>>> levels = new ArrayList<>(LEVELS);
+  // items further out than the top level covers
+  private final ArrayDeque<Entry<T>> overflow = new ArrayDeque<>();
+  // the next tick to process, every earlier tick has been processed
+  private long currentTick;
+  private int size = 0;
+
+  TimingWheel(long tickMillis, long now) {
+    this.tickMillis = tickMillis;
+    this.currentTick = now / tickMillis;
+    for (int level = 0; level < LEVELS; level++) {
+      List<ArrayDeque<Entry<T>>> slots = new ArrayList<>(SLOTS);
+      for (int slot = 0; slot < SLOTS; slot++) {
+        slots.add(new ArrayDeque<>());
+      }
+      levels.add(slots);
+    }
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Schedules an item to be returned by the first call to {@link #advance(long)} at or after the
+   * deadline. An item whose deadline the wheel has already passed is returned with the next tick.
+   */
+  synchronized void schedule(T item, long deadline) {
+    long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick);
+    place(new Entry<>(item, tick));
+    size++;
+  }
+
+  private void place(Entry<T> entry) {
+    for (int level = 0; level < LEVELS; level++) {
+      int shift = SLOT_BITS * (level + 1);
+      // the lowest level where the deadline falls in the current rotation
+      if ((entry.tick >>> shift) == (currentTick >>> shift)) {
+        int slot = (int) ((entry.tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        levels.get(level).get(slot).add(entry);
+        return;
+      }
+    }
+    overflow.add(entry);
+  }
+
+  /**
+   * Moves the wheel forward to the given time.
+   *
+   * @return the items whose deadline is at or before the given time
+   */
+  synchronized List<T> advance(long now) {
+    List<T> expired = new ArrayList<>();
+    long targetTick = now / tickMillis;
+
+    while (currentTick <= targetTick) {
+      if (size == 0) {
+        currentTick = targetTick + 1;
+        break;
+      }
+
+      // move items down from the higher levels whose slot starts at this tick, highest first so
+      // items can move down several levels
+      if ((currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+        cascade(overflow);
+      }
+      for (int level = LEVELS - 1; level > 0; level--) {
+        int shift = SLOT_BITS * level;
+        if ((currentTick & ((1L << shift) - 1)) == 0) {
+          cascade(levels.get(level).get((int) ((currentTick >>> shift) & (SLOTS - 1))));
+        }
+      }
+
+      ArrayDeque<Entry<T>> due = levels.get(0).get((int) (currentTick & (SLOTS - 1)));
+      for (Entry<T> entry : due) {
+        expired.add(entry.item);
+      }
+      size -= due.size();
+      due.clear();
+      currentTick++;
+    }
+
+    return expired;
+  }
+
+  private void cascade(ArrayDeque<Entry<T>> slot) {
+    int count = slot.size();
+    for (int i = 0; i < count; i++) {
+      place(slot.poll());
+    }
+  }
+}
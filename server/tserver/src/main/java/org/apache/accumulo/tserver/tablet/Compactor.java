@@ -29,18 +29,24 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.conf.AccumuloConfiguration;
 import org.apache.accumulo.core.conf.IterConfigUtil;
+import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.dataImpl.KeyExtent;
 import org.apache.accumulo.core.file.FileOperations;
 import org.apache.accumulo.core.file.FileSKVIterator;
 import org.apache.accumulo.core.file.FileSKVWriter;
+import org.apache.accumulo.core.file.rfile.RFile;
 import org.apache.accumulo.core.iterators.IteratorUtil.IteratorScope;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.iterators.system.ColumnFamilySkippingIterator;
@@ -64,6 +70,7 @@ import org.apache.accumulo.tserver.TabletIteratorEnvironment;
 import org.apache.accumulo.tserver.compaction.MajorCompactionReason;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
 import org.apache.htrace.Trace;
 import org.apache.htrace.TraceScope;
 import org.slf4j.Logger;
@@ -97,9 +104,14 @@ public class Compactor implements Callable<CompactionStats> {
   private final VolumeManager fs;
   protected final KeyExtent extent;
   private final List<IteratorSetting> iterators;
+  // runs the key ranges of a major compaction that is split for parallelism
+  private final ExecutorService rangeExecutor;
+
+  // set when the ranges of a split compaction should stop, because one failed or was canceled
+  private volatile boolean rangesAborted = false;
 
   // things to report
-  private String currentLocalityGroup = "";
+  private volatile String currentLocalityGroup = "";
   private final long startTime;
 
   private int reason;
@@ -117,11 +129,11 @@ public class Compactor implements Callable<CompactionStats> {
     return compactorID;
   }
 
-  private synchronized void setLocalityGroup(String name) {
+  private void setLocalityGroup(String name) {
     this.currentLocalityGroup = name;
   }
 
-  public synchronized String getCurrentLocalityGroup() {
+  public String getCurrentLocalityGroup() {
     return currentLocalityGroup;
   }
 
@@ -159,6 +171,8 @@ public class Compactor implements Callable<CompactionStats> {
     this.env = env;
     this.iterators = iterators;
     this.reason = reason;
+    this.rangeExecutor = tablet.getTabletResources().getTabletServerResourceManager()
+        .getMajorCompactionRangeExecutor();
 
     startTime = System.currentTimeMillis();
   }
@@ -217,19 +231,14 @@ public class Compactor implements Callable<CompactionStats> {
 
       long t1 = System.currentTimeMillis();
 
-      HashSet<ByteSequence> allColumnFamilies = new HashSet<>();
-
-      if (mfw.supportsLocalityGroups()) {
-        for (Entry<String,Set<ByteSequence>> entry : lGroups.entrySet()) {
-          setLocalityGroup(entry.getKey());
-          compactLocalityGroup(entry.getKey(), entry.getValue(), true, mfw, majCStats);
-          allColumnFamilies.addAll(entry.getValue());
-        }
+      List<Range> ranges = chooseRanges(mfw);
+      if (ranges.size() > 1) {
+        compactRangesInParallel(ranges, lGroups, (RFile.Writer) mfw, majCStats);
+      } else {
+        compactLocalityGroups(lGroups, extent.toDataRange(), mfw, outputFilePath, majCStats,
+            true);
       }
 
-      setLocalityGroup("");
-      compactLocalityGroup(null, allColumnFamilies, false, mfw, majCStats);
-
       long t2 = System.currentTimeMillis();
 
       FileSKVWriter mfwTmp = mfw;
@@ -282,6 +291,333 @@ public class Compactor implements Callable<CompactionStats> {
     }
   }
 
+  /**
+   * @param reportLocalityGroup
+   *          true if the locality group being compacted should be reported, false when compacting
+   *          one of several ranges in parallel
+   */
+  private void compactLocalityGroups(Map<String,Set<ByteSequence>> lGroups, Range range,
+      FileSKVWriter mfw, Path outputPath, CompactionStats majCStats, boolean reportLocalityGroup)
+      throws IOException, CompactionCanceledException {
+    HashSet<ByteSequence> allColumnFamilies = new HashSet<>();
+
+    if (mfw.supportsLocalityGroups()) {
+      for (Entry<String,Set<ByteSequence>> entry : lGroups.entrySet()) {
+        if (reportLocalityGroup)
+          setLocalityGroup(entry.getKey());
+        compactLocalityGroup(entry.getKey(), entry.getValue(), true, range, mfw, outputPath,
+            majCStats);
+        allColumnFamilies.addAll(entry.getValue());
+      }
+    }
+
+    if (reportLocalityGroup)
+      setLocalityGroup("");
+    compactLocalityGroup(null, allColumnFamilies, false, range, mfw, outputPath, majCStats);
+  }
+
+  /**
+   * Splits a large major compaction into row ranges, using the indexes of the input files to find
+   * rows that divide the entries evenly. The data blocks of the ranges are copied into the output
+   * file, so this is only done when the output is an RFile that the blocks can be copied into as
+   * they are.
+   *
+   * @return the ranges to compact, a single range covering the tablet if the compaction should not
+   *         be split
+   */
+  private List<Range> chooseRanges(FileSKVWriter mfw) throws IOException {
+    List<Range> single = Collections.singletonList(extent.toDataRange());
+
+    int numRanges = acuTableConf.getCount(Property.TABLE_MAJC_PARALLEL_RANGES);
+    if (numRanges <= 1 || imm != null || env.getIteratorScope() != IteratorScope.majc
+        || filesToCompact.isEmpty() || !(mfw instanceof RFile.Writer)
+        || !((RFile.Writer) mfw).canAppendBlocks()) {
+      return single;
+    }
+
+    long inputSize = 0;
+    for (DataFileValue dfv : filesToCompact.values()) {
+      inputSize += dfv.getSize();
+    }
+    if (inputSize < acuTableConf.getAsBytes(Property.TABLE_MAJC_PARALLEL_THRESHOLD)) {
+      return single;
+    }
+
+    // the row of each index entry, index entries in the same row share one Text
+    List<Text> rows = new ArrayList<>();
+    try (IndexScan scan = new IndexScan()) {
+      Text row;
+      Text prevRow = null;
+      while ((row = scan.next()) != null) {
+        if (prevRow == null || !prevRow.equals(row)) {
+          prevRow = new Text(row);
+        }
+        rows.add(prevRow);
+      }
+    }
+
+    if (rows.size() < numRanges) {
+      return single;
+    }
+
+    // the first and last ranges are bounded by the tablet
+    List<Text> splits = new ArrayList<>();
+    for (int i = 1; i < numRanges; i++) {
+      Text row = rows.get((int) ((long) rows.size() * i / numRanges));
+      if (extent.getEndRow() != null && row.compareTo(extent.getEndRow()) >= 0) {
+        break;
+      }
+      if (splits.isEmpty() || row.compareTo(splits.get(splits.size() - 1)) > 0) {
+        splits.add(row);
+      }
+    }
+
+    if (splits.isEmpty()) {
+      return single;
+    }
+
+    // ranges end at the end of a row, so no row is split between two ranges
+    List<Range> ranges = new ArrayList<>(splits.size() + 1);
+    Text prev = extent.getPrevEndRow();
+    for (Text split : splits) {
+      ranges.add(new Range(prev, false, split, true));
+      prev = split;
+    }
+    ranges.add(new Range(prev, false, extent.getEndRow(), true));
+    return ranges;
+  }
+
+  /**
+   * Reads the rows of the index entries of all input files that fall in the tablet, in sorted
+   * order.
+   */
+  private class IndexScan implements AutoCloseable {
+    private final ArrayList<FileSKVIterator> readers = new ArrayList<>(filesToCompact.size());
+    private final MultiIterator iter;
+    private final Text row = new Text();
+
+    IndexScan() throws IOException {
+      try {
+        for (FileRef mapFile : filesToCompact.keySet()) {
+          FileSystem ns = fs.getVolumeByPath(mapFile.path()).getFileSystem();
+          readers.add(FileOperations.getInstance().newIndexReaderBuilder()
+              .forFile(mapFile.path().toString(), ns, ns.getConf(), context.getCryptoService())
+              .withTableConfiguration(acuTableConf).build());
+        }
+      } catch (IOException | RuntimeException e) {
+        close();
+        throw e;
+      }
+      iter = new MultiIterator(new ArrayList<>(readers), true);
+    }
+
+    /**
+     * @return the row of the next index entry in the tablet, or null if there are no more
+     */
+    Text next() throws IOException {
+      while (iter.hasTop()) {
+        Key key = iter.getTopKey();
+        iter.next();
+        if (extent.getPrevEndRow() != null && key.compareRow(extent.getPrevEndRow()) <= 0) {
+          continue;
+        }
+        if (extent.getEndRow() != null && key.compareRow(extent.getEndRow()) > 0) {
+          return null;
+        }
+        return key.getRow(row);
+      }
+      return null;
+    }
+
+    @Override
+    public void close() {
+      for (FileSKVIterator reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          log.warn("Failed to close index of map file", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return a path next to the output file for the part of the output in the given range
+   */
+  private Path getPartPath(Path outputPath, int part) {
+    String name = outputPath.getName();
+    int dot = name.lastIndexOf('.');
+    return new Path(outputPath.getParent(),
+        name.substring(0, dot) + "_part" + part + name.substring(dot));
+  }
+
+  /**
+   * Compacts each range into its own part file on the range executor, then copies the data blocks
+   * of the parts in order into the output file.
+   */
+  private void compactRangesInParallel(List<Range> ranges, Map<String,Set<ByteSequence>> lGroups,
+      RFile.Writer mfw, CompactionStats majCStats)
+      throws IOException, CompactionCanceledException {
+    log.debug("Compacting {} in {} parallel ranges", extent, ranges.size());
+
+    final Path outputPath = outputFile.path();
+    List<Path> parts = new ArrayList<>(ranges.size());
+    List<Future<CompactionStats>> futures = new ArrayList<>(ranges.size());
+
+    rangesAborted = false;
+    try {
+      for (int i = 0; i < ranges.size(); i++) {
+        final Range range = ranges.get(i);
+        final Path partPath = getPartPath(outputPath, i);
+        parts.add(partPath);
+        futures.add(rangeExecutor.submit(() -> compactRange(range, lGroups, partPath)));
+      }
+
+      for (Future<CompactionStats> future : futures) {
+        majCStats.add(getRangeStats(future));
+      }
+
+      stitchParts(parts, lGroups, mfw);
+    } finally {
+      // the parts can only be deleted once no range is writing to them
+      rangesAborted = true;
+      waitForRanges(futures);
+      for (Path part : parts) {
+        try {
+          fs.deleteRecursively(part);
+        } catch (IOException e) {
+          log.warn("Failed to delete compaction part {}", part, e);
+        }
+      }
+    }
+  }
+
+  private void waitForRanges(List<Future<CompactionStats>> futures) {
+    boolean interrupted = false;
+    for (Future<CompactionStats> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException | RuntimeException e) {
+          // already reported by getRangeStats, or caused by aborting the ranges
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private CompactionStats getRangeStats(Future<CompactionStats> future)
+      throws IOException, CompactionCanceledException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for compaction ranges of " + extent, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CompactionCanceledException)
+        throw (CompactionCanceledException) cause;
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  private CompactionStats compactRange(Range range, Map<String,Set<ByteSequence>> lGroups,
+      Path partPath) throws IOException, CompactionCanceledException {
+    if (!isCompactionEnabled()) {
+      throw new CompactionCanceledException();
+    }
+
+    CompactionStats stats = new CompactionStats();
+    FileSystem ns = fs.getVolumeByPath(partPath).getFileSystem();
+    FileSKVWriter writer = FileOperations.getInstance().newWriterBuilder()
+        .forFile(partPath.toString(), ns, ns.getConf(), context.getCryptoService())
+        .withTableConfiguration(acuTableConf).withRateLimiter(env.getWriteLimiter()).build();
+    try {
+      compactLocalityGroups(lGroups, range, writer, partPath, stats, false);
+      FileSKVWriter tmp = writer;
+      writer = null;
+      tmp.close();
+    } catch (CompactionCanceledException e) {
+      // the part was already closed and deleted
+      writer = null;
+      throw e;
+    } finally {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException | RuntimeException e) {
+          log.warn("Failed to close compaction part {}", partPath, e);
+        }
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Copies the data blocks of the parts of a split compaction into the output file. The parts hold
+   * disjoint, ordered ranges, so copying them one after another for each locality group keeps the
+   * output sorted.
+   */
+  private void stitchParts(List<Path> parts, Map<String,Set<ByteSequence>> lGroups,
+      RFile.Writer mfw) throws IOException, CompactionCanceledException {
+    List<RFile.Reader> readers = new ArrayList<>(parts.size());
+    try {
+      for (Path part : parts) {
+        FileSystem ns = fs.getVolumeByPath(part).getFileSystem();
+        FileSKVIterator reader = FileOperations.getInstance().newReaderBuilder()
+            .forFile(part.toString(), ns, ns.getConf(), context.getCryptoService())
+            .withTableConfiguration(acuTableConf).build();
+        if (!(reader instanceof RFile.Reader)) {
+          reader.close();
+          throw new IOException("Compaction part " + part + " is not an RFile");
+        }
+        readers.add((RFile.Reader) reader);
+      }
+
+      for (Entry<String,Set<ByteSequence>> entry : lGroups.entrySet()) {
+        setLocalityGroup(entry.getKey());
+        mfw.startNewLocalityGroup(entry.getKey(), entry.getValue());
+        appendParts(readers, mfw);
+      }
+
+      setLocalityGroup("");
+      mfw.startDefaultLocalityGroup();
+      appendParts(readers, mfw);
+    } finally {
+      for (RFile.Reader reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          log.warn("Failed to close compaction part", e);
+        }
+      }
+    }
+  }
+
+  private void appendParts(List<RFile.Reader> readers, RFile.Writer mfw)
+      throws IOException, CompactionCanceledException {
+    for (RFile.Reader reader : readers) {
+      if (!env.isCompactionEnabled()) {
+        throw new CompactionCanceledException();
+      }
+      mfw.appendBlocks(reader);
+    }
+  }
+
+  private boolean isCompactionEnabled() {
+    return !rangesAborted && env.isCompactionEnabled();
+  }
+
   private List<SortedKeyValueIterator<Key,Value>>
       openMapDataFiles(ArrayList<FileSKVIterator> readers) throws IOException {
 
@@ -336,8 +672,8 @@ public class Compactor implements Callable<CompactionStats> {
   }
 
   private void compactLocalityGroup(String lgName, Set<ByteSequence> columnFamilies,
-      boolean inclusive, FileSKVWriter mfw, CompactionStats majCStats)
-      throws IOException, CompactionCanceledException {
+      boolean inclusive, Range range, FileSKVWriter mfw, Path outputPath,
+      CompactionStats majCStats) throws IOException, CompactionCanceledException {
     ArrayList<FileSKVIterator> readers = new ArrayList<>(filesToCompact.size());
     try (TraceScope span = Trace.startSpan("compact")) {
       long entriesCompacted = 0;
@@ -368,7 +704,7 @@ public class Compactor implements Callable<CompactionStats> {
       SortedKeyValueIterator<Key,Value> itr = iterEnv.getTopLevelIterator(IterConfigUtil
           .convertItersAndLoad(env.getIteratorScope(), cfsi, acuTableConf, iterators, iterEnv));
 
-      itr.seek(extent.toDataRange(), columnFamilies, inclusive);
+      itr.seek(range, columnFamilies, inclusive);
 
       if (!inclusive) {
         mfw.startDefaultLocalityGroup();
@@ -377,7 +713,7 @@ public class Compactor implements Callable<CompactionStats> {
       }
 
       try (TraceScope write = Trace.startSpan("write")) {
-        while (itr.hasTop() && env.isCompactionEnabled()) {
+        while (itr.hasTop() && isCompactionEnabled()) {
           mfw.append(itr.getTopKey(), itr.getTopValue());
           itr.next();
           entriesCompacted++;
@@ -388,7 +724,7 @@ public class Compactor implements Callable<CompactionStats> {
           }
         }
 
-        if (itr.hasTop() && !env.isCompactionEnabled()) {
+        if (itr.hasTop() && !isCompactionEnabled()) {
           // cancel major compaction operation
           try {
             try {
@@ -396,9 +732,9 @@ public class Compactor implements Callable<CompactionStats> {
             } catch (IOException e) {
               log.error("{}", e.getMessage(), e);
             }
-            fs.deleteRecursively(outputFile.path());
+            fs.deleteRecursively(outputPath);
           } catch (Exception e) {
-            log.warn("Failed to delete Canceled compaction output file {}", outputFile, e);
+            log.warn("Failed to delete Canceled compaction output file {}", outputPath, e);
           }
           throw new CompactionCanceledException();
         }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.tablet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Remembers the rows most recently read from a tablet. The rows are handed to the next tablet
+ * server that loads the tablet, which reads them to warm its block caches.
+ */
+class HotRowTracker {
+
+  // longer rows are not recorded, to keep the metadata entry the rows are written to small
+  static final int MAX_ROW_LENGTH = 1024;
+
+  private final int maxRows;
+  private final LinkedHashMap<ByteSequence,Boolean> rows;
+
+  HotRowTracker(int maxRows) {
+    this.maxRows = maxRows;
+    this.rows = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteSequence,Boolean> eldest) {
+        return size() > HotRowTracker.this.maxRows;
+      }
+    };
+  }
+
+  /**
+   * Records the row a read of the given range starts at. Ranges with no start key are ignored, they
+   * start at the first block of the tablet and are not tied to a hot spot.
+   */
+  void record(Range range) {
+    if (maxRows <= 0)
+      return;
+    Key start = range.getStartKey();
+    if (start == null)
+      return;
+    ByteSequence row = start.getRowData();
+    if (row.length() > MAX_ROW_LENGTH)
+      return;
+    synchronized (rows) {
+      rows.put(row, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * @return the recorded rows, most recently read first
+   */
+  List<Text> getRows() {
+    List<Text> result;
+    synchronized (rows) {
+      result = new ArrayList<>(rows.size());
+      for (ByteSequence row : rows.keySet()) {
+        result.add(new Text(row.toArray()));
+      }
+    }
+    // access order iterates least recently used first
+    Collections.reverse(result);
+    return result;
+  }
+}
@@ -21,10 +21,17 @@ import java.util.List;
 public final class ScanBatch {
   private final boolean more;
   private final List<KVEntry> results;
+  private final long memoryUsed;
 
   public ScanBatch(List<KVEntry> results, boolean more) {
     this.results = results;
     this.more = more;
+
+    long mem = 0;
+    for (KVEntry entry : results) {
+      mem += entry.estimateMemoryUsed();
+    }
+    this.memoryUsed = mem;
   }
 
   public boolean isMore() {
@@ -34,4 +41,8 @@ public final class ScanBatch {
   public List<KVEntry> getResults() {
     return results;
   }
+
+  public long estimateMemoryUsed() {
+    return memoryUsed;
+  }
 }
@@ -204,7 +204,8 @@ class ScanDataSource implements DataSource {
     SortedKeyValueIterator<Key,
         Value> visFilter = SystemIteratorUtil.setupSystemScanIterators(statsIterator,
             options.getColumnSet(), options.getAuthorizations(), options.getDefaultLabels(),
-            tablet.getTableConfiguration());
+            tablet.getTableConfiguration(),
+            tablet.getTabletResources().getTabletServerResourceManager().getVisibilityCache());
 
     if (!loadIters) {
       return visFilter;
@@ -249,6 +249,7 @@ public class Tablet {
   private volatile long numEntriesInMemory = 0;
 
   private final Rate scannedRate = new Rate(0.95);
+  private final HotRowTracker hotRows;
   private final AtomicLong scannedCount = new AtomicLong(0);
 
   // Files that are currently in the process of bulk importing. Access to this is protected by the
@@ -324,6 +325,8 @@ public class Tablet {
     }
 
     this.tableConfiguration = tblConf;
+    this.hotRows = new HotRowTracker(extent.isMeta() ? 0
+        : tabletServer.getConfiguration().getCount(Property.TSERV_MIGRATE_HOT_ROWS_MAX));
 
     // translate any volume changes
     VolumeManager fs = tabletServer.getFileSystem();
@@ -684,6 +687,7 @@ public class Tablet {
       // do a test to see if this range falls within the tablet, if it does not
       // then clip will throw an exception
       tabletRange.clip(range);
+      hotRows.record(range);
     }
 
     ScanDataSource dataSource =
@@ -807,6 +811,7 @@ public class Tablet {
     // do a test to see if this range falls within the tablet, if it does not
     // then clip will throw an exception
     extent.toDataRange().clip(range);
+    hotRows.record(range);
 
     ScanOptions opts =
         new ScanOptions(num, authorizations, this.defaultSecurityLabel.derive(), columns, ssiList,
@@ -814,6 +819,45 @@ public class Tablet {
     return new Scanner(this, range, opts);
   }
 
+  /**
+   * @return the rows most recently read from this tablet, most recently read first
+   */
+  public List<Text> getHotRows() {
+    return hotRows.getRows();
+  }
+
+  /**
+   * Reads the given rows to bring the index and data blocks holding them into the block caches.
+   * Rows outside this tablet are skipped. Stops early when the tablet starts closing.
+   *
+   * @return the number of rows read
+   */
+  public int prefetchRows(List<Text> rows, RateLimiter limiter) throws IOException {
+    int count = 0;
+    for (Text row : rows) {
+      if (isClosing() || isClosed())
+        break;
+      if (!extent.contains(row))
+        continue;
+      limiter.acquire(1);
+      // use a data source per row so files are not held while waiting on the limiter
+      ScanDataSource dataSource = new ScanDataSource(this, Authorizations.EMPTY,
+          this.defaultSecurityLabel.derive(), new AtomicBoolean(false));
+      try {
+        SortedKeyValueIterator<Key,Value> iter = new SourceSwitchingIterator(dataSource);
+        iter.seek(new Range(row), LocalityGroupUtil.EMPTY_CF_SET, false);
+        iter.hasTop();
+      } catch (IOException ioe) {
+        dataSource.close(true);
+        throw ioe;
+      } finally {
+        dataSource.close(false);
+      }
+      count++;
+    }
+    return count;
+  }
+
   DataFileValue minorCompact(InMemoryMap memTable, FileRef tmpDatafile, FileRef newDatafile,
       FileRef mergeFile, boolean hasQueueTime, long queued, CommitSession commitSession,
       long flushId, MinorCompactionReason mincReason) {
@@ -884,6 +884,38 @@ public class InMemoryMapTest {
     assertFalse(iter1.hasTop());
   }
 
+  @Test
+  public void testOffHeapMap() throws Exception {
+    ConfigurationCopy config = newConfig(tempFolder.newFolder().getAbsolutePath());
+    config.set(Property.TSERV_OFFHEAPMAP_ENABLED, "true");
+    InMemoryMap imm = new InMemoryMap(config, getServerContext(), TableId.of("--TEST--"));
+    assertEquals(InMemoryMap.TYPE_OFF_HEAP_MAP_WRAPPER, imm.getMapType());
+
+    mutate(imm, "r1", "foo:cq1", 3, "bar1");
+    mutate(imm, "r1", "foo:cq1", 3, "bar2");
+    MemoryIterator ski1 = imm.skvIterator(null);
+    mutate(imm, "r1", "foo:cq1", 3, "bar3");
+    mutate(imm, "r3", "foo:cq1", 3, "bar9");
+
+    assertEquals(4, imm.getNumEntries());
+    assertTrue(imm.estimatedSizeInBytes() > 0);
+
+    imm.delete(0);
+
+    // iterators switch to the mem dump file when the off-heap memory is released
+    ski1.seek(new Range(new Text("r1")), LocalityGroupUtil.EMPTY_CF_SET, false);
+    testAndCallNext(ski1, "r1", "foo:cq1", 3, "bar2");
+    testAndCallNext(ski1, "r1", "foo:cq1", 3, "bar1");
+    assertFalse(ski1.hasTop());
+    ski1.close();
+
+    config.set(Property.TABLE_LOCALITY_GROUP_PREFIX + "lg1",
+        LocalityGroupUtil.encodeColumnFamilies(toTextSet("cf1")));
+    config.set(Property.TABLE_LOCALITY_GROUPS.getKey(), "lg1");
+    imm = new InMemoryMap(config, getServerContext(), TableId.of("--TEST--"));
+    assertEquals(InMemoryMap.TYPE_LOCALITY_GROUP_MAP_OFF_HEAP, imm.getMapType());
+  }
+
   private void assertAll(SortedKeyValueIterator<Key,Value> iter1) throws IOException {
     testAndCallNext(iter1, "r1", "cf1:x", 2, "1");
     testAndCallNext(iter1, "r1", "cf1:y", 2, "2");
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IterationInterruptedException;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.system.InterruptibleIterator;
+import org.apache.accumulo.core.util.LocalityGroupUtil;
+import org.junit.Test;
+
+public class OffHeapMapTest {
+
+  private static String fmt(int i) {
+    return String.format("r%06d", i);
+  }
+
+  private static TreeMap<Key,Value> readAll(SortedKeyValueIterator<Key,Value> iter)
+      throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>(new MemKeyComparator());
+    while (iter.hasTop()) {
+      data.put(iter.getTopKey(), iter.getTopValue());
+      iter.next();
+    }
+    return data;
+  }
+
+  private static List<Entry<Key,Value>> readList(SortedKeyValueIterator<Key,Value> iter)
+      throws IOException {
+    List<Entry<Key,Value>> data = new ArrayList<>();
+    while (iter.hasTop()) {
+      data.add(new SimpleImmutableEntry<>(iter.getTopKey(), iter.getTopValue()));
+      iter.next();
+    }
+    return data;
+  }
+
+  @Test
+  public void testOrderAndSeek() throws Exception {
+    OffHeapMap ohm = new OffHeapMap();
+    TreeMap<Key,Value> expected = new TreeMap<>(new MemKeyComparator());
+
+    Random rand = new Random(42);
+    int kvCount = 1;
+    for (int i = 0; i < 5000; i++) {
+      Mutation m = new Mutation(fmt(rand.nextInt(1000)));
+      String fam = "f" + rand.nextInt(3);
+      String qual = "q" + rand.nextInt(3);
+      long ts = rand.nextInt(5);
+      byte[] val = ("v" + i).getBytes(UTF_8);
+      if (rand.nextInt(10) == 0) {
+        m.putDelete(fam, qual, ts);
+        expected.put(new MemKey(m.getRow(), fam.getBytes(UTF_8), qual.getBytes(UTF_8), new byte[0],
+            ts, true, false, kvCount), new Value(new byte[0]));
+      } else {
+        m.put(fam, qual, ts, new Value(val));
+        expected.put(new MemKey(m.getRow(), fam.getBytes(UTF_8), qual.getBytes(UTF_8), new byte[0],
+            ts, false, false, kvCount), new Value(val));
+      }
+      ohm.mutate(Collections.singletonList(m), kvCount++);
+    }
+
+    assertEquals(expected.size(), ohm.size());
+    assertTrue(ohm.getMemoryUsed() >= OffHeapMap.MIN_SLAB_SIZE);
+
+    SortedKeyValueIterator<Key,Value> iter = ohm.skvIterator();
+    iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+    List<Entry<Key,Value>> all = readList(iter);
+    List<Entry<Key,Value>> expectedAll = new ArrayList<>(expected.entrySet());
+    assertEquals(expectedAll, all);
+    for (int i = 0; i < all.size(); i++) {
+      assertEquals(((MemKey) expectedAll.get(i).getKey()).getKVCount(),
+          ((MemKey) all.get(i).getKey()).getKVCount());
+    }
+
+    for (int i = 0; i < 100; i++) {
+      String start = fmt(rand.nextInt(1000));
+      String end = fmt(rand.nextInt(1000));
+      if (start.compareTo(end) > 0) {
+        String tmp = start;
+        start = end;
+        end = tmp;
+      }
+      Range range = new Range(start, rand.nextBoolean(), end, rand.nextBoolean());
+      iter.seek(range, LocalityGroupUtil.EMPTY_CF_SET, false);
+
+      TreeMap<Key,Value> expectedRange = new TreeMap<>(new MemKeyComparator());
+      for (Entry<Key,Value> entry : expected.entrySet()) {
+        if (range.contains(entry.getKey())) {
+          expectedRange.put(entry.getKey(), entry.getValue());
+        }
+      }
+      assertEquals(expectedRange, readAll(iter));
+    }
+
+    ohm.delete();
+  }
+
+  @Test
+  public void testMultipleUpdatesToSameKey() throws Exception {
+    OffHeapMap ohm = new OffHeapMap();
+
+    for (int i = 1; i <= 3; i++) {
+      Mutation m = new Mutation("r1");
+      m.put("cf", "cq", 5, "v" + i);
+      ohm.mutate(Collections.singletonList(m), i);
+    }
+
+    assertEquals(3, ohm.size());
+
+    SortedKeyValueIterator<Key,Value> iter = ohm.skvIterator();
+    iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+    // most recent update sorts first
+    for (int i = 3; i >= 1; i--) {
+      assertTrue(iter.hasTop());
+      assertEquals(i, ((MemKey) iter.getTopKey()).getKVCount());
+      assertEquals(new Value(("v" + i).getBytes(UTF_8)), iter.getTopValue());
+      iter.next();
+    }
+    assertFalse(iter.hasTop());
+
+    // a MemKey seek key only sees updates at or before its kvCount
+    iter.seek(new Range(new MemKey(new Key("r1", "cf", "cq", 5), 2), null),
+        LocalityGroupUtil.EMPTY_CF_SET, false);
+    assertEquals(2, ((MemKey) iter.getTopKey()).getKVCount());
+
+    ohm.delete();
+  }
+
+  @Test
+  public void testLargeValues() throws Exception {
+    OffHeapMap ohm = new OffHeapMap();
+
+    // values larger than a slab get a slab of their own
+    byte[] big = new byte[OffHeapMap.MAX_SLAB_SIZE + 100];
+    new Random(7).nextBytes(big);
+
+    for (int i = 0; i < 3; i++) {
+      Mutation m = new Mutation(fmt(i));
+      m.put("cf", "cq", new Value(big));
+      ohm.mutate(Collections.singletonList(m), i + 1);
+    }
+
+    assertTrue(ohm.getMemoryUsed() > 3L * big.length);
+
+    SortedKeyValueIterator<Key,Value> iter = ohm.skvIterator();
+    iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(fmt(i), iter.getTopKey().getRow().toString());
+      assertEquals(new Value(big), iter.getTopValue());
+      iter.next();
+    }
+    assertFalse(iter.hasTop());
+
+    ohm.delete();
+  }
+
+  @Test
+  public void testConcurrentReadWhileWriting() throws Exception {
+    OffHeapMap ohm = new OffHeapMap();
+    AtomicBoolean done = new AtomicBoolean(false);
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+    List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread reader = new Thread(() -> {
+        try {
+          SortedKeyValueIterator<Key,Value> iter = ohm.skvIterator();
+          while (!done.get()) {
+            iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+            Key prev = null;
+            while (iter.hasTop()) {
+              Key k = iter.getTopKey();
+              if (prev != null && new MemKeyComparator().compare(prev, k) >= 0)
+                throw new AssertionError("Out of order " + prev + " " + k);
+              prev = k;
+              iter.next();
+            }
+          }
+        } catch (Throwable e) {
+          errors.add(e);
+        }
+      });
+      reader.start();
+      readers.add(reader);
+    }
+
+    Random rand = new Random(11);
+    for (int i = 1; i <= 20000; i++) {
+      Mutation m = new Mutation(fmt(rand.nextInt(100000)));
+      m.put("cf", "cq", "v" + i);
+      ohm.mutate(Collections.singletonList(m), i);
+    }
+
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertEquals(Collections.emptyList(), errors);
+    assertEquals(20000, ohm.size());
+    ohm.delete();
+  }
+
+  @Test
+  public void testDelete() throws Exception {
+    OffHeapMap ohm = new OffHeapMap();
+    Mutation m = new Mutation("r1");
+    m.put("cf", "cq", "v");
+    ohm.mutate(Collections.singletonList(m), 1);
+
+    SortedKeyValueIterator<Key,Value> iter = ohm.skvIterator();
+    ohm.delete();
+
+    try {
+      iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+      fail("Expected seek on a deleted map to fail");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    try {
+      ohm.mutate(Collections.singletonList(m), 2);
+      fail("Expected write to a deleted map to fail");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    try {
+      ohm.delete();
+      fail("Expected double delete to fail");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = IterationInterruptedException.class)
+  public void testInterrupt() throws Exception {
+    OffHeapMap ohm = new OffHeapMap();
+    Mutation m = new Mutation("r1");
+    m.put("cf", "cq", "v");
+    ohm.mutate(Collections.singletonList(m), 1);
+
+    AtomicBoolean iflag = new AtomicBoolean(true);
+    InterruptibleIterator iter = ohm.skvIterator();
+    iter.setInterruptFlag(iflag);
+    iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+  }
+}
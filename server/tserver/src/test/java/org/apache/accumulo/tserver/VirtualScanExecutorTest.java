@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.util.VirtualThreadFactory;
+import org.junit.Test;
+
+public class VirtualScanExecutorTest {
+
+  @Test
+  public void testPermitsBoundRunningTasks() throws Exception {
+    assumeTrue(VirtualThreadFactory.isSupported());
+
+    Semaphore permits = new Semaphore(1);
+    LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    VirtualScanExecutor executor = new VirtualScanExecutor("test", queue, permits);
+
+    CountDownLatch firstStarted = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch secondRan = new CountDownLatch(1);
+    executor.execute(() -> {
+      firstStarted.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    executor.execute(secondRan::countDown);
+
+    assertTrue(firstStarted.await(30, TimeUnit.SECONDS));
+    // the second task waits in the queue until the first returns its permit
+    assertFalse(secondRan.await(100, TimeUnit.MILLISECONDS));
+    assertEquals(1, queue.size());
+
+    release.countDown();
+    assertTrue(secondRan.await(30, TimeUnit.SECONDS));
+
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    assertEquals(1, permits.availablePermits());
+  }
+
+  @Test
+  public void testShutdownRunsQueuedTasks() throws Exception {
+    assumeTrue(VirtualThreadFactory.isSupported());
+
+    Semaphore permits = new Semaphore(1);
+    VirtualScanExecutor executor =
+        new VirtualScanExecutor("test", new LinkedBlockingQueue<>(), permits);
+
+    CountDownLatch ran = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      executor.execute(ran::countDown);
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    assertEquals(0, ran.getCount());
+    assertEquals(1, permits.availablePermits());
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void testRejectAfterShutdown() {
+    assumeTrue(VirtualThreadFactory.isSupported());
+
+    VirtualScanExecutor executor =
+        new VirtualScanExecutor("test", new LinkedBlockingQueue<>(), new Semaphore(1));
+    executor.shutdown();
+    executor.execute(() -> {});
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.TableId;
+import org.apache.accumulo.core.dataImpl.KeyExtent;
+import org.apache.accumulo.core.metadata.MetadataTable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class WriteThrottleTest {
+
+  private static final long MAX_MEM = 1000;
+
+  private static KeyExtent extent(String endRow) {
+    return new KeyExtent(TableId.of("1"), new Text(endRow), null);
+  }
+
+  @Test
+  public void testBelowThreshold() {
+    Map<KeyExtent,Long> sizes = Map.of(extent("a"), 500L, extent("b"), 200L);
+    assertEquals(Collections.emptyMap(),
+        WriteThrottle.computeDelays(sizes, 800, MAX_MEM, 0.8, 0.95, 1000));
+  }
+
+  @Test
+  public void testGraduatedDelay() {
+    KeyExtent hot = extent("a");
+    KeyExtent warm = extent("b");
+    KeyExtent cold = extent("c");
+    Map<KeyExtent,Long> sizes = Map.of(hot, 600L, warm, 150L, cold, 0L);
+
+    // a third of the way from the throttle threshold to the hold threshold
+    Map<KeyExtent,Long> delays = WriteThrottle.computeDelays(sizes, 850, MAX_MEM, 0.8, 0.95, 900);
+    assertEquals(300, (long) delays.get(hot));
+    assertEquals(75, (long) delays.get(warm));
+    assertFalse(delays.containsKey(cold));
+
+    // the delay stops growing at the hold threshold
+    delays = WriteThrottle.computeDelays(sizes, 990, MAX_MEM, 0.8, 0.95, 900);
+    assertEquals(900, (long) delays.get(hot));
+    assertEquals(225, (long) delays.get(warm));
+  }
+
+  @Test
+  public void testMetadataNotDelayed() {
+    KeyExtent meta = new KeyExtent(MetadataTable.ID, null, null);
+    Map<KeyExtent,Long> sizes = new HashMap<>();
+    sizes.put(meta, 900L);
+    sizes.put(extent("a"), 100L);
+
+    Map<KeyExtent,Long> delays = WriteThrottle.computeDelays(sizes, 1000, MAX_MEM, 0.8, 0.95, 500);
+    assertFalse(delays.containsKey(meta));
+    // scaled against the largest user tablet, not the metadata tablet
+    assertEquals(500, (long) delays.get(extent("a")));
+  }
+
+  @Test
+  public void testThrottle() {
+    KeyExtent hot = extent("a");
+    KeyExtent cold = extent("b");
+    KeyExtent idle = extent("c");
+    WriteThrottle throttle = new WriteThrottle();
+    throttle.update(Map.of(hot, 900L, cold, 9L), 900, MAX_MEM, 0.8, 0.9, 100);
+    assertEquals(100, throttle.getDelay(hot));
+    assertEquals(1, throttle.getDelay(cold));
+
+    // the first write to each tablet is accepted
+    assertEquals(Map.of(), throttle.throttle(List.of(hot, cold, idle), 1000));
+
+    // only the tablets whose delay has not passed wait, for the rest of their delay
+    assertEquals(Map.of(hot, 50L), throttle.throttle(List.of(hot, cold, idle), 1050));
+    assertEquals(1, throttle.getThrottledWrites());
+    assertEquals(50, throttle.getThrottleTime());
+
+    // a write that waited does not push back the next accepted one
+    assertEquals(Map.of(), throttle.throttle(List.of(hot), 1100));
+    assertEquals(Map.of(hot, 100L), throttle.throttle(List.of(hot), 1100));
+
+    throttle.update(Map.of(hot, 10L), 10, MAX_MEM, 0.8, 0.9, 100);
+    assertEquals(0, throttle.getDelay(hot));
+    assertEquals(Map.of(), throttle.throttle(List.of(hot), 1101));
+  }
+}
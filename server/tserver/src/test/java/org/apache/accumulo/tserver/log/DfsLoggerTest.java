@@ -17,16 +17,41 @@
 package org.apache.accumulo.tserver.log;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.accumulo.core.client.Durability;
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.DefaultConfiguration;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.server.fs.VolumeManager;
 import org.apache.accumulo.tserver.TabletMutations;
+import org.apache.accumulo.tserver.log.DfsLogger.LoggerOperation;
 import org.apache.accumulo.tserver.tablet.CommitSession;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Syncable;
 import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 public class DfsLoggerTest {
@@ -74,4 +99,227 @@ public class DfsLoggerTest {
     return result;
   }
 
+  /**
+   * A log stream whose writes can fail and whose syncs can be held, to queue work behind a sync in progress, and failed.
+   */
+  private static class GatedStream extends OutputStream implements Syncable {
+    final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    final AtomicInteger syncs = new AtomicInteger();
+    final CountDownLatch firstSyncStarted = new CountDownLatch(1);
+    final CountDownLatch releaseFirstSync = new CountDownLatch(1);
+    volatile IOException failure;
+    volatile IOException writeFailure;
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+      if (writeFailure != null) {
+        throw writeFailure;
+      }
+      written.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      if (writeFailure != null) {
+        throw writeFailure;
+      }
+      written.write(b, off, len);
+    }
+
+    @Override
+    public void hflush() throws IOException {
+      hsync();
+    }
+
+    @Override
+    public void hsync() throws IOException {
+      if (firstSyncStarted.getCount() > 0) {
+        firstSyncStarted.countDown();
+        try {
+          releaseFirstSync.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      syncs.incrementAndGet();
+    }
+  }
+
+  private GatedStream stream;
+  private DfsLogger logger;
+  private CommitSession commitSession;
+  private ExecutorService waiters;
+
+  @Before
+  public void startLogger() throws IOException {
+    stream = new GatedStream();
+    DfsLogger.ServerResources resources = new DfsLogger.ServerResources() {
+      @Override
+      public AccumuloConfiguration getConfiguration() {
+        return DefaultConfiguration.getInstance();
+      }
+
+      @Override
+      public VolumeManager getFileSystem() {
+        throw new UnsupportedOperationException();
+      }
+    };
+    logger = new DfsLogger(resources, "test-wal", new FSDataOutputStream(stream, null),
+        new AtomicLong(), new AtomicLong());
+    commitSession = EasyMock.createMock(CommitSession.class);
+    EasyMock.expect(commitSession.getWALogSeq()).andReturn(1L).anyTimes();
+    EasyMock.expect(commitSession.getLogId()).andReturn(1).anyTimes();
+    EasyMock.replay(commitSession);
+    waiters = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void stopLogger() throws IOException {
+    stream.releaseFirstSync.countDown();
+    waiters.shutdownNow();
+    logger.close();
+  }
+
+  private static Mutation mutation(String row) {
+    Mutation m = new Mutation(row);
+    m.put("cf", "cq", "v");
+    return m;
+  }
+
+  private Future<?> await(LoggerOperation op) {
+    return waiters.submit(() -> {
+      op.await();
+      return null;
+    });
+  }
+
+  /**
+   * Holds the sync thread in the sync of a first operation and queues the given operations behind
+   * it.
+   */
+  private LoggerOperation holdFirstSync() throws Exception {
+    LoggerOperation first = logger.log(commitSession, mutation("first"), Durability.SYNC);
+    assertTrue(stream.firstSyncStarted.await(30, TimeUnit.SECONDS));
+    return first;
+  }
+
+  private List<LoggerOperation> logConcurrently() throws IOException {
+    List<LoggerOperation> ops = new ArrayList<>();
+    ops.add(logger.log(commitSession, mutation("a"), Durability.SYNC));
+    ops.add(logger.log(commitSession, mutation("b"), Durability.FLUSH));
+    ops.add(logger.logManyTablets(Collections.singletonList(new TabletMutations(commitSession,
+        Collections.singletonList(mutation("c")), Durability.SYNC))));
+    return ops;
+  }
+
+  @Test
+  public void testGroupCommitBatchesSyncs() throws Exception {
+    LoggerOperation first = holdFirstSync();
+    List<LoggerOperation> ops = logConcurrently();
+
+    stream.releaseFirstSync.countDown();
+    first.await();
+    for (LoggerOperation op : ops) {
+      op.await();
+    }
+
+    // one sync for the first operation and one for everything queued behind it
+    assertEquals(2, stream.syncs.get());
+    assertEquals(4, logger.getWrites());
+  }
+
+  @Test
+  public void testCallersWaitForTheirSync() throws Exception {
+    LoggerOperation first = holdFirstSync();
+    List<Future<?>> waiting = new ArrayList<>();
+    for (LoggerOperation op : logConcurrently()) {
+      waiting.add(await(op));
+    }
+    Future<?> firstWaiting = await(first);
+
+    // nothing is synced while the first sync is held
+    for (Future<?> future : waiting) {
+      try {
+        future.get(100, TimeUnit.MILLISECONDS);
+        fail("operation finished before its sync");
+      } catch (TimeoutException e) {
+        // expected
+      }
+    }
+    assertFalse(firstWaiting.isDone());
+
+    stream.releaseFirstSync.countDown();
+    firstWaiting.get(30, TimeUnit.SECONDS);
+    for (Future<?> future : waiting) {
+      future.get(30, TimeUnit.SECONDS);
+      // the sync that covers the queued operations completed before they returned
+      assertEquals(2, stream.syncs.get());
+    }
+  }
+
+  @Test
+  public void testFailedSyncFailsWaitingCallers() throws Exception {
+    LoggerOperation first = holdFirstSync();
+    List<Future<?>> waiting = new ArrayList<>();
+    for (LoggerOperation op : logConcurrently()) {
+      waiting.add(await(op));
+    }
+
+    IOException failure = new IOException("sync failed");
+    stream.failure = failure;
+    stream.releaseFirstSync.countDown();
+
+    List<Future<?>> all = new ArrayList<>(waiting);
+    all.add(await(first));
+    for (Future<?> future : all) {
+      try {
+        future.get(30, TimeUnit.SECONDS);
+        fail("operation succeeded after its sync failed");
+      } catch (ExecutionException e) {
+        // the sync is invoked reflectively, so the failure may be wrapped
+        Throwable cause = e.getCause();
+        while (cause != null && cause != failure) {
+          cause = cause.getCause();
+        }
+        assertSame(failure, cause);
+      }
+    }
+    assertEquals(0, stream.syncs.get());
+  }
+
+  @Test
+  public void testLogDurabilityWaitsForWrite() throws Exception {
+    LoggerOperation op = logger.log(commitSession, mutation("a"), Durability.LOG);
+    await(op).get(30, TimeUnit.SECONDS);
+
+    // written without a flush or sync
+    assertEquals(1, logger.getWrites());
+    assertTrue(stream.written.size() > 0);
+    assertEquals(0, stream.syncs.get());
+  }
+
+  @Test
+  public void testFailedWriteFailsLogDurability() throws Exception {
+    IOException failure = new IOException("write failed");
+    stream.writeFailure = failure;
+
+    LoggerOperation op = logger.logManyTablets(Collections.singletonList(
+        new TabletMutations(commitSession, Collections.singletonList(mutation("a")),
+            Durability.LOG)));
+    try {
+      await(op).get(30, TimeUnit.SECONDS);
+      fail("operation succeeded after its write failed");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      while (cause != null && cause != failure) {
+        cause = cause.getCause();
+      }
+      assertSame(failure, cause);
+    }
+    assertEquals(0, logger.getWrites());
+    stream.writeFailure = null;
+  }
 }
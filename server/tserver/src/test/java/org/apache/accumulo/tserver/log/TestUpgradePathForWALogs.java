@@ -17,6 +17,8 @@
 
 package org.apache.accumulo.tserver.log;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -24,12 +26,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
 
 import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.ConfigurationCopy;
 import org.apache.accumulo.core.conf.DefaultConfiguration;
+import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.server.fs.VolumeManager;
 import org.apache.accumulo.server.fs.VolumeManagerImpl;
 import org.apache.accumulo.server.log.SortedLogState;
+import org.apache.accumulo.tserver.logger.LogFileKey;
+import org.apache.accumulo.tserver.logger.LogFileValue;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.fs.Path;
@@ -143,4 +153,47 @@ public class TestUpgradePathForWALogs {
     }
   }
 
+  @Test
+  public void testSortWithManyParts() throws IOException {
+    try (InputStream walogStream = getClass().getResourceAsStream(WALOG_FROM_16);
+        OutputStream walogInHDFStream =
+            new FileOutputStream(new File(root.getRoot().getAbsolutePath() + WALOG_FROM_16))) {
+      IOUtils.copyLarge(walogStream, walogInHDFStream);
+    }
+    Path walog = new Path("file://" + root.getRoot().getAbsolutePath() + WALOG_FROM_16);
+
+    String singlePart = "file://" + root.getRoot().getAbsolutePath() + "/singlePart";
+    new LogSorter(null, fs, config).new LogProcessor().sort(WALOG_FROM_16, walog, singlePart);
+
+    // a tiny sort buffer causes many parts to be sorted and written concurrently
+    ConfigurationCopy manyPartsConfig = new ConfigurationCopy(config);
+    manyPartsConfig.set(Property.TSERV_SORT_BUFFER_SIZE, "2K");
+    manyPartsConfig.set(Property.TSERV_SORT_THREADS, "4");
+    String manyParts = "file://" + root.getRoot().getAbsolutePath() + "/manyParts";
+    new LogSorter(null, fs, manyPartsConfig).new LogProcessor().sort(WALOG_FROM_16, walog,
+        manyParts);
+
+    assertTrue(fs.listStatus(new Path(manyParts)).length > 3);
+
+    // the reader verifies the merged parts are sorted, entries with equal keys may be ordered
+    // differently across parts so compare the entries as sets
+    List<String> expected = readSorted(singlePart);
+    List<String> actual = readSorted(manyParts);
+    assertFalse(expected.isEmpty());
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+  }
+
+  private List<String> readSorted(String dir) throws IOException {
+    List<String> entries = new ArrayList<>();
+    try (RecoveryLogReader reader = new RecoveryLogReader(fs, new Path(dir))) {
+      while (reader.hasNext()) {
+        Entry<LogFileKey,LogFileValue> entry = reader.next();
+        entries.add(entry.getKey() + " " + entry.getValue());
+      }
+    }
+    return entries;
+  }
+
 }
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.DefaultConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.securityImpl.thrift.TCredentials;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionManagerTest {
+
+  private static final long HOUR = 60 * 60 * 1000;
+
+  private SessionManager manager;
+
+  @Before
+  public void setup() {
+    ConfigurationCopy conf = new ConfigurationCopy(DefaultConfiguration.getInstance());
+    // long enough that the background sweep never expires anything during a test
+    conf.set(Property.TSERV_SESSION_MAXIDLE, HOUR + "ms");
+    conf.set(Property.TSERV_UPDATE_SESSION_MAXIDLE, HOUR + "ms");
+    manager = new SessionManager(conf);
+  }
+
+  @Test
+  public void testIdleSessionExpires() {
+    Session session = new Session(new TCredentials());
+    long sid = manager.createSession(session, false);
+    assertSame(session, manager.getSession(sid));
+    assertEquals(1, manager.getSessionCount(Session.class));
+
+    manager.sweep(session.lastAccessTime + HOUR / 2);
+    assertSame(session, manager.getSession(sid));
+
+    manager.sweep(session.lastAccessTime + 2 * HOUR);
+    assertNull(manager.getSession(sid));
+    assertEquals(Session.State.REMOVED, session.state);
+    assertEquals(0, manager.getSessionCount(Session.class));
+  }
+
+  @Test
+  public void testReservedSessionDoesNotExpire() {
+    Session session = new Session(new TCredentials());
+    long sid = manager.createSession(session, true);
+
+    long now = session.lastAccessTime + 2 * HOUR;
+    manager.sweep(now);
+    assertSame(session, manager.getSession(sid));
+
+    manager.unreserveSession(session);
+    // unreserving updates the access time to the real clock, so it is idle from then on
+    long unreserved = session.lastAccessTime;
+    manager.sweep(Math.max(now, unreserved) + HOUR / 2);
+    assertNotNull(manager.getSession(sid));
+    manager.sweep(Math.max(now + HOUR, unreserved) + 2 * HOUR);
+    assertNull(manager.getSession(sid));
+  }
+
+  @Test
+  public void testAccessedSessionIsRescheduled() {
+    Session session = new Session(new TCredentials());
+    long sid = manager.createSession(session, false);
+    long created = session.lastAccessTime;
+
+    // as if the session was used half way through its idle time
+    session.lastAccessTime = created + HOUR / 2;
+    manager.sweep(created + HOUR + 1000);
+    assertSame(session, manager.getSession(sid));
+
+    manager.sweep(created + HOUR / 2 + HOUR + 1000);
+    assertNull(manager.getSession(sid));
+  }
+
+  @Test
+  public void testRemoveSession() {
+    Session s1 = new Session(new TCredentials());
+    Session s2 = new Session(new TCredentials());
+    long sid1 = manager.createSession(s1, false);
+    long sid2 = manager.createSession(s2, false);
+    assertEquals(2, manager.getSessionCount(Session.class));
+
+    assertSame(s1, manager.removeSession(sid1));
+    assertNull(manager.removeSession(sid1));
+    assertEquals(1, manager.getSessionCount(Session.class));
+
+    // the removed session is dropped from the wheel without being counted twice
+    manager.sweep(s1.lastAccessTime + 2 * HOUR);
+    assertNull(manager.getSession(sid2));
+    assertEquals(0, manager.getSessionCount(Session.class));
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.session;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.TableId;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.dataImpl.KeyExtent;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.securityImpl.thrift.TCredentials;
+import org.apache.accumulo.tserver.scan.ScanTask;
+import org.apache.accumulo.tserver.tablet.KVEntry;
+import org.apache.accumulo.tserver.tablet.ScanBatch;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleScanSessionTest {
+
+  private List<ScanTask<ScanBatch>> created;
+  private Supplier<ScanTask<ScanBatch>> factory;
+
+  @Before
+  public void setup() {
+    created = new ArrayList<>();
+    factory = () -> {
+      @SuppressWarnings("unchecked")
+      ScanTask<ScanBatch> task = createNiceMock(ScanTask.class);
+      created.add(task);
+      return task;
+    };
+  }
+
+  private static SingleScanSession newSession(long readaheadThreshold, int maxBatchesAhead) {
+    return newSession(readaheadThreshold, maxBatchesAhead, Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  private static SingleScanSession newSession(long readaheadThreshold, int maxBatchesAhead,
+      long maxBytesAhead, long readAheadIdleTime) {
+    return new SingleScanSession(new TCredentials(), new KeyExtent(TableId.of("1"), null, null),
+        new HashSet<>(), Collections.emptyList(), Collections.emptyMap(), Authorizations.EMPTY,
+        readaheadThreshold, maxBatchesAhead, maxBytesAhead, readAheadIdleTime, 0, null, null);
+  }
+
+  private static ScanBatch batch(boolean more, int... valueSizes) {
+    List<KVEntry> results = new ArrayList<>();
+    for (int i = 0; i < valueSizes.length; i++) {
+      results.add(new KVEntry(new Key("r" + i), new Value(new byte[valueSizes[i]])));
+    }
+    return new ScanBatch(results, more);
+  }
+
+  @Test
+  public void testSingleBatchAhead() {
+    SingleScanSession session = newSession(1, 1);
+
+    ScanTask<ScanBatch> first = session.startNextBatch(factory);
+    assertNotNull(first);
+    assertSame(first, session.nextBatchTask);
+    // the client is already waiting on a batch
+    assertNull(session.startNextBatch(factory));
+
+    // below the read ahead threshold nothing is read ahead
+    assertNull(session.finishedReading(first, batch(true), factory));
+    session.batchCount++;
+    assertNull(session.batchReturned(batch(true), factory));
+    assertNull(session.nextBatchTask);
+    assertEquals(0, session.getBatchesAhead());
+
+    ScanTask<ScanBatch> second = session.startNextBatch(factory);
+    assertNotNull(second);
+    assertNull(session.finishedReading(second, batch(true), factory));
+    session.batchCount++;
+
+    // past the threshold the next batch is read while this one is returned, but a full window
+    // stops the task from chaining another
+    ScanTask<ScanBatch> third = session.batchReturned(batch(true), factory);
+    assertNotNull(third);
+    assertSame(third, session.nextBatchTask);
+    assertNull(session.finishedReading(third, batch(true), factory));
+    assertEquals(1, session.getBatchesAhead());
+    assertEquals(3, created.size());
+  }
+
+  @Test
+  public void testWindow() {
+    SingleScanSession session = newSession(0, 3);
+
+    ScanTask<ScanBatch> task = session.startNextBatch(factory);
+    session.batchCount++;
+
+    // each finished task chains the next one until the window is full
+    task = session.finishedReading(task, batch(true), factory);
+    assertEquals(2, session.getBatchesAhead());
+    task = session.finishedReading(task, batch(true), factory);
+    assertEquals(3, session.getBatchesAhead());
+    assertNull(session.finishedReading(task, batch(true), factory));
+    assertEquals(3, created.size());
+
+    // returning a batch frees a slot and restarts reading since no task is reading
+    task = session.batchReturned(batch(true), factory);
+    assertNotNull(task);
+    assertSame(created.get(1), session.nextBatchTask);
+    assertEquals(3, session.getBatchesAhead());
+
+    // while a task is still reading, returning a batch leaves chaining to that task
+    session.batchCount++;
+    assertNull(session.batchReturned(batch(true), factory));
+    assertEquals(2, session.getBatchesAhead());
+    task = session.finishedReading(task, batch(true), factory);
+    assertNotNull(task);
+    assertEquals(3, session.getBatchesAhead());
+
+    // a task that finished twice, e.g. after an error, does not affect the window
+    assertNull(session.finishedReading(created.get(0), batch(true), factory));
+
+    // once a task reached the end of the tablet nothing more is read, even though the batches
+    // before it are returned with more set
+    assertNull(session.finishedReading(task, batch(false), factory));
+    assertNull(session.batchReturned(batch(true), factory));
+    assertNull(session.batchReturned(batch(true), factory));
+    assertEquals(1, session.getBatchesAhead());
+    assertEquals(5, created.size());
+  }
+
+  @Test
+  public void testInterrupt() {
+    SingleScanSession session = newSession(0, 4);
+    session.batchCount++;
+    ScanTask<ScanBatch> task = session.startNextBatch(factory);
+    task = session.finishedReading(task, batch(true), factory);
+    assertNotNull(task);
+
+    session.interruptFlag.set(true);
+    assertNull(session.finishedReading(task, batch(true), factory));
+    assertNull(session.batchReturned(batch(true), factory));
+    assertEquals(1, session.getBatchesAhead());
+  }
+
+  @Test
+  public void testMemoryBudget() {
+    SingleScanSession session = newSession(0, 10, 3000, Long.MAX_VALUE);
+    session.batchCount++;
+    ScanTask<ScanBatch> task = session.startNextBatch(factory);
+
+    ScanBatch first = batch(true, 1000);
+    ScanBatch second = batch(true, 1000, 1000);
+    task = session.finishedReading(task, first, factory);
+    assertNotNull(task);
+    // the window has room for more batches, but they would hold too much memory
+    assertNull(session.finishedReading(task, second, factory));
+    assertEquals(first.estimateMemoryUsed() + second.estimateMemoryUsed(), session.getBytesAhead());
+
+    // returning a batch releases its memory and reading resumes
+    assertNotNull(session.batchReturned(first, factory));
+    assertEquals(second.estimateMemoryUsed(), session.getBytesAhead());
+  }
+
+  @Test
+  public void testIdle() throws Exception {
+    SingleScanSession session = newSession(0, 10, Long.MAX_VALUE, 1000);
+    session.batchCount++;
+    ScanTask<ScanBatch> task = session.startNextBatch(factory);
+    // the client asks again while it waits for the batch
+    assertNull(session.startNextBatch(factory));
+    assertFalse(session.isReadAheadIdle());
+    task = session.finishedReading(task, batch(true), factory);
+    assertNotNull(task);
+
+    Thread.sleep(1200);
+
+    // the client has gone quiet, so the chain stops
+    assertTrue(session.isReadAheadIdle());
+    assertNull(session.finishedReading(task, batch(true), factory));
+    assertEquals(2, session.getBatchesAhead());
+
+    // fetching a batch makes the session active again and reading resumes
+    assertNotNull(session.batchReturned(batch(true), factory));
+    assertFalse(session.isReadAheadIdle());
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+  @Test
+  public void testExpiresAtDeadline() {
+    TimingWheel<String> wheel = new TimingWheel<>(100, 1000);
+    wheel.schedule("a", 1250);
+    wheel.schedule("b", 1300);
+    wheel.schedule("c", 5000);
+    assertEquals(3, wheel.size());
+
+    assertEquals(Collections.emptyList(), wheel.advance(1200));
+    assertEquals(List.of("a", "b"), wheel.advance(1300));
+    assertEquals(Collections.emptyList(), wheel.advance(4999));
+    assertEquals(List.of("c"), wheel.advance(5000));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void testPastDeadline() {
+    TimingWheel<String> wheel = new TimingWheel<>(100, 1000);
+    wheel.advance(2000);
+    wheel.schedule("a", 500);
+    // the wheel is already past 2000, so it comes back with the next tick
+    assertEquals(Collections.emptyList(), wheel.advance(2000));
+    assertEquals(List.of("a"), wheel.advance(2100));
+  }
+
+  @Test
+  public void testEmptyWheelJumps() {
+    TimingWheel<String> wheel = new TimingWheel<>(1, 0);
+    assertEquals(Collections.emptyList(), wheel.advance(Long.MAX_VALUE / 2));
+    wheel.schedule("a", Long.MAX_VALUE / 2 + 10);
+    assertEquals(Collections.emptyList(), wheel.advance(Long.MAX_VALUE / 2 + 9));
+    assertEquals(List.of("a"), wheel.advance(Long.MAX_VALUE / 2 + 10));
+  }
+
+  @Test
+  public void testAllLevels() {
+    // deadlines spread over every level and the overflow, checked against a plain sort
+    Random rand = new Random(42);
+    long start = 123_456;
+    TimingWheel<Long> wheel = new TimingWheel<>(1, start);
+    List<Long> deadlines = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      long deadline = start + (long) Math.pow(2, rand.nextDouble() * 26);
+      deadlines.add(deadline);
+      wheel.schedule(deadline, deadline);
+    }
+    Collections.sort(deadlines);
+
+    long now = start;
+    int expiredCount = 0;
+    while (wheel.size() > 0) {
+      long prev = now;
+      now += 1 + rand.nextInt(1 << 16);
+      List<Long> expired = wheel.advance(now);
+      Collections.sort(expired);
+      // exactly the deadlines between the previous advance and this one
+      int end = expiredCount;
+      while (end < deadlines.size() && deadlines.get(end) <= now) {
+        end++;
+      }
+      assertEquals(deadlines.subList(expiredCount, end), expired);
+      for (Long deadline : expired) {
+        assertTrue(deadline > prev);
+      }
+      expiredCount = end;
+    }
+    assertEquals(deadlines.size(), expiredCount);
+  }
+}
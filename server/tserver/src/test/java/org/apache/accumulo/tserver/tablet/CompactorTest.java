@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.tablet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.DefaultConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.cryptoImpl.NoCryptoService;
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.TableId;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.dataImpl.KeyExtent;
+import org.apache.accumulo.core.file.FileOperations;
+import org.apache.accumulo.core.file.FileSKVIterator;
+import org.apache.accumulo.core.file.FileSKVWriter;
+import org.apache.accumulo.core.file.rfile.RFile;
+import org.apache.accumulo.core.iterators.IteratorUtil.IteratorScope;
+import org.apache.accumulo.core.metadata.schema.DataFileValue;
+import org.apache.accumulo.core.spi.crypto.CryptoService;
+import org.apache.accumulo.core.util.ratelimit.RateLimiter;
+import org.apache.accumulo.server.ServerContext;
+import org.apache.accumulo.server.fs.FileRef;
+import org.apache.accumulo.server.fs.VolumeManager;
+import org.apache.accumulo.server.fs.VolumeManagerImpl;
+import org.apache.accumulo.tserver.TabletServer;
+import org.apache.accumulo.tserver.TabletServerResourceManager;
+import org.apache.accumulo.tserver.TabletServerResourceManager.TabletResourceManager;
+import org.apache.accumulo.tserver.compaction.MajorCompactionReason;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+@SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "paths not set by user input")
+public class CompactorTest {
+
+  private static final Set<ByteSequence> CF1 =
+      Collections.singleton(new ArrayByteSequence("cf1"));
+  private static final Set<ByteSequence> CF2 =
+      Collections.singleton(new ArrayByteSequence("cf2"));
+  private static final Set<ByteSequence> CF3 =
+      Collections.singleton(new ArrayByteSequence("cf3"));
+  private static final CryptoService CRYPTO = new NoCryptoService();
+
+  private final TemporaryFolder root =
+      new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
+
+  private VolumeManager fs;
+  private Path tabletDir;
+  private ThreadPoolExecutor rangeExecutor;
+  private final KeyExtent extent = new KeyExtent(TableId.of("1"), null, null);
+  private final Map<FileRef,DataFileValue> files = new TreeMap<>();
+  private int nextOutput = 0;
+
+  private static final Compactor.CompactionEnv ENV = new Compactor.CompactionEnv() {
+    @Override
+    public boolean isCompactionEnabled() {
+      return true;
+    }
+
+    @Override
+    public IteratorScope getIteratorScope() {
+      return IteratorScope.majc;
+    }
+
+    @Override
+    public RateLimiter getReadLimiter() {
+      return null;
+    }
+
+    @Override
+    public RateLimiter getWriteLimiter() {
+      return null;
+    }
+  };
+
+  @Before
+  public void setUp() throws Exception {
+    root.create();
+    String path = root.getRoot().getAbsolutePath();
+    fs = VolumeManagerImpl.getLocal(path);
+    tabletDir = new Path("file://" + path + "/tables/1/default_tablet");
+    fs.mkdirs(tabletDir);
+    rangeExecutor =
+        new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+
+    ConfigurationCopy conf = createConfiguration(1);
+    // every third row in each file, so the compaction merges all files
+    for (int f = 0; f < 3; f++) {
+      Path file = new Path(tabletDir, "F000" + f + ".rf");
+      FileSystem ns = fs.getVolumeByPath(file).getFileSystem();
+      FileSKVWriter writer = FileOperations.getInstance().newWriterBuilder()
+          .forFile(file.toString(), ns, ns.getConf(), CRYPTO)
+          .withTableConfiguration(conf).build();
+      writer.startNewLocalityGroup("g1", CF1);
+      appendRows(writer, f, "cf1");
+      writer.startNewLocalityGroup("g2", CF2);
+      appendRows(writer, f, "cf2");
+      writer.startDefaultLocalityGroup();
+      appendRows(writer, f, "cf3");
+      writer.close();
+      files.put(new FileRef(file.toString()),
+          new DataFileValue(ns.getFileStatus(file).getLen(), 3000));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    rangeExecutor.shutdownNow();
+    root.delete();
+  }
+
+  private static void appendRows(FileSKVWriter writer, int file, String family) throws Exception {
+    for (int r = file; r < 3000; r += 3) {
+      String row = String.format("row_%06d", r);
+      for (int q = 0; q < 3; q++) {
+        writer.append(new Key(row, family, "cq" + q, 5),
+            new Value((row + family + q).getBytes(UTF_8)));
+      }
+    }
+  }
+
+  private ConfigurationCopy createConfiguration(int parallelRanges) {
+    ConfigurationCopy conf = new ConfigurationCopy(DefaultConfiguration.getInstance());
+    conf.set(Property.TABLE_LOCALITY_GROUPS, "g1,g2");
+    conf.set(Property.TABLE_LOCALITY_GROUP_PREFIX.getKey() + "g1", "cf1");
+    conf.set(Property.TABLE_LOCALITY_GROUP_PREFIX.getKey() + "g2", "cf2");
+    conf.set(Property.TABLE_FILE_COMPRESSED_BLOCK_SIZE, "1K");
+    conf.set(Property.TABLE_MAJC_PARALLEL_RANGES, Integer.toString(parallelRanges));
+    conf.set(Property.TABLE_MAJC_PARALLEL_THRESHOLD, "1K");
+    return conf;
+  }
+
+  private Path compact(ConfigurationCopy conf) throws Exception {
+    TabletServerResourceManager tsrm = EasyMock.createMock(TabletServerResourceManager.class);
+    TabletResourceManager trm = EasyMock.createMock(TabletResourceManager.class);
+    TabletServer tserver = EasyMock.createMock(TabletServer.class);
+    Tablet tablet = EasyMock.createMock(Tablet.class);
+    ServerContext context = EasyMock.createNiceMock(ServerContext.class);
+
+    EasyMock.expect(tablet.getExtent()).andReturn(extent).anyTimes();
+    EasyMock.expect(tablet.getTabletServer()).andReturn(tserver).anyTimes();
+    EasyMock.expect(tablet.getTabletResources()).andReturn(trm).anyTimes();
+    EasyMock.expect(tserver.getFileSystem()).andReturn(fs).anyTimes();
+    EasyMock.expect(trm.getTabletServerResourceManager()).andReturn(tsrm).anyTimes();
+    EasyMock.expect(tsrm.getMajorCompactionRangeExecutor()).andReturn(rangeExecutor).anyTimes();
+    EasyMock.expect(context.getCryptoService()).andReturn(CRYPTO).anyTimes();
+    EasyMock.replay(tsrm, trm, tserver, tablet, context);
+
+    Path output = new Path(tabletDir, "A000" + nextOutput++ + ".rf");
+    Compactor compactor = new Compactor(context, tablet, files, null,
+        new FileRef(output.toString()), false, ENV, Collections.emptyList(),
+        MajorCompactionReason.NORMAL.ordinal(), conf);
+    CompactionStats stats = compactor.call();
+    assertEquals(9 * 3000, stats.getEntriesRead());
+    assertEquals(9 * 3000, stats.getEntriesWritten());
+    return output;
+  }
+
+  private List<Map.Entry<Key,Value>> read(Path file, Set<ByteSequence> families, boolean inclusive)
+      throws Exception {
+    List<Map.Entry<Key,Value>> entries = new ArrayList<>();
+    FileSystem ns = fs.getVolumeByPath(file).getFileSystem();
+    try (FileSKVIterator reader = FileOperations.getInstance().newReaderBuilder()
+        .forFile(file.toString(), ns, ns.getConf(), CRYPTO)
+        .withTableConfiguration(createConfiguration(1)).build()) {
+      reader.seek(new Range(), families, inclusive);
+      while (reader.hasTop()) {
+        entries.add(new TreeMap.SimpleImmutableEntry<>(new Key(reader.getTopKey()),
+            new Value(reader.getTopValue())));
+        reader.next();
+      }
+    }
+    return entries;
+  }
+
+  private Map<String,?> localityGroups(Path file) throws Exception {
+    FileSystem ns = fs.getVolumeByPath(file).getFileSystem();
+    try (FileSKVIterator reader = FileOperations.getInstance().newReaderBuilder()
+        .forFile(file.toString(), ns, ns.getConf(), CRYPTO)
+        .withTableConfiguration(createConfiguration(1)).build()) {
+      return ((RFile.Reader) reader).getLocalityGroupCF();
+    }
+  }
+
+  private void assertSameOutput(Path expected, Path actual) throws Exception {
+    assertEquals(read(expected, Collections.emptySet(), false),
+        read(actual, Collections.emptySet(), false));
+    assertEquals(read(expected, CF1, true), read(actual, CF1, true));
+    assertEquals(read(expected, CF2, true), read(actual, CF2, true));
+    assertEquals(read(expected, CF3, true), read(actual, CF3, true));
+    assertEquals(localityGroups(expected), localityGroups(actual));
+  }
+
+  @Test
+  public void testParallelRanges() throws Exception {
+    Path serial = compact(createConfiguration(1));
+    assertEquals(0, rangeExecutor.getTaskCount());
+    assertEquals(9 * 3000, read(serial, Collections.emptySet(), false).size());
+
+    Path parallel = compact(createConfiguration(4));
+    assertTrue(rangeExecutor.getTaskCount() > 1);
+    assertSameOutput(serial, parallel);
+
+    // no parts are left behind
+    for (int i = 0; i < 4; i++) {
+      assertFalse(fs.exists(new Path(tabletDir, "A0001_part" + i + ".rf")));
+    }
+  }
+
+  @Test
+  public void testBelowThreshold() throws Exception {
+    Path serial = compact(createConfiguration(1));
+
+    ConfigurationCopy conf = createConfiguration(4);
+    conf.set(Property.TABLE_MAJC_PARALLEL_THRESHOLD, "1G");
+    Path unsplit = compact(conf);
+    assertEquals(0, rangeExecutor.getTaskCount());
+    assertSameOutput(serial, unsplit);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.tablet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.accumulo.core.data.Range;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class HotRowTrackerTest {
+
+  private static List<String> rows(HotRowTracker tracker) {
+    return tracker.getRows().stream().map(Text::toString).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testMostRecentFirst() {
+    HotRowTracker tracker = new HotRowTracker(3);
+    tracker.record(new Range("a"));
+    tracker.record(new Range("b"));
+    tracker.record(new Range("c"));
+    assertEquals(Arrays.asList("c", "b", "a"), rows(tracker));
+
+    // reading a row again makes it the most recent, and the least recent row is dropped
+    tracker.record(new Range("a", "b"));
+    tracker.record(new Range("d"));
+    assertEquals(Arrays.asList("d", "a", "c"), rows(tracker));
+  }
+
+  @Test
+  public void testIgnoredRanges() {
+    HotRowTracker tracker = new HotRowTracker(3);
+    tracker.record(new Range());
+    tracker.record(new Range(null, "m"));
+    char[] longRow = new char[HotRowTracker.MAX_ROW_LENGTH + 1];
+    Arrays.fill(longRow, 'x');
+    tracker.record(new Range(new String(longRow)));
+    assertEquals(Collections.emptyList(), rows(tracker));
+  }
+
+  @Test
+  public void testDisabled() {
+    HotRowTracker tracker = new HotRowTracker(0);
+    tracker.record(new Range("a"));
+    assertEquals(Collections.emptyList(), rows(tracker));
+  }
+}